@@ -0,0 +1,84 @@
+import json
+import os
+import struct
+
+# 与 BodyModel.BODY_PARTS 保持相同顺序
+BODY_PARTS = [
+    "头部", "颈部", "上身", "左肩膀", "左臂",
+    "左手", "右肩膀", "右臂", "右手",
+    "左腿", "左脚", "右腿", "右脚"
+]
+
+MAGIC = 0x534D4842  # "BHMS"
+VERSION = 1  # 版本1不含三角形索引，BodyMeshLoader 加载时再剖分
+HEADER_SIZE = 64
+FLOATS_PER_VERTEX = 3
+
+
+def f32(value):
+    """
+    按 Java float 精度舍入，保证与 BodyModel 的JSON加载结果一致
+    """
+    return struct.unpack('<f', struct.pack('<f', value))[0]
+
+
+def load_points(json_path):
+    with open(json_path, 'r', encoding='utf-8') as f:
+        return [p for p in json.load(f) if len(p) >= 2]
+
+
+def export_body_mesh(assets_dir, contour_name, output_path):
+    """
+    将人体轮廓和各部位JSON转换为 BodyMeshFormat 二进制网格 (.bhm)
+
+    参数:
+        assets_dir: 存放JSON资源的目录
+        contour_name: 完整人体轮廓文件名，用于计算边界
+        output_path: 输出文件路径
+    """
+    contour = load_points(os.path.join(assets_dir, contour_name))
+    min_x = f32(min(p[0] for p in contour))
+    max_x = f32(max(p[0] for p in contour))
+    min_y = f32(min(p[1] for p in contour))
+    max_y = f32(max(p[1] for p in contour))
+    x_span = f32(max_x - min_x)
+    y_span = f32(max_y - min_y)
+    x_offset, y_offset = min_x, min_y
+    # 以模型高度一半作为标准化尺度
+    scale = f32(max(x_span, y_span) / 2)
+
+    vertices = []
+    part_ranges = []
+    for part in BODY_PARTS:
+        points = load_points(os.path.join(assets_dir, part + ".json"))
+        part_ranges.append((len(vertices) // FLOATS_PER_VERTEX, len(points)))
+        for x, y in points:
+            x = f32(f32(x) - x_offset)
+            y = f32(f32(y) - y_offset)
+            vertices += [f32(f32(x / scale) - 1.0), f32(1.0 - f32(y / scale)), 0.0]
+
+    table = b""
+    for part, (start, count) in zip(BODY_PARTS, part_ranges):
+        name = part.encode('utf-8')
+        table += struct.pack('<H', len(name)) + name + struct.pack('<ii', start, count)
+    vertex_data_offset = (HEADER_SIZE + len(table) + 3) & ~3
+    total_vertices = len(vertices) // FLOATS_PER_VERTEX
+
+    header = struct.pack('<IhhiiiffffffffI',
+                         MAGIC, VERSION, 0, len(BODY_PARTS), total_vertices, FLOATS_PER_VERTEX,
+                         min_x, max_x, min_y, max_y, x_span, y_span, x_offset, y_offset,
+                         vertex_data_offset)
+    header = header.ljust(HEADER_SIZE, b"\0")
+    body = (header + table).ljust(vertex_data_offset, b"\0")
+    body += struct.pack('<%df' % len(vertices), *vertices)
+
+    with open(output_path, 'wb') as f:
+        f.write(body)
+    print(f"已导出 {len(BODY_PARTS)} 个部位, {total_vertices} 个顶点到: {output_path}")
+
+
+if __name__ == "__main__":
+    assets_dir = os.path.join(os.path.dirname(os.path.abspath(__file__)),
+                              "..", "bodyheartmaplib", "src", "main", "assets")
+    export_body_mesh(assets_dir, "body_red_2_contour_copy.json",
+                     os.path.join(assets_dir, "body_mesh.bhm"))
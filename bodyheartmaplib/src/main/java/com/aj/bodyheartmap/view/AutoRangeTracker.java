@@ -0,0 +1,185 @@
+package com.aj.bodyheartmap.view;
+
+/**
+ * 自动温度范围
+ * 对最近 windowSize 个样本维护固定分桶的直方图（滑动窗口，环形缓冲区记录每个样本的桶号），
+ * 每个样本 O(1) 且不分配内存；每 updateInterval 个样本扫描一次直方图，
+ * 取低/高百分位加上边距作为显示范围。新范围的任一端变化不超过 hysteresis 时保持原范围，避免闪烁。
+ * 可在任意线程调用，回调在调用 add() 的线程中执行
+ */
+public final class AutoRangeTracker {
+
+    // 范围变化回调
+    public interface Listener {
+        void onRangeChanged(float min, float max);
+    }
+
+    // 直方图覆盖的温度（摄氏度）与分辨率
+    private static final float HISTOGRAM_MIN = 20.0f;
+    private static final float HISTOGRAM_MAX = 45.0f;
+    private static final float BIN_WIDTH = 0.05f;
+    private static final int BINS = Math.round((HISTOGRAM_MAX - HISTOGRAM_MIN) / BIN_WIDTH);
+
+    private final int[] histogram = new int[BINS];
+    private final short[] window;
+    private int windowHead;
+    private int windowCount;
+    private int samplesSinceUpdate;
+    private final Listener listener;
+
+    private int updateInterval = 64;
+    private float lowPercentile = 0.02f;
+    private float highPercentile = 0.98f;
+    private float hysteresis = 0.2f;
+    private float minSpan = 1.0f;
+    private float margin = 0.1f;
+
+    private float currentMin = Float.NaN;
+    private float currentMax = Float.NaN;
+
+    public AutoRangeTracker(int windowSize, Listener listener) {
+        window = new short[windowSize];
+        this.listener = listener;
+    }
+
+    // 每多少个样本重新计算一次范围
+    public synchronized void setUpdateInterval(int samples) {
+        updateInterval = Math.max(1, samples);
+    }
+
+    // 显示范围取的低/高百分位（0-1），默认 2% / 98%
+    public synchronized void setPercentiles(float low, float high) {
+        if (low < 0 || high > 1 || low >= high) {
+            return;
+        }
+        lowPercentile = low;
+        highPercentile = high;
+    }
+
+    // 范围端点变化超过该值（摄氏度）才更新，默认 0.2
+    public synchronized void setHysteresis(float degrees) {
+        hysteresis = Math.max(0, degrees);
+    }
+
+    // 最小范围宽度，避免把噪声放大成整个色带，默认 1.0
+    public synchronized void setMinSpan(float degrees) {
+        minSpan = Math.max(BIN_WIDTH, degrees);
+    }
+
+    // 百分位之外的边距，默认 0.1
+    public synchronized void setMargin(float degrees) {
+        margin = Math.max(0, degrees);
+    }
+
+    public synchronized void add(float temperature) {
+        if (Float.isNaN(temperature)) {
+            return;
+        }
+        int bin = (int) ((temperature - HISTOGRAM_MIN) / BIN_WIDTH);
+        bin = Math.max(0, Math.min(BINS - 1, bin));
+        // 窗口已满时移出最旧的样本
+        if (windowCount == window.length) {
+            histogram[window[windowHead]]--;
+        } else {
+            windowCount++;
+        }
+        window[windowHead] = (short) bin;
+        histogram[bin]++;
+        windowHead = windowHead + 1 == window.length ? 0 : windowHead + 1;
+
+        if (++samplesSinceUpdate >= updateInterval) {
+            samplesSinceUpdate = 0;
+            update();
+        }
+    }
+
+    public synchronized void add(float[] temperatures, int count) {
+        for (int i = 0; i < count; i++) {
+            add(temperatures[i]);
+        }
+    }
+
+    private void update() {
+        float low = binLow(percentileBin(lowPercentile)) - margin;
+        float high = binLow(percentileBin(highPercentile)) + BIN_WIDTH + margin;
+        if (high - low < minSpan) {
+            float center = (low + high) * 0.5f;
+            low = center - minSpan * 0.5f;
+            high = center + minSpan * 0.5f;
+        }
+        if (!Float.isNaN(currentMin)
+                && Math.abs(low - currentMin) <= hysteresis && Math.abs(high - currentMax) <= hysteresis) {
+            return;
+        }
+        currentMin = low;
+        currentMax = high;
+        if (listener != null) {
+            listener.onRangeChanged(low, high);
+        }
+    }
+
+    // 累计计数达到 p 的桶
+    private int percentileBin(float p) {
+        int target = Math.max(1, (int) Math.ceil(p * windowCount));
+        int cumulative = 0;
+        for (int i = 0; i < BINS; i++) {
+            cumulative += histogram[i];
+            if (cumulative >= target) {
+                return i;
+            }
+        }
+        return BINS - 1;
+    }
+
+    private static float binLow(int bin) {
+        return HISTOGRAM_MIN + bin * BIN_WIDTH;
+    }
+
+    // 窗口内的近似百分位温度（桶下沿），窗口为空时返回 NaN
+    public synchronized float getPercentile(float p) {
+        return windowCount == 0 ? Float.NaN : binLow(percentileBin(p));
+    }
+
+    // 窗口内的最低温度（桶精度）
+    public synchronized float getWindowMin() {
+        if (windowCount == 0) {
+            return Float.NaN;
+        }
+        int i = 0;
+        while (histogram[i] == 0) {
+            i++;
+        }
+        return binLow(i);
+    }
+
+    // 窗口内的最高温度（桶精度）
+    public synchronized float getWindowMax() {
+        if (windowCount == 0) {
+            return Float.NaN;
+        }
+        int i = BINS - 1;
+        while (histogram[i] == 0) {
+            i--;
+        }
+        return binLow(i) + BIN_WIDTH;
+    }
+
+    public synchronized float getRangeMin() {
+        return currentMin;
+    }
+
+    public synchronized float getRangeMax() {
+        return currentMax;
+    }
+
+    public synchronized void reset() {
+        for (int i = 0; i < BINS; i++) {
+            histogram[i] = 0;
+        }
+        windowHead = 0;
+        windowCount = 0;
+        samplesSinceUpdate = 0;
+        currentMin = Float.NaN;
+        currentMax = Float.NaN;
+    }
+}
@@ -0,0 +1,226 @@
+package com.aj.bodyheartmap.view;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * 人体网格几何数据（不可变）
+ * 由 BodyMeshLoader 创建，通过 BodyMeshCache 在多个 HeatMapView 之间共享，
+ * 各视图只保存自己的温度状态（见 BodyModel）
+ */
+public final class BodyMesh {
+
+    private final String key;
+
+    // 归一化后的顶点坐标 x,y,z，只读使用，各使用者通过 newVertexView() 获取独立的位置
+    private final FloatBuffer vertexBuffer;
+    private final int totalVertices;
+
+    // 部位名称及其顶点索引范围，与 partNames 顺序一致
+    private final String[] partNames;
+    private final int[] partStarts;
+    private final int[] partCounts;
+    private final Map<String, int[]> bodyPartIndices;
+
+    // 各部位轮廓三角剖分后的三角形索引（全局顶点索引）
+    private final int[] indices;
+    // 上传用的索引数据：顶点数不超过65536时为 unsigned short，否则为 unsigned int
+    private final ByteBuffer indexBuffer;
+    private final boolean shortIndices;
+
+    // 每个顶点所属部位的下标（区域ID），作为静态顶点属性供着色器查表
+    private final FloatBuffer regionIdBuffer;
+    // 多级细节，首次使用时生成，共享网格的所有视图共用
+    private BodyMeshLod lod;
+    // 部位之间的过渡权重，仅细分网格且过渡宽度大于0时存在
+    private RegionBlend regionBlend;
+    private boolean regionBlendResolved;
+
+    // 原始轮廓边界 minX, maxX, minY, maxY
+    private final float[] bounds;
+    private final float[] span;
+    private final float[] offset;
+
+    BodyMesh(String key, FloatBuffer vertexBuffer, int totalVertices,
+             String[] partNames, int[] partStarts, int[] partCounts, int[] indices,
+             float[] bounds, float[] span, float[] offset) {
+        this.key = key;
+        this.vertexBuffer = vertexBuffer;
+        this.totalVertices = totalVertices;
+        this.partNames = partNames;
+        this.partStarts = partStarts;
+        this.partCounts = partCounts;
+        this.bounds = bounds;
+        this.span = span;
+        this.offset = offset;
+        this.indices = indices;
+
+        shortIndices = totalVertices <= 65536;
+        indexBuffer = ByteBuffer.allocateDirect(indices.length * (shortIndices ? 2 : 4));
+        indexBuffer.order(ByteOrder.nativeOrder());
+        for (int index : indices) {
+            if (shortIndices) {
+                indexBuffer.putShort((short) index);
+            } else {
+                indexBuffer.putInt(index);
+            }
+        }
+        indexBuffer.position(0);
+
+        regionIdBuffer = ByteBuffer.allocateDirect(totalVertices * 4)
+                .order(ByteOrder.nativeOrder()).asFloatBuffer();
+        for (int part = 0; part < partNames.length; part++) {
+            for (int v = partStarts[part], end = v + partCounts[part]; v < end; v++) {
+                regionIdBuffer.put(v, part);
+            }
+        }
+
+        Map<String, int[]> partIndices = new HashMap<>();
+        for (int i = 0; i < partNames.length; i++) {
+            partIndices.put(partNames[i], new int[]{partStarts[i], partCounts[i]});
+        }
+        this.bodyPartIndices = Collections.unmodifiableMap(partIndices);
+    }
+
+    public String getKey() {
+        return key;
+    }
+
+    // 返回共享顶点数据的独立视图，调用方不得写入
+    public FloatBuffer newVertexView() {
+        FloatBuffer view = vertexBuffer.duplicate();
+        view.position(0);
+        return view;
+    }
+
+    // 返回共享索引数据的独立视图，调用方不得写入
+    public ByteBuffer newIndexView() {
+        ByteBuffer view = indexBuffer.duplicate();
+        view.order(ByteOrder.nativeOrder());
+        view.position(0);
+        return view;
+    }
+
+    // 返回区域ID数据的独立视图，调用方不得写入
+    public FloatBuffer newRegionIdView() {
+        FloatBuffer view = regionIdBuffer.duplicate();
+        view.position(0);
+        return view;
+    }
+
+    public int getIndexCount() {
+        return indices.length;
+    }
+
+    public int getIndex(int i) {
+        return indices[i];
+    }
+
+    // 多级细节索引，首次调用时生成（较慢，应在后台线程中首次调用）
+    public synchronized BodyMeshLod getLod() {
+        if (lod == null) {
+            lod = new BodyMeshLod(this);
+        }
+        return lod;
+    }
+
+    // 部位之间的过渡权重，首次调用时生成；不是细分网格或未设置过渡宽度时返回null
+    public synchronized RegionBlend getRegionBlend() {
+        if (!regionBlendResolved) {
+            regionBlendResolved = true;
+            float blendWidth = BodyMeshTessellator.blendWidth(key);
+            if (BodyMeshTessellator.isTessellated(key) && blendWidth > 0) {
+                long start = System.nanoTime();
+                regionBlend = new RegionBlend(this, blendWidth);
+                regionBlend.setBuildMillis((System.nanoTime() - start) / 1000000);
+            }
+        }
+        return regionBlend;
+    }
+
+    // 索引是否为 unsigned short，否则为 unsigned int（需要 GL_OES_element_index_uint）
+    public boolean hasShortIndices() {
+        return shortIndices;
+    }
+
+    public int getTotalVertices() {
+        return totalVertices;
+    }
+
+    public int getPartCount() {
+        return partNames.length;
+    }
+
+    public String getPartName(int part) {
+        return partNames[part];
+    }
+
+    // 部位在 partNames 中的下标，不存在时返回-1
+    public int indexOfPart(String name) {
+        for (int i = 0; i < partNames.length; i++) {
+            if (partNames[i].equals(name)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    public int getPartStart(int part) {
+        return partStarts[part];
+    }
+
+    public int getPartVertexCount(int part) {
+        return partCounts[part];
+    }
+
+    public Map<String, int[]> getBodyPartIndices() {
+        return bodyPartIndices;
+    }
+
+    public float[] getBoundaries() {
+        return bounds.clone();
+    }
+
+    public float[] getSpan() {
+        return span.clone();
+    }
+
+    public float[] getOffset() {
+        return offset.clone();
+    }
+
+    // 原始轮廓坐标转换为归一化模型坐标，与加载时的顶点归一化一致
+    public float toModelX(float x) {
+        return (x - offset[0]) / halfExtent() - 1.0f;
+    }
+
+    public float toModelY(float y) {
+        return 1.0f - (y - offset[1]) / halfExtent();
+    }
+
+    // 原始轮廓坐标中的长度转换为模型坐标中的长度
+    public float toModelLength(float length) {
+        return length / halfExtent();
+    }
+
+    // 归一化尺度：模型宽高中较大者的一半
+    private float halfExtent() {
+        return Math.max(span[0], span[1]) / 2;
+    }
+
+    // 导出为二进制网格格式
+    public void write(OutputStream out) throws IOException {
+        int[][] partRanges = new int[partNames.length][];
+        for (int i = 0; i < partNames.length; i++) {
+            partRanges[i] = new int[]{partStarts[i], partCounts[i]};
+        }
+        BodyMeshFormat.write(out, partNames, partRanges, bounds, span, offset,
+                vertexBuffer, totalVertices, indices);
+    }
+}
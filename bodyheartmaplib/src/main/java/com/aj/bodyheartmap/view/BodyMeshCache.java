@@ -0,0 +1,110 @@
+package com.aj.bodyheartmap.view;
+
+import android.content.Context;
+import android.util.Log;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * 进程级人体网格缓存（引用计数）
+ * 多个 HeatMapView 使用同一模板时只解析一次资源、共享一份几何数据；
+ * 最后一个使用者释放后从缓存中移除
+ */
+public final class BodyMeshCache {
+    private static final String TAG = "BodyMeshCache";
+
+    public static final String DEFAULT_TEMPLATE = "default";
+
+    private static final Map<String, Entry> ENTRIES = new HashMap<>();
+
+    private static final class Entry {
+        int refCount;
+        BodyMesh mesh;
+    }
+
+    private BodyMeshCache() {
+    }
+
+    /**
+     * 获取模板对应的网格，引用计数加一；首次获取时加载资源。
+     * 同一模板的并发获取只会加载一次，其余调用等待加载完成
+     */
+    public static BodyMesh acquire(Context context, String template) {
+        Entry entry;
+        synchronized (ENTRIES) {
+            entry = ENTRIES.get(template);
+            if (entry == null) {
+                entry = new Entry();
+                ENTRIES.put(template, entry);
+            }
+            entry.refCount++;
+        }
+
+        synchronized (entry) {
+            if (entry.mesh == null) {
+                try {
+                    entry.mesh = BodyMeshLoader.load(context, template);
+                    Log.i(TAG, "网格已加载并缓存: " + template);
+                } catch (RuntimeException e) {
+                    releaseEntry(template, entry);
+                    throw e;
+                }
+            }
+            return entry.mesh;
+        }
+    }
+
+    // 释放一次引用
+    public static void release(BodyMesh mesh) {
+        if (mesh == null) {
+            return;
+        }
+        synchronized (ENTRIES) {
+            Entry entry = ENTRIES.get(mesh.getKey());
+            if (entry != null && entry.mesh == mesh) {
+                releaseEntry(mesh.getKey(), entry);
+            }
+        }
+    }
+
+    /**
+     * 重新登记一个已释放的网格：缓存中仍是同一网格时引用计数加一，已被移除时重新放回；
+     * 期间同一模板已重新加载为另一份网格时不登记，之后对它的 release() 也不会影响缓存
+     */
+    public static void reacquire(BodyMesh mesh) {
+        if (mesh == null) {
+            return;
+        }
+        synchronized (ENTRIES) {
+            Entry entry = ENTRIES.get(mesh.getKey());
+            if (entry == null) {
+                entry = new Entry();
+                entry.mesh = mesh;
+                ENTRIES.put(mesh.getKey(), entry);
+                Log.i(TAG, "网格重新放回缓存: " + mesh.getKey());
+            }
+            if (entry.mesh == mesh) {
+                entry.refCount++;
+            }
+        }
+    }
+
+    private static void releaseEntry(String template, Entry entry) {
+        synchronized (ENTRIES) {
+            entry.refCount--;
+            if (entry.refCount <= 0 && ENTRIES.get(template) == entry) {
+                ENTRIES.remove(template);
+                Log.i(TAG, "网格已从缓存移除: " + template);
+            }
+        }
+    }
+
+    // 当前被引用的次数，用于调试
+    public static int getRefCount(String template) {
+        synchronized (ENTRIES) {
+            Entry entry = ENTRIES.get(template);
+            return entry != null ? entry.refCount : 0;
+        }
+    }
+}
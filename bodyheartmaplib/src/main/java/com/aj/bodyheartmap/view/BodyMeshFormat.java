@@ -0,0 +1,231 @@
+package com.aj.bodyheartmap.view;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * 人体网格二进制格式（.bhm）
+ * 代替逐部位的JSON文件，加载时可直接映射到顶点缓冲区，无需中间对象
+ *
+ * 布局（全部为小端序）：
+ *  0  int   魔数 "BHMS"
+ *  4  short 版本号
+ *  6  short 标志位（保留）
+ *  8  int   部位数量
+ * 12  int   总顶点数
+ * 16  int   每个顶点的分量数（x,y,z = 3）
+ * 20  float minX, maxX, minY, maxY   原始轮廓边界
+ * 36  float xSpan, ySpan             坐标跨度
+ * 44  float xOffset, yOffset         坐标偏移量
+ * 52  int   顶点数据起始偏移（字节，4字节对齐）
+ * 56  int   三角形索引数量（版本2起；0表示未预计算，加载时再剖分）
+ * 60  int   索引数据起始偏移（字节）
+ * 64  部位表：每项 short 名称长度(UTF-8) + 名称 + int 起始索引 + int 顶点数
+ * ..  顶点数据：已归一化的 float x,y,z
+ * ..  索引数据：int 三角形顶点索引（版本2起，可选）
+ */
+public final class BodyMeshFormat {
+
+    public static final int MAGIC = 0x534D4842; // "BHMS" 小端序
+    public static final short VERSION = 2;
+    // 版本1的文件没有索引段，仍然可以读取
+    public static final short MIN_VERSION = 1;
+
+    public static final int HEADER_SIZE = 64;
+    public static final int FLOATS_PER_VERTEX = 3;
+
+    public static final int OFFSET_VERSION = 4;
+    public static final int OFFSET_PART_COUNT = 8;
+    public static final int OFFSET_TOTAL_VERTICES = 12;
+    public static final int OFFSET_COMPONENTS = 16;
+    public static final int OFFSET_BOUNDS = 20;
+    public static final int OFFSET_SPAN = 36;
+    public static final int OFFSET_OFFSET = 44;
+    public static final int OFFSET_VERTEX_DATA = 52;
+    public static final int OFFSET_INDEX_COUNT = 56;
+    public static final int OFFSET_INDEX_DATA = 60;
+
+    private BodyMeshFormat() {
+    }
+
+    // 校验文件头，返回总顶点数
+    public static int checkHeader(ByteBuffer data) throws IOException {
+        if (data.limit() < HEADER_SIZE || data.getInt(0) != MAGIC) {
+            throw new IOException("不是有效的人体网格文件");
+        }
+        short version = data.getShort(OFFSET_VERSION);
+        if (version < MIN_VERSION || version > VERSION) {
+            throw new IOException("不支持的网格版本: " + version);
+        }
+        if (data.getInt(OFFSET_COMPONENTS) != FLOATS_PER_VERTEX) {
+            throw new IOException("顶点分量数不匹配: " + data.getInt(OFFSET_COMPONENTS));
+        }
+        int totalVertices = data.getInt(OFFSET_TOTAL_VERTICES);
+        int vertexDataOffset = data.getInt(OFFSET_VERTEX_DATA);
+        if (totalVertices < 0
+                || vertexDataOffset < HEADER_SIZE
+                || (long) vertexDataOffset + (long) totalVertices * FLOATS_PER_VERTEX * 4 > data.limit()) {
+            throw new IOException("网格文件已损坏");
+        }
+        if (version >= 2) {
+            int indexCount = data.getInt(OFFSET_INDEX_COUNT);
+            int indexDataOffset = data.getInt(OFFSET_INDEX_DATA);
+            if (indexCount < 0 || indexCount % 3 != 0
+                    || (indexCount > 0 && (indexDataOffset < HEADER_SIZE
+                    || (long) indexDataOffset + (long) indexCount * 4 > data.limit()))) {
+                throw new IOException("网格索引数据已损坏");
+            }
+        }
+        return totalVertices;
+    }
+
+    // 预计算的三角形索引数量，版本1的文件返回0
+    public static int indexCount(ByteBuffer data) {
+        return data.getShort(OFFSET_VERSION) >= 2 ? data.getInt(OFFSET_INDEX_COUNT) : 0;
+    }
+
+    /**
+     * 解析网格文件（data 为小端序，通常是映射的文件），顶点数据复制到本地字节序的直接缓冲区。
+     * 不依赖 Android，可在普通JVM上使用；版本1的文件在此处三角剖分
+     */
+    public static BodyMesh read(String key, ByteBuffer data) throws IOException {
+        int vertexCount = checkHeader(data);
+        int partCount = data.getInt(OFFSET_PART_COUNT);
+
+        // 部位表
+        String[] partNames = new String[partCount];
+        int[] partStarts = new int[partCount];
+        int[] partCounts = new int[partCount];
+        int pos = HEADER_SIZE;
+        for (int i = 0; i < partCount; i++) {
+            int nameLength = data.getShort(pos) & 0xFFFF;
+            byte[] name = new byte[nameLength];
+            ByteBuffer nameSlice = data.duplicate();
+            nameSlice.position(pos + 2);
+            nameSlice.get(name);
+            pos += 2 + nameLength;
+            int start = data.getInt(pos);
+            int count = data.getInt(pos + 4);
+            pos += 8;
+            if (start < 0 || count < 0 || start + count > vertexCount) {
+                throw new IOException("部位索引越界");
+            }
+            partNames[i] = new String(name, StandardCharsets.UTF_8);
+            partStarts[i] = start;
+            partCounts[i] = count;
+        }
+
+        // 顶点数据：小端序浮点直接批量复制到本地字节序的直接缓冲区
+        int vertexDataOffset = data.getInt(OFFSET_VERTEX_DATA);
+        int floatCount = vertexCount * FLOATS_PER_VERTEX;
+        ByteBuffer src = data.duplicate();
+        src.position(vertexDataOffset);
+        src.limit(vertexDataOffset + floatCount * 4);
+        FloatBuffer srcFloats = src.slice().order(ByteOrder.LITTLE_ENDIAN).asFloatBuffer();
+
+        ByteBuffer bb = ByteBuffer.allocateDirect(floatCount * 4);
+        bb.order(ByteOrder.nativeOrder());
+        FloatBuffer vertices = bb.asFloatBuffer();
+        vertices.put(srcFloats);
+        vertices.position(0);
+
+        float[] bounds = new float[4];
+        for (int i = 0; i < 4; i++) {
+            bounds[i] = data.getFloat(OFFSET_BOUNDS + i * 4);
+        }
+        float[] span = {
+                data.getFloat(OFFSET_SPAN),
+                data.getFloat(OFFSET_SPAN + 4)
+        };
+        float[] offset = {
+                data.getFloat(OFFSET_OFFSET),
+                data.getFloat(OFFSET_OFFSET + 4)
+        };
+
+        // 预计算的三角形索引，旧版本文件没有时在加载时剖分
+        int[] indices;
+        int indexCount = indexCount(data);
+        if (indexCount > 0) {
+            int indexDataOffset = data.getInt(OFFSET_INDEX_DATA);
+            ByteBuffer indexSrc = data.duplicate();
+            indexSrc.position(indexDataOffset);
+            indexSrc.limit(indexDataOffset + indexCount * 4);
+            indices = new int[indexCount];
+            indexSrc.slice().order(ByteOrder.LITTLE_ENDIAN).asIntBuffer().get(indices);
+            for (int index : indices) {
+                if (index < 0 || index >= vertexCount) {
+                    throw new IOException("三角形索引越界");
+                }
+            }
+        } else {
+            indices = PolygonTriangulator.triangulateParts(vertices, partStarts, partCounts);
+        }
+
+        return new BodyMesh(key, vertices, vertexCount, partNames, partStarts, partCounts, indices,
+                bounds, span, offset);
+    }
+
+    // 写出网格文件，vertices 为已归一化的 x,y,z 顶点数据，indices 为三角形索引（可为null）
+    public static void write(OutputStream out, String[] partNames, int[][] partRanges,
+                             float[] bounds, float[] span, float[] offset,
+                             FloatBuffer vertices, int totalVertices, int[] indices) throws IOException {
+        byte[][] names = new byte[partNames.length][];
+        int tableSize = 0;
+        for (int i = 0; i < partNames.length; i++) {
+            names[i] = partNames[i].getBytes(StandardCharsets.UTF_8);
+            tableSize += 2 + names[i].length + 8;
+        }
+        int vertexDataOffset = (HEADER_SIZE + tableSize + 3) & ~3;
+        int vertexBytes = totalVertices * FLOATS_PER_VERTEX * 4;
+        int indexCount = indices != null ? indices.length : 0;
+        int indexDataOffset = vertexDataOffset + vertexBytes;
+
+        ByteBuffer bb = ByteBuffer.allocate(indexDataOffset + indexCount * 4);
+        bb.order(ByteOrder.LITTLE_ENDIAN);
+        bb.putInt(MAGIC);
+        bb.putShort(VERSION);
+        bb.putShort((short) 0);
+        bb.putInt(partNames.length);
+        bb.putInt(totalVertices);
+        bb.putInt(FLOATS_PER_VERTEX);
+        for (int i = 0; i < 4; i++) {
+            bb.putFloat(bounds[i]);
+        }
+        bb.putFloat(span[0]);
+        bb.putFloat(span[1]);
+        bb.putFloat(offset[0]);
+        bb.putFloat(offset[1]);
+        bb.putInt(vertexDataOffset);
+        bb.putInt(indexCount);
+        bb.putInt(indexDataOffset);
+
+        // 部位表
+        bb.position(HEADER_SIZE);
+        for (int i = 0; i < partNames.length; i++) {
+            bb.putShort((short) names[i].length);
+            bb.put(names[i]);
+            bb.putInt(partRanges[i][0]);
+            bb.putInt(partRanges[i][1]);
+        }
+
+        // 顶点数据
+        bb.position(vertexDataOffset);
+        FloatBuffer src = vertices.duplicate();
+        src.position(0);
+        src.limit(totalVertices * FLOATS_PER_VERTEX);
+        bb.asFloatBuffer().put(src);
+
+        // 索引数据
+        if (indexCount > 0) {
+            bb.position(indexDataOffset);
+            bb.asIntBuffer().put(indices);
+        }
+
+        out.write(bb.array(), 0, bb.capacity());
+        out.flush();
+    }
+}
@@ -0,0 +1,283 @@
+package com.aj.bodyheartmap.view;
+
+import android.content.Context;
+import android.content.res.AssetFileDescriptor;
+import android.util.Log;
+
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+
+/**
+ * 人体网格加载器
+ * 优先内存映射预编译的二进制网格，不存在时回退到逐部位JSON的流式解析
+ *
+ * 模板与资源的对应关系：
+ * - 默认模板：body_mesh.bhm，回退 body_red_2_contour_copy.json + 各部位.json
+ * - 其他模板：<模板名>.bhm，回退 <模板名>/body_contour.json + <模板名>/各部位.json
+ */
+public final class BodyMeshLoader {
+    private static final String TAG = "BodyMeshLoader";
+
+    // 预编译的二进制网格，由 BodyMap/export_body_mesh.py 或 BodyMesh.write() 生成
+    // JSON文件仅作为回退和转换来源
+    public static final String MESH_ASSET = "body_mesh.bhm";
+    public static final String CONTOUR_ASSET = "body_red_2_contour_copy.json";
+
+    private final Context context;
+    private final String template;
+
+    // 添加边界坐标变量
+    private float minX = Float.MAX_VALUE;
+    private float maxX = Float.MIN_VALUE;
+    private float minY = Float.MAX_VALUE;
+    private float maxY = Float.MIN_VALUE;
+
+    // 添加坐标跨度变量
+    private float xSpan;
+    private float ySpan;
+
+    // 添加坐标偏移量
+    private float xOffset;
+    private float yOffset;
+
+    float normalizedXMax = -20.0f;
+    float normalizedYMax = -20.0f;
+    float normalizedXMin = 2.0f;
+    float normalizedYMin = 2.0f;
+
+    private BodyMeshLoader(Context context, String template) {
+        this.context = context;
+        this.template = template;
+    }
+
+    public static BodyMesh load(Context context, String template) {
+        if (BodyMeshTessellator.isTessellated(template)) {
+            return loadTessellated(context, template);
+        }
+        BodyMeshLoader loader = new BodyMeshLoader(context, template);
+        BodyMesh mesh = loader.loadFromBinaryAsset();
+        if (mesh == null) {
+            mesh = loader.loadFromJsonAssets();
+        }
+        return mesh;
+    }
+
+    // 加载基础模板后细分，基础网格只在细分期间使用
+    private static BodyMesh loadTessellated(Context context, String template) {
+        BodyMesh base = load(context, BodyMeshTessellator.baseTemplate(template));
+        float spacing = BodyMeshTessellator.spacing(template);
+        if (spacing <= 0) {
+            Log.e(TAG, "细分间距无效: " + template);
+            return base;
+        }
+        long start = System.nanoTime();
+        BodyMesh mesh = BodyMeshTessellator.tessellate(base, template, spacing);
+        Log.i(TAG, "网格细分完成，间距: " + spacing + ", 耗时: " + (System.nanoTime() - start) / 1000000 + "ms"
+                + ", 顶点数: " + base.getTotalVertices() + " -> " + mesh.getTotalVertices()
+                + ", 三角形数: " + base.getIndexCount() / 3 + " -> " + mesh.getIndexCount() / 3
+                + ", 约 " + (mesh.getTotalVertices() * 24 + mesh.getIndexCount() * 4) / 1024 + "KB");
+        return mesh;
+    }
+
+    private boolean isDefaultTemplate() {
+        return BodyMeshCache.DEFAULT_TEMPLATE.equals(template);
+    }
+
+    private String binaryAssetName() {
+        return isDefaultTemplate() ? MESH_ASSET : template + ".bhm";
+    }
+
+    private String jsonAssetName(String name) {
+        return isDefaultTemplate() ? name + ".json" : template + "/" + name + ".json";
+    }
+
+    private String contourAssetName() {
+        return isDefaultTemplate() ? CONTOUR_ASSET : template + "/body_contour.json";
+    }
+
+    // 从二进制网格资源加载，顶点数据直接复制到直接缓冲区，失败时返回null回退到JSON
+    private BodyMesh loadFromBinaryAsset() {
+        ByteBuffer data;
+        try {
+            data = mapAsset(context, binaryAssetName());
+        } catch (IOException e) {
+            Log.w(TAG, "二进制网格不可用，回退到JSON: " + e.getMessage());
+            return null;
+        }
+
+        try {
+            BodyMesh mesh = BodyMeshFormat.read(template, data);
+            Log.i(TAG, "从二进制网格加载完成，部位数: " + mesh.getPartCount() + ", 总顶点数: " + mesh.getTotalVertices()
+                    + ", 三角形数: " + mesh.getIndexCount() / 3);
+            return mesh;
+        } catch (IOException | RuntimeException e) {
+            Log.e(TAG, "解析二进制网格失败，回退到JSON", e);
+            return null;
+        }
+    }
+
+    // 将资源文件映射到内存；资源被压缩而无法映射时，读入直接缓冲区
+    private static ByteBuffer mapAsset(Context context, String filename) throws IOException {
+        try (AssetFileDescriptor afd = context.getAssets().openFd(filename);
+             FileInputStream fis = afd.createInputStream();
+             FileChannel channel = fis.getChannel()) {
+            ByteBuffer mapped = channel.map(FileChannel.MapMode.READ_ONLY,
+                    afd.getStartOffset(), afd.getDeclaredLength());
+            return mapped.order(ByteOrder.LITTLE_ENDIAN);
+        } catch (FileNotFoundException e) {
+            // openFd 对压缩过的资源会抛出 FileNotFoundException，此时按流读取
+            try (InputStream is = context.getAssets().open(filename);
+                 ReadableByteChannel channel = Channels.newChannel(is)) {
+                ByteBuffer buffer = ByteBuffer.allocateDirect(Math.max(is.available(), BodyMeshFormat.HEADER_SIZE));
+                while (channel.read(buffer) >= 0) {
+                    if (!buffer.hasRemaining()) {
+                        ByteBuffer larger = ByteBuffer.allocateDirect(buffer.capacity() * 2);
+                        buffer.flip();
+                        larger.put(buffer);
+                        buffer = larger;
+                    }
+                }
+                buffer.flip();
+                return buffer.order(ByteOrder.LITTLE_ENDIAN);
+            }
+        }
+    }
+
+    // 从assets加载身体部位坐标（JSON回退路径，流式解析）
+    private BodyMesh loadFromJsonAssets() {
+        ContourStreamParser parser = new ContourStreamParser();
+
+        try {
+            // 首先加载完整的人体轮廓以计算边界
+            calculateBoundaries(parser, contourAssetName());
+
+            // 计算坐标跨度
+            xSpan = maxX - minX;
+            ySpan = maxY - minY;
+
+            // 计算偏移量，使左上角为(0,0)
+            xOffset = minX;
+            yOffset = minY;
+
+            Log.d(TAG, "边界坐标: minX=" + minX + ", maxX=" + maxX + ", minY=" + minY + ", maxY=" + maxY);
+            Log.d(TAG, "坐标跨度: xSpan=" + xSpan + ", ySpan=" + ySpan);
+            Log.d(TAG, "坐标偏移量: xOffset=" + xOffset + ", yOffset=" + yOffset);
+
+        } catch (Exception e) {
+            Log.e(TAG, "解析JSON时出错", e);
+        }
+
+        String[] partNames = BodyModel.BODY_PARTS.clone();
+        int[] partStarts = new int[partNames.length];
+        int[] partCounts = new int[partNames.length];
+        FloatArrayList vertices = new FloatArrayList(1024);
+
+        // 为每个身体部位加载坐标，按部位顺序连续追加
+        for (int i = 0; i < partNames.length; i++) {
+            partStarts[i] = vertices.size() / 3;
+            try {
+                loadCoordinatesFromAsset(parser, jsonAssetName(partNames[i]), vertices);
+            } catch (IOException e) {
+                Log.e(TAG, "无法加载身体部位坐标: " + partNames[i], e);
+                // 丢弃该部位已读入的部分数据
+                vertices.truncate(partStarts[i] * 3);
+            }
+            partCounts[i] = vertices.size() / 3 - partStarts[i];
+        }
+
+        Log.i(TAG, "loadCoordinatesFromAsset: normalizedXMin=" + normalizedXMin + ", normalizedXMax=" + normalizedXMax + ", normalizedYMin=" + normalizedYMin + ", normalizedYMax=" + normalizedYMax);
+
+        // 创建顶点缓冲区，每个顶点3个坐标(x,y,z)
+        int totalVertices = vertices.size() / 3;
+        ByteBuffer bb = ByteBuffer.allocateDirect(totalVertices * 3 * 4);
+        bb.order(ByteOrder.nativeOrder());
+        FloatBuffer vertexBuffer = bb.asFloatBuffer();
+        vertexBuffer.put(vertices.array(), 0, vertices.size());
+        vertexBuffer.position(0);
+
+        int[] indices = triangulateParts(vertexBuffer, partStarts, partCounts);
+
+        Log.i(TAG, "身体网格初始化完成，总顶点数: " + totalVertices + ", 三角形数: " + indices.length / 3);
+        return new BodyMesh(template, vertexBuffer, totalVertices, partNames, partStarts, partCounts, indices,
+                new float[]{minX, maxX, minY, maxY},
+                new float[]{xSpan, ySpan},
+                new float[]{xOffset, yOffset});
+    }
+
+    // 对每个部位的轮廓做耳切三角剖分，合并为一个索引数组
+    private static int[] triangulateParts(FloatBuffer vertices, int[] partStarts, int[] partCounts) {
+        long start = System.nanoTime();
+        int[] indices = PolygonTriangulator.triangulateParts(vertices, partStarts, partCounts);
+        Log.d(TAG, "三角剖分耗时: " + (System.nanoTime() - start) / 1000 + "us");
+        return indices;
+    }
+
+    // 从资源文件加载坐标，边读边归一化，结果按 x,y,z 追加到 coordinates
+    private void loadCoordinatesFromAsset(ContourStreamParser parser, String filename,
+                                          final FloatArrayList coordinates) throws IOException {
+        // 以模型高度一半作为标准化尺度，底部对齐到屏幕-1位置
+        final float max = Math.max(xSpan, ySpan) / 2;
+
+        try (InputStream is = context.getAssets().open(filename)) {
+            parser.parse(is, new ContourStreamParser.PointSink() {
+                @Override
+                public void onPoint(float rawX, float rawY) {
+                    float x = rawX - xOffset;
+                    float y = rawY - yOffset;
+
+                    float normalizedX = (x / max) - 1.0f;
+                    float normalizedY = 1.0f - (y / max); //TODO Y轴方向通常需要翻转
+
+                    // get normalizedXMax, normalizedYMax, normalizedXMin, normalizedYMin
+                    if (normalizedX > normalizedXMax) {
+                        normalizedXMax = normalizedX;
+                    }
+                    if (normalizedY > normalizedYMax) {
+                        normalizedYMax = normalizedY;
+                    }
+                    if (normalizedX < normalizedXMin) {
+                        normalizedXMin = normalizedX;
+                    }
+                    if (normalizedY < normalizedYMin) {
+                        normalizedYMin = normalizedY;
+                    }
+                    coordinates.add(normalizedX, normalizedY, 0.0f);
+                }
+            });
+        } catch (IOException e) {
+            Log.e(TAG, "解析JSON文件失败: " + filename, e);
+            throw e;
+        }
+    }
+
+    // 计算边界坐标，流式读取完整人体轮廓
+    private void calculateBoundaries(ContourStreamParser parser, String filename) throws IOException {
+        try (InputStream is = context.getAssets().open(filename)) {
+            parser.parse(is, new ContourStreamParser.PointSink() {
+                @Override
+                public void onPoint(float x, float y) {
+                    if (x < minX) {
+                        minX = x;
+                    }
+                    if (x > maxX) {
+                        maxX = x;
+                    }
+                    if (y < minY) {
+                        minY = y;
+                    }
+                    if (y > maxY) {
+                        maxY = y;
+                    }
+                }
+            });
+        }
+    }
+}
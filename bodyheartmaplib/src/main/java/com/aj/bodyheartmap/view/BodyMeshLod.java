@@ -0,0 +1,307 @@
+package com.aj.bodyheartmap.view;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * 人体网格的多级细节（LOD）
+ * 每一级用 Douglas-Peucker 按该级容差简化各部位轮廓，再重新三角剖分，只生成新的三角形索引；
+ * 顶点、区域ID和纹理坐标与原网格共用，各着色模式不受影响，切换级别只需换一个索引缓冲。
+ * 多个部位共用的轮廓点（部位交界）固定保留，两侧按相同的点序列简化，交界处不产生缝隙；
+ * 简化后自相交的部位退回上一级的轮廓。第0级为原始网格。
+ * 构建后只读，可在任意线程使用
+ */
+public final class BodyMeshLod {
+
+    // 各级的简化容差（模型坐标，人体高度约为2）
+    private static final float[] TOLERANCES = {0.0f, 0.002f, 0.004f, 0.008f, 0.016f, 0.032f};
+    // 选择级别时允许的最大屏幕误差（像素）
+    public static final float MAX_PIXEL_ERROR = 0.75f;
+
+    private final float[] tolerances;
+    // 各级的三角形索引，内容与上一级相同时共用同一个数组
+    private final int[][] levelIndices;
+
+    public BodyMeshLod(BodyMesh mesh) {
+        int vertexCount = mesh.getTotalVertices();
+        float[] xs = new float[vertexCount];
+        float[] ys = new float[vertexCount];
+        FloatBuffer vertices = mesh.newVertexView();
+        for (int i = 0; i < vertexCount; i++) {
+            xs[i] = vertices.get(i * BodyMeshFormat.FLOATS_PER_VERTEX);
+            ys[i] = vertices.get(i * BodyMeshFormat.FLOATS_PER_VERTEX + 1);
+        }
+
+        int partCount = mesh.getPartCount();
+        tolerances = TOLERANCES.clone();
+        levelIndices = new int[TOLERANCES.length][];
+        int[] base = new int[mesh.getIndexCount()];
+        for (int i = 0; i < base.length; i++) {
+            base[i] = mesh.getIndex(i);
+        }
+        levelIndices[0] = base;
+        if (BodyMeshTessellator.isTessellated(mesh.getKey())) {
+            // 细分网格的部位包含内部顶点，不能按轮廓简化，各级都使用原始网格
+            for (int level = 1; level < TOLERANCES.length; level++) {
+                levelIndices[level] = base;
+            }
+            return;
+        }
+        boolean[] shared = findSharedVertices(mesh, xs, ys);
+
+        // 每个部位上一级保留的顶点（全局索引），初始为全部顶点
+        int[][] kept = new int[partCount][];
+        for (int part = 0; part < partCount; part++) {
+            int start = mesh.getPartStart(part);
+            kept[part] = new int[mesh.getPartVertexCount(part)];
+            for (int i = 0; i < kept[part].length; i++) {
+                kept[part][i] = start + i;
+            }
+        }
+        float[] px = new float[0];
+        float[] py = new float[0];
+        for (int level = 1; level < TOLERANCES.length; level++) {
+            boolean changed = false;
+            for (int part = 0; part < partCount; part++) {
+                int[] simplified = simplify(kept[part], xs, ys, shared, TOLERANCES[level]);
+                if (simplified.length != kept[part].length && !selfIntersects(simplified, xs, ys)) {
+                    kept[part] = simplified;
+                    changed = true;
+                }
+            }
+            if (!changed) {
+                levelIndices[level] = levelIndices[level - 1];
+                continue;
+            }
+            IntArrayList indices = new IntArrayList(levelIndices[level - 1].length);
+            for (int part = 0; part < partCount; part++) {
+                int[] ids = kept[part];
+                if (px.length < ids.length) {
+                    px = new float[ids.length];
+                    py = new float[ids.length];
+                }
+                for (int i = 0; i < ids.length; i++) {
+                    px[i] = xs[ids[i]];
+                    py[i] = ys[ids[i]];
+                }
+                PolygonTriangulator.triangulate(px, py, ids, ids.length, indices);
+            }
+            levelIndices[level] = indices.toArray();
+        }
+    }
+
+    // 与其他部位位置相同的顶点
+    private static boolean[] findSharedVertices(BodyMesh mesh, float[] xs, float[] ys) {
+        // 位置 -> 所在部位，出现在多个部位时为-1
+        Map<Long, Integer> owners = new HashMap<>();
+        for (int part = 0; part < mesh.getPartCount(); part++) {
+            for (int v = mesh.getPartStart(part), end = v + mesh.getPartVertexCount(part); v < end; v++) {
+                Integer owner = owners.put(positionKey(xs[v], ys[v]), part);
+                if (owner != null && owner != part) {
+                    owners.put(positionKey(xs[v], ys[v]), -1);
+                }
+            }
+        }
+        boolean[] shared = new boolean[xs.length];
+        for (int v = 0; v < xs.length; v++) {
+            Integer owner = owners.get(positionKey(xs[v], ys[v]));
+            shared[v] = owner != null && owner == -1;
+        }
+        return shared;
+    }
+
+    private static long positionKey(float x, float y) {
+        return (long) Float.floatToIntBits(x) << 32 | (Float.floatToIntBits(y) & 0xFFFFFFFFL);
+    }
+
+    /**
+     * 按容差简化闭合轮廓：以共用顶点为锚点分段，每段用 Douglas-Peucker 简化；
+     * 没有足够锚点时取第一个点和离它最远的点。结果少于3个点时返回原轮廓
+     */
+    private static int[] simplify(int[] ids, float[] xs, float[] ys, boolean[] shared, float tolerance) {
+        int n = ids.length;
+        if (n <= 3) {
+            return ids;
+        }
+        boolean[] keep = new boolean[n];
+        int anchors = 0;
+        for (int i = 0; i < n; i++) {
+            if (shared[ids[i]]) {
+                keep[i] = true;
+                anchors++;
+            }
+        }
+        if (anchors < 2) {
+            keep[0] = true;
+            int farthest = 1;
+            float best = -1;
+            for (int i = 1; i < n; i++) {
+                float dx = xs[ids[i]] - xs[ids[0]];
+                float dy = ys[ids[i]] - ys[ids[0]];
+                if (dx * dx + dy * dy > best) {
+                    best = dx * dx + dy * dy;
+                    farthest = i;
+                }
+            }
+            keep[farthest] = true;
+        }
+
+        // 依次简化相邻锚点之间的每一段（环形）
+        int first = 0;
+        while (!keep[first]) {
+            first++;
+        }
+        int a = first;
+        IntArrayList stack = new IntArrayList(32);
+        do {
+            int b = (a + 1) % n;
+            while (!keep[b]) {
+                b = (b + 1) % n;
+            }
+            douglasPeucker(ids, xs, ys, a, b, tolerance, keep, stack);
+            a = b;
+        } while (a != first);
+
+        int count = 0;
+        for (boolean k : keep) {
+            if (k) {
+                count++;
+            }
+        }
+        if (count < 3) {
+            return ids;
+        }
+        int[] result = new int[count];
+        for (int i = 0, j = 0; i < n; i++) {
+            if (keep[i]) {
+                result[j++] = ids[i];
+            }
+        }
+        return result;
+    }
+
+    // 环形段 [from, to] 的 Douglas-Peucker，用显式栈代替递归
+    private static void douglasPeucker(int[] ids, float[] xs, float[] ys, int from, int to,
+                                       float tolerance, boolean[] keep, IntArrayList stack) {
+        int n = ids.length;
+        stack.clear();
+        stack.add(from);
+        stack.add(to);
+        float tolerance2 = tolerance * tolerance;
+        while (stack.size() > 0) {
+            int b = stack.get(stack.size() - 1);
+            int a = stack.get(stack.size() - 2);
+            stack.truncate(stack.size() - 2);
+            float ax = xs[ids[a]];
+            float ay = ys[ids[a]];
+            float dx = xs[ids[b]] - ax;
+            float dy = ys[ids[b]] - ay;
+            float length2 = dx * dx + dy * dy;
+            int farthest = -1;
+            float best = tolerance2;
+            for (int i = (a + 1) % n; i != b; i = (i + 1) % n) {
+                float d2 = segmentDistance2(xs[ids[i]] - ax, ys[ids[i]] - ay, dx, dy, length2);
+                if (d2 > best) {
+                    best = d2;
+                    farthest = i;
+                }
+            }
+            if (farthest >= 0) {
+                keep[farthest] = true;
+                stack.add(a);
+                stack.add(farthest);
+                stack.add(farthest);
+                stack.add(b);
+            }
+        }
+    }
+
+    // 点 (px, py)（相对线段起点）到线段的距离平方
+    private static float segmentDistance2(float px, float py, float dx, float dy, float length2) {
+        float t = length2 > 0 ? Math.max(0.0f, Math.min(1.0f, (px * dx + py * dy) / length2)) : 0.0f;
+        float ex = px - t * dx;
+        float ey = py - t * dy;
+        return ex * ex + ey * ey;
+    }
+
+    // 简化后的轮廓是否有不相邻的边相交
+    private static boolean selfIntersects(int[] ids, float[] xs, float[] ys) {
+        int n = ids.length;
+        for (int i = 0; i < n; i++) {
+            int i1 = (i + 1) % n;
+            for (int j = i + 2; j < n; j++) {
+                int j1 = (j + 1) % n;
+                if (j1 == i) {
+                    continue;
+                }
+                if (segmentsCross(xs[ids[i]], ys[ids[i]], xs[ids[i1]], ys[ids[i1]],
+                        xs[ids[j]], ys[ids[j]], xs[ids[j1]], ys[ids[j1]])) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    private static boolean segmentsCross(float ax, float ay, float bx, float by,
+                                         float cx, float cy, float dx, float dy) {
+        float d1 = orient(cx, cy, dx, dy, ax, ay);
+        float d2 = orient(cx, cy, dx, dy, bx, by);
+        float d3 = orient(ax, ay, bx, by, cx, cy);
+        float d4 = orient(ax, ay, bx, by, dx, dy);
+        return ((d1 > 0 && d2 < 0) || (d1 < 0 && d2 > 0)) && ((d3 > 0 && d4 < 0) || (d3 < 0 && d4 > 0));
+    }
+
+    private static float orient(float ax, float ay, float bx, float by, float px, float py) {
+        return (bx - ax) * (py - ay) - (by - ay) * (px - ax);
+    }
+
+    public int getLevelCount() {
+        return levelIndices.length;
+    }
+
+    public float getTolerance(int level) {
+        return tolerances[level];
+    }
+
+    public int getIndexCount(int level) {
+        return levelIndices[level].length;
+    }
+
+    // 两个级别是否使用相同的索引
+    public boolean sameAsPrevious(int level) {
+        return level > 0 && levelIndices[level] == levelIndices[level - 1];
+    }
+
+    /**
+     * 按屏幕上每个模型单位对应的像素数选择级别：容差换算到屏幕上不超过 MAX_PIXEL_ERROR 的最粗级别
+     */
+    public int selectLevel(float pixelsPerUnit) {
+        int level = 0;
+        for (int i = 1; i < tolerances.length; i++) {
+            if (tolerances[i] * pixelsPerUnit <= MAX_PIXEL_ERROR) {
+                level = i;
+            }
+        }
+        return level;
+    }
+
+    // 上传用的索引数据，格式与 BodyMesh.newIndexView() 相同
+    public ByteBuffer newIndexView(int level, boolean shortIndices) {
+        int[] indices = levelIndices[level];
+        ByteBuffer buffer = ByteBuffer.allocateDirect(indices.length * (shortIndices ? 2 : 4));
+        buffer.order(ByteOrder.nativeOrder());
+        for (int index : indices) {
+            if (shortIndices) {
+                buffer.putShort((short) index);
+            } else {
+                buffer.putInt(index);
+            }
+        }
+        buffer.position(0);
+        return buffer;
+    }
+}
@@ -0,0 +1,390 @@
+package com.aj.bodyheartmap.view;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.util.Arrays;
+
+/**
+ * 人体网格的内部细分
+ * 原始网格每个部位只有轮廓点，部位内部没有顶点，逐顶点的值无法在部位内变化。
+ * 细分时先按间距加密轮廓，再在部位内部铺三角形格点，用 Delaunay 三角剖分（Bowyer-Watson）连接，
+ * 去掉轮廓外的三角形。轮廓边按端点的固定顺序加密，相邻部位的公共边得到位置完全相同的顶点。
+ * 内部格点与轮廓保持一定距离，加密后的轮廓边都会出现在剖分结果中；
+ * 个别部位的剖分面积与轮廓面积不一致时退回只剖分加密后的轮廓。
+ *
+ * 细分网格通过模板名称区分（见 templateKey），经由 BodyMeshCache 加载和共享，每个模板只细分一次。
+ * 顶点数约为 人体面积 / 间距²，间距减半时顶点数、内存和逐顶点更新的开销约为4倍。
+ * 不依赖 Android
+ */
+public final class BodyMeshTessellator {
+
+    private static final String SEPARATOR = "#tess:";
+    // 内部格点到轮廓的最小距离（以间距为单位）
+    private static final float BOUNDARY_CLEARANCE = 0.6f;
+    // 剖分面积与轮廓面积的相对误差上限
+    private static final double AREA_TOLERANCE = 1e-3;
+
+    private BodyMeshTessellator() {
+    }
+
+    /**
+     * 细分网格的模板名称：spacing 为格点间距，blendWidth 为部位之间的过渡宽度（均为模型坐标，人体高度约为2），
+     * blendWidth 为0时各部位内部为单一温度；大于0时至少取 spacing，更窄的过渡在格点上看不出来
+     */
+    public static String templateKey(String baseTemplate, float spacing, float blendWidth) {
+        if (blendWidth > 0) {
+            blendWidth = Math.max(blendWidth, spacing);
+        }
+        return baseTemplate + SEPARATOR + spacing + ":" + blendWidth;
+    }
+
+    public static boolean isTessellated(String template) {
+        return template != null && template.contains(SEPARATOR);
+    }
+
+    public static String baseTemplate(String template) {
+        int index = template.indexOf(SEPARATOR);
+        return index < 0 ? template : template.substring(0, index);
+    }
+
+    public static float spacing(String template) {
+        return parameter(template, 0);
+    }
+
+    public static float blendWidth(String template) {
+        return parameter(template, 1);
+    }
+
+    private static float parameter(String template, int position) {
+        int index = template.indexOf(SEPARATOR);
+        if (index < 0) {
+            return 0.0f;
+        }
+        String[] values = template.substring(index + SEPARATOR.length()).split(":");
+        try {
+            return position < values.length ? Float.parseFloat(values[position]) : 0.0f;
+        } catch (NumberFormatException e) {
+            return 0.0f;
+        }
+    }
+
+    /**
+     * 细分 base 的每个部位，返回以 key 命名的新网格；坐标归一化参数与 base 相同
+     */
+    public static BodyMesh tessellate(BodyMesh base, String key, float spacing) {
+        int partCount = base.getPartCount();
+        String[] partNames = new String[partCount];
+        int[] partStarts = new int[partCount];
+        int[] partCounts = new int[partCount];
+        FloatArrayList positions = new FloatArrayList(base.getTotalVertices() * 3 * 8);
+        IntArrayList indices = new IntArrayList(base.getIndexCount() * 8);
+        FloatBuffer source = base.newVertexView();
+        for (int part = 0; part < partCount; part++) {
+            partNames[part] = base.getPartName(part);
+            partStarts[part] = positions.size() / 3;
+            FloatArrayList outline = densify(source, base.getPartStart(part), base.getPartVertexCount(part), spacing);
+            tessellatePart(outline, spacing, positions, indices);
+            partCounts[part] = positions.size() / 3 - partStarts[part];
+        }
+
+        int vertexCount = positions.size() / 3;
+        FloatBuffer vertices = ByteBuffer.allocateDirect(vertexCount * 3 * 4)
+                .order(ByteOrder.nativeOrder()).asFloatBuffer();
+        vertices.put(positions.array(), 0, vertexCount * 3);
+        vertices.position(0);
+        return new BodyMesh(key, vertices, vertexCount, partNames, partStarts, partCounts, indices.toArray(),
+                base.getBoundaries(), base.getSpan(), base.getOffset());
+    }
+
+    /**
+     * 加密部位轮廓，返回 x,y 交替的点序列。每条边按端点的字典序从小到大插值，
+     * 相邻部位反向经过同一条边时得到完全相同的点
+     */
+    private static FloatArrayList densify(FloatBuffer vertices, int start, int count, float spacing) {
+        FloatArrayList out = new FloatArrayList(count * 4);
+        for (int i = 0; i < count; i++) {
+            float ax = vertices.get((start + i) * 3);
+            float ay = vertices.get((start + i) * 3 + 1);
+            int j = start + (i + 1) % count;
+            float bx = vertices.get(j * 3);
+            float by = vertices.get(j * 3 + 1);
+            if (ax == bx && ay == by) {
+                continue;
+            }
+            int steps = Math.max(1, (int) Math.ceil(Math.hypot(bx - ax, by - ay) / spacing));
+            boolean reversed = ax > bx || (ax == bx && ay > by);
+            float x0 = reversed ? bx : ax;
+            float y0 = reversed ? by : ay;
+            float x1 = reversed ? ax : bx;
+            float y1 = reversed ? ay : by;
+            // 输出本边的起点和中间点，终点作为下一条边的起点
+            for (int s = 0; s < steps; s++) {
+                int k = reversed ? steps - s : s;
+                out.add(k == steps ? x1 : x0 + (x1 - x0) * k / steps);
+                out.add(k == steps ? y1 : y0 + (y1 - y0) * k / steps);
+            }
+        }
+        return out;
+    }
+
+    private static void tessellatePart(FloatArrayList outline, float spacing,
+                                       FloatArrayList positions, IntArrayList indices) {
+        int boundary = outline.size() / 2;
+        if (boundary < 3) {
+            for (int i = 0; i < boundary; i++) {
+                positions.add(outline.get(i * 2), outline.get(i * 2 + 1), 0.0f);
+            }
+            return;
+        }
+        float[] ox = new float[boundary];
+        float[] oy = new float[boundary];
+        float minX = Float.MAX_VALUE;
+        float minY = Float.MAX_VALUE;
+        float maxX = -Float.MAX_VALUE;
+        float maxY = -Float.MAX_VALUE;
+        for (int i = 0; i < boundary; i++) {
+            ox[i] = outline.get(i * 2);
+            oy[i] = outline.get(i * 2 + 1);
+            minX = Math.min(minX, ox[i]);
+            minY = Math.min(minY, oy[i]);
+            maxX = Math.max(maxX, ox[i]);
+            maxY = Math.max(maxY, oy[i]);
+        }
+
+        // 内部的三角形格点，奇数行错开半个间距
+        FloatArrayList interior = new FloatArrayList();
+        float rowHeight = spacing * (float) Math.sqrt(3) / 2;
+        float clearance2 = BOUNDARY_CLEARANCE * spacing * BOUNDARY_CLEARANCE * spacing;
+        int row = 0;
+        for (float y = minY + rowHeight * 0.5f; y < maxY; y += rowHeight, row++) {
+            for (float x = minX + ((row & 1) == 0 ? spacing * 0.5f : spacing); x < maxX; x += spacing) {
+                if (contains(ox, oy, boundary, x, y) && distanceToOutline2(ox, oy, boundary, x, y) >= clearance2) {
+                    interior.add(x);
+                    interior.add(y);
+                }
+            }
+        }
+
+        int total = boundary + interior.size() / 2;
+        float[] xs = new float[total];
+        float[] ys = new float[total];
+        System.arraycopy(ox, 0, xs, 0, boundary);
+        System.arraycopy(oy, 0, ys, 0, boundary);
+        for (int i = boundary; i < total; i++) {
+            xs[i] = interior.get((i - boundary) * 2);
+            ys[i] = interior.get((i - boundary) * 2 + 1);
+        }
+
+        // 只保留重心在轮廓内的三角形，并检查总面积
+        int base = positions.size() / 3;
+        IntArrayList triangles = delaunay(xs, ys, total);
+        IntArrayList kept = new IntArrayList(triangles.size());
+        double area = 0;
+        for (int t = 0; t < triangles.size(); t += 3) {
+            int a = triangles.get(t);
+            int b = triangles.get(t + 1);
+            int c = triangles.get(t + 2);
+            float cx = (xs[a] + xs[b] + xs[c]) / 3;
+            float cy = (ys[a] + ys[b] + ys[c]) / 3;
+            if (contains(ox, oy, boundary, cx, cy)) {
+                kept.add(base + a, base + b, base + c);
+                area += Math.abs(((double) xs[b] - xs[a]) * ((double) ys[c] - ys[a])
+                        - ((double) ys[b] - ys[a]) * ((double) xs[c] - xs[a])) * 0.5;
+            }
+        }
+        double outlineArea = 0;
+        for (int i = 0, j = boundary - 1; i < boundary; j = i++) {
+            outlineArea += (double) ox[j] * oy[i] - (double) ox[i] * oy[j];
+        }
+        outlineArea = Math.abs(outlineArea) * 0.5;
+
+        if (Math.abs(area - outlineArea) > AREA_TOLERANCE * outlineArea) {
+            // 剖分缺失或越过了轮廓边，退回只剖分加密后的轮廓
+            int[] ids = new int[boundary];
+            for (int i = 0; i < boundary; i++) {
+                positions.add(ox[i], oy[i], 0.0f);
+                ids[i] = base + i;
+            }
+            PolygonTriangulator.triangulate(ox, oy, ids, boundary, indices);
+            return;
+        }
+        for (int i = 0; i < total; i++) {
+            positions.add(xs[i], ys[i], 0.0f);
+        }
+        for (int i = 0; i < kept.size(); i++) {
+            indices.add(kept.get(i));
+        }
+    }
+
+    /**
+     * Bowyer-Watson 增量 Delaunay 三角剖分，返回三角形顶点下标（每3个一组）
+     */
+    private static IntArrayList delaunay(float[] xs, float[] ys, int n) {
+        double[] x = new double[n + 3];
+        double[] y = new double[n + 3];
+        double minX = Double.MAX_VALUE;
+        double minY = Double.MAX_VALUE;
+        double maxX = -Double.MAX_VALUE;
+        double maxY = -Double.MAX_VALUE;
+        for (int i = 0; i < n; i++) {
+            x[i] = xs[i];
+            y[i] = ys[i];
+            minX = Math.min(minX, x[i]);
+            minY = Math.min(minY, y[i]);
+            maxX = Math.max(maxX, x[i]);
+            maxY = Math.max(maxY, y[i]);
+        }
+        // 包含全部点的超级三角形
+        double size = Math.max(maxX - minX, maxY - minY) + 1e-6;
+        double midX = (minX + maxX) / 2;
+        double midY = (minY + maxY) / 2;
+        x[n] = midX - 20 * size;
+        y[n] = midY - size;
+        x[n + 1] = midX;
+        y[n + 1] = midY + 20 * size;
+        x[n + 2] = midX + 20 * size;
+        y[n + 2] = midY - size;
+
+        Triangles triangles = new Triangles(n * 2 + 8);
+        triangles.add(n, n + 1, n + 2, x, y);
+        IntArrayList edges = new IntArrayList(32);
+        for (int p = 0; p < n; p++) {
+            double px = x[p];
+            double py = y[p];
+            edges.clear();
+            // 外接圆包含新点的三角形构成空腔，收集空腔的边
+            for (int t = 0; t < triangles.count; ) {
+                double dx = px - triangles.cx[t];
+                double dy = py - triangles.cy[t];
+                if (dx * dx + dy * dy < triangles.r2[t]) {
+                    int[] v = triangles.vertices;
+                    addEdge(edges, v[t * 3], v[t * 3 + 1]);
+                    addEdge(edges, v[t * 3 + 1], v[t * 3 + 2]);
+                    addEdge(edges, v[t * 3 + 2], v[t * 3]);
+                    triangles.remove(t);
+                } else {
+                    t++;
+                }
+            }
+            for (int e = 0; e < edges.size(); e += 2) {
+                triangles.add(edges.get(e), edges.get(e + 1), p, x, y);
+            }
+        }
+
+        IntArrayList result = new IntArrayList(triangles.count * 3);
+        for (int t = 0; t < triangles.count; t++) {
+            int a = triangles.vertices[t * 3];
+            int b = triangles.vertices[t * 3 + 1];
+            int c = triangles.vertices[t * 3 + 2];
+            if (a < n && b < n && c < n) {
+                result.add(a, b, c);
+            }
+        }
+        return result;
+    }
+
+    // 空腔内部的边被两个三角形共用，出现两次时抵消，只留下空腔边界
+    private static void addEdge(IntArrayList edges, int a, int b) {
+        for (int e = 0; e < edges.size(); e += 2) {
+            if ((edges.get(e) == b && edges.get(e + 1) == a) || (edges.get(e) == a && edges.get(e + 1) == b)) {
+                int last = edges.size() - 2;
+                edges.array()[e] = edges.get(last);
+                edges.array()[e + 1] = edges.get(last + 1);
+                edges.truncate(last);
+                return;
+            }
+        }
+        edges.add(a);
+        edges.add(b);
+    }
+
+    // 三角形及其外接圆，删除时用最后一个三角形填补
+    private static final class Triangles {
+        int[] vertices;
+        double[] cx;
+        double[] cy;
+        double[] r2;
+        int count;
+
+        Triangles(int capacity) {
+            vertices = new int[capacity * 3];
+            cx = new double[capacity];
+            cy = new double[capacity];
+            r2 = new double[capacity];
+        }
+
+        void add(int a, int b, int c, double[] x, double[] y) {
+            if (count == cx.length) {
+                int capacity = count * 2;
+                vertices = Arrays.copyOf(vertices, capacity * 3);
+                cx = Arrays.copyOf(cx, capacity);
+                cy = Arrays.copyOf(cy, capacity);
+                r2 = Arrays.copyOf(r2, capacity);
+            }
+            double ax = x[a];
+            double ay = y[a];
+            double bx = x[b] - ax;
+            double by = y[b] - ay;
+            double qx = x[c] - ax;
+            double qy = y[c] - ay;
+            double d = 2 * (bx * qy - by * qx);
+            double ux;
+            double uy;
+            if (Math.abs(d) < 1e-300) {
+                // 退化三角形：外接圆取无穷大，下一个点必定将其移除
+                ux = 0;
+                uy = 0;
+                r2[count] = Double.MAX_VALUE;
+            } else {
+                ux = (qy * (bx * bx + by * by) - by * (qx * qx + qy * qy)) / d;
+                uy = (bx * (qx * qx + qy * qy) - qx * (bx * bx + by * by)) / d;
+                r2[count] = ux * ux + uy * uy;
+            }
+            cx[count] = ax + ux;
+            cy[count] = ay + uy;
+            vertices[count * 3] = a;
+            vertices[count * 3 + 1] = b;
+            vertices[count * 3 + 2] = c;
+            count++;
+        }
+
+        void remove(int t) {
+            int last = count - 1;
+            vertices[t * 3] = vertices[last * 3];
+            vertices[t * 3 + 1] = vertices[last * 3 + 1];
+            vertices[t * 3 + 2] = vertices[last * 3 + 2];
+            cx[t] = cx[last];
+            cy[t] = cy[last];
+            r2[t] = r2[last];
+            count = last;
+        }
+    }
+
+    // 射线法判断点是否在多边形内
+    private static boolean contains(float[] xs, float[] ys, int n, float px, float py) {
+        boolean inside = false;
+        for (int i = 0, j = n - 1; i < n; j = i++) {
+            if ((ys[i] > py) != (ys[j] > py)
+                    && px < (xs[j] - xs[i]) * (py - ys[i]) / (ys[j] - ys[i]) + xs[i]) {
+                inside = !inside;
+            }
+        }
+        return inside;
+    }
+
+    private static float distanceToOutline2(float[] xs, float[] ys, int n, float px, float py) {
+        float best = Float.MAX_VALUE;
+        for (int i = 0, j = n - 1; i < n; j = i++) {
+            float dx = xs[i] - xs[j];
+            float dy = ys[i] - ys[j];
+            float length2 = dx * dx + dy * dy;
+            float t = length2 > 0 ? ((px - xs[j]) * dx + (py - ys[j]) * dy) / length2 : 0.0f;
+            t = Math.max(0.0f, Math.min(1.0f, t));
+            float ex = px - xs[j] - t * dx;
+            float ey = py - ys[j] - t * dy;
+            best = Math.min(best, ex * ex + ey * ey);
+        }
+        return best;
+    }
+}
@@ -0,0 +1,200 @@
+package com.aj.bodyheartmap.view;
+
+import android.opengl.GLES20;
+import android.opengl.GLES30;
+import android.util.Log;
+
+import java.nio.FloatBuffer;
+
+/**
+ * 人体网格的GPU顶点缓冲对象
+ * 顶点坐标一次性上传到静态VBO（GL_STATIC_DRAW），温度/透明度纹理坐标放在动态VBO（GL_DYNAMIC_DRAW）中，
+ * 只对 BodyModel 标记的脏区间调用 glBufferSubData 更新；三角形索引放在静态索引缓冲中，整个人体一次 glDrawElements 绘制。
+ * 区域着色模式下只使用静态的区域ID缓冲，温度通过 uniform 数组按区域查表，不再上传纹理坐标。
+ * 多级细节的各级只有索引不同，每级一个索引缓冲，第0级即原始索引。
+ * 缓冲区绑定和顶点属性指针经由 GlState，状态未变时不重复设置。
+ * 所有方法必须在GL线程中调用；EGL上下文重建后需先调用 reset() 再重新上传
+ */
+public class BodyMeshVbo {
+    private static final String TAG = "BodyMeshVbo";
+
+    private static final int POSITION_SIZE = 3;
+    private static final int TEX_COORD_SIZE = 2;
+    private static final int REGION_ID_SIZE = 1;
+    private static final int BYTES_PER_FLOAT = 4;
+
+    // position, texCoord, index, regionId
+    private final int[] buffers = new int[4];
+    private boolean uploaded = false;
+    private int indexCount;
+    private int indexType;
+    // 各级细节的索引缓冲和索引数，第0级为 buffers[2]；与上一级相同的级别共用缓冲
+    private int[] levelBuffers = new int[0];
+    private int[] levelCounts = new int[0];
+    private final GlState glState;
+
+    public BodyMeshVbo(GlState glState) {
+        this.glState = glState;
+    }
+
+    public boolean isUploaded() {
+        return uploaded;
+    }
+
+    // 创建VBO并上传全部顶点和纹理坐标
+    public void upload(BodyModel model) {
+        if (uploaded) {
+            release();
+        }
+        model.applyRegionBlend();
+        int vertexCount = model.getTotalVertices();
+        GLES20.glGenBuffers(4, buffers, 0);
+
+        FloatBuffer vertices = model.getVertexBuffer();
+        vertices.position(0);
+        glState.bindArrayBuffer(buffers[0]);
+        GLES20.glBufferData(GLES20.GL_ARRAY_BUFFER, vertexCount * POSITION_SIZE * BYTES_PER_FLOAT,
+                vertices, GLES20.GL_STATIC_DRAW);
+
+        FloatBuffer texCoords = model.getTexCoordBuffer();
+        texCoords.position(0);
+        glState.bindArrayBuffer(buffers[1]);
+        GLES20.glBufferData(GLES20.GL_ARRAY_BUFFER, vertexCount * TEX_COORD_SIZE * BYTES_PER_FLOAT,
+                texCoords, GLES20.GL_DYNAMIC_DRAW);
+        model.clearDirtyRange();
+
+        BodyMesh mesh = model.getMesh();
+        glState.bindArrayBuffer(buffers[3]);
+        GLES20.glBufferData(GLES20.GL_ARRAY_BUFFER, vertexCount * REGION_ID_SIZE * BYTES_PER_FLOAT,
+                mesh.newRegionIdView(), GLES20.GL_STATIC_DRAW);
+
+        indexCount = mesh.getIndexCount();
+        indexType = mesh.hasShortIndices() ? GLES20.GL_UNSIGNED_SHORT : GLES20.GL_UNSIGNED_INT;
+        glState.bindElementBuffer(buffers[2]);
+        GLES20.glBufferData(GLES20.GL_ELEMENT_ARRAY_BUFFER, indexCount * (mesh.hasShortIndices() ? 2 : 4),
+                mesh.newIndexView(), GLES20.GL_STATIC_DRAW);
+        glState.countCall();
+        uploadLevels(model.getLod(), mesh.hasShortIndices());
+        uploaded = true;
+        Log.d(TAG, "VBO已创建: position=" + buffers[0] + ", texCoord=" + buffers[1]
+                + ", index=" + buffers[2] + ", 顶点数=" + vertexCount + ", 索引数=" + indexCount);
+    }
+
+    private void uploadLevels(BodyMeshLod lod, boolean shortIndices) {
+        int levels = lod != null ? lod.getLevelCount() : 1;
+        levelBuffers = new int[levels];
+        levelCounts = new int[levels];
+        levelBuffers[0] = buffers[2];
+        levelCounts[0] = indexCount;
+        for (int level = 1; level < levels; level++) {
+            if (lod.sameAsPrevious(level)) {
+                levelBuffers[level] = levelBuffers[level - 1];
+                levelCounts[level] = levelCounts[level - 1];
+                continue;
+            }
+            int[] id = new int[1];
+            GLES20.glGenBuffers(1, id, 0);
+            levelBuffers[level] = id[0];
+            levelCounts[level] = lod.getIndexCount(level);
+            glState.bindElementBuffer(id[0]);
+            GLES20.glBufferData(GLES20.GL_ELEMENT_ARRAY_BUFFER, levelCounts[level] * (shortIndices ? 2 : 4),
+                    lod.newIndexView(level, shortIndices), GLES20.GL_STATIC_DRAW);
+            glState.countCall();
+            Log.d(TAG, "细节级别 " + level + " 索引数: " + levelCounts[level] + " / " + indexCount);
+        }
+    }
+
+    public int getLevelCount() {
+        return levelBuffers.length;
+    }
+
+    // 只上传纹理坐标的脏区间
+    public void updateTexCoords(BodyModel model) {
+        model.applyRegionBlend();
+        if (!uploaded || !model.hasDirtyRange()) {
+            return;
+        }
+        int start = model.getDirtyStart();
+        int count = model.getDirtyEnd() - start;
+        FloatBuffer texCoords = model.getTexCoordBuffer();
+        texCoords.position(start * TEX_COORD_SIZE);
+        glState.bindArrayBuffer(buffers[1]);
+        GLES20.glBufferSubData(GLES20.GL_ARRAY_BUFFER, start * TEX_COORD_SIZE * BYTES_PER_FLOAT,
+                count * TEX_COORD_SIZE * BYTES_PER_FLOAT, texCoords);
+        glState.countCall();
+        texCoords.position(0);
+        model.clearDirtyRange();
+    }
+
+    // 设置顶点属性指针；属性数组的启用由调用方通过 GlState.useAttribs() 统一管理
+    public void bindPosition(int handle) {
+        glState.bindArrayBuffer(buffers[0]);
+        glState.vertexAttribPointer(handle, POSITION_SIZE, 0, 0);
+    }
+
+    public void bindTexCoord(int handle) {
+        glState.bindArrayBuffer(buffers[1]);
+        glState.vertexAttribPointer(handle, TEX_COORD_SIZE, 0, 0);
+    }
+
+    public void bindRegionId(int handle) {
+        glState.bindArrayBuffer(buffers[3]);
+        glState.vertexAttribPointer(handle, REGION_ID_SIZE, 0, 0);
+    }
+
+    // 是否可以用一次 glDrawElements 绘制；unsigned int 索引需要 GL_OES_element_index_uint 支持
+    public boolean canDrawElements(boolean uintIndicesSupported) {
+        return uploaded && indexCount > 0
+                && (indexType == GLES20.GL_UNSIGNED_SHORT || uintIndicesSupported);
+    }
+
+    // 一次绘制全部身体部位的三角形
+    public void drawElements() {
+        drawElements(0);
+    }
+
+    // 按指定细节级别绘制，超出范围时取最接近的级别
+    public void drawElements(int level) {
+        level = Math.max(0, Math.min(levelBuffers.length - 1, level));
+        glState.bindElementBuffer(levelBuffers[level]);
+        GLES20.glDrawElements(GLES20.GL_TRIANGLES, levelCounts[level], indexType, 0);
+        glState.countDraw();
+    }
+
+    // 一次绘制 instances 个实例（需要 OpenGL ES 3.0），实例属性由调用方设置
+    public void drawElementsInstanced(int level, int instances) {
+        level = Math.max(0, Math.min(levelBuffers.length - 1, level));
+        glState.bindElementBuffer(levelBuffers[level]);
+        GLES30.glDrawElementsInstanced(GLES20.GL_TRIANGLES, levelCounts[level], indexType, 0, instances);
+        glState.countDraw();
+    }
+
+    // 删除VBO
+    public void release() {
+        if (uploaded) {
+            GLES20.glDeleteBuffers(4, buffers, 0);
+            for (int buffer : buffers) {
+                glState.forgetBuffer(buffer);
+            }
+            for (int level = 1; level < levelBuffers.length; level++) {
+                if (levelBuffers[level] != levelBuffers[level - 1]) {
+                    GLES20.glDeleteBuffers(1, levelBuffers, level);
+                    glState.forgetBuffer(levelBuffers[level]);
+                }
+            }
+        }
+        reset();
+    }
+
+    // EGL上下文丢失后旧的句柄已失效，只清除记录，不调用GL删除
+    public void reset() {
+        buffers[0] = 0;
+        buffers[1] = 0;
+        buffers[2] = 0;
+        buffers[3] = 0;
+        indexCount = 0;
+        levelBuffers = new int[0];
+        levelCounts = new int[0];
+        uploaded = false;
+    }
+}
@@ -3,24 +3,17 @@ package com.aj.bodyheartmap.view;
 import android.content.Context;
 import android.util.Log;
 
-import org.json.JSONArray;
-import org.json.JSONException;
-
-import java.io.BufferedReader;
 import java.io.IOException;
-import java.io.InputStream;
-import java.io.InputStreamReader;
+import java.io.OutputStream;
 import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
 import java.nio.FloatBuffer;
-import java.util.ArrayList;
-import java.util.HashMap;
-import java.util.List;
 import java.util.Map;
 
 /**
  * 人体模型类
- * 加载人体各部位的坐标数据，并绘制人体模型
+ * 持有共享的人体网格（BodyMesh）和本视图自己的温度/透明度数据
+ * 几何数据通过 BodyMeshCache 在多个视图间共享，使用完毕需调用 release()
  *
  JSON文件中的坐标范围 ：
 
@@ -35,12 +28,17 @@ import java.util.Map;
  */
 public class BodyModel {
     private static final String TAG = "BodyModel";
-    
-    private FloatBuffer vertexBuffer;
-    private FloatBuffer texCoordBuffer;
+
+    // 共享的几何数据
+    private final BodyMesh mesh;
+    private boolean released = false;
+
+    // 本模型自己的顶点视图（共享数据，独立位置）和纹理坐标
+    private final FloatBuffer vertexBuffer;
+    private final FloatBuffer texCoordBuffer;
     
     // 身体各部位的顶点索引范围
-    private Map<String, int[]> bodyPartIndices;
+    private final Map<String, int[]> bodyPartIndices;
 
 
     // 身体部位名称
@@ -57,233 +55,114 @@ public class BodyModel {
         "左腿", "左脚", "右腿", "右脚"
     };
 
-    // 总顶点数 - 将在加载坐标后确定
-    private int totalVertices = 0;
+    // 总顶点数
+    private final int totalVertices;
+    // 多级细节索引，与共享网格共用
+    private final BodyMeshLod lod;
+    // 细分网格的部位过渡权重，存在时逐顶点温度由区域数据按权重混合得到
+    private final RegionBlend regionBlend;
+    private boolean blendDirty;
 
-    // 添加边界坐标变量
-    private float minX = Float.MAX_VALUE;
-    private float maxX = Float.MIN_VALUE;
-    private float minY = Float.MAX_VALUE;
-    private float maxY = Float.MIN_VALUE;
-    private float[] minXPoint = new float[2];
-    private float[] maxXPoint = new float[2];
-    private float[] minYPoint = new float[2];
-    private float[] maxYPoint = new float[2];
+    // BODY_PARTS 下标（部位ID）对应的网格部位下标，网格中不存在的部位为-1
+    private final int[] partSlots;
 
-    // 添加坐标跨度变量
-    private float xSpan;
-    private float ySpan;
+    // 按网格部位下标存放的 (摄氏温度, 透明度)，区域着色模式下直接作为 uniform 数组上传
+    private final float[] regionData;
+    private boolean regionDataDirty = true;
+    // 是否同时把温度写入逐顶点纹理坐标；区域着色模式下关闭，更新代价只与部位数有关
+    private boolean vertexStreamEnabled = true;
 
-    // 添加坐标偏移量
-    private float xOffset;
-    private float yOffset;
+    // 纹理坐标中尚未上传到GPU的顶点区间 [dirtyStart, dirtyEnd)
+    private int dirtyStart = 0;
+    private int dirtyEnd = 0;
 
-    // 构造函数
+    // 构造函数，使用默认模板
     public BodyModel(Context context) {
-        loadBodyPartsFromAssets(context);
+        this(context, BodyMeshCache.DEFAULT_TEMPLATE);
     }
-    
-    // 从assets加载身体部位坐标
-    private void loadBodyPartsFromAssets(Context context) {
-        Map<String, List<float[]>> bodyPartsCoordinates = new HashMap<>();
-
-        try {
-            // 首先加载完整的人体轮廓以计算边界
-            String jsonStr = loadJSONFromAsset(context, "body_red_2_contour_copy.json");
-            JSONArray jsonArray = new JSONArray(jsonStr);
 
-            // 计算边界
-            calculateBoundaries(jsonArray);
-
-            // 计算坐标跨度
-            xSpan = maxX - minX;
-            ySpan = maxY - minY;
-
-            // 计算偏移量，使左上角为(0,0)
-            xOffset = minX;
-            yOffset = minY;
-
-            Log.d(TAG, "边界坐标: minX=" + minX + ", maxX=" + maxX + ", minY=" + minY + ", maxY=" + maxY);
-            Log.d(TAG, "坐标跨度: xSpan=" + xSpan + ", ySpan=" + ySpan);
-            Log.d(TAG, "坐标偏移量: xOffset=" + xOffset + ", yOffset=" + yOffset);
-
-        } catch (Exception e) {
-            Log.e(TAG, "解析JSON时出错", e);
+    // 从进程级缓存获取指定模板的网格，只创建本视图的纹理坐标缓冲区
+    public BodyModel(Context context, String template) {
+        mesh = BodyMeshCache.acquire(context, template);
+        vertexBuffer = mesh.newVertexView();
+        bodyPartIndices = mesh.getBodyPartIndices();
+        totalVertices = mesh.getTotalVertices();
+        partSlots = new int[BODY_PARTS.length];
+        for (int i = 0; i < BODY_PARTS.length; i++) {
+            partSlots[i] = mesh.indexOfPart(BODY_PARTS[i]);
+        }
+        // 加载时（后台线程）预先生成各级简化轮廓
+        lod = mesh.getLod();
+        // 权重随网格共享，只在第一次调用时构建；构建耗时由 BodyMesh 记录
+        regionBlend = mesh.getRegionBlend();
+        blendDirty = regionBlend != null;
+        if (regionBlend != null) {
+            Log.i(TAG, "部位过渡权重: " + regionBlend.getEntryCount() + " 项, 构建耗时: "
+                    + regionBlend.getBuildMillis() + "ms");
         }
 
+        regionData = new float[mesh.getPartCount() * 2];
+        for (int i = 0; i < mesh.getPartCount(); i++) {
+            // 默认显示范围的中点
+            regionData[i * 2] = 38.5f;
+            regionData[i * 2 + 1] = 1.0f;
+        }
 
-
-        // 初始化身体部位索引映射
-        bodyPartIndices = new HashMap<>();
-        
-        // 为每个身体部位加载坐标
-        for (String part : BODY_PARTS) {
-            try {
-                List<float[]> coordinates = loadCoordinatesFromAsset(context, part + ".json");
-                bodyPartsCoordinates.put(part, coordinates);
-                totalVertices += coordinates.size();
-            } catch (IOException e) {
-                Log.e(TAG, "无法加载身体部位坐标: " + part, e);
+        // 创建纹理坐标缓冲区（摄氏度, 透明度），初值与各部位的 regionData 相同
+        ByteBuffer tb = ByteBuffer.allocateDirect(totalVertices * 2 * 4);
+        tb.order(ByteOrder.nativeOrder());
+        texCoordBuffer = tb.asFloatBuffer();
+        for (int part = 0; part < mesh.getPartCount(); part++) {
+            for (int v = mesh.getPartStart(part), end = v + mesh.getPartVertexCount(part); v < end; v++) {
+                texCoordBuffer.put(v * 2, regionData[part * 2]);
+                texCoordBuffer.put(v * 2 + 1, regionData[part * 2 + 1]);
             }
         }
+        markDirty(0, totalVertices);
+    }
 
-        Log.i(TAG, "loadCoordinatesFromAsset: normalizedXMin=" + normalizedXMin + ", normalizedXMax=" + normalizedXMax + ", normalizedYMin=" + normalizedYMin + ", normalizedYMax=" + normalizedYMax);
-
-        // 创建顶点和纹理坐标缓冲区
-        setupBuffers(bodyPartsCoordinates);
+    // 释放对共享网格的引用，只需调用一次
+    public synchronized void release() {
+        if (!released) {
+            released = true;
+            BodyMeshCache.release(mesh);
+        }
     }
 
-    private String loadJSONFromAsset(Context context, String s) {
-        try {
-            InputStream is = context.getAssets().open(s);
-            BufferedReader reader = new BufferedReader(new InputStreamReader(is));
-            StringBuilder jsonString = new StringBuilder();
-            String line;
-            while ((line = reader.readLine()) != null) {
-                jsonString.append(line);
-            }
-            return jsonString.toString();
-        } catch (IOException e) {
-           e.printStackTrace();
+    // release() 之后重新登记对共享网格的引用（视图重新附加到窗口时），未释放时不做任何事
+    public synchronized void reacquire() {
+        if (released) {
+            released = false;
+            BodyMeshCache.reacquire(mesh);
         }
-        return null;
     }
 
+    public BodyMesh getMesh() {
+        return mesh;
+    }
 
-    float normalizedXMax = -20.0f;
-    float normalizedYMax = -20.0f;
-    float normalizedXMin = 2.0f;
-    float normalizedYMin = 2.0f;
-
-    // 从资源文件加载坐标
-    private List<float[]> loadCoordinatesFromAsset(Context context, String filename) throws IOException {
-        List<float[]> coordinates = new ArrayList<>();
-        InputStream is = context.getAssets().open(filename);
-        
-        try {
-            // 读取JSON文件内容
-            BufferedReader reader = new BufferedReader(new InputStreamReader(is));
-            StringBuilder jsonString = new StringBuilder();
-            String line;
-            while ((line = reader.readLine()) != null) {
-                jsonString.append(line);
-            }
-            
-            // 解析JSON数组
-            JSONArray jsonArray = new JSONArray(jsonString.toString());
-            for (int i = 0; i < jsonArray.length(); i++) {
-                JSONArray pointArray = jsonArray.getJSONArray(i);
-                if (pointArray.length() >= 2) {
-                    float x = (float) pointArray.getDouble(0) - xOffset;
-//                    float x = (float) pointArray.getDouble(0);
-                    float y = (float) pointArray.getDouble(1) - yOffset;
-
-//                    coordinates.add(processVertexCoordinates(x,y,HeatMapRenderer.useNormalizedCoordinates));
-
-                    // 坐标归一化处理（可选，取决于您的坐标系统）
-                    // 假设原始坐标范围是0-1000，转换为-1到1的OpenGL坐标系
-//                    float normalizedX = (x / 500.0f) - 1.0f;
-//                    float normalizedY = 1.0f - (y / 500.0f); //500不对。不准确。
-
-
-//                    float normalizedX = (x / xSpan) - 1.0f;
-//                    float normalizedY = 1.0f - (y / ySpan); //变形了。。不可以。
-
-//                    float max = Math.max(xSpan, ySpan);//0,1
-                    float max = Math.max(xSpan, ySpan)/2;// 以模型高度一半作为标准化尺度，底部对齐到屏幕-1位置
-//                    float normalizedX = (x / max /2.0f) - 1.0f;
-                    float normalizedX = (x / max) - 1.0f;
-                    float normalizedY = 1.0f - (y / max); //TODO Y轴方向通常需要翻转
-
-                    // get normalizedXMax, normalizedYMax, normalizedXMin, normalizedYMin
-                    if (normalizedX > normalizedXMax) {
-                        normalizedXMax = normalizedX;
-                    }
-                    if (normalizedY > normalizedYMax) {
-                        normalizedYMax = normalizedY;
-                    }
-                    if (normalizedX < normalizedXMin) {
-                        normalizedXMin = normalizedX;
-                    }
-                    if (normalizedY < normalizedYMin) {
-                        normalizedYMin = normalizedY;
-                    }
-                    coordinates.add(new float[]{normalizedX, normalizedY, 0.0f});
-                }
-            }
-        } catch (JSONException e) {
-            Log.e(TAG, "解析JSON文件失败: " + filename, e);
-            throw new IOException("JSON解析错误", e);
-        } finally {
-            is.close();
-        }
-        
-        return coordinates;
+    public BodyMeshLod getLod() {
+        return lod;
     }
 
-    //不需要了。 在处理顶点坐标时，根据坐标系类型进行不同的处理
-    private float[] processVertexCoordinates(float x, float y, boolean useNormalizedCoordinates) {
-        if (useNormalizedCoordinates) {
-            // 归一化处理，将坐标映射到[-1, 1]范围
-            float normalizedX = (x / xSpan) * 2.0f - 1.0f;
-            float normalizedY = (y / ySpan) * 2.0f - 1.0f;
-            return new float[]{normalizedX, normalizedY, 0.0f};
-        } else {
-            // 像素坐标处理，直接使用偏移后的坐标
-            return new float[]{x - xOffset, y - yOffset, 0.0f};
-        }
+    // 是否为带部位过渡的细分网格，此时只能逐顶点着色
+    public boolean hasRegionBlend() {
+        return regionBlend != null;
     }
-    
-    // 设置顶点和纹理坐标缓冲区
-    private void setupBuffers(Map<String, List<float[]>> bodyPartsCoordinates) {
-        // 创建顶点数组
-        float[] vertices = new float[totalVertices * 3]; // 每个顶点3个坐标(x,y,z)
-        float[] texCoords = new float[totalVertices * 2]; // 每个顶点2个纹理坐标(s,t)
-        
-        int vertexOffset = 0;
-        int indexOffset = 0;
-        
-        // 为每个身体部位设置顶点和纹理坐标
-        for (String part : BODY_PARTS) {
-            List<float[]> coordinates = bodyPartsCoordinates.get(part);
-            if (coordinates == null) {
-                continue;
-            }
-            
-            // 记录该部位的起始索引和顶点数量
-            int startIndex = indexOffset;
-            int vertexCount = coordinates.size();
-            bodyPartIndices.put(part, new int[]{startIndex, vertexCount});
-            
-            // 复制顶点坐标
-            for (float[] coord : coordinates) {
-                vertices[vertexOffset++] = coord[0];
-                vertices[vertexOffset++] = coord[1];
-                vertices[vertexOffset++] = coord[2];
-                
-                // 设置默认纹理坐标 - 温度值0.5，透明度1.0
-                texCoords[indexOffset * 2] = 0.5f;
-                texCoords[indexOffset * 2 + 1] = 1.0f;
-                
-                indexOffset++;
+
+    // 网格部位下标对应的部位ID（BODY_PARTS 下标），不在 BODY_PARTS 中时返回-1
+    public int getPartId(int meshPart) {
+        for (int i = 0; i < partSlots.length; i++) {
+            if (partSlots[i] == meshPart) {
+                return i;
             }
         }
-        
-        // 创建顶点缓冲区
-        ByteBuffer bb = ByteBuffer.allocateDirect(vertices.length * 4);
-        bb.order(ByteOrder.nativeOrder());
-        vertexBuffer = bb.asFloatBuffer();
-        vertexBuffer.put(vertices);
-        vertexBuffer.position(0);
-        
-        // 创建纹理坐标缓冲区
-        ByteBuffer tb = ByteBuffer.allocateDirect(texCoords.length * 4);
-        tb.order(ByteOrder.nativeOrder());
-        texCoordBuffer = tb.asFloatBuffer();
-        texCoordBuffer.put(texCoords);
-        texCoordBuffer.position(0);
-        
-        Log.i(TAG, "身体模型初始化完成，总顶点数: " + totalVertices);
+        return -1;
+    }
+
+    // 将当前网格导出为二进制格式，用于把JSON或自定义轮廓转换为 BodyMeshLoader.MESH_ASSET
+    public void exportBinaryMesh(OutputStream out) throws IOException {
+        mesh.write(out);
     }
     
     // 更新纹理坐标 - 支持13个身体部位的温度和透明度
@@ -292,52 +171,150 @@ public class BodyModel {
             Log.e(TAG, "温度数据不足，需要至少 " + BODY_PARTS.length + " 个值");
             return;
         }
-        
-        // 创建新的纹理坐标数组
-        float[] texCoords = new float[totalVertices * 2];
-        
-        // 为每个身体部位设置温度和透明度
+
+        // 直接写入纹理坐标缓冲区，不创建中间数组
         for (int i = 0; i < BODY_PARTS.length; i++) {
-            String part = BODY_PARTS[i];
-            int[] indices = bodyPartIndices.get(part);
-            if (indices == null) {
-                continue;
+            writePart(i, temperatures[i], alpha, true);
+        }
+    }
+
+    // 只更新单个部位的温度，partId 为 BODY_PARTS 中的下标；透明度保持不变
+    public void setPartTemperature(int partId, float temperature) {
+        if (partId < 0 || partId >= BODY_PARTS.length) {
+            Log.e(TAG, "无效的部位ID: " + partId);
+            return;
+        }
+        writePart(partId, temperature, 0f, false);
+    }
+
+    // 批量更新部分部位的温度，partIds 与 temperatures 一一对应
+    public void setTemperatures(int[] partIds, float[] temperatures) {
+        if (partIds == null || temperatures == null || temperatures.length < partIds.length) {
+            Log.e(TAG, "部位ID与温度数量不匹配");
+            return;
+        }
+        for (int i = 0; i < partIds.length; i++) {
+            setPartTemperature(partIds[i], temperatures[i]);
+        }
+    }
+
+    // 写入部位的区域数据（原始摄氏温度，显示范围由着色器 uniform 决定）；
+    // 开启逐顶点数据时同时写入顶点区间的纹理坐标并合并脏区间
+    private void writePart(int partId, float temperature, float alpha, boolean writeAlpha) {
+        int slot = partSlots[partId];
+        if (slot < 0) {
+            return;
+        }
+        regionData[slot * 2] = temperature;
+        if (writeAlpha) {
+            regionData[slot * 2 + 1] = alpha;
+        }
+        regionDataDirty = true;
+        if (!vertexStreamEnabled) {
+            return;
+        }
+        if (regionBlend != null) {
+            // 部位之间互相影响，推迟到上传前统一混合
+            blendDirty = true;
+            return;
+        }
+        int start = mesh.getPartStart(slot);
+        int end = start + mesh.getPartVertexCount(slot);
+        for (int index = start; index < end; index++) {
+            texCoordBuffer.put(index * 2, temperature);
+            if (writeAlpha) {
+                texCoordBuffer.put(index * 2 + 1, alpha);
             }
-            
-            int startIndex = indices[0];
-            int vertexCount = indices[1];
-            float normalizedTemp = normalizeTemperature(temperatures[i]);
-            
-            // 为该部位的所有顶点设置相同的温度和透明度
-            for (int j = 0; j < vertexCount; j++) {
-                int index = startIndex + j;
-                texCoords[index * 2] = normalizedTemp;
-                texCoords[index * 2 + 1] = alpha;
-//                texCoords[index * 2 + 1] = 1.0f;
+        }
+        markDirty(start, end);
+    }
+    
+    // 开启或关闭逐顶点纹理坐标；重新开启时按当前区域数据补写全部顶点
+    public void setVertexStreamEnabled(boolean enabled) {
+        if (enabled && !vertexStreamEnabled && regionBlend != null) {
+            blendDirty = true;
+        } else if (enabled && !vertexStreamEnabled) {
+            for (int slot = 0; slot < mesh.getPartCount(); slot++) {
+                int start = mesh.getPartStart(slot);
+                int end = start + mesh.getPartVertexCount(slot);
+                for (int index = start; index < end; index++) {
+                    texCoordBuffer.put(index * 2, regionData[slot * 2]);
+                    texCoordBuffer.put(index * 2 + 1, regionData[slot * 2 + 1]);
+                }
             }
+            markDirty(0, totalVertices);
         }
-        
-        // 更新纹理坐标缓冲区
-        texCoordBuffer.position(0);
-        texCoordBuffer.put(texCoords);
-        texCoordBuffer.position(0);
-
-        // 打印每个位置的温度值
-        StringBuffer sb = new StringBuffer();
-        for (int i = 0; i < BODY_PARTS.length; i++) {
-            sb.append(BODY_PARTS[i] + ": " + temperatures[i] +", ");
+        vertexStreamEnabled = enabled;
+    }
+
+    public boolean isVertexStreamEnabled() {
+        return vertexStreamEnabled;
+    }
+
+    // 按部位过渡权重把区域数据混合到全部顶点的纹理坐标，在上传前调用；没有变化时不做任何事
+    public void applyRegionBlend() {
+        if (!blendDirty) {
+            return;
         }
-        Log.i(TAG, "纹理坐标已更新 "+sb.toString()+" alpha="+alpha);
+        blendDirty = false;
+        regionBlend.apply(regionData, texCoordBuffer);
+        markDirty(0, totalVertices);
     }
-    
-    // 将温度值归一化到0-1范围
-    private float normalizeTemperature(float temperature) {
-        // 假设温度范围在35-42度之间
-        float normalizedTemp = (temperature - 35.0f) / 7.0f;
+
+    // 区域数量，即网格部位数
+    public int getRegionCount() {
+        return mesh.getPartCount();
+    }
+
+    // 区域数据有变化时复制到 dst 并清除标记，返回是否有变化
+    public boolean takeRegionData(float[] dst) {
+        if (!regionDataDirty) {
+            return false;
+        }
+        System.arraycopy(regionData, 0, dst, 0, regionData.length);
+        regionDataDirty = false;
+        return true;
+    }
+
+    // 采样点纹理（16位定点）和泼溅累积缓冲中温度的编码范围（摄氏度），与显示范围无关
+    static final float ENCODE_MIN = 20.0f;
+    static final float ENCODE_MAX = 45.0f;
+
+    // 将温度编码到0-1范围，着色器按 uRange 还原并映射到显示范围
+    static float encodeTemperature(float temperature) {
+        float encoded = (temperature - ENCODE_MIN) / (ENCODE_MAX - ENCODE_MIN);
         // 限制在0-1范围内
-        return Math.max(0.0f, Math.min(1.0f, normalizedTemp));
+        return Math.max(0.0f, Math.min(1.0f, encoded));
     }
     
+    // 标记需要重新上传的顶点区间，与已有脏区间合并
+    private void markDirty(int start, int end) {
+        if (dirtyStart >= dirtyEnd) {
+            dirtyStart = start;
+            dirtyEnd = end;
+        } else {
+            dirtyStart = Math.min(dirtyStart, start);
+            dirtyEnd = Math.max(dirtyEnd, end);
+        }
+    }
+
+    public boolean hasDirtyRange() {
+        return dirtyStart < dirtyEnd;
+    }
+
+    public int getDirtyStart() {
+        return dirtyStart;
+    }
+
+    public int getDirtyEnd() {
+        return dirtyEnd;
+    }
+
+    public void clearDirtyRange() {
+        dirtyStart = 0;
+        dirtyEnd = 0;
+    }
+
     // Getter方法
     public FloatBuffer getVertexBuffer() {
         return vertexBuffer;
@@ -355,63 +332,21 @@ public class BodyModel {
         return totalVertices;
     }
 
-    // 计算边界坐标
-    private void calculateBoundaries(JSONArray jsonArray) throws JSONException {
-        for (int i = 0; i < jsonArray.length(); i++) {
-            JSONArray point = jsonArray.getJSONArray(i);
-            float x = 0;
-            float y = 0;
-            if (point.length() >= 2) {
-              x = (float) point.getDouble(0);
-              y = (float) point.getDouble(1);
-            }else {
-                continue;
-            }
-
-            // 更新最小X坐标
-            if (x < minX) {
-                minX = x;
-                minXPoint[0] = x;
-                minXPoint[1] = y;
-            }
-
-            // 更新最大X坐标
-            if (x > maxX) {
-                maxX = x;
-                maxXPoint[0] = x;
-                maxXPoint[1] = y;
-            }
-
-            // 更新最小Y坐标
-            if (y < minY) {
-                minY = y;
-                minYPoint[0] = x;
-                minYPoint[1] = y;
-            }
-
-            // 更新最大Y坐标
-            if (y > maxY) {
-                maxY = y;
-                maxYPoint[0] = x;
-                maxYPoint[1] = y;
-            }
-        }
-    }
-
     // 获取边界信息的方法
     public float[] getBoundaries() {
-        Log.d(TAG, "人体边界: minX=" + minX + ", maxX=" + maxX +
-                ", minY=" + minY + ", maxY=" + maxY);
-        return new float[]{minX, maxX, minY, maxY};
+        float[] bounds = mesh.getBoundaries();
+        Log.d(TAG, "人体边界: minX=" + bounds[0] + ", maxX=" + bounds[1] +
+                ", minY=" + bounds[2] + ", maxY=" + bounds[3]);
+        return bounds;
     }
 
     // 获取坐标跨度
     public float[] getSpan() {
-        return new float[]{xSpan, ySpan};
+        return mesh.getSpan();
     }
 
     // 获取坐标偏移量
     public float[] getOffset() {
-        return new float[]{xOffset, yOffset};
+        return mesh.getOffset();
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,68 @@
+package com.aj.bodyheartmap.view;
+
+import android.content.Context;
+import android.util.Log;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 人体模型后台加载器
+ * 资源读取和解析在后台线程执行，避免在布局inflate时阻塞主线程
+ */
+public final class BodyModelLoader {
+    private static final String TAG = "BodyModelLoader";
+
+    // 加载完成或失败的回调，在后台线程中调用
+    public interface Callback {
+        void onLoaded(BodyModel model);
+
+        // 资源读取、解析或细分失败（包括内存不足），error 已记录日志
+        void onFailed(String template, Throwable error);
+    }
+
+    private static final ExecutorService EXECUTOR = Executors.newFixedThreadPool(2, new ThreadFactory() {
+        private final AtomicInteger count = new AtomicInteger();
+
+        @Override
+        public Thread newThread(Runnable r) {
+            Thread thread = new Thread(r, "BodyModelLoader-" + count.incrementAndGet());
+            thread.setDaemon(true);
+            thread.setPriority(Thread.NORM_PRIORITY - 1);
+            return thread;
+        }
+    });
+
+    private BodyModelLoader() {
+    }
+
+    public static Future<?> loadAsync(Context context, Callback callback) {
+        return loadAsync(context, BodyMeshCache.DEFAULT_TEMPLATE, callback);
+    }
+
+    // 加载指定模板，模板名称见 BodyMeshCache 和 BodyMeshTessellator.templateKey()
+    public static Future<?> loadAsync(Context context, final String template, final Callback callback) {
+        final Context appContext = context.getApplicationContext() != null
+                ? context.getApplicationContext() : context;
+        return EXECUTOR.submit(new Runnable() {
+            @Override
+            public void run() {
+                long start = System.nanoTime();
+                BodyModel model;
+                try {
+                    model = new BodyModel(appContext, template);
+                } catch (Throwable e) {
+                    // submit() 的 Future 无人读取，异常必须在这里报告，否则视图会一直空白
+                    Log.e(TAG, "人体模型加载失败: " + template, e);
+                    callback.onFailed(template, e);
+                    return;
+                }
+                Log.i(TAG, "后台加载人体模型耗时: " + (System.nanoTime() - start) / 1000000 + "ms");
+                callback.onLoaded(model);
+            }
+        });
+    }
+}
@@ -0,0 +1,168 @@
+package com.aj.bodyheartmap.view;
+
+import java.nio.FloatBuffer;
+
+/**
+ * 人体部位的点击检测
+ * 在模型包围盒上建立均匀网格，每个格子记录与之相交的三角形（加载时的轮廓三角剖分），
+ * 查询时只对所在格子内的少量三角形做精确的点在三角形内判断，与轮廓顶点数基本无关。
+ * 格子数按三角形数量选择，平均每格只有几个候选三角形；格子数据按 CSR 形式存放在两个 int[] 中。
+ * 重叠区域按三角形顺序取第一个，与绘制时深度测试的结果一致。
+ * 构建后只读，可在任意线程查询
+ */
+public final class BodyPartHitTester {
+
+    // 每个格子的平均三角形数
+    private static final int TRIANGLES_PER_CELL = 2;
+    private static final int MAX_GRID_SIZE = 256;
+
+    private final BodyMesh mesh;
+    private final float[] xs;
+    private final float[] ys;
+    private final int[] indices;
+    private final int[] triangleParts;
+
+    private final float minX;
+    private final float minY;
+    private final float cellWidth;
+    private final float cellHeight;
+    private final int columns;
+    private final int rows;
+    // 格子 c 的三角形为 cellTriangles[cellStart[c] .. cellStart[c + 1])
+    private final int[] cellStart;
+    private final int[] cellTriangles;
+
+    public BodyPartHitTester(BodyMesh mesh) {
+        this.mesh = mesh;
+        int vertexCount = mesh.getTotalVertices();
+        xs = new float[vertexCount];
+        ys = new float[vertexCount];
+        FloatBuffer vertices = mesh.newVertexView();
+        float x0 = Float.MAX_VALUE;
+        float y0 = Float.MAX_VALUE;
+        float x1 = -Float.MAX_VALUE;
+        float y1 = -Float.MAX_VALUE;
+        for (int i = 0; i < vertexCount; i++) {
+            xs[i] = vertices.get(i * BodyMeshFormat.FLOATS_PER_VERTEX);
+            ys[i] = vertices.get(i * BodyMeshFormat.FLOATS_PER_VERTEX + 1);
+            x0 = Math.min(x0, xs[i]);
+            y0 = Math.min(y0, ys[i]);
+            x1 = Math.max(x1, xs[i]);
+            y1 = Math.max(y1, ys[i]);
+        }
+
+        indices = new int[mesh.getIndexCount()];
+        for (int i = 0; i < indices.length; i++) {
+            indices[i] = mesh.getIndex(i);
+        }
+        int triangleCount = indices.length / 3;
+        int[] vertexParts = new int[vertexCount];
+        for (int part = 0; part < mesh.getPartCount(); part++) {
+            for (int v = mesh.getPartStart(part), end = v + mesh.getPartVertexCount(part); v < end; v++) {
+                vertexParts[v] = part;
+            }
+        }
+        triangleParts = new int[triangleCount];
+        for (int t = 0; t < triangleCount; t++) {
+            triangleParts[t] = vertexParts[indices[t * 3]];
+        }
+
+        // 格子尽量接近正方形
+        if (vertexCount == 0) {
+            x0 = y0 = 0;
+            x1 = y1 = 1;
+        }
+        float width = Math.max(x1 - x0, 1e-6f);
+        float height = Math.max(y1 - y0, 1e-6f);
+        int cells = Math.max(1, triangleCount / TRIANGLES_PER_CELL);
+        float cellSize = (float) Math.sqrt(width * height / cells);
+        columns = Math.max(1, Math.min(MAX_GRID_SIZE, (int) Math.ceil(width / cellSize)));
+        rows = Math.max(1, Math.min(MAX_GRID_SIZE, (int) Math.ceil(height / cellSize)));
+        minX = x0;
+        minY = y0;
+        cellWidth = width / columns;
+        cellHeight = height / rows;
+
+        // 第一遍计数，第二遍填充
+        cellStart = new int[columns * rows + 1];
+        int[] range = new int[4];
+        for (int t = 0; t < triangleCount; t++) {
+            cellRange(t, range);
+            for (int r = range[2]; r <= range[3]; r++) {
+                for (int col = range[0]; col <= range[1]; col++) {
+                    cellStart[r * columns + col + 1]++;
+                }
+            }
+        }
+        for (int i = 0; i < columns * rows; i++) {
+            cellStart[i + 1] += cellStart[i];
+        }
+        cellTriangles = new int[cellStart[columns * rows]];
+        int[] cursor = cellStart.clone();
+        for (int t = 0; t < triangleCount; t++) {
+            cellRange(t, range);
+            for (int r = range[2]; r <= range[3]; r++) {
+                for (int col = range[0]; col <= range[1]; col++) {
+                    cellTriangles[cursor[r * columns + col]++] = t;
+                }
+            }
+        }
+    }
+
+    // 三角形包围盒覆盖的格子范围：列 [out[0], out[1]]，行 [out[2], out[3]]
+    private void cellRange(int t, int[] out) {
+        int a = indices[t * 3];
+        int b = indices[t * 3 + 1];
+        int c = indices[t * 3 + 2];
+        out[0] = column(Math.min(xs[a], Math.min(xs[b], xs[c])));
+        out[1] = column(Math.max(xs[a], Math.max(xs[b], xs[c])));
+        out[2] = row(Math.min(ys[a], Math.min(ys[b], ys[c])));
+        out[3] = row(Math.max(ys[a], Math.max(ys[b], ys[c])));
+    }
+
+    public BodyMesh getMesh() {
+        return mesh;
+    }
+
+    private int column(float x) {
+        return Math.max(0, Math.min(columns - 1, (int) ((x - minX) / cellWidth)));
+    }
+
+    private int row(float y) {
+        return Math.max(0, Math.min(rows - 1, (int) ((y - minY) / cellHeight)));
+    }
+
+    /**
+     * 模型坐标 (x, y) 所在的网格部位下标，不在任何部位内时返回-1
+     */
+    public int findPart(float x, float y) {
+        if (x < minX || y < minY || x > minX + cellWidth * columns || y > minY + cellHeight * rows) {
+            return -1;
+        }
+        int cell = row(y) * columns + column(x);
+        for (int i = cellStart[cell], end = cellStart[cell + 1]; i < end; i++) {
+            int t = cellTriangles[i];
+            if (contains(t, x, y)) {
+                return triangleParts[t];
+            }
+        }
+        return -1;
+    }
+
+    // 点在三角形内（含边界），与三角形的绕向无关
+    private boolean contains(int t, float px, float py) {
+        int a = indices[t * 3];
+        int b = indices[t * 3 + 1];
+        int c = indices[t * 3 + 2];
+        float d0 = cross(xs[a], ys[a], xs[b], ys[b], px, py);
+        float d1 = cross(xs[b], ys[b], xs[c], ys[c], px, py);
+        float d2 = cross(xs[c], ys[c], xs[a], ys[a], px, py);
+        boolean negative = d0 < 0 || d1 < 0 || d2 < 0;
+        boolean positive = d0 > 0 || d1 > 0 || d2 > 0;
+        return !(negative && positive);
+    }
+
+    private static float cross(float ax, float ay, float bx, float by, float px, float py) {
+        return (bx - ax) * (py - ay) - (by - ay) * (px - ax);
+    }
+}
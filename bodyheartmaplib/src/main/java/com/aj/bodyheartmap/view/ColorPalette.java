@@ -0,0 +1,154 @@
+package com.aj.bodyheartmap.view;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 颜色映射调色板
+ * 由若干色标（位置 0-1 + RGB 颜色）线性插值生成 256 项 RGBA 查找表，查找表只生成一次并缓存；
+ * 渲染器为每个调色板创建一次纹理，运行时切换调色板只需绑定另一张纹理，不重新编译着色器。
+ * 内置调色板通过名称注册，也可以用自定义色标注册新的调色板
+ */
+public final class ColorPalette {
+
+    public static final int LUT_SIZE = 256;
+
+    // 原有的蓝→青→绿→黄→红渐变
+    public static final String CLASSIC = "classic";
+    public static final String VIRIDIS = "viridis";
+    public static final String INFERNO = "inferno";
+    public static final String MAGMA = "magma";
+    public static final String PLASMA = "plasma";
+    public static final String TURBO = "turbo";
+    public static final String GRAYSCALE = "grayscale";
+
+    private static final Map<String, ColorPalette> REGISTRY = new LinkedHashMap<>();
+
+    static {
+        register(new ColorPalette(CLASSIC,
+                new float[]{0.0f, 0.25f, 0.5f, 0.75f, 1.0f},
+                new int[]{0x0000FF, 0x00FFFF, 0x00FF00, 0xFFFF00, 0xFF0000}));
+        register(new ColorPalette(VIRIDIS, null,
+                new int[]{0x440154, 0x482878, 0x3E4A89, 0x31688E, 0x26828E,
+                        0x1F9E89, 0x35B779, 0x6DCD59, 0xB4DE2C, 0xFDE725}));
+        register(new ColorPalette(INFERNO, null,
+                new int[]{0x000004, 0x1B0C41, 0x4A0C6B, 0x781C6D, 0xA52C60,
+                        0xCF4446, 0xED6925, 0xFB9B06, 0xF7D13D, 0xFCFFA4}));
+        register(new ColorPalette(MAGMA, null,
+                new int[]{0x000004, 0x180F3D, 0x440F76, 0x721F81, 0x9E2F7F,
+                        0xCD4071, 0xF1605D, 0xFD9668, 0xFECA8D, 0xFCFDBF}));
+        register(new ColorPalette(PLASMA, null,
+                new int[]{0x0D0887, 0x46039F, 0x7201A8, 0x9C179E, 0xBD3786,
+                        0xD8576B, 0xED7953, 0xFB9F3A, 0xFDCA26, 0xF0F921}));
+        register(new ColorPalette(TURBO, null,
+                new int[]{0x30123B, 0x4662D7, 0x36AAF9, 0x1AE4B6, 0x72FE5E,
+                        0xC8EF34, 0xFABA39, 0xF66B19, 0xCA2A04, 0x7A0403}));
+        register(new ColorPalette(GRAYSCALE, null, new int[]{0x000000, 0xFFFFFF}));
+    }
+
+    private final String name;
+    private final float[] positions;
+    private final int[] colors;
+    // 查找表，首次使用时生成
+    private ByteBuffer lut;
+
+    /**
+     * positions 为各色标位置（0-1，递增），为null时等间距分布；colors 为 0xRRGGBB
+     */
+    public ColorPalette(String name, float[] positions, int[] colors) {
+        if (colors == null || colors.length < 2) {
+            throw new IllegalArgumentException("调色板至少需要两个色标");
+        }
+        if (positions == null) {
+            positions = new float[colors.length];
+            for (int i = 0; i < colors.length; i++) {
+                positions[i] = i / (float) (colors.length - 1);
+            }
+        } else if (positions.length != colors.length) {
+            throw new IllegalArgumentException("色标位置与颜色数量不一致");
+        }
+        this.name = name;
+        this.positions = positions.clone();
+        this.colors = colors.clone();
+    }
+
+    // 注册调色板，同名时替换
+    public static void register(ColorPalette palette) {
+        synchronized (REGISTRY) {
+            REGISTRY.put(palette.name, palette);
+        }
+    }
+
+    // 按名称查找调色板，不存在时返回null
+    public static ColorPalette get(String name) {
+        synchronized (REGISTRY) {
+            return REGISTRY.get(name);
+        }
+    }
+
+    public static List<String> getNames() {
+        synchronized (REGISTRY) {
+            return new ArrayList<>(REGISTRY.keySet());
+        }
+    }
+
+    public static ColorPalette getDefault() {
+        return get(CLASSIC);
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * 256 项 RGBA8 查找表（只读视图，position 为0），可直接作为 256x1 纹理上传
+     */
+    public synchronized ByteBuffer getLut() {
+        if (lut == null) {
+            ByteBuffer data = ByteBuffer.allocateDirect(LUT_SIZE * 4).order(ByteOrder.nativeOrder());
+            for (int i = 0; i < LUT_SIZE; i++) {
+                int rgb = sample(i / (float) (LUT_SIZE - 1));
+                data.put((byte) (rgb >> 16));
+                data.put((byte) (rgb >> 8));
+                data.put((byte) rgb);
+                data.put((byte) 255);
+            }
+            data.flip();
+            lut = data;
+        }
+        ByteBuffer view = lut.asReadOnlyBuffer();
+        view.position(0);
+        return view;
+    }
+
+    // t 处的颜色（0xRRGGBB），t 超出 0-1 时取边界
+    public int sample(float t) {
+        if (t <= positions[0]) {
+            return colors[0];
+        }
+        int last = positions.length - 1;
+        if (t >= positions[last]) {
+            return colors[last];
+        }
+        int i = 1;
+        while (positions[i] < t) {
+            i++;
+        }
+        float span = positions[i] - positions[i - 1];
+        float f = span > 0 ? (t - positions[i - 1]) / span : 1.0f;
+        int a = colors[i - 1];
+        int b = colors[i];
+        int r = lerp(a >> 16 & 0xFF, b >> 16 & 0xFF, f);
+        int g = lerp(a >> 8 & 0xFF, b >> 8 & 0xFF, f);
+        int bl = lerp(a & 0xFF, b & 0xFF, f);
+        return r << 16 | g << 8 | bl;
+    }
+
+    private static int lerp(int a, int b, float f) {
+        return Math.round(a + (b - a) * f);
+    }
+}
@@ -0,0 +1,162 @@
+package com.aj.bodyheartmap.view;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * 轮廓坐标流式解析器
+ * 直接从输入流单遍读取 [[x,y],...] 形式的坐标对，不构建字符串和 JSONArray，
+ * 每个点通过回调交给调用方处理（归一化、统计边界等），解析过程不逐点分配对象
+ */
+public final class ContourStreamParser {
+
+    // 每解析出一个坐标点回调一次
+    public interface PointSink {
+        void onPoint(float x, float y);
+    }
+
+    private static final int BUFFER_SIZE = 8192;
+
+    private final byte[] buffer = new byte[BUFFER_SIZE];
+    private int length;
+    private int position;
+    private InputStream input;
+
+    // 当前点中已读到的数值
+    private final double[] values = new double[2];
+    private int valueCount;
+
+    /**
+     * 解析整个输入流，返回坐标点数量；少于两个分量的点会被忽略
+     */
+    public int parse(InputStream is, PointSink sink) throws IOException {
+        input = is;
+        length = 0;
+        position = 0;
+        int depth = 0;
+        int points = 0;
+        try {
+            int c;
+            while ((c = read()) >= 0) {
+                switch (c) {
+                    case '[':
+                        depth++;
+                        if (depth == 2) {
+                            valueCount = 0;
+                        }
+                        break;
+                    case ']':
+                        if (depth == 2 && valueCount >= 2) {
+                            sink.onPoint((float) values[0], (float) values[1]);
+                            points++;
+                        }
+                        depth--;
+                        if (depth < 0) {
+                            throw new IOException("坐标数据格式错误：多余的 ']'");
+                        }
+                        break;
+                    case ',':
+                    case ' ':
+                    case '\n':
+                    case '\r':
+                    case '\t':
+                        break;
+                    default:
+                        if (c == '-' || c == '+' || c == '.' || (c >= '0' && c <= '9')) {
+                            double value = readNumber(c);
+                            if (depth == 2 && valueCount < 2) {
+                                values[valueCount] = value;
+                            }
+                            valueCount++;
+                        } else {
+                            throw new IOException("坐标数据格式错误：非法字符 '" + (char) c + "'");
+                        }
+                        break;
+                }
+            }
+            if (depth != 0) {
+                throw new IOException("坐标数据格式错误：括号不匹配");
+            }
+        } finally {
+            input = null;
+        }
+        return points;
+    }
+
+    private int read() throws IOException {
+        if (position == length) {
+            length = input.read(buffer, 0, BUFFER_SIZE);
+            position = 0;
+            if (length <= 0) {
+                length = 0;
+                return -1;
+            }
+        }
+        return buffer[position++] & 0xFF;
+    }
+
+    private void unread() {
+        position--;
+    }
+
+    // 解析一个JSON数值（整数、小数、指数），first 为已读入的首字符
+    private double readNumber(int first) throws IOException {
+        boolean negative = false;
+        int c = first;
+        if (c == '-' || c == '+') {
+            negative = c == '-';
+            c = read();
+        }
+
+        long mantissa = 0;
+        int exponent = 0;
+        int digits = 0;
+        while (c >= '0' && c <= '9') {
+            if (digits < 18) {
+                mantissa = mantissa * 10 + (c - '0');
+                digits++;
+            } else {
+                exponent++;
+            }
+            c = read();
+        }
+        if (c == '.') {
+            c = read();
+            while (c >= '0' && c <= '9') {
+                if (digits < 18) {
+                    mantissa = mantissa * 10 + (c - '0');
+                    digits++;
+                    exponent--;
+                }
+                c = read();
+            }
+        }
+        if (c == 'e' || c == 'E') {
+            c = read();
+            boolean negativeExp = false;
+            if (c == '-' || c == '+') {
+                negativeExp = c == '-';
+                c = read();
+            }
+            int exp = 0;
+            while (c >= '0' && c <= '9') {
+                if (exp < 10000) {
+                    exp = exp * 10 + (c - '0');
+                }
+                c = read();
+            }
+            exponent += negativeExp ? -exp : exp;
+        }
+        if (c >= 0) {
+            unread();
+        }
+
+        double value = mantissa;
+        if (exponent > 0) {
+            value *= Math.pow(10, exponent);
+        } else if (exponent < 0) {
+            value /= Math.pow(10, -exponent);
+        }
+        return negative ? -value : value;
+    }
+}
@@ -0,0 +1,64 @@
+package com.aj.bodyheartmap.view;
+
+import java.util.Arrays;
+
+/**
+ * 可增长的基本类型float数组
+ * 用于加载轮廓坐标时避免 List<float[]> 的装箱和逐点分配
+ */
+public final class FloatArrayList {
+    private float[] data;
+    private int size;
+
+    public FloatArrayList() {
+        this(64);
+    }
+
+    public FloatArrayList(int initialCapacity) {
+        data = new float[Math.max(initialCapacity, 4)];
+    }
+
+    public void add(float value) {
+        if (size == data.length) {
+            data = Arrays.copyOf(data, data.length * 2);
+        }
+        data[size++] = value;
+    }
+
+    public void add(float a, float b, float c) {
+        if (size + 3 > data.length) {
+            data = Arrays.copyOf(data, Math.max(data.length * 2, size + 3));
+        }
+        data[size++] = a;
+        data[size++] = b;
+        data[size++] = c;
+    }
+
+    public float get(int index) {
+        return data[index];
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public void clear() {
+        size = 0;
+    }
+
+    // 截断到指定长度
+    public void truncate(int newSize) {
+        if (newSize < size) {
+            size = Math.max(newSize, 0);
+        }
+    }
+
+    // 返回内部数组，有效数据为 [0, size)
+    public float[] array() {
+        return data;
+    }
+
+    public float[] toArray() {
+        return Arrays.copyOf(data, size);
+    }
+}
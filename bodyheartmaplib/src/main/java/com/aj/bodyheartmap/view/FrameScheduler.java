@@ -0,0 +1,68 @@
+package com.aj.bodyheartmap.view;
+
+import android.opengl.GLSurfaceView;
+import android.os.Handler;
+import android.os.Looper;
+import android.view.Choreographer;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * 按需渲染调度器
+ * 配合 RENDERMODE_WHEN_DIRTY 使用：温度、透明度、缩放、偏移等变化只标记为脏，
+ * 同一个vsync内的多次 invalidate() 合并为一次 requestRender()。可在任意线程调用
+ */
+public class FrameScheduler implements Choreographer.FrameCallback {
+
+    private final GLSurfaceView view;
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+    // 已经登记了下一帧的回调
+    private final AtomicBoolean scheduled = new AtomicBoolean(false);
+    // 每帧请求渲染前在主线程执行，用于合并本帧收到的高频数据
+    private Runnable frameListener;
+
+    private final Runnable postFrameCallback = new Runnable() {
+        @Override
+        public void run() {
+            Choreographer.getInstance().postFrameCallback(FrameScheduler.this);
+        }
+    };
+
+    public FrameScheduler(GLSurfaceView view) {
+        this.view = view;
+    }
+
+    // 只能在主线程设置
+    public void setFrameListener(Runnable listener) {
+        frameListener = listener;
+    }
+
+    // 标记需要重绘，下一个vsync时请求一帧
+    public void invalidate() {
+        if (!scheduled.compareAndSet(false, true)) {
+            return;
+        }
+        // Choreographer 只能在有 Looper 的线程使用，统一登记到主线程
+        if (Looper.myLooper() == Looper.getMainLooper()) {
+            postFrameCallback.run();
+        } else {
+            mainHandler.post(postFrameCallback);
+        }
+    }
+
+    // 取消尚未执行的请求，视图销毁时调用
+    public void cancel() {
+        mainHandler.removeCallbacks(postFrameCallback);
+        Choreographer.getInstance().removeFrameCallback(this);
+        scheduled.set(false);
+    }
+
+    @Override
+    public void doFrame(long frameTimeNanos) {
+        scheduled.set(false);
+        if (frameListener != null) {
+            frameListener.run();
+        }
+        view.requestRender();
+    }
+}
@@ -0,0 +1,110 @@
+package com.aj.bodyheartmap.view;
+
+import android.opengl.GLES20;
+import android.util.Log;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * 着色器程序
+ * 链接成功后一次性枚举全部活动的 attribute / uniform 并缓存其位置，绘制时不再调用 glGet*Location。
+ * 只能在GL线程中使用；EGL上下文重建后需重新创建
+ */
+public final class GlProgram {
+    private static final String TAG = "GlProgram";
+
+    private final int id;
+    private final Map<String, Integer> attributes = new HashMap<>();
+    private final Map<String, Integer> uniforms = new HashMap<>();
+
+    private GlProgram(int id) {
+        this.id = id;
+        int[] count = new int[1];
+        int[] size = new int[1];
+        int[] type = new int[1];
+
+        GLES20.glGetProgramiv(id, GLES20.GL_ACTIVE_ATTRIBUTES, count, 0);
+        for (int i = 0; i < count[0]; i++) {
+            String name = GLES20.glGetActiveAttrib(id, i, size, 0, type, 0);
+            attributes.put(name, GLES20.glGetAttribLocation(id, name));
+        }
+
+        GLES20.glGetProgramiv(id, GLES20.GL_ACTIVE_UNIFORMS, count, 0);
+        for (int i = 0; i < count[0]; i++) {
+            String name = GLES20.glGetActiveUniform(id, i, size, 0, type, 0);
+            // 数组 uniform 报告为 "name[0]"，按数组名登记首元素位置
+            if (name.endsWith("[0]")) {
+                name = name.substring(0, name.length() - 3);
+            }
+            uniforms.put(name, GLES20.glGetUniformLocation(id, name));
+        }
+    }
+
+    // 编译并链接程序，失败时返回null
+    public static GlProgram create(String vertexShaderCode, String fragmentShaderCode) {
+        int vertexShader = loadShader(GLES20.GL_VERTEX_SHADER, vertexShaderCode);
+        int fragmentShader = loadShader(GLES20.GL_FRAGMENT_SHADER, fragmentShaderCode);
+        if (vertexShader == 0 || fragmentShader == 0) {
+            GLES20.glDeleteShader(vertexShader);
+            GLES20.glDeleteShader(fragmentShader);
+            return null;
+        }
+
+        int program = GLES20.glCreateProgram();
+        GLES20.glAttachShader(program, vertexShader);
+        GLES20.glAttachShader(program, fragmentShader);
+        GLES20.glLinkProgram(program);
+        // 链接后着色器对象随程序一起释放
+        GLES20.glDeleteShader(vertexShader);
+        GLES20.glDeleteShader(fragmentShader);
+
+        int[] linkStatus = new int[1];
+        GLES20.glGetProgramiv(program, GLES20.GL_LINK_STATUS, linkStatus, 0);
+        if (linkStatus[0] != GLES20.GL_TRUE) {
+            Log.e(TAG, "程序链接失败: " + GLES20.glGetProgramInfoLog(program));
+            GLES20.glDeleteProgram(program);
+            return null;
+        }
+        GlProgram result = new GlProgram(program);
+        Log.d(TAG, "程序创建完成，ID: " + program + ", attributes=" + result.attributes + ", uniforms=" + result.uniforms);
+        return result;
+    }
+
+    private static int loadShader(int type, String shaderCode) {
+        int shader = GLES20.glCreateShader(type);
+        GLES20.glShaderSource(shader, shaderCode);
+        GLES20.glCompileShader(shader);
+
+        int[] compiled = new int[1];
+        GLES20.glGetShaderiv(shader, GLES20.GL_COMPILE_STATUS, compiled, 0);
+        if (compiled[0] == 0) {
+            // 只在失败时输出源码，便于定位错误行
+            Log.e(TAG, (type == GLES20.GL_VERTEX_SHADER ? "顶点" : "片段") + "着色器编译失败: "
+                    + GLES20.glGetShaderInfoLog(shader) + "\n" + shaderCode);
+            GLES20.glDeleteShader(shader);
+            return 0;
+        }
+        return shader;
+    }
+
+    public int getId() {
+        return id;
+    }
+
+    // attribute 位置，着色器中不存在（或被优化掉）时返回-1
+    public int attrib(String name) {
+        Integer location = attributes.get(name);
+        return location != null ? location : -1;
+    }
+
+    // uniform 位置，着色器中不存在（或被优化掉）时返回-1
+    public int uniform(String name) {
+        Integer location = uniforms.get(name);
+        return location != null ? location : -1;
+    }
+
+    public void release() {
+        GLES20.glDeleteProgram(id);
+    }
+}
@@ -0,0 +1,317 @@
+package com.aj.bodyheartmap.view;
+
+import android.opengl.GLES20;
+
+import java.nio.Buffer;
+
+/**
+ * GL状态缓存
+ * 记录当前程序、纹理、缓冲区绑定、混合/深度测试开关和已启用的顶点属性，状态相同时跳过GL调用；
+ * 同时统计每帧实际发出和被跳过的GL调用次数，作为每帧调用预算的度量。
+ * 每个EGL上下文（渲染器）一个实例，只能在GL线程中使用；上下文重建后需调用 reset()
+ */
+public final class GlState {
+
+    private static final int MAX_TEXTURE_UNITS = 8;
+    private static final int MAX_VERTEX_ATTRIBS = 16;
+    private static final int UNKNOWN = -1;
+
+    private int program;
+    private int activeUnit;
+    private final int[] textures = new int[MAX_TEXTURE_UNITS];
+    private int arrayBuffer;
+    private int elementBuffer;
+    private int framebuffer;
+    private int blend;
+    private int blendSrcRgb;
+    private int blendDstRgb;
+    private int blendSrcAlpha;
+    private int blendDstAlpha;
+    private int depthTest;
+    // 已启用的顶点属性位掩码
+    private int enabledAttribs;
+    // 各属性位置当前指向的缓冲区及其布局，相同时跳过 glVertexAttribPointer
+    private final int[] attribBuffer = new int[MAX_VERTEX_ATTRIBS];
+    private final int[] attribSize = new int[MAX_VERTEX_ATTRIBS];
+    private final int[] attribStride = new int[MAX_VERTEX_ATTRIBS];
+    private final int[] attribOffset = new int[MAX_VERTEX_ATTRIBS];
+
+    // 本帧统计
+    private int frameCalls;
+    private int frameSkipped;
+    private int frameDraws;
+    // 上一帧统计
+    private int lastFrameCalls;
+    private int lastFrameSkipped;
+    private int lastFrameDraws;
+
+    public GlState() {
+        reset();
+    }
+
+    // 上下文重建后实际状态未知，全部标记为未知，下一次设置一定会发出调用
+    public void reset() {
+        program = UNKNOWN;
+        activeUnit = UNKNOWN;
+        for (int i = 0; i < MAX_TEXTURE_UNITS; i++) {
+            textures[i] = UNKNOWN;
+        }
+        arrayBuffer = UNKNOWN;
+        elementBuffer = UNKNOWN;
+        framebuffer = UNKNOWN;
+        blend = UNKNOWN;
+        blendSrcRgb = UNKNOWN;
+        blendDstRgb = UNKNOWN;
+        blendSrcAlpha = UNKNOWN;
+        blendDstAlpha = UNKNOWN;
+        depthTest = UNKNOWN;
+        // 新上下文中所有顶点属性默认禁用
+        enabledAttribs = 0;
+        for (int i = 0; i < MAX_VERTEX_ATTRIBS; i++) {
+            attribBuffer[i] = UNKNOWN;
+        }
+    }
+
+    // 每帧开始时调用，保存上一帧的统计并清零
+    public void beginFrame() {
+        lastFrameCalls = frameCalls;
+        lastFrameSkipped = frameSkipped;
+        lastFrameDraws = frameDraws;
+        frameCalls = 0;
+        frameSkipped = 0;
+        frameDraws = 0;
+    }
+
+    // 记录不经过本类的GL调用（uniform、属性指针、缓冲区上传等）
+    public void countCall() {
+        frameCalls++;
+    }
+
+    public void countCalls(int count) {
+        frameCalls += count;
+    }
+
+    // 记录绘制调用
+    public void countDraw() {
+        frameCalls++;
+        frameDraws++;
+    }
+
+    public void useProgram(int id) {
+        if (program == id) {
+            frameSkipped++;
+            return;
+        }
+        GLES20.glUseProgram(id);
+        program = id;
+        frameCalls++;
+    }
+
+    public void useProgram(GlProgram glProgram) {
+        useProgram(glProgram.getId());
+    }
+
+    public void activeTexture(int unit) {
+        if (activeUnit == unit) {
+            frameSkipped++;
+            return;
+        }
+        GLES20.glActiveTexture(GLES20.GL_TEXTURE0 + unit);
+        activeUnit = unit;
+        frameCalls++;
+    }
+
+    // 绑定到指定纹理单元的 GL_TEXTURE_2D
+    public void bindTexture2D(int unit, int texture) {
+        if (unit < MAX_TEXTURE_UNITS && textures[unit] == texture) {
+            frameSkipped++;
+            return;
+        }
+        activeTexture(unit);
+        GLES20.glBindTexture(GLES20.GL_TEXTURE_2D, texture);
+        if (unit < MAX_TEXTURE_UNITS) {
+            textures[unit] = texture;
+        }
+        frameCalls++;
+    }
+
+    // 纹理被删除后清除记录，避免相同ID复用时被误跳过
+    public void forgetTexture(int texture) {
+        for (int i = 0; i < MAX_TEXTURE_UNITS; i++) {
+            if (textures[i] == texture) {
+                textures[i] = UNKNOWN;
+            }
+        }
+    }
+
+    public void bindArrayBuffer(int buffer) {
+        if (arrayBuffer == buffer) {
+            frameSkipped++;
+            return;
+        }
+        GLES20.glBindBuffer(GLES20.GL_ARRAY_BUFFER, buffer);
+        arrayBuffer = buffer;
+        frameCalls++;
+    }
+
+    public void bindElementBuffer(int buffer) {
+        if (elementBuffer == buffer) {
+            frameSkipped++;
+            return;
+        }
+        GLES20.glBindBuffer(GLES20.GL_ELEMENT_ARRAY_BUFFER, buffer);
+        elementBuffer = buffer;
+        frameCalls++;
+    }
+
+    public void bindFramebuffer(int buffer) {
+        if (framebuffer == buffer) {
+            frameSkipped++;
+            return;
+        }
+        GLES20.glBindFramebuffer(GLES20.GL_FRAMEBUFFER, buffer);
+        framebuffer = buffer;
+        frameCalls++;
+    }
+
+    public void setBlend(boolean enabled) {
+        int value = enabled ? 1 : 0;
+        if (blend == value) {
+            frameSkipped++;
+            return;
+        }
+        if (enabled) {
+            GLES20.glEnable(GLES20.GL_BLEND);
+        } else {
+            GLES20.glDisable(GLES20.GL_BLEND);
+        }
+        blend = value;
+        frameCalls++;
+    }
+
+    public void blendFunc(int src, int dst) {
+        blendFuncSeparate(src, dst, src, dst);
+    }
+
+    public void blendFuncSeparate(int srcRgb, int dstRgb, int srcAlpha, int dstAlpha) {
+        if (blendSrcRgb == srcRgb && blendDstRgb == dstRgb
+                && blendSrcAlpha == srcAlpha && blendDstAlpha == dstAlpha) {
+            frameSkipped++;
+            return;
+        }
+        GLES20.glBlendFuncSeparate(srcRgb, dstRgb, srcAlpha, dstAlpha);
+        blendSrcRgb = srcRgb;
+        blendDstRgb = dstRgb;
+        blendSrcAlpha = srcAlpha;
+        blendDstAlpha = dstAlpha;
+        frameCalls++;
+    }
+
+    public void setDepthTest(boolean enabled) {
+        int value = enabled ? 1 : 0;
+        if (depthTest == value) {
+            frameSkipped++;
+            return;
+        }
+        if (enabled) {
+            GLES20.glEnable(GLES20.GL_DEPTH_TEST);
+        } else {
+            GLES20.glDisable(GLES20.GL_DEPTH_TEST);
+        }
+        depthTest = value;
+        frameCalls++;
+    }
+
+    /**
+     * 只启用 mask 中的顶点属性（第 i 位对应位置 i），其余已启用的属性被禁用。
+     * 绘制前调用一次即可，属性在帧之间保持启用，不必每帧重复 enable/disable
+     */
+    public void useAttribs(int mask) {
+        int changed = enabledAttribs ^ mask;
+        if (changed == 0) {
+            frameSkipped++;
+            return;
+        }
+        for (int i = 0; changed != 0; i++, changed >>>= 1) {
+            if ((changed & 1) == 0) {
+                continue;
+            }
+            if ((mask & (1 << i)) != 0) {
+                GLES20.glEnableVertexAttribArray(i);
+            } else {
+                GLES20.glDisableVertexAttribArray(i);
+            }
+            frameCalls++;
+        }
+        enabledAttribs = mask;
+    }
+
+    // 从当前绑定的 GL_ARRAY_BUFFER 读取 float 顶点属性
+    public void vertexAttribPointer(int index, int size, int stride, int offset) {
+        if (index < 0) {
+            return;
+        }
+        if (index < MAX_VERTEX_ATTRIBS && attribBuffer[index] == arrayBuffer
+                && attribSize[index] == size && attribStride[index] == stride && attribOffset[index] == offset) {
+            frameSkipped++;
+            return;
+        }
+        GLES20.glVertexAttribPointer(index, size, GLES20.GL_FLOAT, false, stride, offset);
+        if (index < MAX_VERTEX_ATTRIBS) {
+            attribBuffer[index] = arrayBuffer;
+            attribSize[index] = size;
+            attribStride[index] = stride;
+            attribOffset[index] = offset;
+        }
+        frameCalls++;
+    }
+
+    // 从客户端内存读取 float 顶点属性，每次都要发出调用
+    public void vertexAttribPointer(int index, int size, int stride, Buffer data) {
+        if (index < 0) {
+            return;
+        }
+        bindArrayBuffer(0);
+        GLES20.glVertexAttribPointer(index, size, GLES20.GL_FLOAT, false, stride, data);
+        if (index < MAX_VERTEX_ATTRIBS) {
+            attribBuffer[index] = UNKNOWN;
+        }
+        frameCalls++;
+    }
+
+    // 缓冲区被删除后清除记录，避免相同ID复用时被误跳过
+    public void forgetBuffer(int buffer) {
+        if (arrayBuffer == buffer) {
+            arrayBuffer = UNKNOWN;
+        }
+        if (elementBuffer == buffer) {
+            elementBuffer = UNKNOWN;
+        }
+        for (int i = 0; i < MAX_VERTEX_ATTRIBS; i++) {
+            if (attribBuffer[i] == buffer) {
+                attribBuffer[i] = UNKNOWN;
+            }
+        }
+    }
+
+    // 属性位置对应的掩码位，位置无效(-1)时为0
+    public static int attribBit(int location) {
+        return location >= 0 && location < 32 ? 1 << location : 0;
+    }
+
+    public int getFrameCalls() {
+        return frameCalls;
+    }
+
+    public int getLastFrameCalls() {
+        return lastFrameCalls;
+    }
+
+    public int getLastFrameSkipped() {
+        return lastFrameSkipped;
+    }
+
+    public int getLastFrameDraws() {
+        return lastFrameDraws;
+    }
+}
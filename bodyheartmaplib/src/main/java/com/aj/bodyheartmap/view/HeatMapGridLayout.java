@@ -0,0 +1,117 @@
+package com.aj.bodyheartmap.view;
+
+/**
+ * 多人体网格的布局计算，HeatMapGridRenderer 绘制与 HeatMapGridView 点击检测共用，保证两者一致。
+ * 视图按 列数 x 行数 等分为格子，每个格子中的人体按包围盒等比缩放并居中。
+ * 格子的变换为 屏幕坐标（像素，原点在左下角，y 向上）= 模型坐标 * scale + (tx, ty)。
+ * 列数为0时自动选择使人体显示最大的列数
+ */
+public final class HeatMapGridLayout {
+
+    private int count;
+    private int columns;
+    private int rows;
+    private int width;
+    private int height;
+    private float cellWidth;
+    private float cellHeight;
+    private float scale;
+    // 人体在模型坐标中的包围盒中心
+    private float bodyCenterX;
+    private float bodyCenterY;
+
+    /**
+     * 重新计算布局；bodyRect 为人体在模型坐标中的包围盒 minX, maxX, minY, maxY，
+     * padding 为格子四周留白（像素）
+     */
+    public void update(int count, int requestedColumns, int width, int height, float padding, float[] bodyRect) {
+        this.count = Math.max(0, count);
+        this.width = width;
+        this.height = height;
+        float bodyWidth = Math.max(bodyRect[1] - bodyRect[0], 1e-6f);
+        float bodyHeight = Math.max(bodyRect[3] - bodyRect[2], 1e-6f);
+        bodyCenterX = (bodyRect[0] + bodyRect[1]) / 2;
+        bodyCenterY = (bodyRect[2] + bodyRect[3]) / 2;
+
+        columns = requestedColumns;
+        if (columns <= 0) {
+            // 逐个尝试列数，取人体缩放最大的一种
+            float best = -1;
+            for (int c = 1; c <= Math.max(1, this.count); c++) {
+                int r = (this.count + c - 1) / c;
+                float s = fitScale(width / (float) c, height / (float) Math.max(1, r), padding, bodyWidth, bodyHeight);
+                if (s > best) {
+                    best = s;
+                    columns = c;
+                }
+            }
+        }
+        rows = Math.max(1, (this.count + columns - 1) / columns);
+        cellWidth = width / (float) columns;
+        cellHeight = height / (float) rows;
+        scale = fitScale(cellWidth, cellHeight, padding, bodyWidth, bodyHeight);
+    }
+
+    private static float fitScale(float cellWidth, float cellHeight, float padding, float bodyWidth, float bodyHeight) {
+        return Math.max(0.0f, Math.min((cellWidth - 2 * padding) / bodyWidth, (cellHeight - 2 * padding) / bodyHeight));
+    }
+
+    public int getCount() {
+        return count;
+    }
+
+    public int getColumns() {
+        return columns;
+    }
+
+    public int getRows() {
+        return rows;
+    }
+
+    // 每个模型单位对应的像素数，所有格子相同
+    public float getScale() {
+        return scale;
+    }
+
+    // 格子的变换写入 out[offset]：tx, ty, scale（屏幕坐标y向上）
+    public void cellTransform(int cell, float[] out, int offset) {
+        int column = cell % columns;
+        int row = cell / columns;
+        float centerX = (column + 0.5f) * cellWidth;
+        float centerY = height - (row + 0.5f) * cellHeight;
+        out[offset] = centerX - bodyCenterX * scale;
+        out[offset + 1] = centerY - bodyCenterY * scale;
+        out[offset + 2] = scale;
+    }
+
+    /**
+     * 视图坐标 (x, y)（像素，原点在左上角）所在的格子，不在任何格子内时返回-1
+     */
+    public int cellAt(float x, float y) {
+        if (count == 0 || x < 0 || y < 0 || x >= width || y >= height) {
+            return -1;
+        }
+        int column = Math.min(columns - 1, (int) (x / cellWidth));
+        int row = Math.min(rows - 1, (int) (y / cellHeight));
+        int cell = row * columns + column;
+        return cell < count ? cell : -1;
+    }
+
+    // 视图坐标 (x, y) 换算为格子 cell 中人体的模型坐标，写入 out[0], out[1]
+    public void toModel(int cell, float x, float y, float[] out) {
+        int column = cell % columns;
+        int row = cell / columns;
+        float centerX = (column + 0.5f) * cellWidth;
+        float centerY = (row + 0.5f) * cellHeight;
+        out[0] = bodyCenterX + (x - centerX) / scale;
+        out[1] = bodyCenterY - (y - centerY) / scale;
+    }
+
+    // 人体在模型坐标中的包围盒 minX, maxX, minY, maxY
+    public static float[] bodyRect(BodyMesh mesh) {
+        float[] bounds = mesh.getBoundaries();
+        return new float[]{
+                mesh.toModelX(bounds[0]), mesh.toModelX(bounds[1]),
+                mesh.toModelY(bounds[3]), mesh.toModelY(bounds[2])};
+    }
+}
@@ -0,0 +1,789 @@
+package com.aj.bodyheartmap.view;
+
+import android.content.Context;
+import android.opengl.GLES20;
+import android.opengl.GLES30;
+import android.opengl.GLSurfaceView;
+import android.util.Log;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicReference;
+
+import javax.microedition.khronos.egl.EGLConfig;
+import javax.microedition.khronos.opengles.GL10;
+
+/**
+ * 多人体网格渲染器：在一个 surface 中绘制 N 个人体，共用一份网格和一组GPU缓冲。
+ * OpenGL ES 3.0 下使用实例化绘制：每个实例的变换和透明度放在实例属性中（glVertexAttribDivisor），
+ * 各格子各部位的温度放在 R32F 数据纹理中（行为格子，列为网格部位），顶点着色器按 gl_InstanceID 和区域ID取值，
+ * 全部人体一次 glDrawElementsInstanced 完成；温度变化只上传有变化的行。
+ * OpenGL ES 2.0 下退回逐格绘制：共用程序、缓冲和纹理绑定，每个格子只更新一个变换 uniform 和区域温度数组。
+ * 布局见 HeatMapGridLayout
+ */
+public class HeatMapGridRenderer implements GLSurfaceView.Renderer {
+    private static final String TAG = "HeatMapGridRenderer";
+
+    // 格子数上限，受数据纹理高度限制（GL_MAX_TEXTURE_SIZE 至少为2048）
+    public static final int MAX_CELLS = 1024;
+    private static final float DEFAULT_TEMPERATURE = 36.5f;
+    private static final int FLOATS_PER_INSTANCE = 4;
+
+    private final GLSurfaceView surfaceView;
+
+    // 人体模型，只使用其中的共享网格；后台加载完成后在GL线程接管
+    private volatile BodyModel bodyModel;
+    private final AtomicReference<BodyModel> pendingModel = new AtomicReference<>();
+    private volatile HeatMapView.OnModelReadyListener onModelReadyListener;
+    private volatile boolean released = false;
+    // 视图分离期间完成的加载被丢弃，重新附加时补加载
+    private volatile boolean loadDropped = false;
+    private final Context context;
+
+    // 生产者一侧的完整状态，只在 producerLock 内访问；温度按 格子 * BODY_PARTS 存放
+    private final Object producerLock = new Object();
+    private int cellCount;
+    private int columns;
+    private float padding;
+    private float[] temperatures = new float[0];
+    private float[] cellAlphas = new float[0];
+    private final TripleBuffer<GridSnapshot> snapshots = new TripleBuffer<>(
+            new GridSnapshot(), new GridSnapshot(), new GridSnapshot());
+
+    // 显示参数
+    private volatile ColorPalette palette = ColorPalette.getDefault();
+    private volatile float rangeMin = HeatMapRenderer.DEFAULT_RANGE_MIN;
+    private volatile float rangeMax = HeatMapRenderer.DEFAULT_RANGE_MAX;
+    private volatile float alpha = 0.7f;
+    private volatile boolean lodEnabled = true;
+
+    // GL线程状态
+    private final GlState glState = new GlState();
+    private final BodyMeshVbo meshVbo = new BodyMeshVbo(glState);
+    private final HeatMapGridLayout layout = new HeatMapGridLayout();
+    private final Map<ColorPalette, Integer> paletteTextures = new HashMap<>();
+    private GlProgram program;
+    // 是否使用实例化绘制，否则逐格绘制
+    private boolean instanced;
+    private int positionHandle;
+    private int regionIdHandle;
+    private int cellHandle;
+    private int viewportScaleHandle;
+    private int alphaHandle;
+    private int rangeHandle;
+    private int regionTempsHandle;
+    private boolean uintIndicesSupported;
+    private int surfaceWidth;
+    private int surfaceHeight;
+
+    // GL线程最近一次应用的快照
+    private BodyModel appliedModel;
+    private int appliedCount = -1;
+    private int appliedColumns;
+    private float appliedPadding;
+    private float[] appliedTemperatures = new float[0];
+    private float[] appliedAlphas = new float[0];
+    // BODY_PARTS 下标对应的网格部位下标
+    private int[] partSlots = new int[0];
+    private int regionCount;
+    private boolean layoutDirty = true;
+
+    // 每个格子一行区域温度（网格部位顺序），数据纹理和逐格 uniform 共用
+    private float[] regionTemps = new float[0];
+    private FloatBuffer regionTempBuffer;
+    private int dataTexture;
+    private int dataTextureRows = -1;
+    // 尚未上传的数据纹理行 [dirtyRowStart, dirtyRowEnd)
+    private int dirtyRowStart;
+    private int dirtyRowEnd;
+
+    // 实例属性 tx, ty, scale, alpha
+    private float[] instanceData = new float[0];
+    private FloatBuffer instanceBuffer;
+    private int instanceVbo;
+    private boolean instanceDirty = true;
+
+    private float uploadedAlpha = Float.NaN;
+    private float uploadedRangeScale = Float.NaN;
+    private float uploadedRangeBias = Float.NaN;
+    private int uploadedViewportWidth = -1;
+    private int uploadedViewportHeight = -1;
+    private int lodLevel = -1;
+
+    // 生产者发布的完整状态
+    private static final class GridSnapshot {
+        int count;
+        int columns;
+        float padding;
+        float[] temperatures = new float[0];
+        float[] alphas = new float[0];
+    }
+
+    public HeatMapGridRenderer(Context context, GLSurfaceView surfaceView) {
+        this.context = context;
+        this.surfaceView = surfaceView;
+        loadModel();
+    }
+
+    private void loadModel() {
+        BodyModelLoader.loadAsync(context, new BodyModelLoader.Callback() {
+            @Override
+            public void onLoaded(BodyModel model) {
+                BodyModel previous = pendingModel.getAndSet(model);
+                if (previous != null) {
+                    previous.release();
+                }
+                // 视图已分离（可能与 release() 同时发生），取回并归还共享网格
+                if (released && pendingModel.compareAndSet(model, null)) {
+                    loadDropped = true;
+                    model.release();
+                    return;
+                }
+                surfaceView.requestRender();
+            }
+
+            @Override
+            public void onFailed(final String template, final Throwable error) {
+                final HeatMapView.OnModelReadyListener listener = onModelReadyListener;
+                if (listener == null) {
+                    return;
+                }
+                surfaceView.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        listener.onModelLoadFailed(template, error);
+                    }
+                });
+            }
+        });
+    }
+
+    // 归还共享网格的引用（视图从窗口分离时调用），重新附加时调用 restore()
+    public synchronized void release() {
+        if (released) {
+            return;
+        }
+        released = true;
+        BodyModel model = bodyModel;
+        if (model != null) {
+            model.release();
+        }
+        model = pendingModel.getAndSet(null);
+        if (model != null) {
+            model.release();
+        }
+    }
+
+    // 视图重新附加到窗口：重新登记当前模型对共享网格的引用，补加载分离期间被丢弃的模型
+    public synchronized void restore() {
+        if (!released) {
+            return;
+        }
+        released = false;
+        BodyModel model = bodyModel;
+        if (model != null) {
+            model.reacquire();
+        }
+        if (loadDropped) {
+            loadDropped = false;
+            loadModel();
+        }
+    }
+
+    public boolean isModelReady() {
+        return bodyModel != null;
+    }
+
+    public BodyModel getBodyModel() {
+        return bodyModel;
+    }
+
+    public void setOnModelReadyListener(HeatMapView.OnModelReadyListener listener) {
+        this.onModelReadyListener = listener;
+        if (listener != null && bodyModel != null) {
+            notifyModelReady(bodyModel);
+        }
+    }
+
+    // 在GL线程中接管后台加载完成的模型
+    private void takePendingModel() {
+        BodyModel model = pendingModel.getAndSet(null);
+        if (model == null) {
+            return;
+        }
+        BodyModel previous = bodyModel;
+        bodyModel = model;
+        if (previous != null) {
+            if (previous.getMesh() != model.getMesh()) {
+                meshVbo.release();
+            }
+            previous.release();
+        }
+        if (released) {
+            model.release();
+        }
+        Log.i(TAG, "人体模型已就绪，总顶点数: " + model.getTotalVertices());
+        notifyModelReady(model);
+    }
+
+    private void notifyModelReady(final BodyModel model) {
+        final HeatMapView.OnModelReadyListener listener = onModelReadyListener;
+        if (listener == null) {
+            return;
+        }
+        surfaceView.post(new Runnable() {
+            @Override
+            public void run() {
+                listener.onModelReady(model);
+            }
+        });
+    }
+
+    // 设置格子数（人数），新增格子的温度为默认值；已有格子的数据保留，可在任意线程调用
+    public void setCellCount(int count) {
+        if (count < 0 || count > MAX_CELLS) {
+            Log.e(TAG, "无效的格子数: " + count + "，范围 0-" + MAX_CELLS);
+            return;
+        }
+        int parts = BodyModel.BODY_PARTS.length;
+        synchronized (producerLock) {
+            float[] newTemperatures = Arrays.copyOf(temperatures, count * parts);
+            float[] newAlphas = Arrays.copyOf(cellAlphas, count);
+            for (int i = cellCount * parts; i < newTemperatures.length; i++) {
+                newTemperatures[i] = DEFAULT_TEMPERATURE;
+            }
+            for (int i = cellCount; i < count; i++) {
+                newAlphas[i] = 1.0f;
+            }
+            temperatures = newTemperatures;
+            cellAlphas = newAlphas;
+            cellCount = count;
+            publish();
+        }
+    }
+
+    public int getCellCount() {
+        synchronized (producerLock) {
+            return cellCount;
+        }
+    }
+
+    // 列数，0 表示按视图宽高比自动选择
+    public void setColumns(int columns) {
+        if (columns < 0) {
+            Log.e(TAG, "无效的列数: " + columns);
+            return;
+        }
+        synchronized (producerLock) {
+            this.columns = columns;
+            publish();
+        }
+    }
+
+    public int getColumns() {
+        synchronized (producerLock) {
+            return columns;
+        }
+    }
+
+    // 格子四周的留白（像素）
+    public void setPadding(float padding) {
+        synchronized (producerLock) {
+            this.padding = Math.max(0.0f, padding);
+            publish();
+        }
+    }
+
+    public float getPadding() {
+        synchronized (producerLock) {
+            return padding;
+        }
+    }
+
+    // 设置一个格子全部部位的温度，按 BodyModel.BODY_PARTS 顺序
+    public void setCellTemperatures(int cell, float[] values) {
+        int parts = BodyModel.BODY_PARTS.length;
+        if (values == null || values.length < parts) {
+            Log.e(TAG, "温度数据不足，需要至少 " + parts + " 个值");
+            return;
+        }
+        synchronized (producerLock) {
+            if (cell < 0 || cell >= cellCount) {
+                Log.e(TAG, "无效的格子: " + cell);
+                return;
+            }
+            System.arraycopy(values, 0, temperatures, cell * parts, parts);
+            publish();
+        }
+    }
+
+    // 设置一个格子单个部位的温度，partId 为 BodyModel.BODY_PARTS 下标
+    public void setPartTemperature(int cell, int partId, float temperature) {
+        int parts = BodyModel.BODY_PARTS.length;
+        if (partId < 0 || partId >= parts) {
+            Log.e(TAG, "无效的部位ID: " + partId);
+            return;
+        }
+        synchronized (producerLock) {
+            if (cell < 0 || cell >= cellCount) {
+                Log.e(TAG, "无效的格子: " + cell);
+                return;
+            }
+            temperatures[cell * parts + partId] = temperature;
+            publish();
+        }
+    }
+
+    // 设置一个格子的透明度（例如离线的病人淡化显示），与全局透明度相乘
+    public void setCellAlpha(int cell, float cellAlpha) {
+        synchronized (producerLock) {
+            if (cell < 0 || cell >= cellCount) {
+                Log.e(TAG, "无效的格子: " + cell);
+                return;
+            }
+            cellAlphas[cell] = Math.max(0.0f, Math.min(1.0f, cellAlpha));
+            publish();
+        }
+    }
+
+    // 把完整状态写入空闲槽位并发布，调用方需持有 producerLock
+    private void publish() {
+        GridSnapshot snapshot = snapshots.getWriteBuffer();
+        if (snapshot.temperatures.length != temperatures.length) {
+            snapshot.temperatures = new float[temperatures.length];
+            snapshot.alphas = new float[cellAlphas.length];
+        }
+        System.arraycopy(temperatures, 0, snapshot.temperatures, 0, temperatures.length);
+        System.arraycopy(cellAlphas, 0, snapshot.alphas, 0, cellAlphas.length);
+        snapshot.count = cellCount;
+        snapshot.columns = columns;
+        snapshot.padding = padding;
+        snapshots.publish();
+    }
+
+    public void setPalette(ColorPalette palette) {
+        if (palette != null) {
+            this.palette = palette;
+        }
+    }
+
+    public void setTemperatureRange(float min, float max) {
+        if (!(max > min)) {
+            Log.e(TAG, "无效的温度范围: " + min + " - " + max);
+            return;
+        }
+        rangeMin = min;
+        rangeMax = max;
+    }
+
+    public void setAlpha(float alpha) {
+        this.alpha = alpha;
+    }
+
+    // 格子较小时按屏幕尺寸使用简化轮廓
+    public void setLodEnabled(boolean enabled) {
+        lodEnabled = enabled;
+    }
+
+    public boolean isInstanced() {
+        return instanced;
+    }
+
+    public GlState getGlState() {
+        return glState;
+    }
+
+    @Override
+    public void onSurfaceCreated(GL10 gl, EGLConfig config) {
+        glState.reset();
+        paletteTextures.clear();
+        meshVbo.reset();
+        dataTexture = 0;
+        dataTextureRows = -1;
+        dirtyRowStart = 0;
+        dirtyRowEnd = 0;
+        instanceVbo = 0;
+        instanceDirty = true;
+        uploadedAlpha = Float.NaN;
+        uploadedRangeScale = Float.NaN;
+        uploadedRangeBias = Float.NaN;
+        uploadedViewportWidth = -1;
+        uploadedViewportHeight = -1;
+
+        GLES20.glClearColor(0.0f, 0.0f, 0.0f, 0.0f);
+        glState.setDepthTest(true);
+        glState.setBlend(true);
+        // 与 HeatMapRenderer 相同，帧缓冲得到预乘的 (c*a, a)
+        glState.blendFuncSeparate(GLES20.GL_SRC_ALPHA, GLES20.GL_ONE_MINUS_SRC_ALPHA,
+                GLES20.GL_ONE, GLES20.GL_ONE_MINUS_SRC_ALPHA);
+
+        String version = GLES20.glGetString(GLES20.GL_VERSION);
+        String extensions = GLES20.glGetString(GLES20.GL_EXTENSIONS);
+        uintIndicesSupported = (version != null && version.startsWith("OpenGL ES 3"))
+                || (extensions != null && extensions.contains("GL_OES_element_index_uint"));
+
+        // 优先实例化程序，编译失败（或不是ES3上下文）时退回逐格绘制
+        program = null;
+        instanced = false;
+        if (version != null && version.startsWith("OpenGL ES 3")) {
+            program = GlProgram.create(getInstancedVertexShaderCode(), getInstancedFragmentShaderCode());
+            instanced = program != null;
+        }
+        if (program == null) {
+            program = GlProgram.create(getBatchedVertexShaderCode(), getBatchedFragmentShaderCode());
+        }
+        if (program == null) {
+            Log.e(TAG, "着色器程序创建失败，无法渲染");
+            return;
+        }
+        positionHandle = program.attrib("vPosition");
+        regionIdHandle = program.attrib("aRegionId");
+        cellHandle = program.uniform("uCell");
+        viewportScaleHandle = program.uniform("uViewportScale");
+        alphaHandle = program.uniform("uAlpha");
+        rangeHandle = program.uniform("uRange");
+        regionTempsHandle = program.uniform("uRegionTemps");
+        glState.useProgram(program);
+        // 颜色映射使用纹理单元0，温度数据纹理使用纹理单元1
+        GLES20.glUniform1i(program.uniform("uColorMap"), 0);
+        if (instanced) {
+            cellHandle = program.attrib("aCell");
+            GLES20.glUniform1i(program.uniform("uTemperatures"), 1);
+            // 实例属性每个实例前进一次
+            GLES30.glVertexAttribDivisor(cellHandle, 1);
+        }
+        Log.i(TAG, "多人体渲染模式: " + (instanced ? "实例化" : "逐格绘制") + ", " + version);
+    }
+
+    @Override
+    public void onSurfaceChanged(GL10 gl, int width, int height) {
+        GLES20.glViewport(0, 0, width, height);
+        surfaceWidth = width;
+        surfaceHeight = height;
+        layoutDirty = true;
+    }
+
+    @Override
+    public void onDrawFrame(GL10 gl) {
+        glState.beginFrame();
+        GLES20.glClear(GLES20.GL_COLOR_BUFFER_BIT | GLES20.GL_DEPTH_BUFFER_BIT);
+        glState.countCall();
+
+        takePendingModel();
+        BodyModel model = bodyModel;
+        if (model == null || program == null) {
+            return;
+        }
+        if (!meshVbo.isUploaded()) {
+            meshVbo.upload(model);
+        }
+        if (!meshVbo.canDrawElements(uintIndicesSupported)) {
+            return;
+        }
+        applySnapshot(model);
+        if (!instanced && regionCount > HeatMapRenderer.MAX_REGIONS) {
+            Log.e(TAG, "部位数超过 " + HeatMapRenderer.MAX_REGIONS + "，无法逐格绘制");
+            return;
+        }
+        if (layoutDirty) {
+            updateLayout(model);
+        }
+        if (appliedCount == 0) {
+            return;
+        }
+
+        glState.useProgram(program);
+        uploadUniforms();
+        glState.bindTexture2D(0, colorMapTexture(palette));
+        meshVbo.bindPosition(positionHandle);
+        meshVbo.bindRegionId(regionIdHandle);
+
+        // 所有格子大小相同，按格子的屏幕尺寸统一选择细节级别
+        BodyMeshLod lod = model.getLod();
+        int level = lodEnabled && lod != null ? lod.selectLevel(layout.getScale()) : 0;
+        if (level != lodLevel) {
+            lodLevel = level;
+            Log.d(TAG, "轮廓细节级别: " + level + ", 每单位像素: " + layout.getScale());
+        }
+
+        if (instanced) {
+            uploadInstances();
+            uploadDataRows();
+            glState.bindTexture2D(1, dataTexture);
+            glState.bindArrayBuffer(instanceVbo);
+            glState.vertexAttribPointer(cellHandle, FLOATS_PER_INSTANCE, 0, 0);
+            glState.useAttribs(GlState.attribBit(positionHandle) | GlState.attribBit(regionIdHandle)
+                    | GlState.attribBit(cellHandle));
+            meshVbo.drawElementsInstanced(level, appliedCount);
+        } else {
+            glState.useAttribs(GlState.attribBit(positionHandle) | GlState.attribBit(regionIdHandle));
+            for (int cell = 0; cell < appliedCount; cell++) {
+                int offset = cell * FLOATS_PER_INSTANCE;
+                GLES20.glUniform4f(cellHandle, instanceData[offset], instanceData[offset + 1],
+                        instanceData[offset + 2], instanceData[offset + 3]);
+                GLES20.glUniform1fv(regionTempsHandle, regionCount, regionTemps, cell * regionCount);
+                glState.countCalls(2);
+                meshVbo.drawElements(level);
+            }
+        }
+    }
+
+    // 取最新快照，只把有变化的格子写入区域温度；模型更换或格子数变化时整体写入
+    private void applySnapshot(BodyModel model) {
+        if (!snapshots.update() && appliedModel == model) {
+            return;
+        }
+        GridSnapshot snapshot = snapshots.getReadBuffer();
+        int parts = BodyModel.BODY_PARTS.length;
+        boolean full = appliedModel != model || snapshot.count != appliedCount;
+        if (appliedModel != model) {
+            BodyMesh mesh = model.getMesh();
+            regionCount = mesh.getPartCount();
+            partSlots = new int[parts];
+            for (int i = 0; i < parts; i++) {
+                partSlots[i] = mesh.indexOfPart(BodyModel.BODY_PARTS[i]);
+            }
+            dataTextureRows = -1;
+            layoutDirty = true;
+        }
+        if (full) {
+            int count = snapshot.count;
+            regionTemps = new float[count * regionCount];
+            Arrays.fill(regionTemps, DEFAULT_TEMPERATURE);
+            regionTempBuffer = ByteBuffer.allocateDirect(Math.max(1, regionTemps.length) * 4)
+                    .order(ByteOrder.nativeOrder()).asFloatBuffer();
+            appliedTemperatures = new float[count * parts];
+            appliedAlphas = new float[count];
+            instanceData = new float[count * FLOATS_PER_INSTANCE];
+            instanceBuffer = ByteBuffer.allocateDirect(Math.max(1, instanceData.length) * 4)
+                    .order(ByteOrder.nativeOrder()).asFloatBuffer();
+            layoutDirty = true;
+        }
+        if (full || snapshot.columns != appliedColumns || snapshot.padding != appliedPadding) {
+            layoutDirty = true;
+        }
+
+        for (int cell = 0; cell < snapshot.count; cell++) {
+            boolean changed = full;
+            for (int i = cell * parts, end = i + parts; i < end && !changed; i++) {
+                changed = snapshot.temperatures[i] != appliedTemperatures[i];
+            }
+            if (changed) {
+                for (int i = 0; i < parts; i++) {
+                    if (partSlots[i] >= 0) {
+                        regionTemps[cell * regionCount + partSlots[i]] = snapshot.temperatures[cell * parts + i];
+                    }
+                }
+                markRowDirty(cell);
+            }
+            if (full || snapshot.alphas[cell] != appliedAlphas[cell]) {
+                instanceData[cell * FLOATS_PER_INSTANCE + 3] = snapshot.alphas[cell];
+                instanceDirty = true;
+            }
+        }
+        System.arraycopy(snapshot.temperatures, 0, appliedTemperatures, 0, appliedTemperatures.length);
+        System.arraycopy(snapshot.alphas, 0, appliedAlphas, 0, appliedAlphas.length);
+        appliedCount = snapshot.count;
+        appliedColumns = snapshot.columns;
+        appliedPadding = snapshot.padding;
+        appliedModel = model;
+    }
+
+    private void markRowDirty(int row) {
+        if (dirtyRowStart >= dirtyRowEnd) {
+            dirtyRowStart = row;
+            dirtyRowEnd = row + 1;
+        } else {
+            dirtyRowStart = Math.min(dirtyRowStart, row);
+            dirtyRowEnd = Math.max(dirtyRowEnd, row + 1);
+        }
+    }
+
+    // 重新计算各格子的变换，写入实例数据
+    private void updateLayout(BodyModel model) {
+        layoutDirty = false;
+        layout.update(appliedCount, appliedColumns, surfaceWidth, surfaceHeight, appliedPadding,
+                HeatMapGridLayout.bodyRect(model.getMesh()));
+        for (int cell = 0; cell < appliedCount; cell++) {
+            layout.cellTransform(cell, instanceData, cell * FLOATS_PER_INSTANCE);
+        }
+        instanceDirty = true;
+    }
+
+    // uniform 只在变化后上传
+    private void uploadUniforms() {
+        if (uploadedAlpha != alpha) {
+            uploadedAlpha = alpha;
+            GLES20.glUniform1f(alphaHandle, uploadedAlpha);
+            glState.countCall();
+        }
+        float min = rangeMin;
+        float max = rangeMax;
+        float scale = 1.0f / (max - min);
+        float bias = -min * scale;
+        if (uploadedRangeScale != scale || uploadedRangeBias != bias) {
+            uploadedRangeScale = scale;
+            uploadedRangeBias = bias;
+            GLES20.glUniform2f(rangeHandle, scale, bias);
+            glState.countCall();
+        }
+        if (uploadedViewportWidth != surfaceWidth || uploadedViewportHeight != surfaceHeight) {
+            uploadedViewportWidth = surfaceWidth;
+            uploadedViewportHeight = surfaceHeight;
+            GLES20.glUniform2f(viewportScaleHandle, 2.0f / Math.max(1, surfaceWidth), 2.0f / Math.max(1, surfaceHeight));
+            glState.countCall();
+        }
+    }
+
+    // 实例属性有变化时整体上传（每个格子16字节）
+    private void uploadInstances() {
+        if (instanceVbo == 0) {
+            int[] ids = new int[1];
+            GLES20.glGenBuffers(1, ids, 0);
+            instanceVbo = ids[0];
+            instanceDirty = true;
+        }
+        if (!instanceDirty) {
+            return;
+        }
+        instanceDirty = false;
+        instanceBuffer.clear();
+        instanceBuffer.put(instanceData, 0, instanceData.length);
+        instanceBuffer.position(0);
+        glState.bindArrayBuffer(instanceVbo);
+        GLES20.glBufferData(GLES20.GL_ARRAY_BUFFER, instanceData.length * 4, instanceBuffer, GLES20.GL_DYNAMIC_DRAW);
+        glState.countCall();
+    }
+
+    // 格子数或网格变化时重建数据纹理，否则只上传有变化的行
+    private void uploadDataRows() {
+        if (dataTexture == 0) {
+            int[] textures = new int[1];
+            GLES20.glGenTextures(1, textures, 0);
+            dataTexture = textures[0];
+            glState.bindTexture2D(1, dataTexture);
+            GLES20.glTexParameteri(GLES20.GL_TEXTURE_2D, GLES20.GL_TEXTURE_MIN_FILTER, GLES20.GL_NEAREST);
+            GLES20.glTexParameteri(GLES20.GL_TEXTURE_2D, GLES20.GL_TEXTURE_MAG_FILTER, GLES20.GL_NEAREST);
+            GLES20.glTexParameteri(GLES20.GL_TEXTURE_2D, GLES20.GL_TEXTURE_WRAP_S, GLES20.GL_CLAMP_TO_EDGE);
+            GLES20.glTexParameteri(GLES20.GL_TEXTURE_2D, GLES20.GL_TEXTURE_WRAP_T, GLES20.GL_CLAMP_TO_EDGE);
+            glState.countCalls(5);
+            dataTextureRows = -1;
+        }
+        if (dataTextureRows != appliedCount) {
+            regionTempBuffer.clear();
+            regionTempBuffer.put(regionTemps, 0, regionTemps.length);
+            regionTempBuffer.position(0);
+            glState.bindTexture2D(1, dataTexture);
+            GLES20.glTexImage2D(GLES20.GL_TEXTURE_2D, 0, GLES30.GL_R32F, regionCount, appliedCount, 0,
+                    GLES30.GL_RED, GLES20.GL_FLOAT, regionTempBuffer);
+            glState.countCall();
+            dataTextureRows = appliedCount;
+            dirtyRowStart = 0;
+            dirtyRowEnd = 0;
+            return;
+        }
+        if (dirtyRowStart >= dirtyRowEnd) {
+            return;
+        }
+        int start = dirtyRowStart * regionCount;
+        int length = (dirtyRowEnd - dirtyRowStart) * regionCount;
+        regionTempBuffer.clear();
+        regionTempBuffer.put(regionTemps, start, length);
+        regionTempBuffer.position(0);
+        glState.bindTexture2D(1, dataTexture);
+        GLES20.glTexSubImage2D(GLES20.GL_TEXTURE_2D, 0, 0, dirtyRowStart, regionCount, dirtyRowEnd - dirtyRowStart,
+                GLES30.GL_RED, GLES20.GL_FLOAT, regionTempBuffer);
+        glState.countCall();
+        dirtyRowStart = 0;
+        dirtyRowEnd = 0;
+    }
+
+    // 调色板对应的颜色映射纹理，不存在时创建
+    private int colorMapTexture(ColorPalette palette) {
+        Integer cached = paletteTextures.get(palette);
+        if (cached != null) {
+            return cached;
+        }
+        int[] textures = new int[1];
+        GLES20.glGenTextures(1, textures, 0);
+        int texture = textures[0];
+        glState.bindTexture2D(0, texture);
+        GLES20.glTexParameteri(GLES20.GL_TEXTURE_2D, GLES20.GL_TEXTURE_MIN_FILTER, GLES20.GL_LINEAR);
+        GLES20.glTexParameteri(GLES20.GL_TEXTURE_2D, GLES20.GL_TEXTURE_MAG_FILTER, GLES20.GL_LINEAR);
+        GLES20.glTexParameteri(GLES20.GL_TEXTURE_2D, GLES20.GL_TEXTURE_WRAP_S, GLES20.GL_CLAMP_TO_EDGE);
+        GLES20.glTexParameteri(GLES20.GL_TEXTURE_2D, GLES20.GL_TEXTURE_WRAP_T, GLES20.GL_CLAMP_TO_EDGE);
+        GLES20.glTexImage2D(GLES20.GL_TEXTURE_2D, 0, GLES20.GL_RGBA, ColorPalette.LUT_SIZE, 1, 0,
+                GLES20.GL_RGBA, GLES20.GL_UNSIGNED_BYTE, palette.getLut());
+        glState.countCalls(5);
+        paletteTextures.put(palette, texture);
+        return texture;
+    }
+
+    // 实例化绘制的顶点着色器：aCell 为实例属性 (tx, ty, scale, alpha)，温度按 (区域ID, 实例号) 从数据纹理读取
+    private static String getInstancedVertexShaderCode() {
+        return
+            "#version 300 es\n" +
+            "uniform vec2 uViewportScale;\n" +
+            "uniform highp sampler2D uTemperatures;\n" +
+            "in vec4 vPosition;\n" +
+            "in float aRegionId;\n" +
+            "in vec4 aCell;\n" +
+            "out vec2 texCoord;\n" +
+            "void main() {\n" +
+            "  vec2 screen = vPosition.xy * aCell.z + aCell.xy;\n" +
+            "  gl_Position = vec4(screen * uViewportScale - 1.0, 0.0, 1.0);\n" +
+            "  float temperature = texelFetch(uTemperatures, ivec2(int(aRegionId + 0.5), gl_InstanceID), 0).r;\n" +
+            "  texCoord = vec2(temperature, aCell.w);\n" +
+            "}\n";
+    }
+
+    private static String getInstancedFragmentShaderCode() {
+        return
+            "#version 300 es\n" +
+            "precision mediump float;\n" +
+            "in vec2 texCoord;\n" +
+            "uniform sampler2D uColorMap;\n" +
+            "uniform float uAlpha;\n" +
+            "uniform vec2 uRange;\n" +
+            "out vec4 fragColor;\n" +
+            "void main() {\n" +
+            "  float normalizedTemp = clamp(texCoord.x * uRange.x + uRange.y, 0.0, 1.0);\n" +
+            "  vec4 color = texture(uColorMap, vec2(normalizedTemp, 0.5));\n" +
+            "  fragColor = vec4(color.rgb, texCoord.y * uAlpha);\n" +
+            "}\n";
+    }
+
+    // 逐格绘制的顶点着色器：格子变换和区域温度通过 uniform 传入
+    private static String getBatchedVertexShaderCode() {
+        return
+            "uniform vec2 uViewportScale;\n" +
+            "uniform vec4 uCell;\n" +
+            "uniform float uRegionTemps[" + HeatMapRenderer.MAX_REGIONS + "];\n" +
+            "attribute vec4 vPosition;\n" +
+            "attribute float aRegionId;\n" +
+            "varying vec2 texCoord;\n" +
+            "void main() {\n" +
+            "  vec2 screen = vPosition.xy * uCell.z + uCell.xy;\n" +
+            "  gl_Position = vec4(screen * uViewportScale - 1.0, 0.0, 1.0);\n" +
+            "  texCoord = vec2(uRegionTemps[int(aRegionId + 0.5)], uCell.w);\n" +
+            "}\n";
+    }
+
+    private static String getBatchedFragmentShaderCode() {
+        return
+            "precision mediump float;\n" +
+            "varying vec2 texCoord;\n" +
+            "uniform sampler2D uColorMap;\n" +
+            "uniform float uAlpha;\n" +
+            "uniform vec2 uRange;\n" +
+            "void main() {\n" +
+            "  float normalizedTemp = clamp(texCoord.x * uRange.x + uRange.y, 0.0, 1.0);\n" +
+            "  vec4 color = texture2D(uColorMap, vec2(normalizedTemp, 0.5));\n" +
+            "  gl_FragColor = vec4(color.rgb, texCoord.y * uAlpha);\n" +
+            "}\n";
+    }
+}
@@ -0,0 +1,196 @@
+package com.aj.bodyheartmap.view;
+
+import android.content.Context;
+import android.graphics.PixelFormat;
+import android.opengl.GLSurfaceView;
+import android.util.AttributeSet;
+import android.util.Log;
+
+/**
+ * 多人体热力图网格视图（例如病区总览）
+ * 在一个 GLSurfaceView（一个GL线程和上下文）中按网格绘制多个人体，共用一份网格；
+ * 每个格子（病人）有自己的各部位温度和透明度。绘制方式见 HeatMapGridRenderer
+ */
+public class HeatMapGridView extends GLSurfaceView {
+
+    private HeatMapGridRenderer renderer;
+    private FrameScheduler frameScheduler;
+    // 点击检测：与渲染器相同的布局计算，空间索引首次查询时按当前网格构建
+    private final HeatMapGridLayout hitLayout = new HeatMapGridLayout();
+    private BodyPartHitTester hitTester;
+    private final float[] hitModel = new float[2];
+
+    public HeatMapGridView(Context context) {
+        super(context);
+        init(context);
+    }
+
+    public HeatMapGridView(Context context, AttributeSet attrs) {
+        super(context, attrs);
+
+        // 设置为透明背景
+        setEGLConfigChooser(8, 8, 8, 8, 16, 0);
+        getHolder().setFormat(PixelFormat.TRANSLUCENT);
+        setZOrderOnTop(true);
+
+        init(context);
+    }
+
+    private void init(Context context) {
+        // 请求 OpenGL ES 2.0 上下文；设备实际提供 3.x 上下文时使用实例化绘制
+        setEGLContextClientVersion(2);
+        renderer = new HeatMapGridRenderer(context, this);
+        setRenderer(renderer);
+        frameScheduler = new FrameScheduler(this);
+        setRenderMode(GLSurfaceView.RENDERMODE_WHEN_DIRTY);
+        setPreserveEGLContextOnPause(true);
+    }
+
+    // 设置模型加载完成监听；若模型已就绪会立即回调
+    public void setOnModelReadyListener(HeatMapView.OnModelReadyListener listener) {
+        renderer.setOnModelReadyListener(listener);
+    }
+
+    public boolean isModelReady() {
+        return renderer.isModelReady();
+    }
+
+    // 设置格子数（人数），最多 HeatMapGridRenderer.MAX_CELLS；已有格子的数据保留
+    public void setCellCount(int count) {
+        renderer.setCellCount(count);
+        frameScheduler.invalidate();
+    }
+
+    public int getCellCount() {
+        return renderer.getCellCount();
+    }
+
+    // 设置列数，0（默认）表示按视图宽高比自动选择使人体最大的列数
+    public void setColumns(int columns) {
+        renderer.setColumns(columns);
+        frameScheduler.invalidate();
+    }
+
+    // 设置格子四周的留白（像素）
+    public void setCellPadding(float padding) {
+        renderer.setPadding(padding);
+        frameScheduler.invalidate();
+    }
+
+    // 设置一个格子全部部位的温度（摄氏度），按 BodyModel.BODY_PARTS 顺序；可在任意线程调用
+    public void setCellTemperatures(int cell, float[] temperatures) {
+        renderer.setCellTemperatures(cell, temperatures);
+        frameScheduler.invalidate();
+    }
+
+    // 设置一个格子单个部位的温度，partId 为 BodyModel.BODY_PARTS 下标；可在任意线程调用
+    public void setPartTemperature(int cell, int partId, float temperature) {
+        renderer.setPartTemperature(cell, partId, temperature);
+        frameScheduler.invalidate();
+    }
+
+    // 设置一个格子的透明度（0-1），例如把离线的病人淡化显示
+    public void setCellAlpha(int cell, float alpha) {
+        renderer.setCellAlpha(cell, alpha);
+        frameScheduler.invalidate();
+    }
+
+    public void setPalette(String name) {
+        ColorPalette palette = ColorPalette.get(name);
+        if (palette == null) {
+            Log.e("HeatMapGridView", "未注册的调色板: " + name);
+            return;
+        }
+        setPalette(palette);
+    }
+
+    public void setPalette(ColorPalette palette) {
+        renderer.setPalette(palette);
+        frameScheduler.invalidate();
+    }
+
+    // 设置显示的温度范围（摄氏度），默认 35-42，所有格子共用
+    public void setTemperatureRange(float min, float max) {
+        renderer.setTemperatureRange(min, max);
+        frameScheduler.invalidate();
+    }
+
+    // 设置热力图的整体透明度 (0.0-1.0)
+    public void updateGlAlpha(float alpha) {
+        renderer.setAlpha(alpha);
+        frameScheduler.invalidate();
+    }
+
+    // 格子较小时按屏幕尺寸使用简化轮廓（默认开启）
+    public void setLodEnabled(boolean enabled) {
+        renderer.setLodEnabled(enabled);
+        frameScheduler.invalidate();
+    }
+
+    // 当前GL状态统计，可读取上一帧的调用和绘制次数
+    public GlState getGlState() {
+        return renderer.getGlState();
+    }
+
+    /**
+     * 视图坐标 (x, y)（像素，例如 MotionEvent.getX/getY）所在的格子，不在任何格子内时返回-1。
+     * 只能在主线程中调用
+     */
+    public int findCellAt(float x, float y) {
+        BodyModel model = renderer.getBodyModel();
+        if (model == null || !updateHitLayout(model)) {
+            return -1;
+        }
+        return hitLayout.cellAt(x, y);
+    }
+
+    /**
+     * 视图坐标 (x, y) 处的部位ID（BodyModel.BODY_PARTS 下标），所在格子由 findCellAt() 给出；
+     * 不在任何人体上或模型未就绪时返回-1。只能在主线程中调用
+     */
+    public int findPartAt(float x, float y) {
+        BodyModel model = renderer.getBodyModel();
+        if (model == null || !updateHitLayout(model)) {
+            return -1;
+        }
+        int cell = hitLayout.cellAt(x, y);
+        if (cell < 0 || hitLayout.getScale() <= 0) {
+            return -1;
+        }
+        BodyPartHitTester tester = hitTester;
+        if (tester == null || tester.getMesh() != model.getMesh()) {
+            tester = new BodyPartHitTester(model.getMesh());
+            hitTester = tester;
+        }
+        hitLayout.toModel(cell, x, y, hitModel);
+        int meshPart = tester.findPart(hitModel[0], hitModel[1]);
+        return meshPart < 0 ? -1 : model.getPartId(meshPart);
+    }
+
+    // 按当前的格子数、列数、留白和视图尺寸计算布局，视图尚未布局时返回false
+    private boolean updateHitLayout(BodyModel model) {
+        int width = getWidth();
+        int height = getHeight();
+        if (width <= 0 || height <= 0) {
+            return false;
+        }
+        hitLayout.update(renderer.getCellCount(), renderer.getColumns(), width, height, renderer.getPadding(),
+                HeatMapGridLayout.bodyRect(model.getMesh()));
+        return true;
+    }
+
+    @Override
+    protected void onAttachedToWindow() {
+        super.onAttachedToWindow();
+        // 分离后重新附加时重新登记共享网格
+        renderer.restore();
+    }
+
+    @Override
+    protected void onDetachedFromWindow() {
+        frameScheduler.cancel();
+        super.onDetachedFromWindow();
+        // 归还进程级共享网格的引用
+        renderer.release();
+    }
+}
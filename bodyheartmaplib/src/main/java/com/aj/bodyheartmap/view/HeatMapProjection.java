@@ -0,0 +1,28 @@
+package com.aj.bodyheartmap.view;
+
+/**
+ * 热力图视景体计算，HeatMapRenderer 与 SoftwareHeatMapRasterizer 共用，保证两者输出一致。
+ * 模型坐标经正交投影映射到视口：left/right 按视口宽高比和缩放因子展开，再加上偏移量
+ */
+public final class HeatMapProjection {
+
+    private HeatMapProjection() {
+    }
+
+    // 人体在水平方向居中时的X轴偏移量，span 为 BodyMesh.getSpan()
+    public static float centeredOffsetX(float[] span) {
+        return span[0] / span[1] - 1.0f;
+    }
+
+    /**
+     * 计算正交投影的视景体，结果按 left, right, bottom, top 写入 out
+     */
+    public static void viewVolume(int width, int height, float scaleFactor, float offsetX, float offsetY,
+                                  float[] out) {
+        float ratio = (float) width / height;
+        out[0] = -ratio / scaleFactor + offsetX;
+        out[1] = ratio / scaleFactor + offsetX;
+        out[2] = -1.0f / scaleFactor + offsetY;
+        out[3] = 1.0f / scaleFactor + offsetY;
+    }
+}
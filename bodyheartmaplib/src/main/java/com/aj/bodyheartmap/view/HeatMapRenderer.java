@@ -4,35 +4,162 @@ import android.content.Context;
 import android.opengl.GLES20;
 import android.opengl.GLSurfaceView;
 import android.opengl.Matrix;
+import android.os.SystemClock;
 import android.util.Log;
 
 import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
-import java.nio.FloatBuffer;
+import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
 
 import javax.microedition.khronos.egl.EGLConfig;
 import javax.microedition.khronos.opengles.GL10;
 
 public class HeatMapRenderer implements GLSurfaceView.Renderer {
     private static final String TAG = "HeatMapRenderer";
+
+    // 区域着色：每个顶点携带静态区域ID，着色器从 uniform 数组按区域查温度，更新代价与网格密度无关
+    public static final int SHADING_REGION = 0;
+    // 逐顶点着色：温度由CPU写入每个顶点的纹理坐标（原有方式）
+    public static final int SHADING_VERTEX = 1;
+    // 传感器场着色：片段着色器按传感器采样点逐像素插值，只绘制在人体轮廓内
+    public static final int SHADING_SENSOR_FIELD = 2;
+    // 泼溅累积着色：采样点先加法累积到离屏缓冲，再用人体网格归一化着色，适合上千个采样点
+    public static final int SHADING_SPLAT_FIELD = 3;
+    private static final int SHADING_MODE_COUNT = 4;
+
+    // 传感器场插值核：反距离加权 / 高斯核
+    public static final int KERNEL_INVERSE_DISTANCE = 0;
+    public static final int KERNEL_GAUSSIAN = 1;
+    // 区域 uniform 数组长度，部位数超过时退回逐顶点着色
+    public static final int MAX_REGIONS = 32;
+    // 默认显示的温度范围（摄氏度）
+    public static final float DEFAULT_RANGE_MIN = 35.0f;
+    public static final float DEFAULT_RANGE_MAX = 42.0f;
     private final Context context;
     
-    // 人体模型
-    private BodyModel bodyModel;
+    // 人体模型，异步加载时在GL线程中赋值
+    private volatile BodyModel bodyModel;
+    // 后台加载完成、等待GL线程接管的模型
+    private final AtomicReference<BodyModel> pendingModel = new AtomicReference<>();
+    // 每次请求加载模型时递增，过时的加载结果直接归还
+    private final AtomicInteger modelGeneration = new AtomicInteger();
+    // 最近一次请求的网格模板；视图分离期间完成的加载被丢弃，重新附加时按它补加载
+    private volatile String meshTemplate = BodyMeshCache.DEFAULT_TEMPLATE;
+    private volatile boolean loadDropped = false;
+    // 异步加载时用于请求重绘和回调主线程
+    private final GLSurfaceView surfaceView;
+    private volatile HeatMapView.OnModelReadyListener onModelReadyListener;
+    // 已释放共享网格引用
+    private volatile boolean released = false;
+    // 当前surface尺寸
+    private int surfaceWidth;
+    private int surfaceHeight;
     
-    // 温度数据
+    // 温度数据：生产者一侧的完整状态，只在 producerLock 内访问
     private float[] temperatureData;
+    private float vertexAlpha = 1.0f;
+    // 串行化多个生产者线程；GL线程从不获取这个锁
+    private final Object producerLock = new Object();
+    // 温度快照三缓冲：生产者发布完整状态，GL线程在帧开始时取最新快照，渲染路径无锁
+    private final TripleBuffer<TemperatureSnapshot> temperatureSnapshots = new TripleBuffer<>(
+            new TemperatureSnapshot(), new TemperatureSnapshot(), new TemperatureSnapshot());
+    // GL线程最近一次应用到模型的温度，只改写有变化的部位
+    private final float[] appliedTemperatures = new float[BodyModel.BODY_PARTS.length];
+    private float appliedVertexAlpha;
+    private BodyModel appliedModel;
     
-    // 着色器程序
-    private int program;
+    // 着色器程序及其公共 uniform 位置，按 SHADING_* 下标
+    private final GlProgram[] programs = new GlProgram[SHADING_MODE_COUNT];
+    private final int[] mvpMatrixHandles = new int[SHADING_MODE_COUNT];
+    private final int[] alphaHandles = new int[SHADING_MODE_COUNT];
+
+    // 逐顶点着色程序
     private int positionHandle;
     private int texCoordHandle;
-    private int colorMapHandle;
-    private int mvpMatrixHandle;
+
+    // 区域着色程序
+    private int regionPositionHandle;
+    private int regionIdHandle;
+    private int regionDataHandle;
+    private volatile int shadingMode = SHADING_REGION;
+    // GL线程持有的区域数据副本，有变化或程序重建后才重新上传
+    private final float[] regionUniform = new float[MAX_REGIONS * 2];
+    private boolean regionUniformDirty = true;
+    // 时间插值：上一状态与当前状态都作为 uniform 上传，着色器按 uBlend 混合，过渡期间每帧只更新一个 uniform
+    private final float[] regionPrevUniform = new float[MAX_REGIONS * 2];
+    private final float[] regionIncoming = new float[MAX_REGIONS * 2];
+    private int regionPrevHandle;
+    private int regionBlendHandle;
+    // 过渡时长（毫秒），0 表示直接切换
+    private volatile long transitionMillis = 0;
+    // 以下只在GL线程访问
+    private long transitionStart;
+    private boolean regionPrevValid = false;
+    private float uploadedBlend = -1.0f;
+
+    // 传感器场着色程序
+    private int sensorPositionHandle;
+    private int sensorCountHandle;
+    private int sensorKernelHandle;
+    private int sensorRadiusHandle;
+    // 调用方设置的采样点（原始轮廓坐标）快照，GL线程在下一帧上传；上下文重建后据此重新上传
+    private final TripleBuffer<SampleSet> sensorSamples = new TripleBuffer<>(
+            new SampleSet(), new SampleSet(), new SampleSet());
+    private volatile int sensorKernel = KERNEL_INVERSE_DISTANCE;
+    // 高斯核半径，原始轮廓坐标单位
+    private volatile float sensorRadius = 80.0f;
+    // 以下只在GL线程访问
+    private boolean sensorUploadForced = false;
+    private int uploadedSensorKernel = -1;
+    private float uploadedSensorRadius = Float.NaN;
+    private boolean sensorUniformsDirty = true;
+
+    // 泼溅累积的归一化着色程序
+    private int splatPositionHandle;
+    private int splatInvViewportHandle;
+    // 调用方设置的泼溅采样点（原始轮廓坐标）快照，容量按需增长
+    private final TripleBuffer<SampleSet> splatSamples = new TripleBuffer<>(
+            new SampleSet(), new SampleSet(), new SampleSet());
+    // 泼溅核半径，原始轮廓坐标单位
+    private volatile float splatRadius = 60.0f;
+    // 只在GL线程访问
+    private boolean splatUploadForced = false;
     
-    // 颜色映射纹理
-    private int colorMapTexture;
+    // 调色板与显示温度范围（摄氏度），切换时只需换绑纹理、更新一个 uniform
+    private volatile ColorPalette palette = ColorPalette.getDefault();
+    private volatile float rangeMin = DEFAULT_RANGE_MIN;
+    private volatile float rangeMax = DEFAULT_RANGE_MAX;
+    // 每个调色板的颜色映射纹理，只在GL线程访问，上下文重建后清空
+    private final Map<ColorPalette, Integer> paletteTextures = new HashMap<>();
+
+    // GL状态缓存，跳过重复的状态设置并统计每帧GL调用次数
+    private final GlState glState = new GlState();
+    // 各着色程序最后一次上传的MVP矩阵版本和全局透明度，按 SHADING_* 下标
+    private final int[] uploadedMvpVersion = new int[SHADING_MODE_COUNT];
+    private final float[] uploadedAlpha = new float[SHADING_MODE_COUNT];
+    private final int[] rangeHandles = new int[SHADING_MODE_COUNT];
+    private final float[] uploadedRangeScale = new float[SHADING_MODE_COUNT];
+    private final float[] uploadedRangeBias = new float[SHADING_MODE_COUNT];
+    private int mvpVersion = 0;
+
+    // 顶点缓冲对象，模型就绪后在GL线程中上传
+    private final BodyMeshVbo meshVbo = new BodyMeshVbo(glState);
+    // 传感器采样点数据纹理
+    private final SensorField sensorField = new SensorField(glState);
+    // 泼溅累积的第一遍
+    private final SplatFieldRenderer splatField = new SplatFieldRenderer(glState);
+    // 帧快照的异步读回
+    private final SnapshotCapture snapshotCapture = new SnapshotCapture();
+    // 按屏幕尺寸自动选择轮廓细节级别
+    private volatile boolean lodEnabled = true;
+    private float pixelsPerUnit = 0.0f;
+    private int lodLevel = -1;
+    // 是否支持 unsigned int 索引（GLES3 或 GL_OES_element_index_uint）
+    private boolean uintIndicesSupported = false;
     
     // 变换矩阵
     private final float[] modelMatrix = new float[16];
@@ -43,10 +170,207 @@ public class HeatMapRenderer implements GLSurfaceView.Renderer {
     
     public HeatMapRenderer(Context context) {
         this.context = context;
+        this.surfaceView = null;
         bodyModel = new BodyModel(context);
         setupTemperatureData();
     }
+
+    // 异步加载模式：模型在后台线程加载，就绪前不绘制，就绪后在GL线程接管并回调监听器
+    public HeatMapRenderer(Context context, GLSurfaceView surfaceView) {
+        this.context = context;
+        this.surfaceView = surfaceView;
+        setupTemperatureData();
+        loadModel(BodyMeshCache.DEFAULT_TEMPLATE);
+    }
+
+    /**
+     * 切换网格模板（如 BodyMeshTessellator.templateKey() 生成的细分网格），在后台加载，
+     * 就绪后在GL线程替换当前模型，温度数据保留
+     */
+    public void setMeshTemplate(String template) {
+        if (template == null) {
+            Log.e(TAG, "网格模板不能为空");
+            return;
+        }
+        meshTemplate = template;
+        loadModel(template);
+    }
+
+    private void loadModel(String template) {
+        final int generation = modelGeneration.incrementAndGet();
+        BodyModelLoader.loadAsync(context, template, new BodyModelLoader.Callback() {
+            @Override
+            public void onLoaded(BodyModel model) {
+                offerModel(model, generation);
+            }
+
+            @Override
+            public void onFailed(String template, Throwable error) {
+                // 已有更新的加载请求时忽略
+                if (generation == modelGeneration.get()) {
+                    notifyModelLoadFailed(template, error);
+                }
+            }
+        });
+    }
+
+    // 后台线程：交给GL线程接管；已有更新的加载请求或视图已销毁时归还共享网格
+    private void offerModel(BodyModel model, int generation) {
+        if (generation != modelGeneration.get()) {
+            model.release();
+            return;
+        }
+        BodyModel previous = pendingModel.getAndSet(model);
+        if (previous != null) {
+            previous.release();
+        }
+        // 视图已分离（可能与 release() 同时发生），取回并归还共享网格，重新附加时再加载
+        if (released && pendingModel.compareAndSet(model, null)) {
+            loadDropped = true;
+            model.release();
+            return;
+        }
+        if (surfaceView != null) {
+            surfaceView.requestRender();
+        }
+    }
+
+    // 归还共享网格的引用（视图从窗口分离时调用）；已持有的几何数据仍可继续绘制，重新附加时调用 restore()
+    public synchronized void release() {
+        if (released) {
+            return;
+        }
+        released = true;
+        BodyModel model = bodyModel;
+        if (model != null) {
+            model.release();
+        }
+        model = pendingModel.getAndSet(null);
+        if (model != null) {
+            model.release();
+        }
+    }
+
+    // 视图重新附加到窗口：重新登记当前模型对共享网格的引用，补加载分离期间被丢弃的模型
+    public synchronized void restore() {
+        if (!released) {
+            return;
+        }
+        released = false;
+        BodyModel model = bodyModel;
+        if (model != null) {
+            model.reacquire();
+        }
+        if (loadDropped) {
+            loadDropped = false;
+            loadModel(meshTemplate);
+        }
+    }
+
+    public boolean isModelReady() {
+        return bodyModel != null;
+    }
+
+    public BodyModel getBodyModel() {
+        return bodyModel;
+    }
+
+    public void setOnModelReadyListener(HeatMapView.OnModelReadyListener listener) {
+        this.onModelReadyListener = listener;
+        if (listener != null && bodyModel != null) {
+            notifyModelReady(bodyModel);
+        }
+    }
+
+    // 在GL线程中接管后台加载完成的模型
+    private void takePendingModel() {
+        BodyModel model = pendingModel.getAndSet(null);
+        if (model == null) {
+            return;
+        }
+        BodyModel previous = bodyModel;
+        bodyModel = model;
+        // 新模型不从旧模型的颜色过渡
+        regionPrevValid = false;
+        if (previous != null) {
+            // 更换网格：重新上传顶点缓冲和采样点，归还旧网格
+            meshVbo.release();
+            sensorUploadForced = true;
+            splatUploadForced = true;
+            lodLevel = -1;
+            previous.release();
+        }
+        // 与 release() 同时发生时可能未被归还；BodyModel.release() 可重复调用
+        if (released) {
+            model.release();
+        }
+        if (surfaceWidth > 0 && surfaceHeight > 0) {
+            updateProjectionMatrix(surfaceWidth, surfaceHeight, false);
+        }
+        Log.i(TAG, "人体模型已就绪，总顶点数: " + model.getTotalVertices());
+        notifyModelReady(model);
+    }
+
+    private void notifyModelLoadFailed(final String template, final Throwable error) {
+        final HeatMapView.OnModelReadyListener listener = onModelReadyListener;
+        if (listener == null) {
+            return;
+        }
+        if (surfaceView != null) {
+            surfaceView.post(new Runnable() {
+                @Override
+                public void run() {
+                    listener.onModelLoadFailed(template, error);
+                }
+            });
+        } else {
+            listener.onModelLoadFailed(template, error);
+        }
+    }
+
+    private void notifyModelReady(final BodyModel model) {
+        final HeatMapView.OnModelReadyListener listener = onModelReadyListener;
+        if (listener == null) {
+            return;
+        }
+        if (surfaceView != null) {
+            surfaceView.post(new Runnable() {
+                @Override
+                public void run() {
+                    listener.onModelReady(model);
+                }
+            });
+        } else {
+            listener.onModelReady(model);
+        }
+    }
     
+    // 温度快照，生产者写入完整状态后整体发布
+    private static final class TemperatureSnapshot {
+        final float[] temperatures = new float[BodyModel.BODY_PARTS.length];
+        float vertexAlpha = 1.0f;
+    }
+
+    // 采样点快照，容量按需增长
+    private static final class SampleSet {
+        float[] xs = new float[0];
+        float[] ys = new float[0];
+        float[] temperatures = new float[0];
+        int count;
+
+        void set(float[] srcXs, float[] srcYs, float[] srcTemperatures, int n) {
+            if (xs.length < n) {
+                xs = new float[n];
+                ys = new float[n];
+                temperatures = new float[n];
+            }
+            System.arraycopy(srcXs, 0, xs, 0, n);
+            System.arraycopy(srcYs, 0, ys, 0, n);
+            System.arraycopy(srcTemperatures, 0, temperatures, 0, n);
+            count = n;
+        }
+    }
+
     private void setupTemperatureData() {
         // 初始化温度数据，对应13个身体部位
         temperatureData = new float[] {
@@ -65,12 +389,15 @@ public class HeatMapRenderer implements GLSurfaceView.Renderer {
             36.4f, // 右大腿
             36.3f  // 右小腿
         };
+        synchronized (producerLock) {
+            publishTemperatures();
+        }
     }
 
     // 在类成员变量中添加
-    private float scaleFactor = 0.3f; // 固定缩放因子为0.3
-    private boolean scaleChanged = true; // 标记缩放是否改变
-    private int[] viewport = new int[4]; // 用于存储视口信息
+    // 以下视图参数可在任意线程设置，GL线程先清除标记再读取，不会漏掉并发的修改
+    private volatile float scaleFactor = 0.3f; // 固定缩放因子为0.3
+    private volatile boolean scaleChanged = true; // 标记缩放是否改变
 
     // 修改setScaleFactor方法，确保缩放因子的变化被检测到
     public void setScaleFactor(float newScaleFactor) {
@@ -90,14 +417,20 @@ public class HeatMapRenderer implements GLSurfaceView.Renderer {
     @Override
     public void onSurfaceChanged(GL10 gl, int width, int height) {
         GLES20.glViewport(0, 0, width, height);
-        updateProjectionMatrix(width, height,false);
+        surfaceWidth = width;
+        surfaceHeight = height;
+        splatField.onSurfaceChanged(width, height);
+        // 模型未就绪时，投影矩阵在模型接管后再计算
+        if (bodyModel != null) {
+            updateProjectionMatrix(width, height,false);
+        }
     }
 
 
     // 在类成员变量中添加
-    private float offsetX = 0.0f; // X轴偏移量
-    private float offsetY = 0.0f; // Y轴偏移量
-    private boolean positionChanged = false; // 位置是否改变
+    private volatile float offsetX = 0.0f; // X轴偏移量
+    private volatile float offsetY = 0.0f; // Y轴偏移量
+    private volatile boolean positionChanged = false; // 位置是否改变
 
     // 设置X轴偏移
     public void setOffsetX(float offsetX) {
@@ -117,11 +450,19 @@ public class HeatMapRenderer implements GLSurfaceView.Renderer {
         }
     }
 
+    // 当前的视景体 left, right, bottom, top，用于把触摸坐标换算为模型坐标；可在任意线程调用
+    public void getViewVolume(int width, int height, float[] out) {
+        HeatMapProjection.viewVolume(width, height, scaleFactor, offsetX, offsetY, out);
+    }
+
     // 在类的成员变量部分添加
     public static boolean useNormalizedCoordinates = true;
 
 
 // 修改投影矩阵计算方法
+    // left, right, bottom, top
+    private final float[] viewVolume = new float[4];
+
     private void updateProjectionMatrix(int width, int height,boolean isonDrawFrame) {
         Log.d(TAG, "updateProjectionMatrix() called with: width = [" + width + "], height = [" + height + "]");
 
@@ -149,21 +490,19 @@ public class HeatMapRenderer implements GLSurfaceView.Renderer {
         float bodyXwith = spanX/spanY * 2.0f;//从 [-1 ，-1 + bodyXwith]
         Log.i(TAG, "视口范围: ratio=" + ratio + ",ratioX=" + ratioX + ",bodyXwith=" + bodyXwith);
         //计算偏移量 x 轴移动到中央
+        // 屏幕宽窄两种情况化简后相同：offsetX = bodyXwith / 2 - 1
         if (!isonDrawFrame) {
-            if (ratio <= 1) {//屏幕宽
-                float v = 1.0f - ratio - bodyXwith / 2.0f + ratio;
-                offsetX = -v;
-            }
-            if (ratio > 1) {//屏幕窄
-                float v = ratio - 1.0f -ratio + bodyXwith / 2.0f;
-                offsetX = v;
-            }
+            offsetX = HeatMapProjection.centeredOffsetX(span);
         }
 
-        left = -ratio / scaleFactor + offsetX;
-        right = ratio / scaleFactor + offsetX;
-        bottom = -1.0f / scaleFactor + offsetY;
-        top = 1.0f / scaleFactor + offsetY;
+        // 与软件光栅化共用视景体计算
+        HeatMapProjection.viewVolume(width, height, scaleFactor, offsetX, offsetY, viewVolume);
+        left = viewVolume[0];
+        right = viewVolume[1];
+        bottom = viewVolume[2];
+        top = viewVolume[3];
+        // 屏幕上每个模型单位的像素数，用于选择细节级别
+        pixelsPerUnit = height / (top - bottom);
 
 
         //Matrix.orthoM (正交投影)
@@ -199,65 +538,64 @@ public class HeatMapRenderer implements GLSurfaceView.Renderer {
 
         // 计算最终的MVP矩阵
         Matrix.multiplyMM(mvpMatrix, 0, projectionMatrix, 0, viewMatrix, 0);
+        mvpVersion++;
     }
 
-    private void createColorMapTexture() {
-        // 创建热力图颜色映射纹理
+    // 调色板对应的颜色映射纹理，不存在时创建；查找表由调色板缓存，只上传一次
+    private int colorMapTexture(ColorPalette palette) {
+        Integer cached = paletteTextures.get(palette);
+        if (cached != null) {
+            return cached;
+        }
         int[] textures = new int[1];
         GLES20.glGenTextures(1, textures, 0);
-        colorMapTexture = textures[0];
-        
-        GLES20.glBindTexture(GLES20.GL_TEXTURE_2D, colorMapTexture);
+        int texture = textures[0];
+
+        glState.bindTexture2D(0, texture);
         GLES20.glTexParameteri(GLES20.GL_TEXTURE_2D, GLES20.GL_TEXTURE_MIN_FILTER, GLES20.GL_LINEAR);
         GLES20.glTexParameteri(GLES20.GL_TEXTURE_2D, GLES20.GL_TEXTURE_MAG_FILTER, GLES20.GL_LINEAR);
         GLES20.glTexParameteri(GLES20.GL_TEXTURE_2D, GLES20.GL_TEXTURE_WRAP_S, GLES20.GL_CLAMP_TO_EDGE);
         GLES20.glTexParameteri(GLES20.GL_TEXTURE_2D, GLES20.GL_TEXTURE_WRAP_T, GLES20.GL_CLAMP_TO_EDGE);
-        
-        // 创建颜色映射数据 - 从蓝色到红色的渐变
-        ByteBuffer colorMap = ByteBuffer.allocateDirect(256 * 4);
-        colorMap.order(ByteOrder.nativeOrder());
-        
-        for (int i = 0; i < 256; i++) {
-            float t = i / 255.0f;
-            int r, g, b;
-            
-            if (t < 0.25f) {
-                // 蓝色到青色
-                r = 0;
-                g = (int)(255 * (t / 0.25f));
-                b = 255;
-            } else if (t < 0.5f) {
-                // 青色到绿色
-                r = 0;
-                g = 255;
-                b = (int)(255 * (1 - (t - 0.25f) / 0.25f));
-            } else if (t < 0.75f) {
-                // 绿色到黄色
-                r = (int)(255 * ((t - 0.5f) / 0.25f));
-                g = 255;
-                b = 0;
-            } else {
-                // 黄色到红色
-                r = 255;
-                g = (int)(255 * (1 - (t - 0.75f) / 0.25f));
-                b = 0;
-            }
-            
-            colorMap.put((byte) r);
-            colorMap.put((byte) g);
-            colorMap.put((byte) b);
-            colorMap.put((byte) 255); // Alpha 设为完全不透明
+        GLES20.glTexImage2D(GLES20.GL_TEXTURE_2D, 0, GLES20.GL_RGBA, ColorPalette.LUT_SIZE, 1, 0,
+                GLES20.GL_RGBA, GLES20.GL_UNSIGNED_BYTE, palette.getLut());
+        glState.countCalls(5);
+        paletteTextures.put(palette, texture);
+
+        Log.d(TAG, "颜色映射纹理创建完成，调色板: " + palette.getName() + ", ID: " + texture);
+        return texture;
+    }
+
+    // 切换调色板，下一帧生效；不重新编译着色器
+    public void setPalette(ColorPalette palette) {
+        if (palette != null) {
+            this.palette = palette;
         }
-        colorMap.position(0);
-        
-        GLES20.glTexImage2D(GLES20.GL_TEXTURE_2D, 0, GLES20.GL_RGBA, 256, 1, 0, 
-                GLES20.GL_RGBA, GLES20.GL_UNSIGNED_BYTE, colorMap);
-        
-        System.out.println("颜色映射纹理创建完成，ID: " + colorMapTexture);
+    }
+
+    public ColorPalette getPalette() {
+        return palette;
+    }
+
+    // 设置显示的温度范围（摄氏度），只更新 uniform，不改写顶点数据
+    public void setTemperatureRange(float min, float max) {
+        if (!(max > min)) {
+            Log.e(TAG, "无效的温度范围: " + min + " - " + max);
+            return;
+        }
+        rangeMin = min;
+        rangeMax = max;
+    }
+
+    public float getTemperatureRangeMin() {
+        return rangeMin;
+    }
+
+    public float getTemperatureRangeMax() {
+        return rangeMax;
     }
 
 
-    private float alpha = 0.7f; // 默认透明度
+    private volatile float alpha = 0.7f; // 默认透明度
 
     public void setAlpha(float alpha) {
         this.alpha = alpha;
@@ -293,8 +631,9 @@ public class HeatMapRenderer implements GLSurfaceView.Renderer {
                 "varying vec2 texCoord;\n" +
                 "uniform sampler2D uColorMap;\n" +
                 "uniform float uAlpha;\n" + // 全局透明度
+                "uniform vec2 uRange;\n" + // 温度 -> 0-1 的缩放和偏移
                 "void main() {\n" +
-                "  float normalizedTemp = texCoord.x;\n" + 
+                "  float normalizedTemp = clamp(texCoord.x * uRange.x + uRange.y, 0.0, 1.0);\n" +
                 "  float alpha = texCoord.y * uAlpha;\n" + // 结合局部和全局透明度
                 "  vec4 color = texture2D(uColorMap, vec2(normalizedTemp, 0.5));\n" +
                 "  gl_FragColor = vec4(color.rgb, alpha);\n" + // 设置透明度
@@ -316,51 +655,304 @@ public class HeatMapRenderer implements GLSurfaceView.Renderer {
     }
 
 
-    // Add loadShader method
-    private int loadShader(int type, String shaderCode) {
-        // 创建着色器对象
-        int shader = GLES20.glCreateShader(type);
-        
-        // 打印着色器代码以便调试
-        System.out.println("着色器代码 (" + (type == GLES20.GL_VERTEX_SHADER ? "顶点" : "片段") + "):\n" + shaderCode);
-        
-        // 添加源代码并编译
-        GLES20.glShaderSource(shader, shaderCode);
-        GLES20.glCompileShader(shader);
-        
-        // 检查编译状态
-        int[] compiled = new int[1];
-        GLES20.glGetShaderiv(shader, GLES20.GL_COMPILE_STATUS, compiled, 0);
-        if (compiled[0] == 0) {
-            String errorMsg = GLES20.glGetShaderInfoLog(shader);
-            System.err.println("Shader compilation error: " + errorMsg);
-            System.err.println("着色器编译失败，无法继续");
-            GLES20.glDeleteShader(shader);
-            return 0;
-        }
-        
-        System.out.println((type == GLES20.GL_VERTEX_SHADER ? "顶点" : "片段") + "着色器编译成功");
-        return shader;
+    // 区域着色的顶点着色器：按顶点的区域ID从 uniform 数组取 (摄氏温度, 透明度)
+    private String getRegionVertexShaderCode() {
+        return
+            "uniform mat4 uMVPMatrix;\n" +
+            "uniform vec2 uRegionData[" + MAX_REGIONS + "];\n" +
+            "uniform vec2 uRegionPrev[" + MAX_REGIONS + "];\n" +
+            "uniform float uBlend;\n" +
+            "attribute vec4 vPosition;\n" +
+            "attribute float aRegionId;\n" +
+            "varying vec2 texCoord;\n" +
+            "void main() {\n" +
+            "  gl_Position = uMVPMatrix * vPosition;\n" +
+            "  int id = int(aRegionId + 0.5);\n" +
+            "  texCoord = mix(uRegionPrev[id], uRegionData[id], uBlend);\n" +
+            "}\n";
     }
-    
-    // 更新温度数据，并支持透明度
+
+    // 传感器场的顶点着色器：只变换位置，把模型坐标传给片段着色器
+    private String getSensorVertexShaderCode() {
+        return
+            "uniform mat4 uMVPMatrix;\n" +
+            "attribute vec4 vPosition;\n" +
+            "varying vec2 vModelPos;\n" +
+            "void main() {\n" +
+            "  gl_Position = uMVPMatrix * vPosition;\n" +
+            "  vModelPos = vPosition.xy;\n" +
+            "}\n";
+    }
+
+    // 泼溅累积第二遍的片段着色器：按屏幕位置读取累积结果，sum(w*v)/sum(w) 后经颜色映射着色，覆盖度低处淡出
+    private String getSplatResolveFragmentShaderCode() {
+        return
+            "precision mediump float;\n" +
+            "uniform sampler2D uColorMap;\n" +
+            "uniform sampler2D uAccum;\n" +
+            "uniform vec2 uInvViewport;\n" +
+            "uniform float uAlpha;\n" +
+            "uniform vec2 uRange;\n" +
+            "void main() {\n" +
+            "  vec4 acc = texture2D(uAccum, gl_FragCoord.xy * uInvViewport);\n" +
+            "  if (acc.g <= 0.001) discard;\n" +
+            "  float t = clamp(acc.r / acc.g * uRange.x + uRange.y, 0.0, 1.0);\n" +
+            "  vec4 color = texture2D(uColorMap, vec2(t, 0.5));\n" +
+            "  float coverage = clamp(acc.g / 0.25, 0.0, 1.0);\n" +
+            "  gl_FragColor = vec4(color.rgb, uAlpha * coverage);\n" +
+            "}\n";
+    }
+
+    /**
+     * 传感器场的片段着色器：逐像素遍历采样点，反距离加权或高斯核插值出编码后的温度。
+     * 采样点数据纹理每个点两个纹素，16位定点坐标和温度在这里解码；
+     * GLES2 循环需要常量上限，用 uSampleCount 提前退出
+     */
+    private String getSensorFragmentShaderCode() {
+        return
+            "#ifdef GL_FRAGMENT_PRECISION_HIGH\n" +
+            "precision highp float;\n" +
+            "#else\n" +
+            "precision mediump float;\n" +
+            "#endif\n" +
+            "varying vec2 vModelPos;\n" +
+            "uniform sampler2D uColorMap;\n" +
+            "uniform sampler2D uSamples;\n" +
+            "uniform float uSampleCount;\n" +
+            "uniform float uKernel;\n" +
+            "uniform float uRadius;\n" +
+            "uniform float uAlpha;\n" +
+            "uniform vec2 uRange;\n" +
+            "const float TEXELS = " + SensorField.TEXTURE_WIDTH + ".0;\n" +
+            "float decode16(vec2 v) {\n" +
+            "  return dot(v, vec2(65280.0, 255.0)) / 65535.0;\n" +
+            "}\n" +
+            "void main() {\n" +
+            "  float sumW = 0.0;\n" +
+            "  float sumV = 0.0;\n" +
+            "  float twoSigma2 = 2.0 * uRadius * uRadius;\n" +
+            "  for (int i = 0; i < " + SensorField.MAX_SAMPLES + "; i++) {\n" +
+            "    if (float(i) >= uSampleCount) break;\n" +
+            "    float u = (float(i) * 2.0 + 0.5) / TEXELS;\n" +
+            "    vec4 p = texture2D(uSamples, vec2(u, 0.5));\n" +
+            "    vec4 q = texture2D(uSamples, vec2(u + 1.0 / TEXELS, 0.5));\n" +
+            "    vec2 d = vModelPos - (vec2(decode16(p.rg), decode16(p.ba)) * 2.0 - 1.0);\n" +
+            "    float d2 = dot(d, d);\n" +
+            "    float w = uKernel < 0.5 ? 1.0 / (d2 + 1e-5) : exp(-d2 / twoSigma2);\n" +
+            "    sumW += w;\n" +
+            "    sumV += w * decode16(q.rg);\n" +
+            "  }\n" +
+            "  float t = clamp((sumW > 0.0 ? sumV / sumW : 0.0) * uRange.x + uRange.y, 0.0, 1.0);\n" +
+            "  vec4 color = texture2D(uColorMap, vec2(t, 0.5));\n" +
+            "  gl_FragColor = vec4(color.rgb, uAlpha);\n" +
+            "}\n";
+    }
+
+    // 更新温度数据，并支持透明度；可在任意线程调用，GL线程在下一帧取用最新快照
     public void updateTemperature(float[] temperatures, float alpha) {
         this.alpha = alpha;
         if (temperatures != null && temperatures.length >= 6) {
-            // 复制温度数据
-            System.arraycopy(temperatures, 0, temperatureData, 0, Math.min(temperatures.length, temperatureData.length));
-            
-            // 更新BodyModel的纹理坐标
-            if (bodyModel != null) {
-                bodyModel.updateTextureCoordinates(temperatures, alpha);
-            } else {
-                System.err.println("bodyModel为空，无法更新纹理坐标");
+            synchronized (producerLock) {
+                // 复制温度数据
+                System.arraycopy(temperatures, 0, temperatureData, 0, Math.min(temperatures.length, temperatureData.length));
+                vertexAlpha = alpha;
+                publishTemperatures();
             }
         } else {
-            System.err.println("无效的温度数据长度，需要至少6个值对应6个身体部位");
+            Log.e(TAG, "无效的温度数据长度，需要至少6个值对应6个身体部位");
         }
     }
     
+    // 只更新单个部位的温度，partId 为 BodyModel.BODY_PARTS 中的下标
+    public void setPartTemperature(int partId, float temperature) {
+        if (partId < 0 || partId >= BodyModel.BODY_PARTS.length) {
+            Log.e(TAG, "无效的部位ID: " + partId);
+            return;
+        }
+        synchronized (producerLock) {
+            temperatureData[partId] = temperature;
+            publishTemperatures();
+        }
+    }
+
+    // 批量更新部分部位的温度，GL线程只改写这些部位
+    public void setTemperatures(int[] partIds, float[] temperatures) {
+        if (partIds == null) {
+            Log.e(TAG, "部位ID与温度数量不匹配");
+            return;
+        }
+        setTemperatures(partIds, temperatures, partIds.length);
+    }
+
+    // 只取前 count 个，便于复用数组
+    public void setTemperatures(int[] partIds, float[] temperatures, int count) {
+        if (partIds == null || temperatures == null || partIds.length < count || temperatures.length < count) {
+            Log.e(TAG, "部位ID与温度数量不匹配");
+            return;
+        }
+        synchronized (producerLock) {
+            for (int i = 0; i < count; i++) {
+                int partId = partIds[i];
+                if (partId >= 0 && partId < BodyModel.BODY_PARTS.length) {
+                    temperatureData[partId] = temperatures[i];
+                }
+            }
+            publishTemperatures();
+        }
+    }
+
+    // 把生产者一侧的完整温度状态写入空闲槽位并发布，调用方需持有 producerLock
+    private void publishTemperatures() {
+        TemperatureSnapshot snapshot = temperatureSnapshots.getWriteBuffer();
+        System.arraycopy(temperatureData, 0, snapshot.temperatures, 0, snapshot.temperatures.length);
+        snapshot.vertexAlpha = vertexAlpha;
+        temperatureSnapshots.publish();
+    }
+
+    // GL线程：取最新温度快照，只把有变化的部位写入模型；模型更换或局部透明度变化时整体写入
+    private void applyTemperatureSnapshot(BodyModel model) {
+        if (!temperatureSnapshots.update() && appliedModel == model) {
+            return;
+        }
+        TemperatureSnapshot snapshot = temperatureSnapshots.getReadBuffer();
+        if (appliedModel != model || snapshot.vertexAlpha != appliedVertexAlpha) {
+            model.updateTextureCoordinates(snapshot.temperatures, snapshot.vertexAlpha);
+        } else {
+            for (int i = 0; i < appliedTemperatures.length; i++) {
+                if (snapshot.temperatures[i] != appliedTemperatures[i]) {
+                    model.setPartTemperature(i, snapshot.temperatures[i]);
+                }
+            }
+        }
+        System.arraycopy(snapshot.temperatures, 0, appliedTemperatures, 0, appliedTemperatures.length);
+        appliedVertexAlpha = snapshot.vertexAlpha;
+        appliedModel = model;
+    }
+
+    // GL线程：上传新发布的采样点快照；上下文重建后按当前快照重新上传
+    private void applySampleSnapshots(BodyModel model) {
+        if (sensorSamples.update() || sensorUploadForced) {
+            SampleSet set = sensorSamples.getReadBuffer();
+            sensorField.upload(model.getMesh(), set.xs, set.ys, set.temperatures, set.count);
+            sensorUploadForced = false;
+            sensorUniformsDirty = true;
+        }
+        int kernel = sensorKernel;
+        float radius = sensorRadius;
+        if (kernel != uploadedSensorKernel || radius != uploadedSensorRadius) {
+            uploadedSensorKernel = kernel;
+            uploadedSensorRadius = radius;
+            sensorUniformsDirty = true;
+        }
+        if (splatSamples.update() || splatUploadForced) {
+            SampleSet set = splatSamples.getReadBuffer();
+            splatField.upload(model.getMesh(), set.xs, set.ys, set.temperatures, set.count);
+            splatUploadForced = false;
+        }
+    }
+
+    /**
+     * 设置着色模式 SHADING_REGION / SHADING_VERTEX / SHADING_SENSOR_FIELD / SHADING_SPLAT_FIELD，下一帧生效。
+     * 传感器场没有采样点、泼溅累积没有采样点或不支持半精度浮点渲染目标时退回区域着色，见 resolveShadingMode()
+     */
+    public void setShadingMode(int mode) {
+        if (mode < 0 || mode >= SHADING_MODE_COUNT) {
+            Log.e(TAG, "无效的着色模式: " + mode);
+            return;
+        }
+        shadingMode = mode;
+    }
+
+    public int getShadingMode() {
+        return shadingMode;
+    }
+
+    // 本帧实际使用的着色模式：传感器场没有采样点、泼溅累积不可用时退回区域着色，区域着色不可用或网格带部位过渡时退回逐顶点着色
+    private int resolveShadingMode(BodyModel model) {
+        int mode = shadingMode;
+        if (mode == SHADING_SENSOR_FIELD
+                && (programs[SHADING_SENSOR_FIELD] == null || sensorField.getCount() == 0)) {
+            mode = SHADING_REGION;
+        }
+        if (mode == SHADING_SPLAT_FIELD
+                && (programs[SHADING_SPLAT_FIELD] == null || !splatField.isReady())) {
+            mode = SHADING_REGION;
+        }
+        // 带部位过渡的细分网格需要逐顶点的混合结果
+        if (mode == SHADING_REGION && (programs[SHADING_REGION] == null
+                || model.getRegionCount() > MAX_REGIONS || model.hasRegionBlend())) {
+            mode = SHADING_VERTEX;
+        }
+        return mode;
+    }
+
+    /**
+     * 设置传感器采样点，用于 SHADING_SENSOR_FIELD 模式。
+     * xs/ys 为原始轮廓坐标（与部位JSON相同的坐标系），temperatures 为摄氏度，
+     * 最多 SensorField.MAX_SAMPLES 个，超出部分忽略
+     */
+    public void setSensorSamples(float[] xs, float[] ys, float[] temperatures, int count) {
+        if (xs == null || ys == null || temperatures == null
+                || count < 0 || xs.length < count || ys.length < count || temperatures.length < count) {
+            Log.e(TAG, "无效的采样点数据");
+            return;
+        }
+        int n = Math.min(count, SensorField.MAX_SAMPLES);
+        synchronized (sensorSamples) {
+            sensorSamples.getWriteBuffer().set(xs, ys, temperatures, n);
+            sensorSamples.publish();
+        }
+    }
+
+    public void clearSensorSamples() {
+        synchronized (sensorSamples) {
+            sensorSamples.getWriteBuffer().count = 0;
+            sensorSamples.publish();
+        }
+    }
+
+    /**
+     * 设置泼溅采样点，用于 SHADING_SPLAT_FIELD 模式，数量不限。
+     * xs/ys 为原始轮廓坐标，temperatures 为摄氏度
+     */
+    public void setSplatSamples(float[] xs, float[] ys, float[] temperatures, int count) {
+        if (xs == null || ys == null || temperatures == null
+                || count < 0 || xs.length < count || ys.length < count || temperatures.length < count) {
+            Log.e(TAG, "无效的采样点数据");
+            return;
+        }
+        synchronized (splatSamples) {
+            splatSamples.getWriteBuffer().set(xs, ys, temperatures, count);
+            splatSamples.publish();
+        }
+    }
+
+    public void clearSplatSamples() {
+        synchronized (splatSamples) {
+            splatSamples.getWriteBuffer().count = 0;
+            splatSamples.publish();
+        }
+    }
+
+    // 设置泼溅核半径（原始轮廓坐标单位）
+    public void setSplatRadius(float radius) {
+        if (radius <= 0) {
+            Log.e(TAG, "无效的泼溅半径: " + radius);
+            return;
+        }
+        splatRadius = radius;
+    }
+
+    // 设置插值核 KERNEL_INVERSE_DISTANCE / KERNEL_GAUSSIAN；radius 为高斯核半径（原始轮廓坐标单位）
+    public void setSensorKernel(int kernel, float radius) {
+        if ((kernel != KERNEL_INVERSE_DISTANCE && kernel != KERNEL_GAUSSIAN) || radius <= 0) {
+            Log.e(TAG, "无效的插值核参数: kernel=" + kernel + ", radius=" + radius);
+            return;
+        }
+        sensorKernel = kernel;
+        sensorRadius = radius;
+    }
+
     // 保持原有的方法，但调用新方法并使用默认透明度
     public void updateTemperature(float[] temperatures) {
         // 默认透明度为1.0（完全不透明）
@@ -368,135 +960,325 @@ public class HeatMapRenderer implements GLSurfaceView.Renderer {
     }
 
 
+    // 当前GL状态缓存，可读取上一帧的GL调用、跳过调用和绘制调用次数
+    public GlState getGlState() {
+        return glState;
+    }
+
     @Override
     public void onSurfaceCreated(GL10 gl, EGLConfig config) {
+        // 新上下文中之前记录的GL状态全部失效
+        glState.reset();
+        for (int i = 0; i < SHADING_MODE_COUNT; i++) {
+            uploadedMvpVersion[i] = -1;
+            uploadedAlpha[i] = Float.NaN;
+            uploadedRangeScale[i] = Float.NaN;
+        }
+        paletteTextures.clear();
+
         // 设置背景色为完全透明
         GLES20.glClearColor(0.0f, 0.0f, 0.0f, 0.0f);
     
         // 启用深度测试，确保正确的绘制顺序
-        GLES20.glEnable(GLES20.GL_DEPTH_TEST);
+        glState.setDepthTest(true);
         
-        //启用混合
-        GLES20.glEnable(GLES20.GL_BLEND);
-        GLES20.glBlendFunc(GLES20.GL_SRC_ALPHA, GLES20.GL_ONE_MINUS_SRC_ALPHA);
-    
-        // 创建颜色映射纹理
-        createColorMapTexture();
+        //启用混合：颜色按 alpha 混合，透明度按 src-over 累积，帧缓冲得到预乘的 (c*a, a)，
+        // 与透明 Surface 的合成方式一致（单独的 glBlendFunc 会得到 a*a）
+        glState.setBlend(true);
+        glState.blendFuncSeparate(GLES20.GL_SRC_ALPHA, GLES20.GL_ONE_MINUS_SRC_ALPHA,
+                GLES20.GL_ONE, GLES20.GL_ONE_MINUS_SRC_ALPHA);
+
+        // 上下文重建后旧的VBO和采样点纹理已失效，下一帧重新上传
+        meshVbo.reset();
+        sensorField.reset();
+        sensorUploadForced = true;
+        sensorUniformsDirty = true;
+        splatUploadForced = true;
+        String version = GLES20.glGetString(GLES20.GL_VERSION);
+        String extensions = GLES20.glGetString(GLES20.GL_EXTENSIONS);
+        splatField.onSurfaceCreated(version, extensions);
+        snapshotCapture.onSurfaceCreated(version);
+        uintIndicesSupported = (version != null && version.startsWith("OpenGL ES 3"))
+                || (extensions != null && extensions.contains("GL_OES_element_index_uint"));
     
-        // 编译着色器
-        int vertexShader = loadShader(GLES20.GL_VERTEX_SHADER, getVertexShaderCode());
-        int fragmentShader = loadShader(GLES20.GL_FRAGMENT_SHADER, getFragmentShaderCode());
+        // 创建当前调色板的颜色映射纹理，其余调色板首次使用时创建
+        colorMapTexture(palette);
     
-        // 检查着色器编译是否成功
-        if (vertexShader == 0 || fragmentShader == 0) {
-            System.err.println("着色器编译失败，无法继续");
-            return;
+        // 编译区域着色程序，变量位置在链接时一次性缓存
+        GlProgram regionProgram = createShadingProgram(SHADING_REGION,
+                getRegionVertexShaderCode(), getFragmentShaderCode());
+        if (regionProgram != null) {
+            regionPositionHandle = regionProgram.attrib("vPosition");
+            regionIdHandle = regionProgram.attrib("aRegionId");
+            regionDataHandle = regionProgram.uniform("uRegionData");
+            regionPrevHandle = regionProgram.uniform("uRegionPrev");
+            regionBlendHandle = regionProgram.uniform("uBlend");
+            // 新程序的 uniform 为初始值，需重新上传区域数据
+            regionUniformDirty = true;
+            uploadedBlend = -1.0f;
         }
-    
-        // 创建着色器程序
-        program = GLES20.glCreateProgram();
-        GLES20.glAttachShader(program, vertexShader);
-        GLES20.glAttachShader(program, fragmentShader);
-        GLES20.glLinkProgram(program);
-    
-        // 检查链接状态
-        int[] linkStatus = new int[1];
-        GLES20.glGetProgramiv(program, GLES20.GL_LINK_STATUS, linkStatus, 0);
-        if (linkStatus[0] != GLES20.GL_TRUE) {
-            String log = GLES20.glGetProgramInfoLog(program);
-            System.err.println("程序链接失败: " + log);
-            GLES20.glDeleteProgram(program);
-            program = 0;
+
+        // 编译传感器场着色程序，采样点纹理固定使用纹理单元1
+        GlProgram sensorProgram = createShadingProgram(SHADING_SENSOR_FIELD,
+                getSensorVertexShaderCode(), getSensorFragmentShaderCode());
+        if (sensorProgram != null) {
+            sensorPositionHandle = sensorProgram.attrib("vPosition");
+            sensorCountHandle = sensorProgram.uniform("uSampleCount");
+            sensorKernelHandle = sensorProgram.uniform("uKernel");
+            sensorRadiusHandle = sensorProgram.uniform("uRadius");
+            GLES20.glUniform1i(sensorProgram.uniform("uSamples"), 1);
+        }
+
+        // 编译泼溅累积的归一化着色程序，累积结果固定使用纹理单元2
+        GlProgram splatProgram = createShadingProgram(SHADING_SPLAT_FIELD,
+                getSensorVertexShaderCode(), getSplatResolveFragmentShaderCode());
+        if (splatProgram != null) {
+            splatPositionHandle = splatProgram.attrib("vPosition");
+            splatInvViewportHandle = splatProgram.uniform("uInvViewport");
+            GLES20.glUniform1i(splatProgram.uniform("uAccum"), 2);
+        }
+
+        // 编译逐顶点着色程序
+        GlProgram vertexProgram = createShadingProgram(SHADING_VERTEX,
+                getVertexShaderCode(), getFragmentShaderCode());
+        if (vertexProgram == null) {
+            Log.e(TAG, "着色器程序创建失败，无法渲染");
             return;
         }
-    
-        // 获取着色器变量句柄
-        positionHandle = GLES20.glGetAttribLocation(program, "vPosition");
-        texCoordHandle = GLES20.glGetAttribLocation(program, "vTexCoord");
-        colorMapHandle = GLES20.glGetUniformLocation(program, "uColorMap");
-        mvpMatrixHandle = GLES20.glGetUniformLocation(program, "uMVPMatrix");
-    
-        // 输出更详细的调试信息
-        Log.d("HeatMapRenderer", "着色器程序创建完成，ID: " + program);
-        Log.d("HeatMapRenderer", "位置句柄: " + positionHandle);
-        Log.d("HeatMapRenderer", "纹理坐标句柄: " + texCoordHandle);
-        Log.d("HeatMapRenderer", "颜色映射句柄: " + colorMapHandle);
-        Log.d("HeatMapRenderer", "矩阵句柄: " + mvpMatrixHandle);
-        
-        // 检查BodyModel是否正确初始化
-        if (bodyModel != null) {
-            FloatBuffer vertexBuffer = bodyModel.getVertexBuffer();
-            FloatBuffer texCoordBuffer = bodyModel.getTexCoordBuffer();
-            if (vertexBuffer != null && texCoordBuffer != null) {
-                Log.d("HeatMapRenderer", "顶点缓冲区容量: " + vertexBuffer.capacity());
-                Log.d("HeatMapRenderer", "纹理坐标缓冲区容量: " + texCoordBuffer.capacity());
-            } else {
-                Log.e("HeatMapRenderer", "顶点缓冲区或纹理坐标缓冲区为空");
-            }
-        } else {
-            Log.e("HeatMapRenderer", "BodyModel为空");
+        positionHandle = vertexProgram.attrib("vPosition");
+        texCoordHandle = vertexProgram.attrib("vTexCoord");
+
+        if (bodyModel == null) {
+            Log.d(TAG, "BodyModel尚未加载完成");
         }
     }
+
+    // 创建着色程序并缓存公共 uniform；颜色映射固定使用纹理单元0，只需设置一次
+    private GlProgram createShadingProgram(int mode, String vertexShaderCode, String fragmentShaderCode) {
+        GlProgram program = GlProgram.create(vertexShaderCode, fragmentShaderCode);
+        programs[mode] = program;
+        if (program != null) {
+            mvpMatrixHandles[mode] = program.uniform("uMVPMatrix");
+            alphaHandles[mode] = program.uniform("uAlpha");
+            rangeHandles[mode] = program.uniform("uRange");
+            glState.useProgram(program);
+            GLES20.glUniform1i(program.uniform("uColorMap"), 0);
+        }
+        return program;
+    }
     
     @Override
     public void onDrawFrame(GL10 gl) {
+        drawFrame();
+        // 快照在画面绘制完成后读回；读回未完成时继续请求下一帧来查询结果
+        if (snapshotCapture.afterFrame(surfaceWidth, surfaceHeight) && surfaceView != null) {
+            surfaceView.requestRender();
+        }
+    }
+
+    /**
+     * 请求截取下一帧画面，可在任意线程调用；Bitmap 在工作线程中生成，通过 executor 回调
+     */
+    public void captureSnapshot(Executor executor, HeatMapView.SnapshotCallback callback) {
+        snapshotCapture.request(executor, callback);
+        if (surfaceView != null) {
+            surfaceView.requestRender();
+        }
+    }
+
+    private void drawFrame() {
+        glState.beginFrame();
+
         // 清屏
         GLES20.glClear(GLES20.GL_COLOR_BUFFER_BIT | GLES20.GL_DEPTH_BUFFER_BIT);
+        glState.countCall();
+
+        // 接管后台加载完成的模型，未就绪时不绘制
+        takePendingModel();
+        BodyModel bodyModel = this.bodyModel;
+        if (bodyModel == null) {
+            return;
+        }
         
         // 检查程序是否有效
-        if (program == 0) {
-            System.err.println("程序无效，无法渲染");
+        if (programs[SHADING_VERTEX] == null) {
             return;
         }
-        
-        // 使用着色器程序
-        GLES20.glUseProgram(program);
-    
-        // 设置透明度uniform
-        int alphaHandle = GLES20.glGetUniformLocation(program, "uAlpha");
-        GLES20.glUniform1f(alphaHandle, alpha);
+
+        // 取用生产者发布的最新快照，渲染路径不加锁
+        applyTemperatureSnapshot(bodyModel);
+        applySampleSnapshots(bodyModel);
+        boolean sensorUniformsChanged = sensorUniformsDirty;
+        sensorUniformsDirty = false;
+        int kernel = uploadedSensorKernel;
+        float radius = uploadedSensorRadius;
+        float splatRadiusModel = bodyModel.getMesh().toModelLength(splatRadius);
+
+        int mode = resolveShadingMode(bodyModel);
+        // 只有逐顶点着色需要把温度写入每个顶点
+        boolean vertexStream = mode == SHADING_VERTEX;
+        if (bodyModel.isVertexStreamEnabled() != vertexStream) {
+            bodyModel.setVertexStreamEnabled(vertexStream);
+        }
+        // 首次绘制或上下文重建后上传VBO，之后只上传变化的部分
+        if (!meshVbo.isUploaded()) {
+            meshVbo.upload(bodyModel);
+        } else {
+            meshVbo.updateTexCoords(bodyModel);
+        }
+        float blend = takeRegionTransition(bodyModel);
 
         // 如果缩放因子改变，重新计算投影矩阵
         if (scaleChanged || positionChanged) {
-            // 获取当前视口尺寸
-            GLES20.glGetIntegerv(GLES20.GL_VIEWPORT, viewport, 0);
-            updateProjectionMatrix(viewport[2], viewport[3],true);//就是width,height 宽度高度 dp
             scaleChanged = false;
             positionChanged = false;
+            // 使用 onSurfaceChanged 记录的视口尺寸，避免每帧查询GL状态
+            updateProjectionMatrix(surfaceWidth, surfaceHeight, true);
             // 打印日志确认缩放因子已应用
-            Log.d("HeatMapRenderer", "应用新的缩放因子: " + scaleFactor );
+            Log.d(TAG, "应用新的缩放因子: " + scaleFactor );
         }
 
-        // 确保设置MVP矩阵 - 这行是关键，确保矩阵被传递给着色器
-        GLES20.glUniformMatrix4fv(mvpMatrixHandle, 1, false, mvpMatrix, 0);
-    
-        // 设置顶点属性
-        GLES20.glVertexAttribPointer(positionHandle, 3, GLES20.GL_FLOAT, false, 0, bodyModel.getVertexBuffer());
-        GLES20.glEnableVertexAttribArray(positionHandle);
-    
-        // 设置纹理坐标属性
-        GLES20.glVertexAttribPointer(texCoordHandle, 2, GLES20.GL_FLOAT, false, 0, bodyModel.getTexCoordBuffer());
-        GLES20.glEnableVertexAttribArray(texCoordHandle);
+        // 泼溅模式先把采样点累积到离屏缓冲
+        if (mode == SHADING_SPLAT_FIELD) {
+            splatField.accumulate(mvpMatrix, splatRadiusModel, surfaceWidth, surfaceHeight);
+        }
+
+        // 使用着色器程序
+        glState.useProgram(programs[mode]);
+
+        // uniform 保存在程序对象中，只在变化后上传
+        if (uploadedAlpha[mode] != alpha) {
+            GLES20.glUniform1f(alphaHandles[mode], alpha);
+            uploadedAlpha[mode] = alpha;
+            glState.countCall();
+        }
+        // 温度范围映射为 t = 温度 * scale + bias；传感器场和泼溅模式中的温度为编码值
+        float min = rangeMin;
+        float max = rangeMax;
+        float scale = 1.0f / (max - min);
+        float bias = -min * scale;
+        if (mode == SHADING_SENSOR_FIELD || mode == SHADING_SPLAT_FIELD) {
+            bias += BodyModel.ENCODE_MIN * scale;
+            scale *= BodyModel.ENCODE_MAX - BodyModel.ENCODE_MIN;
+        }
+        if (uploadedRangeScale[mode] != scale || uploadedRangeBias[mode] != bias) {
+            GLES20.glUniform2f(rangeHandles[mode], scale, bias);
+            uploadedRangeScale[mode] = scale;
+            uploadedRangeBias[mode] = bias;
+            glState.countCall();
+        }
+        if (uploadedMvpVersion[mode] != mvpVersion) {
+            GLES20.glUniformMatrix4fv(mvpMatrixHandles[mode], 1, false, mvpMatrix, 0);
+            uploadedMvpVersion[mode] = mvpVersion;
+            glState.countCall();
+        }
+
+        if (mode == SHADING_SPLAT_FIELD) {
+            GLES20.glUniform2f(splatInvViewportHandle, 1.0f / surfaceWidth, 1.0f / surfaceHeight);
+            glState.countCall();
+            splatField.bindResult(2);
+            meshVbo.bindPosition(splatPositionHandle);
+            glState.useAttribs(GlState.attribBit(splatPositionHandle));
+        } else if (mode == SHADING_SENSOR_FIELD) {
+            if (sensorUniformsChanged) {
+                GLES20.glUniform1f(sensorCountHandle, sensorField.getCount());
+                GLES20.glUniform1f(sensorKernelHandle, kernel);
+                GLES20.glUniform1f(sensorRadiusHandle, bodyModel.getMesh().toModelLength(radius));
+                glState.countCalls(3);
+            }
+            sensorField.bind(1);
+            meshVbo.bindPosition(sensorPositionHandle);
+            glState.useAttribs(GlState.attribBit(sensorPositionHandle));
+        } else if (mode == SHADING_REGION) {
+            // 全部区域的温度只需上传 部位数 个 vec2
+            if (regionUniformDirty) {
+                GLES20.glUniform2fv(regionDataHandle, bodyModel.getRegionCount(), regionUniform, 0);
+                GLES20.glUniform2fv(regionPrevHandle, bodyModel.getRegionCount(), regionPrevUniform, 0);
+                regionUniformDirty = false;
+                glState.countCalls(2);
+            }
+            // 过渡期间每帧只更新混合系数
+            if (uploadedBlend != blend) {
+                GLES20.glUniform1f(regionBlendHandle, blend);
+                uploadedBlend = blend;
+                glState.countCall();
+            }
+            meshVbo.bindPosition(regionPositionHandle);
+            meshVbo.bindRegionId(regionIdHandle);
+            glState.useAttribs(GlState.attribBit(regionPositionHandle) | GlState.attribBit(regionIdHandle));
+        } else {
+            meshVbo.bindPosition(positionHandle);
+            meshVbo.bindTexCoord(texCoordHandle);
+            glState.useAttribs(GlState.attribBit(positionHandle) | GlState.attribBit(texCoordHandle));
+        }
     
-        // 设置颜色映射纹理
-        GLES20.glActiveTexture(GLES20.GL_TEXTURE0);
-        GLES20.glBindTexture(GLES20.GL_TEXTURE_2D, colorMapTexture);
-        GLES20.glUniform1i(colorMapHandle, 0);
+        // 颜色映射纹理，已绑定时不重复绑定
+        glState.bindTexture2D(0, colorMapTexture(palette));
     
-        // 绘制所有身体部位
-        Map<String, int[]> bodyPartIndices = bodyModel.getBodyPartIndices();
-        for (Map.Entry<String, int[]> entry : bodyPartIndices.entrySet()) {
-            int[] indices = entry.getValue();
-            int startIndex = indices[0];
-            int vertexCount = indices[1];
-            
-            // 使用三角形扇形绘制每个身体部位
-            GLES20.glDrawArrays(GLES20.GL_TRIANGLE_FAN, startIndex, vertexCount);
+        // 绘制所有身体部位：加载时已三角剖分，一次 glDrawElements 完成
+        if (meshVbo.canDrawElements(uintIndicesSupported)) {
+            // 缩略图等小视图使用简化的轮廓，放大时使用完整轮廓
+            BodyMeshLod lod = bodyModel.getLod();
+            int level = lodEnabled && lod != null ? lod.selectLevel(pixelsPerUnit) : 0;
+            if (level != lodLevel) {
+                lodLevel = level;
+                Log.d(TAG, "轮廓细节级别: " + level + ", 每单位像素: " + pixelsPerUnit);
+            }
+            meshVbo.drawElements(level);
+        } else {
+            // 不支持32位索引时退回逐部位的三角形扇形
+            Map<String, int[]> bodyPartIndices = bodyModel.getBodyPartIndices();
+            for (Map.Entry<String, int[]> entry : bodyPartIndices.entrySet()) {
+                int[] indices = entry.getValue();
+                GLES20.glDrawArrays(GLES20.GL_TRIANGLE_FAN, indices[0], indices[1]);
+                glState.countDraw();
+            }
         }
-    
-        // 禁用顶点属性数组
-        GLES20.glDisableVertexAttribArray(positionHandle);
-        GLES20.glDisableVertexAttribArray(texCoordHandle);
+
+        // 过渡未结束时继续请求下一帧
+        if (mode == SHADING_REGION && blend < 1.0f && surfaceView != null) {
+            surfaceView.requestRender();
+        }
+    }
+
+    /**
+     * GL线程：取区域数据并推进时间插值，返回当前混合系数（1 表示已到达最新状态）。
+     * 新数据到达时把当前显示的颜色记为上一状态，过渡中途到达的数据也不会跳变
+     */
+    private float takeRegionTransition(BodyModel model) {
+        long now = SystemClock.uptimeMillis();
+        long duration = transitionMillis;
+        float blend = duration > 0 ? Math.min(1.0f, (now - transitionStart) / (float) duration) : 1.0f;
+        if (!model.takeRegionData(regionIncoming)) {
+            return blend;
+        }
+        int n = model.getRegionCount() * 2;
+        if (regionPrevValid && duration > 0) {
+            for (int i = 0; i < n; i++) {
+                regionPrevUniform[i] += (regionUniform[i] - regionPrevUniform[i]) * blend;
+            }
+            blend = 0.0f;
+            transitionStart = now;
+        } else {
+            // 没有可过渡的上一状态：直接到达，计时器视为已结束，之后的帧不再请求重绘
+            System.arraycopy(regionIncoming, 0, regionPrevUniform, 0, n);
+            blend = 1.0f;
+            transitionStart = now - duration;
+        }
+        System.arraycopy(regionIncoming, 0, regionUniform, 0, n);
+        regionPrevValid = true;
+        regionUniformDirty = true;
+        return blend;
+    }
+
+    // 是否按屏幕尺寸自动降低轮廓细节，关闭时始终绘制完整轮廓
+    public void setLodEnabled(boolean enabled) {
+        lodEnabled = enabled;
+    }
+
+    // 设置温度变化的过渡时长（毫秒），仅区域着色模式生效；0 表示直接切换
+    public void setTransitionDuration(long millis) {
+        transitionMillis = Math.max(0, millis);
     }
 
-}
\ No newline at end of file
+}
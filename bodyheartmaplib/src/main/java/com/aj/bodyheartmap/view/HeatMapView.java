@@ -1,13 +1,58 @@
 package com.aj.bodyheartmap.view;
 
 import android.content.Context;
+import android.graphics.Bitmap;
 import android.graphics.PixelFormat;
 import android.opengl.GLSurfaceView;
+import android.os.SystemClock;
 import android.util.AttributeSet;
 import android.util.Log;
 
+import java.io.File;
+import java.util.concurrent.Executor;
+
 public class HeatMapView extends GLSurfaceView {
+
+    // 人体模型加载完成回调，在主线程中调用
+    public interface OnModelReadyListener {
+        void onModelReady(BodyModel model);
+
+        // 模型加载失败（资源缺失、解析或细分失败），已显示的模型保留；可再次调用 setMeshTemplate 重试
+        default void onModelLoadFailed(String template, Throwable error) {
+        }
+    }
+
+    // 快照回调，bitmap 为null表示读回失败（例如EGL上下文丢失）
+    public interface SnapshotCallback {
+        void onSnapshot(Bitmap bitmap);
+    }
+
+    // 自动温度范围的滑动窗口样本数
+    private static final int AUTO_RANGE_WINDOW = 4096;
+
     private HeatMapRenderer renderer;
+    // 把同一vsync内的多次变化合并为一次重绘
+    private FrameScheduler frameScheduler;
+    // 高频传感器样本按帧合并，drain 输出数组在主线程复用
+    private final SensorIngestor sensorIngestor = new SensorIngestor(BodyModel.BODY_PARTS.length);
+    private final int[] drainPartIds = new int[BodyModel.BODY_PARTS.length];
+    private final float[] drainTemperatures = new float[BodyModel.BODY_PARTS.length];
+    private final long[] drainTimestamps = new long[BodyModel.BODY_PARTS.length];
+    // 历史记录与回放，setHistory() 之前为null
+    private volatile TemperatureHistory history;
+    private volatile HistoryPlayer historyPlayer;
+    // 会话记录，startRecording() 之前为null
+    private volatile SessionRecorder sessionRecorder;
+    // 最近创建的记录器（stopRecording() 后保留），新的记录器等待它写完再打开文件
+    private SessionRecorder lastRecorder;
+    // 实时温度的完整状态，部分更新后仍能记录整帧
+    private final float[] liveTemperatures = new float[BodyModel.BODY_PARTS.length];
+    private float liveAlpha = 1.0f;
+    // 自动温度范围，setAutoRange(true) 之前为null
+    private volatile AutoRangeTracker autoRange;
+    // 点击检测的空间索引，首次调用 findPartAt() 时按当前网格构建
+    private BodyPartHitTester hitTester;
+    private final float[] hitVolume = new float[4];
     private float scaleFactor = 1f; // 设置固定缩放因子为0.3
 
     public HeatMapView(Context context) {
@@ -34,28 +79,471 @@ public class HeatMapView extends GLSurfaceView {
         // 设置OpenGL ES 2.0上下文
         setEGLContextClientVersion(2);
         
-        // 创建渲染器
-        renderer = new HeatMapRenderer(context);
+        // 创建渲染器，人体模型在后台线程加载
+        renderer = new HeatMapRenderer(context, this);
         // 设置缩放因子
         renderer.setScaleFactor(scaleFactor);
         setRenderer(renderer);
         
-        // 设置渲染模式为连续渲染，用于调试
-        setRenderMode(GLSurfaceView.RENDERMODE_CONTINUOUSLY);
+        // 按需渲染：只有数据、透明度、缩放或偏移变化时才绘制
+        frameScheduler = new FrameScheduler(this);
+        frameScheduler.setFrameListener(new Runnable() {
+            @Override
+            public void run() {
+                int count = sensorIngestor.drain(drainPartIds, drainTemperatures, drainTimestamps);
+                if (count == 0) {
+                    return;
+                }
+                recordLive(drainPartIds, drainTemperatures, count);
+                TemperatureHistory h = history;
+                if (h != null) {
+                    for (int i = 0; i < count; i++) {
+                        h.append(drainPartIds[i], drainTimestamps[i], drainTemperatures[i]);
+                    }
+                }
+                if (!isPlaybackActive()) {
+                    renderer.setTemperatures(drainPartIds, drainTemperatures, count);
+                }
+            }
+        });
+        setRenderMode(GLSurfaceView.RENDERMODE_WHEN_DIRTY);
         
         // 设置保留EGL上下文
         setPreserveEGLContextOnPause(true);
     }
 
+    // 设置模型加载完成监听；若模型已就绪会立即回调
+    public void setOnModelReadyListener(OnModelReadyListener listener) {
+        renderer.setOnModelReadyListener(listener);
+    }
+
+    public boolean isModelReady() {
+        return renderer.isModelReady();
+    }
+
+    // 调试用：开启后按屏幕刷新率连续绘制
+    public void setContinuousRendering(boolean continuous) {
+        setRenderMode(continuous ? GLSurfaceView.RENDERMODE_CONTINUOUSLY : GLSurfaceView.RENDERMODE_WHEN_DIRTY);
+        if (!continuous) {
+            frameScheduler.invalidate();
+        }
+    }
+
+    // 是否按屏幕上的大小自动选择轮廓细节级别（默认开启），关闭时始终绘制完整轮廓
+    public void setLodEnabled(boolean enabled) {
+        renderer.setLodEnabled(enabled);
+        frameScheduler.invalidate();
+    }
+
+    /**
+     * 把各部位内部细分为间距为 spacing 的三角网格（模型坐标，人体高度约为2，例如0.02），
+     * blendWidth 大于0时相邻部位的温度在该宽度内平滑过渡（至少取 spacing，此时使用逐顶点着色）。
+     * 细分在后台线程中进行，每种参数只细分一次并在视图间共享；spacing 不大于0时恢复原始网格
+     */
+    public void setTessellation(float spacing, float blendWidth) {
+        if (spacing > 0) {
+            renderer.setMeshTemplate(BodyMeshTessellator.templateKey(
+                    BodyMeshCache.DEFAULT_TEMPLATE, spacing, Math.max(0.0f, blendWidth)));
+        } else {
+            renderer.setMeshTemplate(BodyMeshCache.DEFAULT_TEMPLATE);
+        }
+    }
+
+    /**
+     * 视图坐标 (x, y)（像素，例如 MotionEvent.getX/getY）处的部位ID（BodyModel.BODY_PARTS 下标），
+     * 不在任何部位上或模型未就绪时返回-1。按当前的缩放和偏移换算，查询为微秒级，可在每个触摸事件中调用。
+     * 只能在主线程中调用
+     */
+    public int findPartAt(float x, float y) {
+        BodyModel model = renderer.getBodyModel();
+        int width = getWidth();
+        int height = getHeight();
+        if (model == null || width <= 0 || height <= 0) {
+            return -1;
+        }
+        BodyPartHitTester tester = hitTester;
+        if (tester == null || tester.getMesh() != model.getMesh()) {
+            tester = new BodyPartHitTester(model.getMesh());
+            hitTester = tester;
+        }
+        // 视图坐标 -> 模型坐标，与正交投影互逆；视图的y轴向下
+        renderer.getViewVolume(width, height, hitVolume);
+        float modelX = hitVolume[0] + x / width * (hitVolume[1] - hitVolume[0]);
+        float modelY = hitVolume[3] - y / height * (hitVolume[3] - hitVolume[2]);
+        int meshPart = tester.findPart(modelX, modelY);
+        return meshPart < 0 ? -1 : model.getPartId(meshPart);
+    }
+
+    /**
+     * 异步截取当前画面，在主线程回调；读回和转换不在主线程和GL线程中等待，
+     * 可在实时监测时随时调用
+     */
+    public void captureSnapshot(SnapshotCallback callback) {
+        captureSnapshot(new Executor() {
+            @Override
+            public void execute(Runnable command) {
+                post(command);
+            }
+        }, callback);
+    }
+
+    // 异步截取当前画面，通过指定的 executor 回调
+    public void captureSnapshot(Executor executor, SnapshotCallback callback) {
+        if (executor == null || callback == null) {
+            Log.e("HeatMapView", "快照的 executor 和回调不能为空");
+            return;
+        }
+        renderer.captureSnapshot(executor, callback);
+    }
+
+    @Override
+    protected void onAttachedToWindow() {
+        super.onAttachedToWindow();
+        // 分离后重新附加（Fragment、ViewPager、RecyclerView 中常见）时重新登记共享网格
+        renderer.restore();
+    }
+
+    @Override
+    protected void onDetachedFromWindow() {
+        frameScheduler.cancel();
+        stopRecording();
+        if (historyPlayer != null) {
+            historyPlayer.pause();
+        }
+        super.onDetachedFromWindow();
+        // 归还进程级共享网格的引用
+        renderer.release();
+    }
+
     // 更新温度数据
     public void updateTemperatureData(float[] temperatures, float alpha) {
+        TemperatureHistory h = history;
+        if (h != null && temperatures != null) {
+            h.appendAll(SystemClock.elapsedRealtimeNanos(), temperatures);
+        }
+        AutoRangeTracker tracker = autoRange;
+        if (tracker != null && temperatures != null) {
+            tracker.add(temperatures, Math.min(temperatures.length, BodyModel.BODY_PARTS.length));
+        }
+        recordLiveFrame(temperatures, alpha);
+        if (isPlaybackActive()) {
+            // 回放期间实时数据只记录，透明度照常生效
+            renderer.setAlpha(alpha);
+            return;
+        }
         renderer.updateTemperature(temperatures,alpha);
-        requestRender(); // 请求重新渲染
+        frameScheduler.invalidate(); // 请求重新渲染
+    }
+
+    // 只更新单个部位的温度，partId 为 BodyModel.BODY_PARTS 中的下标
+    public void setPartTemperature(int partId, float temperature) {
+        TemperatureHistory h = history;
+        if (h != null) {
+            h.append(partId, SystemClock.elapsedRealtimeNanos(), temperature);
+        }
+        AutoRangeTracker tracker = autoRange;
+        if (tracker != null) {
+            tracker.add(temperature);
+        }
+        if (partId >= 0 && partId < liveTemperatures.length) {
+            synchronized (liveTemperatures) {
+                liveTemperatures[partId] = temperature;
+                recordLiveLocked();
+            }
+        }
+        if (isPlaybackActive()) {
+            return;
+        }
+        renderer.setPartTemperature(partId, temperature);
+        frameScheduler.invalidate();
+    }
+
+    // 批量更新部分部位的温度
+    public void setTemperatures(int[] partIds, float[] temperatures) {
+        TemperatureHistory h = history;
+        if (h != null && partIds != null && temperatures != null) {
+            long now = SystemClock.elapsedRealtimeNanos();
+            for (int i = 0; i < Math.min(partIds.length, temperatures.length); i++) {
+                h.append(partIds[i], now, temperatures[i]);
+            }
+        }
+        AutoRangeTracker tracker = autoRange;
+        if (tracker != null && partIds != null && temperatures != null) {
+            tracker.add(temperatures, Math.min(partIds.length, temperatures.length));
+        }
+        if (partIds != null && temperatures != null) {
+            recordLive(partIds, temperatures, Math.min(partIds.length, temperatures.length));
+        }
+        if (isPlaybackActive()) {
+            return;
+        }
+        renderer.setTemperatures(partIds, temperatures);
+        frameScheduler.invalidate();
+    }
+
+    /**
+     * 开始把每一帧实时温度记录到会话文件（格式见 SessionFormat），已有的记录先停止。
+     * 创建文件和写入都在后台线程进行，不阻塞UI和GL线程；新文件在上一个记录器写完后才打开，
+     * 可以立即重新记录到同一个文件。可用 SessionReader 读取或定位。只能在主线程中调用
+     */
+    public void startRecording(File path) {
+        startRecording(path, null);
+    }
+
+    // 同 startRecording(File)，文件创建或写入失败时在记录器的写线程中回调 errorListener
+    public void startRecording(File path, SessionRecorder.ErrorListener errorListener) {
+        // 构造时关闭上一个记录器
+        SessionRecorder recorder = new SessionRecorder(path, BodyModel.BODY_PARTS.length,
+                SessionFormat.DEFAULT_RECORDS_PER_BLOCK, errorListener, lastRecorder);
+        lastRecorder = recorder;
+        sessionRecorder = recorder;
+    }
+
+    public void stopRecording() {
+        SessionRecorder recorder = sessionRecorder;
+        sessionRecorder = null;
+        if (recorder != null) {
+            recorder.close();
+        }
+    }
+
+    public SessionRecorder getSessionRecorder() {
+        return sessionRecorder;
+    }
+
+    // 更新实时温度的完整状态并记录一帧
+    private void recordLiveFrame(float[] temperatures, float alpha) {
+        if (temperatures == null) {
+            return;
+        }
+        synchronized (liveTemperatures) {
+            System.arraycopy(temperatures, 0, liveTemperatures, 0, Math.min(temperatures.length, liveTemperatures.length));
+            liveAlpha = alpha;
+            recordLiveLocked();
+        }
+    }
+
+    private void recordLive(int[] partIds, float[] temperatures, int count) {
+        synchronized (liveTemperatures) {
+            for (int i = 0; i < count; i++) {
+                int partId = partIds[i];
+                if (partId >= 0 && partId < liveTemperatures.length) {
+                    liveTemperatures[partId] = temperatures[i];
+                }
+            }
+            recordLiveLocked();
+        }
+    }
+
+    // 调用方需持有 liveTemperatures 的锁
+    private void recordLiveLocked() {
+        SessionRecorder recorder = sessionRecorder;
+        if (recorder != null) {
+            recorder.record(SystemClock.elapsedRealtimeNanos(), liveTemperatures, liveAlpha);
+        }
+    }
+
+    /**
+     * 开始记录温度历史（时间戳为 SystemClock.elapsedRealtimeNanos()，与 offerTemperature 的时间戳一致），
+     * 之后可用 seekTo / play / pause / goLive 回放；传入null停止记录。只能在主线程调用
+     */
+    public void setHistory(TemperatureHistory history) {
+        if (historyPlayer != null) {
+            historyPlayer.stop();
+        }
+        this.history = history;
+        historyPlayer = history == null ? null : new HistoryPlayer(history, new HistoryPlayer.SnapshotSink() {
+            @Override
+            public void onSnapshot(long timestampNanos, int[] partIds, float[] temperatures, int count) {
+                renderer.setTemperatures(partIds, temperatures, count);
+                frameScheduler.invalidate();
+            }
+        });
+    }
+
+    public TemperatureHistory getHistory() {
+        return history;
+    }
+
+    // 显示指定时刻的历史温度并进入回放状态
+    public void seekTo(long timestampNanos) {
+        if (historyPlayer != null) {
+            historyPlayer.seekTo(timestampNanos);
+        }
+    }
+
+    // 从当前回放位置按 speed 倍速播放，负数为倒放
+    public void play(float speed) {
+        if (historyPlayer != null) {
+            historyPlayer.play(speed);
+        }
+    }
+
+    public void pause() {
+        if (historyPlayer != null) {
+            historyPlayer.pause();
+        }
+    }
+
+    // 退出回放，显示最新记录的温度
+    public void goLive() {
+        if (historyPlayer == null || !historyPlayer.isActive()) {
+            return;
+        }
+        // 定位到最新记录（超出范围时取边界）推送一次，再退出回放
+        historyPlayer.seekTo(Long.MAX_VALUE);
+        historyPlayer.stop();
+    }
+
+    public boolean isPlaybackActive() {
+        HistoryPlayer player = historyPlayer;
+        return player != null && player.isActive();
+    }
+
+    // 当前回放位置（纳秒）
+    public long getPlaybackPosition() {
+        return historyPlayer != null ? historyPlayer.getPosition() : 0;
+    }
+
+    /**
+     * 提交单个部位的传感器样本，可在任意线程以kHz速率调用；同一帧内的样本按归并方式合并，每帧只更新一次。
+     * timestampNanos 需来自同一单调时钟（如 SystemClock.elapsedRealtimeNanos()），乱序的旧样本被丢弃并返回false
+     */
+    public boolean offerTemperature(int partId, float temperature, long timestampNanos) {
+        boolean accepted = sensorIngestor.offer(partId, temperature, timestampNanos);
+        if (accepted) {
+            AutoRangeTracker tracker = autoRange;
+            if (tracker != null) {
+                tracker.add(temperature);
+            }
+            frameScheduler.invalidate();
+        }
+        return accepted;
+    }
+
+    // 批量提交同一时刻的样本，返回被接收的个数
+    public int offerTemperatures(int[] partIds, float[] temperatures, int count, long timestampNanos) {
+        int accepted = sensorIngestor.offer(partIds, temperatures, count, timestampNanos);
+        if (accepted > 0) {
+            AutoRangeTracker tracker = autoRange;
+            if (tracker != null) {
+                tracker.add(temperatures, count);
+            }
+            frameScheduler.invalidate();
+        }
+        return accepted;
+    }
+
+    // 设置同一帧内样本的归并方式 SensorIngestor.REDUCE_LATEST（默认）/ REDUCE_MAX / REDUCE_MIN / REDUCE_MEAN
+    public void setIngestReduction(int reduction) {
+        sensorIngestor.setReduction(reduction);
+    }
+
+    // 用于读取接收/合并/丢弃的样本统计
+    public SensorIngestor getSensorIngestor() {
+        return sensorIngestor;
+    }
+
+    // 设置温度变化的过渡时长（毫秒），颜色在着色器中平滑过渡；仅区域着色模式生效，0 表示直接切换
+    public void setTransitionDuration(long millis) {
+        renderer.setTransitionDuration(millis);
+    }
+
+    // 按名称切换调色板（ColorPalette.CLASSIC / VIRIDIS / INFERNO ... 或自定义注册的名称）
+    public void setPalette(String name) {
+        ColorPalette palette = ColorPalette.get(name);
+        if (palette == null) {
+            Log.e("HeatMapView", "未注册的调色板: " + name);
+            return;
+        }
+        setPalette(palette);
+    }
+
+    public void setPalette(ColorPalette palette) {
+        renderer.setPalette(palette);
+        frameScheduler.invalidate();
+    }
+
+    // 设置显示的温度范围（摄氏度），默认 35-42；只更新 uniform，不改写顶点数据
+    public void setTemperatureRange(float min, float max) {
+        // 手动设置范围时关闭自动范围
+        autoRange = null;
+        renderer.setTemperatureRange(min, max);
+        frameScheduler.invalidate();
+    }
+
+    /**
+     * 自动温度范围：按最近 AUTO_RANGE_WINDOW 个样本的 2%-98% 百分位跟踪显示范围，带滞回避免闪烁。
+     * 统计在提交温度的线程中增量进行，GL线程只收到范围更新；关闭后保持最后的范围
+     */
+    public void setAutoRange(boolean enabled) {
+        if (!enabled) {
+            autoRange = null;
+            return;
+        }
+        if (autoRange == null) {
+            autoRange = new AutoRangeTracker(AUTO_RANGE_WINDOW, new AutoRangeTracker.Listener() {
+                @Override
+                public void onRangeChanged(float min, float max) {
+                    renderer.setTemperatureRange(min, max);
+                    frameScheduler.invalidate();
+                }
+            });
+        }
+    }
+
+    // 用于调整百分位、滞回等参数，自动范围关闭时为null
+    public AutoRangeTracker getAutoRangeTracker() {
+        return autoRange;
+    }
+
+    /**
+     * 设置着色模式 HeatMapRenderer.SHADING_REGION（默认）/ SHADING_VERTEX / SHADING_SENSOR_FIELD / SHADING_SPLAT_FIELD；
+     * 两种场模式在没有采样点或设备不支持时退回区域着色
+     */
+    public void setShadingMode(int mode) {
+        renderer.setShadingMode(mode);
+        frameScheduler.invalidate();
+    }
+
+    /**
+     * 设置传感器采样点，配合 setShadingMode(HeatMapRenderer.SHADING_SENSOR_FIELD) 使用。
+     * xs/ys 为原始轮廓坐标（与部位JSON相同的坐标系），temperatures 为摄氏度
+     */
+    public void setSensorSamples(float[] xs, float[] ys, float[] temperatures, int count) {
+        renderer.setSensorSamples(xs, ys, temperatures, count);
+        frameScheduler.invalidate();
+    }
+
+    public void clearSensorSamples() {
+        renderer.clearSensorSamples();
+        frameScheduler.invalidate();
+    }
+
+    /**
+     * 设置泼溅采样点，配合 setShadingMode(HeatMapRenderer.SHADING_SPLAT_FIELD) 使用，适合上千个采样点。
+     * xs/ys 为原始轮廓坐标，temperatures 为摄氏度
+     */
+    public void setSplatSamples(float[] xs, float[] ys, float[] temperatures, int count) {
+        renderer.setSplatSamples(xs, ys, temperatures, count);
+        frameScheduler.invalidate();
+    }
+
+    // 设置泼溅核半径（原始轮廓坐标单位）
+    public void setSplatRadius(float radius) {
+        renderer.setSplatRadius(radius);
+        frameScheduler.invalidate();
+    }
+
+    // 设置传感器场插值核 HeatMapRenderer.KERNEL_INVERSE_DISTANCE / KERNEL_GAUSSIAN
+    public void setSensorKernel(int kernel, float radius) {
+        renderer.setSensorKernel(kernel, radius);
+        frameScheduler.invalidate();
     }
 
     public void updateGlAlpha(float currentAlpha) {
         renderer.setAlpha(currentAlpha);
-        requestRender(); // 请求重新渲染
+        frameScheduler.invalidate(); // 请求重新渲染
     }
     
     // 设置缩放因子
@@ -69,8 +557,8 @@ public class HeatMapView extends GLSurfaceView {
         if (renderer != null) {
             renderer.setScaleFactor(scaleFactor);
             Log.d("HeatMapView", "设置缩放因子: " + scaleFactor);
-            // 强制立即重绘
-            requestRender();
+            // 请求重绘
+            frameScheduler.invalidate();
         } else {
             Log.e("HeatMapView", "渲染器为空，无法设置缩放因子");
         }
@@ -104,7 +592,7 @@ public class HeatMapView extends GLSurfaceView {
         if (renderer != null) {
             renderer.setOffsetX(offsetX);
             Log.d("HeatMapView", "设置X轴偏移: " + offsetX);
-            requestRender(); // 强制重新渲染
+            frameScheduler.invalidate(); // 请求重新渲染
         }
     }
 
@@ -114,7 +602,7 @@ public class HeatMapView extends GLSurfaceView {
         if (renderer != null) {
             renderer.setOffsetY(offsetY);
             Log.d("HeatMapView", "设置Y轴偏移: " + offsetY);
-            requestRender(); // 强制重新渲染
+            frameScheduler.invalidate(); // 请求重新渲染
         }
     }
 
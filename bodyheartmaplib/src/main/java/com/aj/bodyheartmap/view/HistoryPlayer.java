@@ -0,0 +1,132 @@
+package com.aj.bodyheartmap.view;
+
+import android.view.Choreographer;
+
+/**
+ * 历史回放控制器
+ * 在 TemperatureHistory 中定位到任意时刻，或按 N 倍速回放（负数为倒放）；
+ * 每个vsync推进播放位置，把该时刻各部位的温度交给 SnapshotSink。
+ * 只能在主线程使用
+ */
+public final class HistoryPlayer implements Choreographer.FrameCallback {
+
+    // 接收回放快照，只包含有历史数据的部位
+    public interface SnapshotSink {
+        void onSnapshot(long timestampNanos, int[] partIds, float[] temperatures, int count);
+    }
+
+    private final TemperatureHistory history;
+    private final SnapshotSink sink;
+    private final float[] values;
+    private final int[] partIds;
+    private final float[] temperatures;
+
+    // 处于回放状态时，实时数据只记录不显示；可在其他线程读取
+    private volatile boolean active = false;
+    private boolean playing = false;
+    private float speed = 1.0f;
+    private long position;
+    private long lastFrameNanos;
+
+    public HistoryPlayer(TemperatureHistory history, SnapshotSink sink) {
+        this.history = history;
+        this.sink = sink;
+        int n = history.getRegionCount();
+        values = new float[n];
+        partIds = new int[n];
+        temperatures = new float[n];
+    }
+
+    public TemperatureHistory getHistory() {
+        return history;
+    }
+
+    // 定位到指定时刻并显示，超出记录范围时取边界
+    public void seekTo(long timestampNanos) {
+        active = true;
+        position = clamp(timestampNanos);
+        lastFrameNanos = 0;
+        push();
+    }
+
+    // 从当前位置按 speed 倍速回放；尚未定位时从最旧的记录开始
+    public void play(float speed) {
+        if (!active) {
+            active = true;
+            position = history.getOldestTimestamp();
+        }
+        this.speed = speed;
+        if (!playing) {
+            playing = true;
+            lastFrameNanos = 0;
+            Choreographer.getInstance().postFrameCallback(this);
+        }
+    }
+
+    public void pause() {
+        playing = false;
+        Choreographer.getInstance().removeFrameCallback(this);
+    }
+
+    // 退出回放，调用方恢复显示实时数据
+    public void stop() {
+        pause();
+        active = false;
+    }
+
+    public boolean isActive() {
+        return active;
+    }
+
+    public boolean isPlaying() {
+        return playing;
+    }
+
+    public long getPosition() {
+        return position;
+    }
+
+    @Override
+    public void doFrame(long frameTimeNanos) {
+        if (!playing) {
+            return;
+        }
+        if (lastFrameNanos != 0) {
+            position = clamp(position + (long) ((frameTimeNanos - lastFrameNanos) * (double) speed));
+        }
+        lastFrameNanos = frameTimeNanos;
+        push();
+        // 播放到记录边界时自动暂停
+        boolean atEnd = speed >= 0 ? position >= history.getNewestTimestamp() : position <= history.getOldestTimestamp();
+        if (atEnd) {
+            playing = false;
+        } else {
+            Choreographer.getInstance().postFrameCallback(this);
+        }
+    }
+
+    private long clamp(long timestampNanos) {
+        long oldest = history.getOldestTimestamp();
+        long newest = history.getNewestTimestamp();
+        if (oldest > newest) {
+            // 没有记录
+            return timestampNanos;
+        }
+        return Math.max(oldest, Math.min(newest, timestampNanos));
+    }
+
+    private void push() {
+        if (history.snapshot(position, values) == 0) {
+            return;
+        }
+        int n = 0;
+        for (int i = 0; i < values.length; i++) {
+            if (!Float.isNaN(values[i])) {
+                partIds[n] = i;
+                temperatures[n] = values[i];
+                n++;
+            }
+        }
+        sink.onSnapshot(position, partIds, temperatures, n);
+    }
+}
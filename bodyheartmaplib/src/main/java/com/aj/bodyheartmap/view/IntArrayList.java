@@ -0,0 +1,64 @@
+package com.aj.bodyheartmap.view;
+
+import java.util.Arrays;
+
+/**
+ * 可增长的基本类型int数组
+ * 用于三角剖分等加载阶段收集索引，避免 List<Integer> 的装箱
+ */
+public final class IntArrayList {
+    private int[] data;
+    private int size;
+
+    public IntArrayList() {
+        this(64);
+    }
+
+    public IntArrayList(int initialCapacity) {
+        data = new int[Math.max(initialCapacity, 4)];
+    }
+
+    public void add(int value) {
+        if (size == data.length) {
+            data = Arrays.copyOf(data, data.length * 2);
+        }
+        data[size++] = value;
+    }
+
+    public void add(int a, int b, int c) {
+        if (size + 3 > data.length) {
+            data = Arrays.copyOf(data, Math.max(data.length * 2, size + 3));
+        }
+        data[size++] = a;
+        data[size++] = b;
+        data[size++] = c;
+    }
+
+    public int get(int index) {
+        return data[index];
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public void clear() {
+        size = 0;
+    }
+
+    // 截断到指定长度
+    public void truncate(int newSize) {
+        if (newSize < size) {
+            size = Math.max(newSize, 0);
+        }
+    }
+
+    // 返回内部数组，有效数据为 [0, size)
+    public int[] array() {
+        return data;
+    }
+
+    public int[] toArray() {
+        return Arrays.copyOf(data, size);
+    }
+}
@@ -49,8 +49,8 @@ public class OpenGlxyz extends GLSurfaceView {
         renderer = new CoordinateRenderer();
         setRenderer(renderer);
         
-        // 设置渲染模式为连续渲染
-        setRenderMode(GLSurfaceView.RENDERMODE_CONTINUOUSLY);
+        // 坐标系是静态画面，按需渲染，只在缩放变化时重绘
+        setRenderMode(GLSurfaceView.RENDERMODE_WHEN_DIRTY);
         
         // 设置保留EGL上下文
         setPreserveEGLContextOnPause(true);
@@ -66,6 +66,11 @@ public class OpenGlxyz extends GLSurfaceView {
         }
     }
     
+    // 调试用：开启后按屏幕刷新率连续绘制
+    public void setContinuousRendering(boolean continuous) {
+        setRenderMode(continuous ? GLSurfaceView.RENDERMODE_CONTINUOUSLY : GLSurfaceView.RENDERMODE_WHEN_DIRTY);
+    }
+
     // 旋转视角
     public void rotateView(float angleX, float angleY) {
         // 可以添加旋转视角的功能，让用户更好地观察坐标系
@@ -217,7 +222,10 @@ public class OpenGlxyz extends GLSurfaceView {
         private final FloatBuffer axisLabelsBuffer;
         private final FloatBuffer tickLabelsBuffer;
         
-        private int program;
+        private GlProgram program;
+        private final GlState glState = new GlState();
+        // MVP矩阵变化后才重新上传
+        private volatile boolean mvpDirty = true;
         private int positionHandle;
         private int colorHandle;
         private int mvpMatrixHandle;
@@ -287,34 +295,31 @@ public class OpenGlxyz extends GLSurfaceView {
             Matrix.multiplyMM(mvpMatrix, 0, viewMatrix, 0, modelMatrix, 0);
             Matrix.multiplyMM(mvpMatrix, 0, projectionMatrix, 0, mvpMatrix, 0);
             
+            mvpDirty = true;
             Log.d(TAG, "坐标轴缩放设置为: " + axisScale);
         }
 
         @Override
         public void onSurfaceCreated(GL10 gl, EGLConfig config) {
             Log.d(TAG, "onSurfaceCreated: 开始创建OpenGL表面");
+            glState.reset();
             
             // 设置清屏颜色为透明
             GLES20.glClearColor(0.0f, 0.0f, 0.0f, 0.0f);
             
-            // 编译着色器
-            int vertexShader = loadShader(GLES20.GL_VERTEX_SHADER, VERTEX_SHADER);
-            int fragmentShader = loadShader(GLES20.GL_FRAGMENT_SHADER, FRAGMENT_SHADER);
-            
-            // 创建OpenGL程序
-            program = GLES20.glCreateProgram();
-            GLES20.glAttachShader(program, vertexShader);
-            GLES20.glAttachShader(program, fragmentShader);
-            GLES20.glLinkProgram(program);
-            
-            // 获取着色器变量句柄
-            positionHandle = GLES20.glGetAttribLocation(program, "aPosition");
-            colorHandle = GLES20.glGetAttribLocation(program, "aColor");
-            mvpMatrixHandle = GLES20.glGetUniformLocation(program, "uMVPMatrix");
-            pointSizeHandle = GLES20.glGetUniformLocation(program, "uPointSize");  // 获取点大小句柄
+            // 编译着色器，变量位置在链接时缓存
+            program = GlProgram.create(VERTEX_SHADER, FRAGMENT_SHADER);
+            if (program == null) {
+                return;
+            }
+            positionHandle = program.attrib("aPosition");
+            colorHandle = program.attrib("aColor");
+            mvpMatrixHandle = program.uniform("uMVPMatrix");
+            pointSizeHandle = program.uniform("uPointSize");  // 获取点大小句柄
+            mvpDirty = true;
             
             // 启用深度测试
-            GLES20.glEnable(GLES20.GL_DEPTH_TEST);
+            glState.setDepthTest(true);
         }
 
         @Override
@@ -385,121 +390,64 @@ public class OpenGlxyz extends GLSurfaceView {
             // 计算最终的MVP矩阵
             Matrix.multiplyMM(mvpMatrix, 0, viewMatrix, 0, modelMatrix, 0);
             Matrix.multiplyMM(mvpMatrix, 0, projectionMatrix, 0, mvpMatrix, 0);
+            mvpDirty = true;
         }
 
         @Override
         public void onDrawFrame(GL10 gl) {
-            // 添加周期性日志，避免日志过多
-            if (Math.random() < 0.01) { // 只有1%的帧会输出日志
-                Log.d(TAG, "onDrawFrame: 绘制坐标系");
-            }
+            glState.beginFrame();
             
             // 清除颜色缓冲区和深度缓冲区
             GLES20.glClear(GLES20.GL_COLOR_BUFFER_BIT | GLES20.GL_DEPTH_BUFFER_BIT);
+            glState.countCall();
+            if (program == null) {
+                return;
+            }
             
             // 使用OpenGL程序
-            GLES20.glUseProgram(program);
+            glState.useProgram(program);
             
             // 设置MVP矩阵
-            GLES20.glUniformMatrix4fv(mvpMatrixHandle, 1, false, mvpMatrix, 0);
+            if (mvpDirty) {
+                mvpDirty = false;
+                GLES20.glUniformMatrix4fv(mvpMatrixHandle, 1, false, mvpMatrix, 0);
+                glState.countCall();
+            }
             
-            // 启用顶点属性
-            GLES20.glEnableVertexAttribArray(positionHandle);
-            GLES20.glEnableVertexAttribArray(colorHandle);
+            // 启用顶点属性，之后各帧保持启用
+            glState.useAttribs(GlState.attribBit(positionHandle) | GlState.attribBit(colorHandle));
             
             // 绘制坐标轴
-            vertexBuffer.position(0);
-            GLES20.glVertexAttribPointer(positionHandle, 3, GLES20.GL_FLOAT, false, 
-                    6 * 4, vertexBuffer);
-            
-            vertexBuffer.position(3);
-            GLES20.glVertexAttribPointer(colorHandle, 3, GLES20.GL_FLOAT, false, 
-                    6 * 4, vertexBuffer);
-            
             GLES20.glLineWidth(5.0f); // 设置线宽
-            GLES20.glDrawArrays(GLES20.GL_LINES, 0, 8); // 4对线段，共8个顶点
-            
-            // 绘制X轴刻度
-            xTicksBuffer.position(0);
-            GLES20.glVertexAttribPointer(positionHandle, 3, GLES20.GL_FLOAT, false, 
-                    6 * 4, xTicksBuffer);
-            
-            xTicksBuffer.position(3);
-            GLES20.glVertexAttribPointer(colorHandle, 3, GLES20.GL_FLOAT, false, 
-                    6 * 4, xTicksBuffer);
+            glState.countCall();
+            draw(vertexBuffer, GLES20.GL_LINES, 8); // 4对线段，共8个顶点
             
+            // 绘制X、Y、Z轴刻度
             GLES20.glLineWidth(2.0f); // 设置刻度线宽
-            GLES20.glDrawArrays(GLES20.GL_LINES, 0, 10); // 5对刻度线，共10个顶点
-            
-            // 绘制Y轴刻度
-            yTicksBuffer.position(0);
-            GLES20.glVertexAttribPointer(positionHandle, 3, GLES20.GL_FLOAT, false, 
-                    6 * 4, yTicksBuffer);
+            glState.countCall();
+            draw(xTicksBuffer, GLES20.GL_LINES, 10); // 5对刻度线，共10个顶点
+            draw(yTicksBuffer, GLES20.GL_LINES, 10);
+            draw(zTicksBuffer, GLES20.GL_LINES, 10);
             
-            yTicksBuffer.position(3);
-            GLES20.glVertexAttribPointer(colorHandle, 3, GLES20.GL_FLOAT, false, 
-                    6 * 4, yTicksBuffer);
-            
-            GLES20.glDrawArrays(GLES20.GL_LINES, 0, 10); // 5对刻度线，共10个顶点
-            
-            // 绘制Z轴刻度
-            zTicksBuffer.position(0);
-            GLES20.glVertexAttribPointer(positionHandle, 3, GLES20.GL_FLOAT, false, 
-                    6 * 4, zTicksBuffer);
-            
-            zTicksBuffer.position(3);
-            GLES20.glVertexAttribPointer(colorHandle, 3, GLES20.GL_FLOAT, false, 
-                    6 * 4, zTicksBuffer);
-            
-            GLES20.glDrawArrays(GLES20.GL_LINES, 0, 10); // 5对刻度线，共10个顶点
-            
-            // 绘制坐标轴标签点 (用于标识XYZ位置)
-            axisLabelsBuffer.position(0);
-            GLES20.glVertexAttribPointer(positionHandle, 3, GLES20.GL_FLOAT, false, 
-                    6 * 4, axisLabelsBuffer);
-            
-            axisLabelsBuffer.position(3);
-            GLES20.glVertexAttribPointer(colorHandle, 3, GLES20.GL_FLOAT, false, 
-                    6 * 4, axisLabelsBuffer);
-            
-            // 设置点大小为10.0
+            // 绘制坐标轴标签点 (用于标识XYZ位置)，点大小为10.0
             GLES20.glUniform1f(pointSizeHandle, 10.0f);
-            GLES20.glDrawArrays(GLES20.GL_POINTS, 0, 3); // 3个标签点
-            
-            // 绘制刻度值标签点
-            tickLabelsBuffer.position(0);
-            GLES20.glVertexAttribPointer(positionHandle, 3, GLES20.GL_FLOAT, false, 
-                    6 * 4, tickLabelsBuffer);
-            
-            tickLabelsBuffer.position(3);
-            GLES20.glVertexAttribPointer(colorHandle, 3, GLES20.GL_FLOAT, false, 
-                    6 * 4, tickLabelsBuffer);
+            glState.countCall();
+            draw(axisLabelsBuffer, GLES20.GL_POINTS, 3); // 3个标签点
             
-            // 设置点大小为5.0
+            // 绘制刻度值标签点，点大小为5.0
             GLES20.glUniform1f(pointSizeHandle, 5.0f);
-            GLES20.glDrawArrays(GLES20.GL_POINTS, 0, 10); // 10个刻度值标签点
-            
-            // 禁用顶点属性
-            GLES20.glDisableVertexAttribArray(positionHandle);
-            GLES20.glDisableVertexAttribArray(colorHandle);
+            glState.countCall();
+            draw(tickLabelsBuffer, GLES20.GL_POINTS, 10); // 10个刻度值标签点
         }
 
-        // 加载着色器
-        private int loadShader(int type, String shaderCode) {
-            int shader = GLES20.glCreateShader(type);
-            GLES20.glShaderSource(shader, shaderCode);
-            GLES20.glCompileShader(shader);
-            
-            // 检查编译状态
-            final int[] compileStatus = new int[1];
-            GLES20.glGetShaderiv(shader, GLES20.GL_COMPILE_STATUS, compileStatus, 0);
-            if (compileStatus[0] == 0) {
-                Log.e(TAG, "着色器编译错误: " + GLES20.glGetShaderInfoLog(shader));
-                GLES20.glDeleteShader(shader);
-                shader = 0;
-            }
-            
-            return shader;
+        // 绘制交错存放 x,y,z,r,g,b 的客户端顶点数据
+        private void draw(FloatBuffer buffer, int mode, int count) {
+            buffer.position(0);
+            glState.vertexAttribPointer(positionHandle, 3, 6 * 4, buffer);
+            buffer.position(3);
+            glState.vertexAttribPointer(colorHandle, 3, 6 * 4, buffer);
+            GLES20.glDrawArrays(mode, 0, count);
+            glState.countDraw();
         }
     }
-}
\ No newline at end of file
+}
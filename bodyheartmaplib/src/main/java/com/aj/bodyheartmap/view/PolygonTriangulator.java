@@ -0,0 +1,152 @@
+package com.aj.bodyheartmap.view;
+
+import java.nio.FloatBuffer;
+
+/**
+ * 简单多边形三角剖分（耳切法）
+ * 支持凹多边形，替代按 GL_TRIANGLE_FAN 直接绘制轮廓点导致的凹处溢出
+ */
+public final class PolygonTriangulator {
+
+    private static final float EPSILON = 1e-12f;
+
+    private PolygonTriangulator() {
+    }
+
+    // 逐部位剖分，返回全部三角形索引
+    public static int[] triangulateParts(FloatBuffer vertices, int[] partStarts, int[] partCounts) {
+        IntArrayList indices = new IntArrayList(vertices.limit() * 2);
+        for (int i = 0; i < partStarts.length; i++) {
+            triangulate(vertices, partStarts[i], partCounts[i], indices);
+        }
+        return indices.toArray();
+    }
+
+    /**
+     * 对 vertices 中 [start, start + count) 的轮廓点做三角剖分，
+     * 顶点按 x,y,z 存放；生成的三角形索引（全局索引）追加到 out，返回三角形数量
+     */
+    public static int triangulate(FloatBuffer vertices, int start, int count, IntArrayList out) {
+        if (count < 3) {
+            return 0;
+        }
+        float[] xs = new float[count];
+        float[] ys = new float[count];
+        int[] ids = new int[count];
+        for (int i = 0; i < count; i++) {
+            xs[i] = vertices.get((start + i) * 3);
+            ys[i] = vertices.get((start + i) * 3 + 1);
+            ids[i] = start + i;
+        }
+        return triangulate(xs, ys, ids, count, out);
+    }
+
+    /**
+     * 对按轮廓顺序给出的 count 个点做三角剖分，ids[i] 为第 i 个点的全局顶点索引，
+     * 三角形索引追加到 out，返回三角形数量；xs、ys 只读取不修改
+     */
+    public static int triangulate(float[] xs, float[] ys, int[] ids, int count, IntArrayList out) {
+        if (count < 3) {
+            return 0;
+        }
+
+        // 多边形方向，逆时针为正
+        double area = 0;
+        for (int i = 0, j = count - 1; i < count; j = i++) {
+            area += (double) xs[j] * ys[i] - (double) xs[i] * ys[j];
+        }
+        float orientation = area >= 0 ? 1.0f : -1.0f;
+
+        // 双向链表表示剩余顶点
+        int[] prev = new int[count];
+        int[] next = new int[count];
+        for (int i = 0; i < count; i++) {
+            prev[i] = (i + count - 1) % count;
+            next[i] = (i + 1) % count;
+        }
+
+        int triangles = 0;
+        int remaining = count;
+        int current = 0;
+        int misses = 0;
+        while (remaining > 3) {
+            int p = prev[current];
+            int n = next[current];
+            float cross = cross(xs, ys, p, current, n) * orientation;
+
+            boolean clip = false;
+            if (Math.abs(cross) <= EPSILON || samePoint(xs, ys, p, current) || samePoint(xs, ys, current, n)) {
+                // 退化顶点（共线或重复），直接移除
+                unlink(prev, next, current);
+                remaining--;
+                current = n;
+                misses = 0;
+                continue;
+            } else if (cross > 0 && !containsOtherVertex(xs, ys, prev, next, p, current, n, orientation)) {
+                clip = true;
+            } else if (misses > remaining) {
+                // 自相交等异常轮廓找不到耳朵时强制切除，保证终止
+                clip = true;
+            }
+
+            if (clip) {
+                out.add(ids[p], ids[current], ids[n]);
+                triangles++;
+                unlink(prev, next, current);
+                remaining--;
+                current = n;
+                misses = 0;
+            } else {
+                current = n;
+                misses++;
+            }
+        }
+
+        int p = prev[current];
+        int n = next[current];
+        if (Math.abs(cross(xs, ys, p, current, n)) > EPSILON) {
+            out.add(ids[p], ids[current], ids[n]);
+            triangles++;
+        }
+        return triangles;
+    }
+
+    private static float cross(float[] xs, float[] ys, int a, int b, int c) {
+        return (xs[b] - xs[a]) * (ys[c] - ys[b]) - (ys[b] - ys[a]) * (xs[c] - xs[b]);
+    }
+
+    private static boolean samePoint(float[] xs, float[] ys, int a, int b) {
+        return xs[a] == xs[b] && ys[a] == ys[b];
+    }
+
+    private static void unlink(int[] prev, int[] next, int v) {
+        next[prev[v]] = next[v];
+        prev[next[v]] = prev[v];
+    }
+
+    // 三角形 (a,b,c) 内是否包含其他剩余的凹顶点
+    private static boolean containsOtherVertex(float[] xs, float[] ys, int[] prev, int[] next,
+                                               int a, int b, int c, float orientation) {
+        for (int v = next[c]; v != a; v = next[v]) {
+            if (samePoint(xs, ys, v, a) || samePoint(xs, ys, v, b) || samePoint(xs, ys, v, c)) {
+                continue;
+            }
+            // 凸顶点不可能落在耳朵内部，跳过
+            if (cross(xs, ys, prev[v], v, next[v]) * orientation > 0) {
+                continue;
+            }
+            if (pointInTriangle(xs[v], ys[v], xs, ys, a, b, c, orientation)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static boolean pointInTriangle(float px, float py, float[] xs, float[] ys,
+                                           int a, int b, int c, float orientation) {
+        float d1 = ((xs[b] - xs[a]) * (py - ys[a]) - (ys[b] - ys[a]) * (px - xs[a])) * orientation;
+        float d2 = ((xs[c] - xs[b]) * (py - ys[b]) - (ys[c] - ys[b]) * (px - xs[b])) * orientation;
+        float d3 = ((xs[a] - xs[c]) * (py - ys[c]) - (ys[a] - ys[c]) * (px - xs[c])) * orientation;
+        return d1 >= 0 && d2 >= 0 && d3 >= 0;
+    }
+}
@@ -0,0 +1,149 @@
+package com.aj.bodyheartmap.view;
+
+import java.nio.FloatBuffer;
+
+/**
+ * 部位之间的逐顶点过渡权重
+ * 每个顶点对本部位的权重为1，对 blendWidth 范围内的其他部位按到该部位最近顶点的距离取平滑递减的权重，
+ * 归一化后按 CSR 形式存放。部位交界处位置相同的顶点得到相同的权重，两侧颜色连续，
+ * 温度从交界处向部位内部在 blendWidth 内平滑过渡到本部位的值。
+ * 构建时用边长为 blendWidth（至少为包围盒的 1/MAX_GRID_SIZE）的均匀网格查找邻近顶点；
+ * apply() 的开销与 顶点数 × 平均权重数 成正比。
+ * 构建后只读，不依赖 Android
+ */
+public final class RegionBlend {
+
+    // 邻近查找网格每个方向的最大格子数，过窄的 blendWidth 不会使网格无限增大
+    private static final int MAX_GRID_SIZE = 1024;
+
+    // 顶点 v 的权重为 [start[v], start[v + 1])
+    private final int[] start;
+    private final int[] parts;
+    private final float[] weights;
+    private long buildMillis;
+
+    public RegionBlend(BodyMesh mesh, float blendWidth) {
+        int vertexCount = mesh.getTotalVertices();
+        int partCount = mesh.getPartCount();
+        float[] xs = new float[vertexCount];
+        float[] ys = new float[vertexCount];
+        int[] vertexParts = new int[vertexCount];
+        FloatBuffer vertices = mesh.newVertexView();
+        float minX = Float.MAX_VALUE;
+        float minY = Float.MAX_VALUE;
+        float maxX = -Float.MAX_VALUE;
+        float maxY = -Float.MAX_VALUE;
+        for (int part = 0; part < partCount; part++) {
+            for (int v = mesh.getPartStart(part), end = v + mesh.getPartVertexCount(part); v < end; v++) {
+                xs[v] = vertices.get(v * BodyMeshFormat.FLOATS_PER_VERTEX);
+                ys[v] = vertices.get(v * BodyMeshFormat.FLOATS_PER_VERTEX + 1);
+                vertexParts[v] = part;
+                minX = Math.min(minX, xs[v]);
+                minY = Math.min(minY, ys[v]);
+                maxX = Math.max(maxX, xs[v]);
+                maxY = Math.max(maxY, ys[v]);
+            }
+        }
+
+        // 格子边长不小于 blendWidth，只需检查相邻的 3x3 个格子
+        float cellSize = Math.max(blendWidth, Math.max(maxX - minX, maxY - minY) / MAX_GRID_SIZE);
+        int columns = Math.max(1, (int) Math.ceil((maxX - minX) / cellSize) + 1);
+        int rows = Math.max(1, (int) Math.ceil((maxY - minY) / cellSize) + 1);
+        int[] cellStart = new int[columns * rows + 1];
+        int[] cellOf = new int[vertexCount];
+        for (int v = 0; v < vertexCount; v++) {
+            int column = (int) ((xs[v] - minX) / cellSize);
+            int row = (int) ((ys[v] - minY) / cellSize);
+            cellOf[v] = row * columns + column;
+            cellStart[cellOf[v] + 1]++;
+        }
+        for (int i = 0; i < columns * rows; i++) {
+            cellStart[i + 1] += cellStart[i];
+        }
+        int[] cellVertices = new int[vertexCount];
+        int[] cursor = cellStart.clone();
+        for (int v = 0; v < vertexCount; v++) {
+            cellVertices[cursor[cellOf[v]]++] = v;
+        }
+
+        start = new int[vertexCount + 1];
+        IntArrayList partList = new IntArrayList(vertexCount * 2);
+        FloatArrayList weightList = new FloatArrayList(vertexCount * 2);
+        // 到各部位最近顶点的距离平方，只在本顶点处理期间有效
+        float[] nearest = new float[partCount];
+        float width2 = blendWidth * blendWidth;
+        for (int v = 0; v < vertexCount; v++) {
+            for (int p = 0; p < partCount; p++) {
+                nearest[p] = Float.MAX_VALUE;
+            }
+            int column = cellOf[v] % columns;
+            int row = cellOf[v] / columns;
+            for (int r = Math.max(0, row - 1); r <= Math.min(rows - 1, row + 1); r++) {
+                for (int c = Math.max(0, column - 1); c <= Math.min(columns - 1, column + 1); c++) {
+                    int cell = r * columns + c;
+                    for (int i = cellStart[cell]; i < cellStart[cell + 1]; i++) {
+                        int u = cellVertices[i];
+                        int part = vertexParts[u];
+                        if (part == vertexParts[v]) {
+                            continue;
+                        }
+                        float dx = xs[u] - xs[v];
+                        float dy = ys[u] - ys[v];
+                        nearest[part] = Math.min(nearest[part], dx * dx + dy * dy);
+                    }
+                }
+            }
+
+            int first = partList.size();
+            float sum = 1.0f;
+            partList.add(vertexParts[v]);
+            weightList.add(1.0f);
+            for (int p = 0; p < partCount; p++) {
+                if (nearest[p] < width2) {
+                    float s = 1.0f - (float) Math.sqrt(nearest[p]) / blendWidth;
+                    float w = s * s * (3 - 2 * s);
+                    partList.add(p);
+                    weightList.add(w);
+                    sum += w;
+                }
+            }
+            for (int i = first; i < weightList.size(); i++) {
+                weightList.array()[i] /= sum;
+            }
+            start[v + 1] = partList.size();
+        }
+        parts = partList.toArray();
+        weights = weightList.toArray();
+    }
+
+    // 权重项总数，内存约为 8 字节 × 权重项数
+    public int getEntryCount() {
+        return parts.length;
+    }
+
+    // 构建耗时（毫秒），由 BodyMesh.getRegionBlend() 在构建时记录
+    public long getBuildMillis() {
+        return buildMillis;
+    }
+
+    void setBuildMillis(long buildMillis) {
+        this.buildMillis = buildMillis;
+    }
+
+    /**
+     * 按部位的 (温度, 透明度) 计算每个顶点的值，写入 texCoords（每个顶点2个float）
+     */
+    public void apply(float[] regionData, FloatBuffer texCoords) {
+        int vertexCount = start.length - 1;
+        for (int v = 0; v < vertexCount; v++) {
+            float temperature = 0;
+            float alpha = 0;
+            for (int i = start[v], end = start[v + 1]; i < end; i++) {
+                temperature += regionData[parts[i] * 2] * weights[i];
+                alpha += regionData[parts[i] * 2 + 1] * weights[i];
+            }
+            texCoords.put(v * 2, temperature);
+            texCoords.put(v * 2 + 1, alpha);
+        }
+    }
+}
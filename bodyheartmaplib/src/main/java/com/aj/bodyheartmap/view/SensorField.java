@@ -0,0 +1,103 @@
+package com.aj.bodyheartmap.view;
+
+import android.opengl.GLES20;
+import android.util.Log;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * 传感器采样点数据纹理
+ * 每个采样点占两个 RGBA8 纹素：第一个存放模型坐标 x、y（各16位定点），第二个存放编码后的温度（BodyModel.encodeTemperature，16位定点）。
+ * GLES2 不保证支持浮点纹理，因此用两个8位通道拼成16位，片段着色器中解码后逐像素插值。
+ * 只能在GL线程中使用；EGL上下文重建后需调用 reset()
+ */
+public class SensorField {
+    private static final String TAG = "SensorField";
+
+    // 着色器循环上限，同时决定纹理宽度
+    public static final int MAX_SAMPLES = 256;
+    public static final int TEXELS_PER_SAMPLE = 2;
+    public static final int TEXTURE_WIDTH = MAX_SAMPLES * TEXELS_PER_SAMPLE;
+
+    private final GlState glState;
+    private final ByteBuffer texels;
+    private int texture;
+    private int count;
+
+    public SensorField(GlState glState) {
+        this.glState = glState;
+        texels = ByteBuffer.allocateDirect(TEXTURE_WIDTH * 4).order(ByteOrder.nativeOrder());
+    }
+
+    // 创建空的数据纹理，最近邻采样避免相邻纹素混合
+    private void create() {
+        int[] textures = new int[1];
+        GLES20.glGenTextures(1, textures, 0);
+        texture = textures[0];
+        glState.bindTexture2D(1, texture);
+        GLES20.glTexParameteri(GLES20.GL_TEXTURE_2D, GLES20.GL_TEXTURE_MIN_FILTER, GLES20.GL_NEAREST);
+        GLES20.glTexParameteri(GLES20.GL_TEXTURE_2D, GLES20.GL_TEXTURE_MAG_FILTER, GLES20.GL_NEAREST);
+        GLES20.glTexParameteri(GLES20.GL_TEXTURE_2D, GLES20.GL_TEXTURE_WRAP_S, GLES20.GL_CLAMP_TO_EDGE);
+        GLES20.glTexParameteri(GLES20.GL_TEXTURE_2D, GLES20.GL_TEXTURE_WRAP_T, GLES20.GL_CLAMP_TO_EDGE);
+        texels.position(0);
+        GLES20.glTexImage2D(GLES20.GL_TEXTURE_2D, 0, GLES20.GL_RGBA, TEXTURE_WIDTH, 1, 0,
+                GLES20.GL_RGBA, GLES20.GL_UNSIGNED_BYTE, texels);
+        Log.d(TAG, "采样点纹理创建完成，ID: " + texture);
+    }
+
+    /**
+     * 上传采样点，xs/ys 为原始轮廓坐标（与部位JSON相同的坐标系），temperatures 为摄氏度；
+     * 超过 MAX_SAMPLES 的部分被忽略
+     */
+    public void upload(BodyMesh mesh, float[] xs, float[] ys, float[] temperatures, int sampleCount) {
+        if (texture == 0) {
+            create();
+        }
+        count = Math.min(sampleCount, MAX_SAMPLES);
+        texels.clear();
+        for (int i = 0; i < count; i++) {
+            // 模型坐标在 [-1, 1] 内，映射到 [0, 1] 后量化
+            putUnorm16(texels, (mesh.toModelX(xs[i]) + 1.0f) * 0.5f);
+            putUnorm16(texels, (mesh.toModelY(ys[i]) + 1.0f) * 0.5f);
+            putUnorm16(texels, BodyModel.encodeTemperature(temperatures[i]));
+            putUnorm16(texels, 1.0f);
+        }
+        texels.flip();
+        if (count > 0) {
+            glState.bindTexture2D(1, texture);
+            GLES20.glTexSubImage2D(GLES20.GL_TEXTURE_2D, 0, 0, 0, count * TEXELS_PER_SAMPLE, 1,
+                    GLES20.GL_RGBA, GLES20.GL_UNSIGNED_BYTE, texels);
+            glState.countCall();
+        }
+    }
+
+    // 高8位写入第一个通道，低8位写入第二个通道
+    private static void putUnorm16(ByteBuffer out, float value) {
+        int v = Math.round(Math.max(0.0f, Math.min(1.0f, value)) * 65535.0f);
+        out.put((byte) (v >> 8));
+        out.put((byte) v);
+    }
+
+    public void bind(int unit) {
+        glState.bindTexture2D(unit, texture);
+    }
+
+    public int getCount() {
+        return count;
+    }
+
+    public void release() {
+        if (texture != 0) {
+            GLES20.glDeleteTextures(1, new int[]{texture}, 0);
+            glState.forgetTexture(texture);
+        }
+        reset();
+    }
+
+    // EGL上下文丢失后旧的纹理已失效，只清除记录
+    public void reset() {
+        texture = 0;
+        count = 0;
+    }
+}
@@ -0,0 +1,191 @@
+package com.aj.bodyheartmap.view;
+
+import android.util.Log;
+
+/**
+ * 高频传感器数据汇聚
+ * 任意线程可按kHz速率提交带时间戳的单部位温度，每个部位只保留一个待处理的归并值
+ * （最新值 / 最大值 / 最小值 / 平均值），每帧由主线程 drain() 一次，批量交给渲染器。
+ * 内存占用与提交速率无关；时间戳早于该部位已接收数据的样本被丢弃，offer() 返回false。
+ * 同时统计接收、合并、丢弃的样本数
+ */
+public final class SensorIngestor {
+    private static final String TAG = "SensorIngestor";
+
+    // 保留时间戳最新的样本
+    public static final int REDUCE_LATEST = 0;
+    public static final int REDUCE_MAX = 1;
+    public static final int REDUCE_MIN = 2;
+    public static final int REDUCE_MEAN = 3;
+
+    private final Object lock = new Object();
+    private final int regionCount;
+    private int reduction = REDUCE_LATEST;
+
+    // 本帧待处理的归并值，pendingCount 为0表示该部位没有新数据
+    private final float[] pendingValue;
+    private final double[] pendingSum;
+    private final int[] pendingCount;
+    // 各部位已接收样本的最新时间戳，用于丢弃乱序的旧样本
+    private final long[] latestTimestamp;
+    private int pendingRegions;
+
+    // 累计统计
+    private long acceptedCount;
+    private long mergedCount;
+    private long droppedCount;
+
+    public SensorIngestor(int regionCount) {
+        this.regionCount = regionCount;
+        pendingValue = new float[regionCount];
+        pendingSum = new double[regionCount];
+        pendingCount = new int[regionCount];
+        latestTimestamp = new long[regionCount];
+        for (int i = 0; i < regionCount; i++) {
+            latestTimestamp[i] = Long.MIN_VALUE;
+        }
+    }
+
+    // 设置归并方式 REDUCE_LATEST（默认）/ REDUCE_MAX / REDUCE_MIN / REDUCE_MEAN，对下一个样本起生效
+    public void setReduction(int reduction) {
+        if (reduction < REDUCE_LATEST || reduction > REDUCE_MEAN) {
+            Log.e(TAG, "无效的归并方式: " + reduction);
+            return;
+        }
+        synchronized (lock) {
+            this.reduction = reduction;
+        }
+    }
+
+    public int getReduction() {
+        synchronized (lock) {
+            return reduction;
+        }
+    }
+
+    /**
+     * 提交一个样本，可在任意线程调用。timestampNanos 需来自同一单调时钟（如 SystemClock.elapsedRealtimeNanos()）。
+     * 返回true表示样本被接收（可能与本帧已有的样本合并），false表示被丢弃
+     */
+    public boolean offer(int partId, float temperature, long timestampNanos) {
+        synchronized (lock) {
+            return offerLocked(partId, temperature, timestampNanos);
+        }
+    }
+
+    // 批量提交同一时刻的多个样本，只获取一次锁；返回被接收的样本数
+    public int offer(int[] partIds, float[] temperatures, int count, long timestampNanos) {
+        int accepted = 0;
+        synchronized (lock) {
+            for (int i = 0; i < count; i++) {
+                if (offerLocked(partIds[i], temperatures[i], timestampNanos)) {
+                    accepted++;
+                }
+            }
+        }
+        return accepted;
+    }
+
+    private boolean offerLocked(int partId, float temperature, long timestampNanos) {
+        if (partId < 0 || partId >= regionCount || Float.isNaN(temperature)
+                || timestampNanos < latestTimestamp[partId]) {
+            droppedCount++;
+            return false;
+        }
+        latestTimestamp[partId] = timestampNanos;
+        acceptedCount++;
+
+        int count = pendingCount[partId];
+        if (count == 0) {
+            pendingValue[partId] = temperature;
+            pendingSum[partId] = temperature;
+            pendingCount[partId] = 1;
+            pendingRegions++;
+            return true;
+        }
+        mergedCount++;
+        switch (reduction) {
+            case REDUCE_MAX:
+                pendingValue[partId] = Math.max(pendingValue[partId], temperature);
+                break;
+            case REDUCE_MIN:
+                pendingValue[partId] = Math.min(pendingValue[partId], temperature);
+                break;
+            case REDUCE_MEAN:
+                pendingSum[partId] += temperature;
+                pendingValue[partId] = (float) (pendingSum[partId] / (count + 1));
+                break;
+            default:
+                pendingValue[partId] = temperature;
+                break;
+        }
+        pendingCount[partId] = count + 1;
+        return true;
+    }
+
+    public boolean hasPending() {
+        synchronized (lock) {
+            return pendingRegions > 0;
+        }
+    }
+
+    /**
+     * 取出本帧各部位的归并值并清空，每帧调用一次。
+     * partIds / temperatures 长度至少为部位数，返回写入的个数
+     */
+    public int drain(int[] partIds, float[] temperatures) {
+        return drain(partIds, temperatures, null);
+    }
+
+    // 同时输出各部位最新样本的时间戳，timestamps 可为null
+    public int drain(int[] partIds, float[] temperatures, long[] timestamps) {
+        synchronized (lock) {
+            if (pendingRegions == 0) {
+                return 0;
+            }
+            int n = 0;
+            for (int i = 0; i < regionCount; i++) {
+                if (pendingCount[i] == 0) {
+                    continue;
+                }
+                partIds[n] = i;
+                temperatures[n] = pendingValue[i];
+                if (timestamps != null) {
+                    timestamps[n] = latestTimestamp[i];
+                }
+                n++;
+                pendingCount[i] = 0;
+            }
+            pendingRegions = 0;
+            return n;
+        }
+    }
+
+    public long getAcceptedCount() {
+        synchronized (lock) {
+            return acceptedCount;
+        }
+    }
+
+    // 与同一帧内已有样本合并（没有单独渲染）的样本数
+    public long getMergedCount() {
+        synchronized (lock) {
+            return mergedCount;
+        }
+    }
+
+    // 部位无效、温度为NaN或时间戳乱序而被丢弃的样本数
+    public long getDroppedCount() {
+        synchronized (lock) {
+            return droppedCount;
+        }
+    }
+
+    public void resetCounters() {
+        synchronized (lock) {
+            acceptedCount = 0;
+            mergedCount = 0;
+            droppedCount = 0;
+        }
+    }
+}
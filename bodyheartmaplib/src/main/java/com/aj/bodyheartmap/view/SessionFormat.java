@@ -0,0 +1,87 @@
+package com.aj.bodyheartmap.view;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * 温度会话记录格式（.bhs）
+ * 只追加写入；记录为定长，按块组织，每块开头的块头就是该块的时间索引，
+ * 块大小固定，因此第 i 块的偏移量可直接计算，按时间定位只需两次二分查找（块、块内记录）。
+ * 块头中的记录数在记录写完之后才更新，进程崩溃时最多丢失正在写入的那一条记录
+ *
+ * 布局（全部为小端序）：
+ *  0  int   魔数 "BHSR"
+ *  4  short 版本号
+ *  6  short 标志位（保留）
+ *  8  int   部位数量 R
+ * 12  int   每块记录数 K
+ * 16  int   记录大小（字节）= 12 + 4 * R
+ * 20  long  创建时间（System.currentTimeMillis()）
+ * 28  保留，填0至 HEADER_SIZE
+ * 64  块：块头 + K 条记录，块大小 = BLOCK_HEADER_SIZE + K * 记录大小
+ *
+ * 块头：
+ *  0  int   块魔数 "BLK1"
+ *  4  int   已写入的记录数
+ *  8  long  第一条记录的时间戳（纳秒）
+ * 16  long  最后一条记录的时间戳（纳秒）
+ *
+ * 记录：
+ *  0  long  时间戳（纳秒，SystemClock.elapsedRealtimeNanos()，同一文件内不递减）
+ *  8  float 透明度
+ * 12  float 温度 × R，与 updateTemperature 使用的数组顺序相同
+ */
+public final class SessionFormat {
+
+    public static final int MAGIC = 0x52534842; // "BHSR" 小端序
+    public static final int BLOCK_MAGIC = 0x314B4C42; // "BLK1" 小端序
+    public static final short VERSION = 1;
+
+    public static final int HEADER_SIZE = 64;
+    public static final int BLOCK_HEADER_SIZE = 24;
+    public static final int RECORD_PREFIX_SIZE = 12;
+    // 默认每块记录数，13个部位时每块约 260KB
+    public static final int DEFAULT_RECORDS_PER_BLOCK = 4096;
+
+    public static final int OFFSET_VERSION = 4;
+    public static final int OFFSET_REGION_COUNT = 8;
+    public static final int OFFSET_RECORDS_PER_BLOCK = 12;
+    public static final int OFFSET_RECORD_SIZE = 16;
+    public static final int OFFSET_CREATED = 20;
+
+    public static final int BLOCK_OFFSET_COUNT = 4;
+    public static final int BLOCK_OFFSET_FIRST = 8;
+    public static final int BLOCK_OFFSET_LAST = 16;
+
+    private SessionFormat() {
+    }
+
+    public static int recordSize(int regionCount) {
+        return RECORD_PREFIX_SIZE + 4 * regionCount;
+    }
+
+    public static long blockSize(int recordsPerBlock, int recordSize) {
+        return BLOCK_HEADER_SIZE + (long) recordsPerBlock * recordSize;
+    }
+
+    public static long blockOffset(long block, long blockSize) {
+        return HEADER_SIZE + block * blockSize;
+    }
+
+    // 校验文件头
+    public static void checkHeader(ByteBuffer header) throws IOException {
+        if (header.limit() < HEADER_SIZE || header.getInt(0) != MAGIC) {
+            throw new IOException("不是有效的会话记录文件");
+        }
+        short version = header.getShort(OFFSET_VERSION);
+        if (version != VERSION) {
+            throw new IOException("不支持的会话记录版本: " + version);
+        }
+        int regionCount = header.getInt(OFFSET_REGION_COUNT);
+        int recordsPerBlock = header.getInt(OFFSET_RECORDS_PER_BLOCK);
+        if (regionCount <= 0 || recordsPerBlock <= 0
+                || header.getInt(OFFSET_RECORD_SIZE) != recordSize(regionCount)) {
+            throw new IOException("会话记录文件头已损坏");
+        }
+    }
+}
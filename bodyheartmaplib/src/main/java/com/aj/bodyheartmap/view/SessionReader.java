@@ -0,0 +1,220 @@
+package com.aj.bodyheartmap.view;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * 温度会话读取器
+ * 不把文件读入内存：按需映射单个块，按时间定位先二分查找块头，再在块内二分查找，O(log n)。
+ * 可以读取仍在记录中的文件，refresh() 后能看到新写入的记录。非线程安全
+ */
+public final class SessionReader implements Closeable {
+
+    // 一条记录，temperatures 可直接传给 HeatMapView.updateTemperatureData
+    public static final class Frame {
+        public long timestampNanos;
+        public float alpha;
+        public final float[] temperatures;
+
+        Frame(int regionCount) {
+            temperatures = new float[regionCount];
+        }
+    }
+
+    private final RandomAccessFile file;
+    private final FileChannel channel;
+    private final int regionCount;
+    private final int recordsPerBlock;
+    private final int recordSize;
+    private final long blockSize;
+    private final long createdMillis;
+    private final ByteBuffer blockHeader = ByteBuffer.allocate(SessionFormat.BLOCK_HEADER_SIZE)
+            .order(ByteOrder.LITTLE_ENDIAN);
+
+    private long blockCount;
+    private long recordCount;
+    // 当前映射的块
+    private MappedByteBuffer mapped;
+    private long mappedBlock = -1;
+
+    public SessionReader(File path) throws IOException {
+        file = new RandomAccessFile(path, "r");
+        channel = file.getChannel();
+        try {
+            ByteBuffer header = ByteBuffer.allocate(SessionFormat.HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+            channel.read(header, 0);
+            header.flip();
+            SessionFormat.checkHeader(header);
+            regionCount = header.getInt(SessionFormat.OFFSET_REGION_COUNT);
+            recordsPerBlock = header.getInt(SessionFormat.OFFSET_RECORDS_PER_BLOCK);
+            recordSize = header.getInt(SessionFormat.OFFSET_RECORD_SIZE);
+            createdMillis = header.getLong(SessionFormat.OFFSET_CREATED);
+        } catch (IOException e) {
+            file.close();
+            throw e;
+        }
+        blockSize = SessionFormat.blockSize(recordsPerBlock, recordSize);
+        refresh();
+    }
+
+    /**
+     * 重新读取记录数。只有最后一块可能未写满；记录器崩溃时以块头中的记录数为准
+     */
+    public void refresh() throws IOException {
+        long blocks = (channel.size() - SessionFormat.HEADER_SIZE) / blockSize;
+        // 最后一块的映射可能已经过期
+        mapped = null;
+        mappedBlock = -1;
+        // 末尾可能有尚未写入记录的块
+        while (blocks > 0 && readBlockCount(blocks - 1) == 0) {
+            blocks--;
+        }
+        blockCount = blocks;
+        recordCount = blocks == 0 ? 0 : (blocks - 1) * recordsPerBlock + readBlockCount(blocks - 1);
+    }
+
+    private int readBlockCount(long block) throws IOException {
+        readBlockHeader(block);
+        if (blockHeader.getInt(0) != SessionFormat.BLOCK_MAGIC) {
+            return 0;
+        }
+        return Math.min(blockHeader.getInt(SessionFormat.BLOCK_OFFSET_COUNT), recordsPerBlock);
+    }
+
+    private void readBlockHeader(long block) throws IOException {
+        blockHeader.clear();
+        channel.read(blockHeader, SessionFormat.blockOffset(block, blockSize));
+        blockHeader.flip();
+        if (blockHeader.limit() < SessionFormat.BLOCK_HEADER_SIZE) {
+            throw new IOException("会话记录块头不完整");
+        }
+    }
+
+    public int getRegionCount() {
+        return regionCount;
+    }
+
+    public long getRecordCount() {
+        return recordCount;
+    }
+
+    public long getCreatedMillis() {
+        return createdMillis;
+    }
+
+    public Frame newFrame() {
+        return new Frame(regionCount);
+    }
+
+    // 读取第 index 条记录
+    public void read(long index, Frame out) throws IOException {
+        if (index < 0 || index >= recordCount) {
+            throw new IndexOutOfBoundsException("记录下标越界: " + index + " / " + recordCount);
+        }
+        ByteBuffer block = map(index / recordsPerBlock);
+        int offset = SessionFormat.BLOCK_HEADER_SIZE + (int) (index % recordsPerBlock) * recordSize;
+        out.timestampNanos = block.getLong(offset);
+        out.alpha = block.getFloat(offset + 8);
+        int n = Math.min(regionCount, out.temperatures.length);
+        for (int i = 0; i < n; i++) {
+            out.temperatures[i] = block.getFloat(offset + SessionFormat.RECORD_PREFIX_SIZE + i * 4);
+        }
+    }
+
+    public long getFirstTimestamp() throws IOException {
+        return recordCount == 0 ? Long.MIN_VALUE : timestampAt(0);
+    }
+
+    public long getLastTimestamp() throws IOException {
+        return recordCount == 0 ? Long.MIN_VALUE : timestampAt(recordCount - 1);
+    }
+
+    /**
+     * 时间戳不大于 timestampNanos 的最后一条记录的下标，早于第一条记录时返回-1
+     */
+    public long seek(long timestampNanos) throws IOException {
+        if (recordCount == 0) {
+            return -1;
+        }
+        // 先按块头中的首条时间戳定位块
+        long low = 0;
+        long high = blockCount - 1;
+        long block = -1;
+        while (low <= high) {
+            long mid = (low + high) >>> 1;
+            readBlockHeader(mid);
+            if (blockHeader.getLong(SessionFormat.BLOCK_OFFSET_FIRST) <= timestampNanos) {
+                block = mid;
+                low = mid + 1;
+            } else {
+                high = mid - 1;
+            }
+        }
+        if (block < 0) {
+            return -1;
+        }
+        // 再在块内查找
+        long first = block * recordsPerBlock;
+        long lowIndex = first;
+        long highIndex = Math.min(first + recordsPerBlock, recordCount) - 1;
+        long result = first;
+        while (lowIndex <= highIndex) {
+            long mid = (lowIndex + highIndex) >>> 1;
+            if (timestampAt(mid) <= timestampNanos) {
+                result = mid;
+                lowIndex = mid + 1;
+            } else {
+                highIndex = mid - 1;
+            }
+        }
+        return result;
+    }
+
+    private long timestampAt(long index) throws IOException {
+        ByteBuffer block = map(index / recordsPerBlock);
+        return block.getLong(SessionFormat.BLOCK_HEADER_SIZE + (int) (index % recordsPerBlock) * recordSize);
+    }
+
+    private ByteBuffer map(long block) throws IOException {
+        if (mappedBlock != block) {
+            mapped = channel.map(FileChannel.MapMode.READ_ONLY, SessionFormat.blockOffset(block, blockSize), blockSize);
+            mapped.order(ByteOrder.LITTLE_ENDIAN);
+            mappedBlock = block;
+        }
+        return mapped;
+    }
+
+    /**
+     * 把 [fromNanos, toNanos] 内的记录导入 TemperatureHistory，之后可用 HeatMapView 的回放控制浏览；
+     * 返回导入的记录数
+     */
+    public long copyTo(TemperatureHistory history, long fromNanos, long toNanos) throws IOException {
+        long start = Math.max(0, seek(fromNanos));
+        Frame frame = newFrame();
+        long copied = 0;
+        for (long i = start; i < recordCount; i++) {
+            read(i, frame);
+            if (frame.timestampNanos > toNanos) {
+                break;
+            }
+            if (frame.timestampNanos >= fromNanos) {
+                history.appendAll(frame.timestampNanos, frame.temperatures);
+                copied++;
+            }
+        }
+        return copied;
+    }
+
+    @Override
+    public void close() throws IOException {
+        mapped = null;
+        channel.close();
+        file.close();
+    }
+}
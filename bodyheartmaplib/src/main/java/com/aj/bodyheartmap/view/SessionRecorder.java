@@ -0,0 +1,285 @@
+package com.aj.bodyheartmap.view;
+
+import android.util.Log;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 温度会话记录器
+ * record() 只把一帧复制到预分配的帧对象并放入有界队列，可在任意线程调用，从不阻塞；
+ * 队列满时丢弃该帧并计数。后台写线程创建文件、写文件头，再把帧写入内存映射的当前块（格式见 SessionFormat），
+ * 块写满后再映射下一块；每写完一块、以及距上次刷盘超过 FORCE_INTERVAL_NANOS 时强制刷盘一次。
+ * 文件操作失败时记录器关闭，之后的帧计入 getDroppedCount()，错误由 getError() 和 ErrorListener 给出
+ */
+public final class SessionRecorder {
+    private static final String TAG = "SessionRecorder";
+
+    private static final int QUEUE_CAPACITY = 256;
+    // 按时间强制刷盘的间隔，低频记录时一块可能要写一个多小时
+    private static final long FORCE_INTERVAL_NANOS = TimeUnit.SECONDS.toNanos(5);
+
+    // 写线程中文件操作失败时回调（在写线程中调用）
+    public interface ErrorListener {
+        void onError(SessionRecorder recorder, IOException error);
+    }
+
+    private static final class Frame {
+        long timestampNanos;
+        float alpha;
+        final float[] temperatures;
+
+        Frame(int regionCount) {
+            temperatures = new float[regionCount];
+        }
+    }
+
+    private final int regionCount;
+    private final int recordsPerBlock;
+    private final int recordSize;
+    private final long blockSize;
+    private final File path;
+    private final ErrorListener errorListener;
+    private final ArrayBlockingQueue<Frame> queue = new ArrayBlockingQueue<>(QUEUE_CAPACITY);
+    private final ConcurrentLinkedQueue<Frame> pool = new ConcurrentLinkedQueue<>();
+    private final Thread writer;
+    private final AtomicLong droppedCount = new AtomicLong();
+    private final AtomicLong writtenCount = new AtomicLong();
+    private volatile boolean closed = false;
+    private volatile IOException error;
+
+    // 以下只在写线程访问
+    // 上一个记录器，打开文件前等待它的写线程结束（可能是同一个文件）
+    private SessionRecorder previous;
+    private RandomAccessFile file;
+    private FileChannel channel;
+    private long lastForceNanos;
+    private boolean blockDirty;
+    private MappedByteBuffer block;
+    private long blockIndex = -1;
+    private int blockCount;
+    private long lastTimestamp = Long.MIN_VALUE;
+
+    public SessionRecorder(File path, int regionCount) {
+        this(path, regionCount, SessionFormat.DEFAULT_RECORDS_PER_BLOCK, null);
+    }
+
+    /**
+     * 在写线程中创建新的会话文件（已存在时覆盖），构造函数不做文件操作；
+     * errorListener 可为null
+     */
+    public SessionRecorder(File path, int regionCount, int recordsPerBlock, ErrorListener errorListener) {
+        this(path, regionCount, recordsPerBlock, errorListener, null);
+    }
+
+    /**
+     * 接替 previous 记录：previous 不为null时将其关闭，并在它的写线程写完剩余帧、关闭文件后才打开 path，
+     * 两者是同一个文件时也不会交错写入；调用线程不等待
+     */
+    public SessionRecorder(File path, int regionCount, int recordsPerBlock, ErrorListener errorListener,
+                           SessionRecorder previous) {
+        if (previous != null) {
+            previous.close();
+        }
+        this.previous = previous;
+        this.regionCount = regionCount;
+        this.recordsPerBlock = recordsPerBlock;
+        this.path = path;
+        this.errorListener = errorListener;
+        recordSize = SessionFormat.recordSize(regionCount);
+        blockSize = SessionFormat.blockSize(recordsPerBlock, recordSize);
+
+        writer = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                writeLoop();
+            }
+        }, "SessionRecorder");
+        writer.setDaemon(true);
+        writer.setPriority(Thread.NORM_PRIORITY - 1);
+        writer.start();
+    }
+
+    /**
+     * 记录一帧，temperatures 与 updateTemperature 使用的数组相同（多余的部位被忽略）。
+     * 返回false表示记录器已关闭、写入失败或队列已满，该帧被丢弃
+     */
+    public boolean record(long timestampNanos, float[] temperatures, float alpha) {
+        if (closed) {
+            // 写入失败后的帧计为丢弃，正常 close() 之后的不计
+            if (error != null) {
+                droppedCount.incrementAndGet();
+            }
+            return false;
+        }
+        Frame frame = pool.poll();
+        if (frame == null) {
+            frame = new Frame(regionCount);
+        }
+        frame.timestampNanos = timestampNanos;
+        frame.alpha = alpha;
+        int n = Math.min(regionCount, temperatures.length);
+        System.arraycopy(temperatures, 0, frame.temperatures, 0, n);
+        for (int i = n; i < regionCount; i++) {
+            frame.temperatures[i] = Float.NaN;
+        }
+        if (!queue.offer(frame)) {
+            pool.offer(frame);
+            droppedCount.incrementAndGet();
+            return false;
+        }
+        return true;
+    }
+
+    private void writeLoop() {
+        try {
+            if (previous != null) {
+                previous.writer.join();
+                previous = null;
+            }
+            open();
+            while (true) {
+                Frame frame = queue.poll(200, TimeUnit.MILLISECONDS);
+                if (frame == null) {
+                    // 关闭后排空队列再退出
+                    if (closed) {
+                        break;
+                    }
+                } else {
+                    write(frame);
+                    pool.offer(frame);
+                }
+                forceIfDue();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (IOException e) {
+            fail(e);
+        } finally {
+            try {
+                if (block != null) {
+                    block.force();
+                }
+                if (file != null) {
+                    file.close();
+                }
+            } catch (IOException e) {
+                Log.e(TAG, "关闭会话记录文件失败", e);
+            }
+        }
+    }
+
+    private void open() throws IOException {
+        file = new RandomAccessFile(path, "rw");
+        file.setLength(0);
+        channel = file.getChannel();
+        ByteBuffer header = ByteBuffer.allocate(SessionFormat.HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+        header.putInt(0, SessionFormat.MAGIC);
+        header.putShort(SessionFormat.OFFSET_VERSION, SessionFormat.VERSION);
+        header.putInt(SessionFormat.OFFSET_REGION_COUNT, regionCount);
+        header.putInt(SessionFormat.OFFSET_RECORDS_PER_BLOCK, recordsPerBlock);
+        header.putInt(SessionFormat.OFFSET_RECORD_SIZE, recordSize);
+        header.putLong(SessionFormat.OFFSET_CREATED, System.currentTimeMillis());
+        channel.write(header, 0);
+        channel.force(true);
+        lastForceNanos = System.nanoTime();
+    }
+
+    // 当前块有未刷盘的记录且距上次刷盘超过 FORCE_INTERVAL_NANOS 时刷盘
+    private void forceIfDue() {
+        long now = System.nanoTime();
+        if (blockDirty && now - lastForceNanos >= FORCE_INTERVAL_NANOS) {
+            block.force();
+            blockDirty = false;
+            lastForceNanos = now;
+        }
+    }
+
+    // 文件操作失败：停止接收新的帧，队列中剩余的帧计为丢弃
+    private void fail(IOException e) {
+        Log.e(TAG, "会话记录写入失败: " + path, e);
+        error = e;
+        closed = true;
+        Frame frame;
+        while ((frame = queue.poll()) != null) {
+            droppedCount.incrementAndGet();
+            pool.offer(frame);
+        }
+        if (errorListener != null) {
+            errorListener.onError(this, e);
+        }
+    }
+
+    private void write(Frame frame) throws IOException {
+        // 时间戳必须不递减，否则按时间定位的二分查找失效
+        if (frame.timestampNanos < lastTimestamp) {
+            droppedCount.incrementAndGet();
+            return;
+        }
+        if (block == null || blockCount == recordsPerBlock) {
+            nextBlock();
+        }
+        int offset = SessionFormat.BLOCK_HEADER_SIZE + blockCount * recordSize;
+        block.putLong(offset, frame.timestampNanos);
+        block.putFloat(offset + 8, frame.alpha);
+        for (int i = 0; i < regionCount; i++) {
+            block.putFloat(offset + SessionFormat.RECORD_PREFIX_SIZE + i * 4, frame.temperatures[i]);
+        }
+        // 记录写完后再更新块头，记录数最后写入
+        if (blockCount == 0) {
+            block.putLong(SessionFormat.BLOCK_OFFSET_FIRST, frame.timestampNanos);
+        }
+        block.putLong(SessionFormat.BLOCK_OFFSET_LAST, frame.timestampNanos);
+        blockCount++;
+        block.putInt(SessionFormat.BLOCK_OFFSET_COUNT, blockCount);
+        lastTimestamp = frame.timestampNanos;
+        blockDirty = true;
+        writtenCount.incrementAndGet();
+    }
+
+    private void nextBlock() throws IOException {
+        if (block != null) {
+            block.force();
+            lastForceNanos = System.nanoTime();
+        }
+        blockDirty = false;
+        blockIndex++;
+        block = channel.map(FileChannel.MapMode.READ_WRITE,
+                SessionFormat.blockOffset(blockIndex, blockSize), blockSize);
+        block.order(ByteOrder.LITTLE_ENDIAN);
+        block.putInt(SessionFormat.BLOCK_OFFSET_COUNT, 0);
+        block.putInt(0, SessionFormat.BLOCK_MAGIC);
+        blockCount = 0;
+    }
+
+    // 已写入文件的记录数
+    public long getWrittenCount() {
+        return writtenCount.get();
+    }
+
+    // 队列满、时间戳递减或写入失败而丢弃的帧数
+    public long getDroppedCount() {
+        return droppedCount.get();
+    }
+
+    // 写线程中文件操作失败的原因，未失败时返回null
+    public IOException getError() {
+        return error;
+    }
+
+    /**
+     * 停止接收新的帧，写线程写完队列中剩余的帧后关闭文件；不等待写线程结束
+     */
+    public void close() {
+        closed = true;
+    }
+}
@@ -0,0 +1,264 @@
+package com.aj.bodyheartmap.view;
+
+import android.graphics.Bitmap;
+import android.opengl.GLES20;
+import android.opengl.GLES30;
+import android.util.Log;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * 帧快照的异步读回
+ * GLES3：帧末把画面 glReadPixels 到像素缓冲对象（PBO）并插入栅栏后立即返回，GPU 异步完成复制；
+ * 之后的帧用超时为0的 glClientWaitSync 查询栅栏，完成后才映射 PBO 取出像素，GL线程不等待GPU。
+ * 两个 PBO 轮换使用，上一次读回未完成时也能开始下一次。
+ * GLES2 没有 PBO 和栅栏，只能在帧末同步 glReadPixels，停顿只发生在有请求的那一帧。
+ * 行翻转、反预乘和创建 Bitmap 在工作线程中完成，再通过请求者指定的 Executor 回调。
+ * request() 可在任意线程调用，其余方法只能在GL线程中调用
+ */
+public class SnapshotCapture {
+    private static final String TAG = "SnapshotCapture";
+
+    private static final int SLOT_COUNT = 2;
+
+    // 像素转换线程，所有视图共用
+    private static final ExecutorService WORKER = Executors.newSingleThreadExecutor(new ThreadFactory() {
+        @Override
+        public Thread newThread(Runnable r) {
+            Thread thread = new Thread(r, "HeatMapSnapshot");
+            thread.setDaemon(true);
+            thread.setPriority(Thread.NORM_PRIORITY - 1);
+            return thread;
+        }
+    });
+
+    private static final class Request {
+        final Executor executor;
+        final HeatMapView.SnapshotCallback callback;
+
+        Request(Executor executor, HeatMapView.SnapshotCallback callback) {
+            this.executor = executor;
+            this.callback = callback;
+        }
+
+        void deliver(final Bitmap bitmap) {
+            executor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    callback.onSnapshot(bitmap);
+                }
+            });
+        }
+    }
+
+    // 一次进行中的 PBO 读回
+    private static final class Slot {
+        int pbo;
+        int capacity;
+        long fence;
+        int width;
+        int height;
+        List<Request> requests;
+    }
+
+    // 等待下一帧读回的请求
+    private List<Request> pending = new ArrayList<>();
+    private final Slot[] slots = new Slot[SLOT_COUNT];
+    private final int[] ids = new int[1];
+    private boolean gles3;
+
+    public SnapshotCapture() {
+        for (int i = 0; i < SLOT_COUNT; i++) {
+            slots[i] = new Slot();
+        }
+    }
+
+    public void request(Executor executor, HeatMapView.SnapshotCallback callback) {
+        synchronized (this) {
+            pending.add(new Request(executor, callback));
+        }
+    }
+
+    // 新的EGL上下文：旧的 PBO 和栅栏已失效，进行中的读回以null回调
+    public void onSurfaceCreated(String version) {
+        gles3 = version != null && version.startsWith("OpenGL ES 3");
+        for (Slot slot : slots) {
+            if (slot.requests != null) {
+                fail(slot.requests);
+            }
+            slot.pbo = 0;
+            slot.capacity = 0;
+            slot.fence = 0;
+            slot.requests = null;
+        }
+    }
+
+    /**
+     * 在一帧绘制完成后调用：检查进行中的读回，并为新请求开始读回。
+     * 返回true表示还有未完成的请求，需要再绘制一帧
+     */
+    public boolean afterFrame(int width, int height) {
+        boolean inFlight = false;
+        for (Slot slot : slots) {
+            if (slot.fence != 0) {
+                inFlight |= !poll(slot);
+            }
+        }
+
+        List<Request> requests;
+        synchronized (this) {
+            if (pending.isEmpty()) {
+                return inFlight;
+            }
+            requests = pending;
+            pending = new ArrayList<>();
+        }
+        if (width <= 0 || height <= 0) {
+            restore(requests);
+            return inFlight;
+        }
+
+        if (!gles3) {
+            // 同步读回，只停顿这一帧
+            ByteBuffer pixels = ByteBuffer.allocateDirect(width * height * 4);
+            GLES20.glReadPixels(0, 0, width, height, GLES20.GL_RGBA, GLES20.GL_UNSIGNED_BYTE, pixels);
+            convert(pixels, width, height, requests);
+            return inFlight;
+        }
+
+        Slot slot = null;
+        for (Slot s : slots) {
+            if (s.fence == 0) {
+                slot = s;
+                break;
+            }
+        }
+        if (slot == null) {
+            // 两个 PBO 都在使用中，留到下一帧
+            restore(requests);
+            return true;
+        }
+        start(slot, width, height, requests);
+        return true;
+    }
+
+    // 把请求放回队首，保持先后顺序
+    private void restore(List<Request> requests) {
+        synchronized (this) {
+            requests.addAll(pending);
+            pending = requests;
+        }
+    }
+
+    private void start(Slot slot, int width, int height, List<Request> requests) {
+        if (slot.pbo == 0) {
+            GLES20.glGenBuffers(1, ids, 0);
+            slot.pbo = ids[0];
+        }
+        int size = width * height * 4;
+        GLES20.glBindBuffer(GLES30.GL_PIXEL_PACK_BUFFER, slot.pbo);
+        if (slot.capacity != size) {
+            GLES20.glBufferData(GLES30.GL_PIXEL_PACK_BUFFER, size, null, GLES30.GL_STREAM_READ);
+            slot.capacity = size;
+        }
+        // 绑定 PBO 时最后一个参数是缓冲区内的偏移，调用立即返回
+        GLES30.glReadPixels(0, 0, width, height, GLES20.GL_RGBA, GLES20.GL_UNSIGNED_BYTE, 0);
+        GLES20.glBindBuffer(GLES30.GL_PIXEL_PACK_BUFFER, 0);
+        slot.fence = GLES30.glFenceSync(GLES30.GL_SYNC_GPU_COMMANDS_COMPLETE, 0);
+        slot.width = width;
+        slot.height = height;
+        slot.requests = requests;
+    }
+
+    // 栅栏已完成时取出像素并返回true
+    private boolean poll(Slot slot) {
+        int status = GLES30.glClientWaitSync(slot.fence, 0, 0);
+        if (status == GLES30.GL_TIMEOUT_EXPIRED) {
+            return false;
+        }
+        GLES30.glDeleteSync(slot.fence);
+        slot.fence = 0;
+        List<Request> requests = slot.requests;
+        slot.requests = null;
+        if (status == GLES30.GL_WAIT_FAILED) {
+            Log.e(TAG, "等待读回栅栏失败");
+            fail(requests);
+            return true;
+        }
+
+        int size = slot.width * slot.height * 4;
+        GLES20.glBindBuffer(GLES30.GL_PIXEL_PACK_BUFFER, slot.pbo);
+        ByteBuffer mapped = (ByteBuffer) GLES30.glMapBufferRange(GLES30.GL_PIXEL_PACK_BUFFER, 0, size,
+                GLES30.GL_MAP_READ_BIT);
+        ByteBuffer pixels = null;
+        if (mapped != null) {
+            // 映射只在GL线程中有效，复制一份交给工作线程
+            pixels = ByteBuffer.allocate(size);
+            pixels.put(mapped);
+            pixels.flip();
+            GLES30.glUnmapBuffer(GLES30.GL_PIXEL_PACK_BUFFER);
+        }
+        GLES20.glBindBuffer(GLES30.GL_PIXEL_PACK_BUFFER, 0);
+        if (pixels == null) {
+            Log.e(TAG, "映射像素缓冲失败");
+            fail(requests);
+        } else {
+            convert(pixels, slot.width, slot.height, requests);
+        }
+        return true;
+    }
+
+    private static void fail(List<Request> requests) {
+        for (Request request : requests) {
+            request.deliver(null);
+        }
+    }
+
+    private static void convert(final ByteBuffer pixels, final int width, final int height,
+                                final List<Request> requests) {
+        WORKER.execute(new Runnable() {
+            @Override
+            public void run() {
+                int[] argb = toArgb(pixels, width, height);
+                // 每个请求各自得到一个 Bitmap，回调方可以自行 recycle()
+                for (Request request : requests) {
+                    request.deliver(Bitmap.createBitmap(argb, width, height, Bitmap.Config.ARGB_8888));
+                }
+            }
+        });
+    }
+
+    /**
+     * GL 的第一行是画面底部，需要上下翻转；帧缓冲按预乘 alpha 合成到屏幕上，
+     * 转换为 Bitmap 使用的非预乘 ARGB，得到与屏幕上一致的颜色
+     */
+    private static int[] toArgb(ByteBuffer rgba, int width, int height) {
+        int[] out = new int[width * height];
+        for (int y = 0; y < height; y++) {
+            int src = (height - 1 - y) * width * 4;
+            int dst = y * width;
+            for (int x = 0; x < width; x++, src += 4) {
+                int a = rgba.get(src + 3) & 0xFF;
+                if (a == 0) {
+                    continue;
+                }
+                int r = rgba.get(src) & 0xFF;
+                int g = rgba.get(src + 1) & 0xFF;
+                int b = rgba.get(src + 2) & 0xFF;
+                if (a < 255) {
+                    r = Math.min(255, (r * 255 + a / 2) / a);
+                    g = Math.min(255, (g * 255 + a / 2) / a);
+                    b = Math.min(255, (b * 255 + a / 2) / a);
+                }
+                out[dst + x] = a << 24 | r << 16 | g << 8 | b;
+            }
+        }
+        return out;
+    }
+}
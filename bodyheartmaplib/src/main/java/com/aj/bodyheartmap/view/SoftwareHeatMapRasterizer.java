@@ -0,0 +1,370 @@
+package com.aj.bodyheartmap.view;
+
+import java.nio.ByteBuffer;
+import java.nio.FloatBuffer;
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * 软件光栅化的热力图
+ * 使用与 HeatMapRenderer 相同的网格、区域温度、调色板、温度范围和投影（HeatMapProjection），
+ * 把人体热力图绘制到 ARGB int[]（非预乘，与 Bitmap.setPixels 相同），结果与区域着色模式在屏幕上的效果一致。
+ * 画面按 tileSize 分块，三角形先按块分组，再用 fork/join 并行光栅化各块。
+ * 不依赖 Android 和 GL，网格可用 BodyMeshFormat.read() 在普通JVM上加载，适合服务器批量生成报告图片。
+ * 配置方法非线程安全；同一实例不要并发调用 render()
+ */
+public final class SoftwareHeatMapRasterizer {
+
+    public static final int DEFAULT_TILE_SIZE = 64;
+    // 每个任务至少处理的块数，避免任务过细
+    private static final int TILES_PER_TASK = 4;
+
+    private final BodyMesh mesh;
+    // 模型坐标
+    private final float[] modelXs;
+    private final float[] modelYs;
+    private final int[] indices;
+    // 每个三角形所属的网格部位
+    private final int[] triangleParts;
+    // 按网格部位存放的 (摄氏温度, 局部透明度)，与 BodyModel 的区域数据相同
+    private final float[] regionData;
+
+    // 默认值与 HeatMapRenderer 相同；不引用渲染器，以免依赖 Android 类
+    private ColorPalette palette = ColorPalette.getDefault();
+    private float rangeMin = 35.0f;
+    private float rangeMax = 42.0f;
+    private float alpha = 0.7f;
+    private float scaleFactor = 1.0f;
+    // NaN 表示与 HeatMapRenderer 一样水平居中
+    private float offsetX = Float.NaN;
+    private float offsetY = 0.0f;
+    private int background = 0;
+    private int tileSize = DEFAULT_TILE_SIZE;
+
+    // 每次 render() 的中间结果，尺寸不变时复用
+    private float[] pixelXs;
+    private float[] pixelYs;
+    private final int[] partColors;
+    private final float[] volume = new float[4];
+
+    public SoftwareHeatMapRasterizer(BodyMesh mesh) {
+        this.mesh = mesh;
+        int vertexCount = mesh.getTotalVertices();
+        modelXs = new float[vertexCount];
+        modelYs = new float[vertexCount];
+        FloatBuffer vertices = mesh.newVertexView();
+        for (int i = 0; i < vertexCount; i++) {
+            modelXs[i] = vertices.get(i * BodyMeshFormat.FLOATS_PER_VERTEX);
+            modelYs[i] = vertices.get(i * BodyMeshFormat.FLOATS_PER_VERTEX + 1);
+        }
+        pixelXs = new float[vertexCount];
+        pixelYs = new float[vertexCount];
+
+        indices = new int[mesh.getIndexCount()];
+        for (int i = 0; i < indices.length; i++) {
+            indices[i] = mesh.getIndex(i);
+        }
+        int[] vertexParts = new int[vertexCount];
+        for (int part = 0; part < mesh.getPartCount(); part++) {
+            for (int v = mesh.getPartStart(part), end = v + mesh.getPartVertexCount(part); v < end; v++) {
+                vertexParts[v] = part;
+            }
+        }
+        triangleParts = new int[indices.length / 3];
+        for (int t = 0; t < triangleParts.length; t++) {
+            triangleParts[t] = vertexParts[indices[t * 3]];
+        }
+
+        regionData = new float[mesh.getPartCount() * 2];
+        for (int i = 0; i < mesh.getPartCount(); i++) {
+            // 默认显示范围的中点
+            regionData[i * 2] = 38.5f;
+            regionData[i * 2 + 1] = 1.0f;
+        }
+        partColors = new int[mesh.getPartCount()];
+    }
+
+    public BodyMesh getMesh() {
+        return mesh;
+    }
+
+    // 按网格部位下标设置温度（摄氏度）和局部透明度
+    public void setRegion(int part, float temperature, float localAlpha) {
+        regionData[part * 2] = temperature;
+        regionData[part * 2 + 1] = localAlpha;
+    }
+
+    /**
+     * 按部位名称设置温度，partNames 通常为 BodyModel.BODY_PARTS，temperatures 与 updateTemperature 使用的数组相同；
+     * 网格中不存在的部位被忽略
+     */
+    public void setTemperatures(String[] partNames, float[] temperatures, float localAlpha) {
+        int n = Math.min(partNames.length, temperatures.length);
+        for (int i = 0; i < n; i++) {
+            int part = mesh.indexOfPart(partNames[i]);
+            if (part >= 0) {
+                setRegion(part, temperatures[i], localAlpha);
+            }
+        }
+    }
+
+    public void setPalette(ColorPalette palette) {
+        this.palette = palette;
+    }
+
+    public void setTemperatureRange(float min, float max) {
+        if (max > min) {
+            rangeMin = min;
+            rangeMax = max;
+        }
+    }
+
+    // 全局透明度，对应 HeatMapRenderer.setAlpha()
+    public void setAlpha(float alpha) {
+        this.alpha = alpha;
+    }
+
+    // 缩放与偏移，对应 HeatMapRenderer.setScaleFactor() / setOffsetX() / setOffsetY()
+    public void setScaleFactor(float scaleFactor) {
+        this.scaleFactor = Math.max(0.1f, scaleFactor);
+    }
+
+    public void setOffset(float offsetX, float offsetY) {
+        this.offsetX = offsetX;
+        this.offsetY = offsetY;
+    }
+
+    // 背景色（ARGB），默认透明
+    public void setBackground(int argb) {
+        background = argb;
+    }
+
+    public void setTileSize(int tileSize) {
+        this.tileSize = Math.max(8, tileSize);
+    }
+
+    public int[] render(int width, int height) {
+        return render(width, height, new int[width * height], ForkJoinPool.commonPool());
+    }
+
+    /**
+     * 绘制到 out（长度至少 width * height，第一行为图像顶部），返回 out
+     */
+    public int[] render(int width, int height, int[] out, ForkJoinPool pool) {
+        for (int i = 0, n = width * height; i < n; i++) {
+            out[i] = background;
+        }
+
+        // 模型坐标 -> 像素坐标，y 轴向下
+        float ox = Float.isNaN(offsetX) ? HeatMapProjection.centeredOffsetX(mesh.getSpan()) : offsetX;
+        HeatMapProjection.viewVolume(width, height, scaleFactor, ox, offsetY, volume);
+        float sx = width / (volume[1] - volume[0]);
+        float sy = height / (volume[3] - volume[2]);
+        for (int i = 0; i < modelXs.length; i++) {
+            pixelXs[i] = (modelXs[i] - volume[0]) * sx;
+            pixelYs[i] = (volume[3] - modelYs[i]) * sy;
+        }
+
+        // 每个部位的颜色与 fragment shader 相同：查找表线性采样，透明度 = 局部透明度 × 全局透明度
+        ByteBuffer lut = palette.getLut();
+        float scale = 1.0f / (rangeMax - rangeMin);
+        for (int part = 0; part < partColors.length; part++) {
+            float t = clamp01((regionData[part * 2] - rangeMin) * scale);
+            float a = clamp01(regionData[part * 2 + 1] * alpha);
+            partColors[part] = Math.round(a * 255.0f) << 24 | sampleLut(lut, t);
+        }
+
+        // 三角形按块分组，保持绘制顺序
+        int tilesX = (width + tileSize - 1) / tileSize;
+        int tilesY = (height + tileSize - 1) / tileSize;
+        IntArrayList[] bins = new IntArrayList[tilesX * tilesY];
+        for (int t = 0; t < triangleParts.length; t++) {
+            int a = indices[t * 3];
+            int b = indices[t * 3 + 1];
+            int c = indices[t * 3 + 2];
+            float minX = Math.min(pixelXs[a], Math.min(pixelXs[b], pixelXs[c]));
+            float maxX = Math.max(pixelXs[a], Math.max(pixelXs[b], pixelXs[c]));
+            float minY = Math.min(pixelYs[a], Math.min(pixelYs[b], pixelYs[c]));
+            float maxY = Math.max(pixelYs[a], Math.max(pixelYs[b], pixelYs[c]));
+            if (maxX < 0 || maxY < 0 || minX >= width || minY >= height) {
+                continue;
+            }
+            int tx0 = Math.max(0, (int) minX / tileSize);
+            int tx1 = Math.min(tilesX - 1, (int) maxX / tileSize);
+            int ty0 = Math.max(0, (int) minY / tileSize);
+            int ty1 = Math.min(tilesY - 1, (int) maxY / tileSize);
+            for (int ty = ty0; ty <= ty1; ty++) {
+                for (int tx = tx0; tx <= tx1; tx++) {
+                    int tile = ty * tilesX + tx;
+                    if (bins[tile] == null) {
+                        bins[tile] = new IntArrayList(64);
+                    }
+                    bins[tile].add(t);
+                }
+            }
+        }
+
+        pool.invoke(new TileTask(bins, 0, bins.length, tilesX, width, height, out));
+        return out;
+    }
+
+    private final class TileTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final IntArrayList[] bins;
+        private final int from;
+        private final int to;
+        private final int tilesX;
+        private final int width;
+        private final int height;
+        private final int[] out;
+
+        TileTask(IntArrayList[] bins, int from, int to, int tilesX, int width, int height, int[] out) {
+            this.bins = bins;
+            this.from = from;
+            this.to = to;
+            this.tilesX = tilesX;
+            this.width = width;
+            this.height = height;
+            this.out = out;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from <= TILES_PER_TASK) {
+                // 块内像素只被本任务写入；同一像素被多个三角形覆盖时保留先绘制的（与深度测试 GL_LESS 相同）
+                boolean[] covered = new boolean[tileSize * tileSize];
+                for (int tile = from; tile < to; tile++) {
+                    if (bins[tile] != null) {
+                        Arrays.fill(covered, false);
+                        rasterizeTile(tile % tilesX * tileSize, tile / tilesX * tileSize, bins[tile],
+                                covered, width, height, out);
+                    }
+                }
+                return;
+            }
+            int mid = (from + to) >>> 1;
+            invokeAll(new TileTask(bins, from, mid, tilesX, width, height, out),
+                    new TileTask(bins, mid, to, tilesX, width, height, out));
+        }
+    }
+
+    private void rasterizeTile(int tileX, int tileY, IntArrayList triangles, boolean[] covered,
+                               int width, int height, int[] out) {
+        int tileRight = Math.min(tileX + tileSize, width);
+        int tileBottom = Math.min(tileY + tileSize, height);
+        for (int i = 0; i < triangles.size(); i++) {
+            int t = triangles.get(i);
+            int a = indices[t * 3];
+            int b = indices[t * 3 + 1];
+            int c = indices[t * 3 + 2];
+            float ax = pixelXs[a];
+            float ay = pixelYs[a];
+            float bx = pixelXs[b];
+            float by = pixelYs[b];
+            float cx = pixelXs[c];
+            float cy = pixelYs[c];
+            float area = (bx - ax) * (cy - ay) - (by - ay) * (cx - ax);
+            if (area == 0) {
+                continue;
+            }
+            // 统一为正面积，三条边的内侧方向一致
+            if (area < 0) {
+                float tx = bx;
+                float ty = by;
+                bx = cx;
+                by = cy;
+                cx = tx;
+                cy = ty;
+            }
+            int x0 = Math.max(tileX, (int) Math.floor(Math.min(ax, Math.min(bx, cx))));
+            int x1 = Math.min(tileRight - 1, (int) Math.ceil(Math.max(ax, Math.max(bx, cx))));
+            int y0 = Math.max(tileY, (int) Math.floor(Math.min(ay, Math.min(by, cy))));
+            int y1 = Math.min(tileBottom - 1, (int) Math.ceil(Math.max(ay, Math.max(by, cy))));
+            if (x0 > x1 || y0 > y1) {
+                continue;
+            }
+            int color = partColors[triangleParts[t]];
+            boolean topLeft0 = isTopLeft(bx, by, cx, cy);
+            boolean topLeft1 = isTopLeft(cx, cy, ax, ay);
+            boolean topLeft2 = isTopLeft(ax, ay, bx, by);
+            for (int y = y0; y <= y1; y++) {
+                // 像素中心采样，与GL一致
+                float py = y + 0.5f;
+                for (int x = x0; x <= x1; x++) {
+                    float px = x + 0.5f;
+                    float w0 = edge(bx, by, cx, cy, px, py);
+                    float w1 = edge(cx, cy, ax, ay, px, py);
+                    float w2 = edge(ax, ay, bx, by, px, py);
+                    if (!inside(w0, topLeft0) || !inside(w1, topLeft1) || !inside(w2, topLeft2)) {
+                        continue;
+                    }
+                    int local = (y - tileY) * tileSize + (x - tileX);
+                    if (covered[local]) {
+                        continue;
+                    }
+                    covered[local] = true;
+                    int index = y * width + x;
+                    out[index] = blend(color, out[index]);
+                }
+            }
+        }
+    }
+
+    private static float edge(float ax, float ay, float bx, float by, float px, float py) {
+        return (bx - ax) * (py - ay) - (by - ay) * (px - ax);
+    }
+
+    // 像素中心恰好落在边上时只归属一侧的三角形，相邻三角形的公共边不会重复绘制或留缝
+    private static boolean isTopLeft(float ax, float ay, float bx, float by) {
+        float dy = by - ay;
+        return dy < 0 || (dy == 0 && bx - ax > 0);
+    }
+
+    private static boolean inside(float w, boolean topLeft) {
+        return w > 0 || (w == 0 && topLeft);
+    }
+
+    // 与 GL_LINEAR 采样 256x1 纹理相同：在相邻两个纹素中心之间插值，边缘取边界
+    private static int sampleLut(ByteBuffer lut, float t) {
+        float u = t * ColorPalette.LUT_SIZE - 0.5f;
+        int i0 = (int) Math.floor(u);
+        float f = u - i0;
+        int i1 = Math.min(ColorPalette.LUT_SIZE - 1, i0 + 1);
+        i0 = Math.max(0, i0);
+        int rgb = 0;
+        for (int channel = 0; channel < 3; channel++) {
+            int c0 = lut.get(i0 * 4 + channel) & 0xFF;
+            int c1 = lut.get(i1 * 4 + channel) & 0xFF;
+            rgb = rgb << 8 | Math.round(c0 + (c1 - c0) * f);
+        }
+        return rgb;
+    }
+
+    /**
+     * 非预乘 ARGB 的 src-over 混合。与 GL 的
+     * glBlendFuncSeparate(SRC_ALPHA, ONE_MINUS_SRC_ALPHA, ONE, ONE_MINUS_SRC_ALPHA) 等价：
+     * 帧缓冲中为预乘的 (c*a, a)，这里直接给出换算回非预乘后的结果（与 SnapshotCapture 相同）
+     */
+    private static int blend(int src, int dst) {
+        int sa = src >>> 24;
+        if (sa == 255 || dst >>> 24 == 0) {
+            return src;
+        }
+        float a = sa / 255.0f;
+        float da = (dst >>> 24) / 255.0f * (1.0f - a);
+        float outA = a + da;
+        if (outA <= 0) {
+            return 0;
+        }
+        int r = Math.round(((src >> 16 & 0xFF) * a + (dst >> 16 & 0xFF) * da) / outA);
+        int g = Math.round(((src >> 8 & 0xFF) * a + (dst >> 8 & 0xFF) * da) / outA);
+        int b = Math.round(((src & 0xFF) * a + (dst & 0xFF) * da) / outA);
+        return Math.round(outA * 255.0f) << 24 | r << 16 | g << 8 | b;
+    }
+
+    private static float clamp01(float v) {
+        return Math.max(0.0f, Math.min(1.0f, v));
+    }
+}
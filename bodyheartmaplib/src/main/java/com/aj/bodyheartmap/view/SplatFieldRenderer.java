@@ -0,0 +1,260 @@
+package com.aj.bodyheartmap.view;
+
+import android.opengl.GLES20;
+import android.opengl.GLES30;
+import android.util.Log;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+
+/**
+ * 采样点泼溅累积（splat）
+ * 第一遍把每个采样点画成点精灵，以高斯核权重 (w*温度, w) 加法混合到离屏帧缓冲；
+ * 第二遍由 HeatMapRenderer 用人体网格读取累积结果，做 sum(w*v)/sum(w) 归一化后经颜色映射着色。
+ * 开销与 采样点数 × 核覆盖像素 成正比，与 像素数 × 采样点数 无关，适合上千到上万个采样点。
+ *
+ * 累积缓冲使用半精度浮点纹理。RGBA8 累积精度不足（为推迟饱和缩小权重后每级约0.8摄氏度），色带明显，
+ * 因此不支持半精度浮点渲染目标时不创建累积缓冲，isReady() 返回false，由 HeatMapRenderer 退回区域着色。
+ * 只能在GL线程中使用
+ */
+public class SplatFieldRenderer {
+    private static final String TAG = "SplatFieldRenderer";
+
+    // 每个采样点 x, y（模型坐标）, 编码后的温度
+    private static final int FLOATS_PER_SPLAT = 3;
+    // 累积缓冲相对于视口的分辨率，插值场是平滑的，半分辨率即可
+    public static final float RESOLUTION_SCALE = 0.5f;
+    // GLES2 扩展 OES_texture_half_float 的像素类型
+    private static final int GL_HALF_FLOAT_OES = 0x8D61;
+
+    private static final String SPLAT_VERTEX_SHADER =
+            "uniform mat4 uMVPMatrix;\n" +
+            "uniform float uPointSize;\n" +
+            "attribute vec3 aSplat;\n" +
+            "varying float vValue;\n" +
+            "void main() {\n" +
+            "  gl_Position = uMVPMatrix * vec4(aSplat.xy, 0.0, 1.0);\n" +
+            "  gl_PointSize = uPointSize;\n" +
+            "  vValue = aSplat.z;\n" +
+            "}\n";
+
+    // 点精灵内按到中心的距离计算高斯核权重，圆外丢弃
+    private static final String SPLAT_FRAGMENT_SHADER =
+            "precision mediump float;\n" +
+            "varying float vValue;\n" +
+            "void main() {\n" +
+            "  vec2 d = gl_PointCoord * 2.0 - 1.0;\n" +
+            "  float r2 = dot(d, d);\n" +
+            "  if (r2 > 1.0) discard;\n" +
+            "  float w = exp(-4.0 * r2);\n" +
+            "  gl_FragColor = vec4(vValue * w, w, 0.0, 0.0);\n" +
+            "}\n";
+
+    private final GlState glState;
+
+    private GlProgram program;
+    private int splatHandle;
+    private int mvpMatrixHandle;
+    private int pointSizeHandle;
+
+    private final int[] framebuffer = new int[1];
+    private final int[] texture = new int[1];
+    private final int[] vbo = new int[1];
+    private int width;
+    private int height;
+    private boolean halfFloatSupported;
+    private boolean halfFloatLinear;
+    private boolean gles3;
+    private float maxPointSize = 1.0f;
+
+    private FloatBuffer splatData;
+    private int splatCount;
+
+    public SplatFieldRenderer(GlState glState) {
+        this.glState = glState;
+    }
+
+    // 新的EGL上下文：检测半精度浮点渲染支持并编译程序，旧的GL对象已随上下文失效
+    public void onSurfaceCreated(String version, String extensions) {
+        framebuffer[0] = 0;
+        texture[0] = 0;
+        vbo[0] = 0;
+        width = 0;
+        height = 0;
+        splatCount = 0;
+
+        gles3 = version != null && version.startsWith("OpenGL ES 3");
+        String ext = extensions != null ? extensions : "";
+        boolean renderable = ext.contains("GL_EXT_color_buffer_half_float") || ext.contains("GL_EXT_color_buffer_float");
+        halfFloatSupported = renderable && (gles3 || ext.contains("GL_OES_texture_half_float"));
+        // GLES3 的 RGBA16F 可线性过滤，GLES2 需要额外扩展
+        halfFloatLinear = gles3 || ext.contains("GL_OES_texture_half_float_linear");
+
+        float[] range = new float[2];
+        GLES20.glGetFloatv(GLES20.GL_ALIASED_POINT_SIZE_RANGE, range, 0);
+        maxPointSize = Math.max(1.0f, range[1]);
+
+        program = GlProgram.create(SPLAT_VERTEX_SHADER, SPLAT_FRAGMENT_SHADER);
+        if (program != null) {
+            splatHandle = program.attrib("aSplat");
+            mvpMatrixHandle = program.uniform("uMVPMatrix");
+            pointSizeHandle = program.uniform("uPointSize");
+        }
+        Log.d(TAG, "半精度浮点累积: " + halfFloatSupported + ", 最大点大小: " + maxPointSize);
+    }
+
+    // 视口尺寸变化时按 RESOLUTION_SCALE 重建累积缓冲，不支持半精度浮点渲染目标时不创建
+    public void onSurfaceChanged(int viewportWidth, int viewportHeight) {
+        int w = Math.max(1, Math.round(viewportWidth * RESOLUTION_SCALE));
+        int h = Math.max(1, Math.round(viewportHeight * RESOLUTION_SCALE));
+        if (w == width && h == height && framebuffer[0] != 0) {
+            return;
+        }
+        releaseTarget();
+        width = w;
+        height = h;
+
+        if (!halfFloatSupported) {
+            Log.w(TAG, "不支持半精度浮点渲染目标，泼溅累积不可用");
+            return;
+        }
+        if (!createTarget()) {
+            Log.e(TAG, "无法创建累积帧缓冲");
+            releaseTarget();
+            return;
+        }
+        Log.d(TAG, "累积缓冲: " + width + "x" + height + " RGBA16F");
+    }
+
+    private boolean createTarget() {
+        GLES20.glGenTextures(1, texture, 0);
+        glState.bindTexture2D(0, texture[0]);
+        int filter = halfFloatLinear ? GLES20.GL_LINEAR : GLES20.GL_NEAREST;
+        GLES20.glTexParameteri(GLES20.GL_TEXTURE_2D, GLES20.GL_TEXTURE_MIN_FILTER, filter);
+        GLES20.glTexParameteri(GLES20.GL_TEXTURE_2D, GLES20.GL_TEXTURE_MAG_FILTER, filter);
+        GLES20.glTexParameteri(GLES20.GL_TEXTURE_2D, GLES20.GL_TEXTURE_WRAP_S, GLES20.GL_CLAMP_TO_EDGE);
+        GLES20.glTexParameteri(GLES20.GL_TEXTURE_2D, GLES20.GL_TEXTURE_WRAP_T, GLES20.GL_CLAMP_TO_EDGE);
+        if (gles3) {
+            GLES20.glTexImage2D(GLES20.GL_TEXTURE_2D, 0, GLES30.GL_RGBA16F, width, height, 0,
+                    GLES20.GL_RGBA, GLES30.GL_HALF_FLOAT, null);
+        } else {
+            GLES20.glTexImage2D(GLES20.GL_TEXTURE_2D, 0, GLES20.GL_RGBA, width, height, 0,
+                    GLES20.GL_RGBA, GL_HALF_FLOAT_OES, null);
+        }
+
+        GLES20.glGenFramebuffers(1, framebuffer, 0);
+        glState.bindFramebuffer(framebuffer[0]);
+        GLES20.glFramebufferTexture2D(GLES20.GL_FRAMEBUFFER, GLES20.GL_COLOR_ATTACHMENT0,
+                GLES20.GL_TEXTURE_2D, texture[0], 0);
+        int status = GLES20.glCheckFramebufferStatus(GLES20.GL_FRAMEBUFFER);
+        glState.bindFramebuffer(0);
+        if (status != GLES20.GL_FRAMEBUFFER_COMPLETE) {
+            Log.w(TAG, "累积帧缓冲不完整: 0x" + Integer.toHexString(status));
+            return false;
+        }
+        return true;
+    }
+
+    private void releaseTarget() {
+        if (framebuffer[0] != 0) {
+            glState.bindFramebuffer(0);
+            GLES20.glDeleteFramebuffers(1, framebuffer, 0);
+            framebuffer[0] = 0;
+        }
+        if (texture[0] != 0) {
+            GLES20.glDeleteTextures(1, texture, 0);
+            glState.forgetTexture(texture[0]);
+            texture[0] = 0;
+        }
+    }
+
+    /**
+     * 上传采样点，xs/ys 为原始轮廓坐标，temperatures 为摄氏度。
+     * 采样点较多时整体替换缓冲区内容（orphan），避免与上一帧的绘制同步等待
+     */
+    public void upload(BodyMesh mesh, float[] xs, float[] ys, float[] temperatures, int count) {
+        if (splatData == null || splatData.capacity() < count * FLOATS_PER_SPLAT) {
+            int capacity = Math.max(count, 256) * FLOATS_PER_SPLAT;
+            splatData = ByteBuffer.allocateDirect(capacity * 4).order(ByteOrder.nativeOrder()).asFloatBuffer();
+        }
+        splatData.clear();
+        for (int i = 0; i < count; i++) {
+            splatData.put(mesh.toModelX(xs[i]));
+            splatData.put(mesh.toModelY(ys[i]));
+            splatData.put(BodyModel.encodeTemperature(temperatures[i]));
+        }
+        splatData.flip();
+        splatCount = count;
+        if (count == 0) {
+            return;
+        }
+        if (vbo[0] == 0) {
+            GLES20.glGenBuffers(1, vbo, 0);
+        }
+        glState.bindArrayBuffer(vbo[0]);
+        GLES20.glBufferData(GLES20.GL_ARRAY_BUFFER, count * FLOATS_PER_SPLAT * 4, splatData, GLES20.GL_STREAM_DRAW);
+        glState.countCall();
+    }
+
+    public boolean isReady() {
+        return program != null && framebuffer[0] != 0 && splatCount > 0;
+    }
+
+    public int getSplatCount() {
+        return splatCount;
+    }
+
+    /**
+     * 第一遍：清空累积缓冲并加法混合全部采样点。
+     * radiusModel 为核半径（模型坐标），按投影矩阵的 y 缩放换算成累积缓冲中的像素直径。
+     * 结束后恢复默认帧缓冲、视口、混合和深度测试状态
+     */
+    public void accumulate(float[] mvpMatrix, float radiusModel, int viewportWidth, int viewportHeight) {
+        glState.bindFramebuffer(framebuffer[0]);
+        GLES20.glViewport(0, 0, width, height);
+        GLES20.glClearColor(0.0f, 0.0f, 0.0f, 0.0f);
+        GLES20.glClear(GLES20.GL_COLOR_BUFFER_BIT);
+        glState.countCalls(3);
+
+        glState.setDepthTest(false);
+        glState.setBlend(true);
+        glState.blendFunc(GLES20.GL_ONE, GLES20.GL_ONE);
+
+        glState.useProgram(program);
+        float pointSize = Math.min(radiusModel * mvpMatrix[5] * height, maxPointSize);
+        GLES20.glUniformMatrix4fv(mvpMatrixHandle, 1, false, mvpMatrix, 0);
+        GLES20.glUniform1f(pointSizeHandle, Math.max(1.0f, pointSize));
+        glState.countCalls(2);
+
+        glState.bindArrayBuffer(vbo[0]);
+        glState.vertexAttribPointer(splatHandle, FLOATS_PER_SPLAT, 0, 0);
+        glState.useAttribs(GlState.attribBit(splatHandle));
+        GLES20.glDrawArrays(GLES20.GL_POINTS, 0, splatCount);
+        glState.countDraw();
+
+        glState.bindFramebuffer(0);
+        GLES20.glViewport(0, 0, viewportWidth, viewportHeight);
+        glState.countCall();
+        glState.blendFuncSeparate(GLES20.GL_SRC_ALPHA, GLES20.GL_ONE_MINUS_SRC_ALPHA,
+                GLES20.GL_ONE, GLES20.GL_ONE_MINUS_SRC_ALPHA);
+        glState.setDepthTest(true);
+    }
+
+    public void bindResult(int unit) {
+        glState.bindTexture2D(unit, texture[0]);
+    }
+
+    public void release() {
+        releaseTarget();
+        if (vbo[0] != 0) {
+            GLES20.glDeleteBuffers(1, vbo, 0);
+            glState.forgetBuffer(vbo[0]);
+            vbo[0] = 0;
+        }
+        if (program != null) {
+            program.release();
+            program = null;
+        }
+    }
+}
@@ -0,0 +1,157 @@
+package com.aj.bodyheartmap.view;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.nio.LongBuffer;
+
+/**
+ * 各部位温度的历史记录
+ * 每个部位一个固定容量的环形缓冲区，时间戳（long，纳秒）和温度（float）存放在堆外内存中，
+ * 不产生装箱对象；追加为 O(1)，写满后覆盖最旧的样本，按时间戳查找为二分查找。
+ * 例如 13 个部位 × 86400 个样本（24小时，每秒一个）约占 13.5MB 堆外内存。
+ * 可在任意线程追加和读取
+ */
+public final class TemperatureHistory {
+
+    private final int regionCount;
+    private final int capacity;
+    // 第 r 个部位占用 [r * capacity, (r + 1) * capacity)
+    private final LongBuffer timestamps;
+    private final FloatBuffer values;
+    // 各部位下一个写入位置和已有样本数
+    private final int[] head;
+    private final int[] count;
+
+    public TemperatureHistory(int regionCount, int capacityPerRegion) {
+        this.regionCount = regionCount;
+        this.capacity = capacityPerRegion;
+        int total = regionCount * capacityPerRegion;
+        timestamps = ByteBuffer.allocateDirect(total * 8).order(ByteOrder.nativeOrder()).asLongBuffer();
+        values = ByteBuffer.allocateDirect(total * 4).order(ByteOrder.nativeOrder()).asFloatBuffer();
+        head = new int[regionCount];
+        count = new int[regionCount];
+    }
+
+    public int getRegionCount() {
+        return regionCount;
+    }
+
+    public int getCapacity() {
+        return capacity;
+    }
+
+    /**
+     * 追加一个样本；时间戳早于该部位最新样本时丢弃并返回false
+     */
+    public synchronized boolean append(int partId, long timestampNanos, float temperature) {
+        if (partId < 0 || partId >= regionCount) {
+            return false;
+        }
+        int base = partId * capacity;
+        int n = count[partId];
+        if (n > 0 && timestampNanos < timestamps.get(base + physical(partId, n - 1))) {
+            return false;
+        }
+        int slot = head[partId];
+        timestamps.put(base + slot, timestampNanos);
+        values.put(base + slot, temperature);
+        head[partId] = slot + 1 == capacity ? 0 : slot + 1;
+        if (n < capacity) {
+            count[partId] = n + 1;
+        }
+        return true;
+    }
+
+    // 追加同一时刻全部部位的温度，temperatures[i] 对应部位 i，NaN 表示该部位没有数据
+    public synchronized void appendAll(long timestampNanos, float[] temperatures) {
+        int n = Math.min(temperatures.length, regionCount);
+        for (int i = 0; i < n; i++) {
+            if (!Float.isNaN(temperatures[i])) {
+                append(i, timestampNanos, temperatures[i]);
+            }
+        }
+    }
+
+    // 第 index 个样本（0 为最旧）在该部位区段内的位置
+    private int physical(int partId, int index) {
+        int p = head[partId] - count[partId] + index;
+        return p < 0 ? p + capacity : p;
+    }
+
+    public synchronized int size(int partId) {
+        return count[partId];
+    }
+
+    // 全部部位中最旧样本的时间戳，没有数据时返回 Long.MAX_VALUE
+    public synchronized long getOldestTimestamp() {
+        long oldest = Long.MAX_VALUE;
+        for (int r = 0; r < regionCount; r++) {
+            if (count[r] > 0) {
+                oldest = Math.min(oldest, timestamps.get(r * capacity + physical(r, 0)));
+            }
+        }
+        return oldest;
+    }
+
+    // 全部部位中最新样本的时间戳，没有数据时返回 Long.MIN_VALUE
+    public synchronized long getNewestTimestamp() {
+        long newest = Long.MIN_VALUE;
+        for (int r = 0; r < regionCount; r++) {
+            if (count[r] > 0) {
+                newest = Math.max(newest, timestamps.get(r * capacity + physical(r, count[r] - 1)));
+            }
+        }
+        return newest;
+    }
+
+    // 该部位在 timestampNanos 时刻（含）之前的最后一个样本，没有时返回 NaN
+    public synchronized float valueAt(int partId, long timestampNanos) {
+        int index = floorIndex(partId, timestampNanos);
+        return index < 0 ? Float.NaN : values.get(partId * capacity + physical(partId, index));
+    }
+
+    /**
+     * 取 timestampNanos 时刻各部位的温度写入 out[部位]，没有数据的部位写入 NaN；
+     * 返回有数据的部位数
+     */
+    public synchronized int snapshot(long timestampNanos, float[] out) {
+        int found = 0;
+        int n = Math.min(out.length, regionCount);
+        for (int r = 0; r < n; r++) {
+            int index = floorIndex(r, timestampNanos);
+            if (index < 0) {
+                out[r] = Float.NaN;
+            } else {
+                out[r] = values.get(r * capacity + physical(r, index));
+                found++;
+            }
+        }
+        return found;
+    }
+
+    // 二分查找时间戳不大于 timestampNanos 的最后一个样本，返回逻辑下标，没有时返回-1
+    private int floorIndex(int partId, long timestampNanos) {
+        int base = partId * capacity;
+        int low = 0;
+        int high = count[partId] - 1;
+        int result = -1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            if (timestamps.get(base + physical(partId, mid)) <= timestampNanos) {
+                result = mid;
+                low = mid + 1;
+            } else {
+                high = mid - 1;
+            }
+        }
+        return result;
+    }
+
+    public synchronized void clear() {
+        for (int r = 0; r < regionCount; r++) {
+            head[r] = 0;
+            count[r] = 0;
+        }
+    }
+}
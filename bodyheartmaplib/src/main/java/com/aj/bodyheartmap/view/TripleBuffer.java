@@ -0,0 +1,57 @@
+package com.aj.bodyheartmap.view;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 无锁三缓冲
+ * 生产者写入自己独占的后台槽位，publish() 用一次原子交换把它换成“最新”槽位；
+ * 消费者（GL线程）在帧开始时 update()，有新数据时再用一次原子交换取走最新槽位。
+ * 双方永远不会同时访问同一个槽位，消费者不需要加锁，也不会读到写了一半的数据。
+ *
+ * 只支持一个生产者线程和一个消费者线程；多个生产者需在外部串行化 getWriteBuffer()/publish()。
+ * 发布后拿到的新后台槽位内容是旧的，生产者每次都应写入完整状态
+ */
+public final class TripleBuffer<T> {
+
+    private static final int INDEX_MASK = 3;
+    // 中间槽位含有消费者尚未取走的新数据
+    private static final int FRESH = 4;
+
+    private final Object[] slots;
+    // 中间槽位下标 | FRESH
+    private final AtomicInteger middle = new AtomicInteger(1);
+    // 生产者独占
+    private int back = 0;
+    // 消费者独占
+    private int front = 2;
+
+    public TripleBuffer(T first, T second, T third) {
+        slots = new Object[]{first, second, third};
+    }
+
+    // 生产者：当前可写的槽位
+    @SuppressWarnings("unchecked")
+    public T getWriteBuffer() {
+        return (T) slots[back];
+    }
+
+    // 生产者：发布写好的槽位，换回一个空闲槽位
+    public void publish() {
+        back = middle.getAndSet(back | FRESH) & INDEX_MASK;
+    }
+
+    // 消费者：有新发布的数据时切换到最新槽位并返回true
+    public boolean update() {
+        if ((middle.get() & FRESH) == 0) {
+            return false;
+        }
+        front = middle.getAndSet(front) & INDEX_MASK;
+        return true;
+    }
+
+    // 消费者：最近一次 update() 取得的槽位
+    @SuppressWarnings("unchecked")
+    public T getReadBuffer() {
+        return (T) slots[front];
+    }
+}
@@ -0,0 +1,192 @@
+package com.aj.bodyheartmap.view;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+
+public class BodyMeshTessellatorTest {
+
+    private static final float SPACING = 0.02f;
+    private static final float BLEND_WIDTH = 0.1f;
+
+    private static BodyMesh base;
+    private static BodyMesh tessellated;
+
+    @BeforeClass
+    public static void tessellate() throws IOException {
+        base = TestMeshes.load();
+        String key = BodyMeshTessellator.templateKey(base.getKey(), SPACING, BLEND_WIDTH);
+        tessellated = BodyMeshTessellator.tessellate(base, key, SPACING);
+    }
+
+    @Test
+    public void templateKeyRoundTrip() {
+        String key = tessellated.getKey();
+        assertTrue(BodyMeshTessellator.isTessellated(key));
+        assertFalse(BodyMeshTessellator.isTessellated(base.getKey()));
+        assertEquals(base.getKey(), BodyMeshTessellator.baseTemplate(key));
+        assertEquals(SPACING, BodyMeshTessellator.spacing(key), 0);
+        assertEquals(BLEND_WIDTH, BodyMeshTessellator.blendWidth(key), 0);
+    }
+
+    // 过渡宽度至少为格点间距，0表示不过渡
+    @Test
+    public void templateKeyClampsBlendWidth() {
+        assertEquals(SPACING, BodyMeshTessellator.blendWidth(
+                BodyMeshTessellator.templateKey(base.getKey(), SPACING, 1e-4f)), 0);
+        assertEquals(0, BodyMeshTessellator.blendWidth(
+                BodyMeshTessellator.templateKey(base.getKey(), SPACING, 0)), 0);
+    }
+
+    // 极小的过渡宽度不会使邻近查找网格过大
+    @Test
+    public void tinyBlendWidthBuildsBoundedGrid() {
+        RegionBlend blend = new RegionBlend(tessellated, 1e-4f);
+        assertTrue(blend.getEntryCount() >= tessellated.getTotalVertices());
+    }
+
+    @Test
+    public void addsInteriorVertices() {
+        assertEquals(base.getPartCount(), tessellated.getPartCount());
+        assertTrue(tessellated.getTotalVertices() > base.getTotalVertices());
+        assertTrue(tessellated.getIndexCount() > base.getIndexCount());
+    }
+
+    // 细分只增加内部顶点，每个部位覆盖的面积与原始轮廓相同
+    @Test
+    public void areaMatchesOutline() {
+        for (int part = 0; part < base.getPartCount(); part++) {
+            double expected = area(base, part);
+            assertEquals(base.getPartName(part), expected, area(tessellated, part), expected * 1e-4);
+        }
+    }
+
+    @Test
+    public void trianglesStayWithinPart() {
+        for (int i = 0; i < tessellated.getIndexCount(); i += 3) {
+            int part = partOf(tessellated, tessellated.getIndex(i));
+            assertTrue(part >= 0);
+            assertEquals(part, partOf(tessellated, tessellated.getIndex(i + 1)));
+            assertEquals(part, partOf(tessellated, tessellated.getIndex(i + 2)));
+        }
+    }
+
+    @Test
+    public void regionBlendOnlyForBlendedKeys() {
+        assertNull(base.getRegionBlend());
+        BodyMesh unblended = BodyMeshTessellator.tessellate(base,
+                BodyMeshTessellator.templateKey(base.getKey(), SPACING, 0), SPACING);
+        assertNull(unblended.getRegionBlend());
+        RegionBlend blend = tessellated.getRegionBlend();
+        assertNotNull(blend);
+        assertTrue(blend.getEntryCount() >= tessellated.getTotalVertices());
+    }
+
+    // 交界处位置相同的顶点（属于不同部位）得到相同的混合结果，远离交界的顶点取本部位的值
+    @Test
+    public void coincidentVerticesBlendIdentically() {
+        float[] regionData = new float[tessellated.getPartCount() * 2];
+        for (int part = 0; part < tessellated.getPartCount(); part++) {
+            regionData[part * 2] = 35.0f + part % 7;
+            regionData[part * 2 + 1] = 1.0f;
+        }
+        FloatBuffer texCoords = ByteBuffer.allocateDirect(tessellated.getTotalVertices() * 2 * 4)
+                .order(ByteOrder.nativeOrder()).asFloatBuffer();
+        tessellated.getRegionBlend().apply(regionData, texCoords);
+
+        FloatBuffer vertices = tessellated.newVertexView();
+        Map<Long, Integer> seen = new HashMap<>();
+        int shared = 0;
+        for (int v = 0; v < tessellated.getTotalVertices(); v++) {
+            float x = vertices.get(v * BodyMeshFormat.FLOATS_PER_VERTEX);
+            float y = vertices.get(v * BodyMeshFormat.FLOATS_PER_VERTEX + 1);
+            long position = (long) Float.floatToIntBits(x) << 32 | (Float.floatToIntBits(y) & 0xFFFFFFFFL);
+            Integer other = seen.put(position, v);
+            if (other != null && partOf(tessellated, other) != partOf(tessellated, v)) {
+                shared++;
+                assertEquals(texCoords.get(other * 2), texCoords.get(v * 2), 1e-4);
+            }
+            assertEquals(1.0f, texCoords.get(v * 2 + 1), 1e-5);
+        }
+        assertTrue(shared > 0);
+
+        int own = 0;
+        for (int part = 0; part < tessellated.getPartCount(); part++) {
+            float[] point = TestMeshes.interiorPoint(tessellated, part);
+            int nearest = nearestVertex(tessellated, part, point[0], point[1]);
+            if (distanceToOtherParts(tessellated, nearest) > BLEND_WIDTH) {
+                own++;
+                assertEquals(regionData[part * 2], texCoords.get(nearest * 2), 1e-5);
+            }
+        }
+        assertTrue(own > 0);
+    }
+
+    private static double area(BodyMesh mesh, int part) {
+        FloatBuffer v = mesh.newVertexView();
+        int stride = BodyMeshFormat.FLOATS_PER_VERTEX;
+        double sum = 0;
+        for (int i = 0; i < mesh.getIndexCount(); i += 3) {
+            int a = mesh.getIndex(i);
+            if (partOf(mesh, a) != part) {
+                continue;
+            }
+            int b = mesh.getIndex(i + 1);
+            int c = mesh.getIndex(i + 2);
+            double cross = (v.get(b * stride) - v.get(a * stride)) * (v.get(c * stride + 1) - v.get(a * stride + 1))
+                    - (v.get(b * stride + 1) - v.get(a * stride + 1)) * (v.get(c * stride) - v.get(a * stride));
+            sum += Math.abs(cross) / 2;
+        }
+        return sum;
+    }
+
+    private static int partOf(BodyMesh mesh, int vertex) {
+        for (int part = 0; part < mesh.getPartCount(); part++) {
+            int start = mesh.getPartStart(part);
+            if (vertex >= start && vertex < start + mesh.getPartVertexCount(part)) {
+                return part;
+            }
+        }
+        return -1;
+    }
+
+    private static int nearestVertex(BodyMesh mesh, int part, float x, float y) {
+        FloatBuffer v = mesh.newVertexView();
+        int best = -1;
+        float bestDistance = Float.MAX_VALUE;
+        for (int i = mesh.getPartStart(part), end = i + mesh.getPartVertexCount(part); i < end; i++) {
+            float dx = v.get(i * BodyMeshFormat.FLOATS_PER_VERTEX) - x;
+            float dy = v.get(i * BodyMeshFormat.FLOATS_PER_VERTEX + 1) - y;
+            if (dx * dx + dy * dy < bestDistance) {
+                bestDistance = dx * dx + dy * dy;
+                best = i;
+            }
+        }
+        return best;
+    }
+
+    private static float distanceToOtherParts(BodyMesh mesh, int vertex) {
+        FloatBuffer v = mesh.newVertexView();
+        int part = partOf(mesh, vertex);
+        float x = v.get(vertex * BodyMeshFormat.FLOATS_PER_VERTEX);
+        float y = v.get(vertex * BodyMeshFormat.FLOATS_PER_VERTEX + 1);
+        float best = Float.MAX_VALUE;
+        for (int i = 0; i < mesh.getTotalVertices(); i++) {
+            if (partOf(mesh, i) == part) {
+                continue;
+            }
+            float dx = v.get(i * BodyMeshFormat.FLOATS_PER_VERTEX) - x;
+            float dy = v.get(i * BodyMeshFormat.FLOATS_PER_VERTEX + 1) - y;
+            best = Math.min(best, (float) Math.sqrt(dx * dx + dy * dy));
+        }
+        return best;
+    }
+}
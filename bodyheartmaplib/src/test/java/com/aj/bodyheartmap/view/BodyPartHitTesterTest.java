@@ -0,0 +1,92 @@
+package com.aj.bodyheartmap.view;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.FloatBuffer;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class BodyPartHitTesterTest {
+
+    private static BodyMesh mesh;
+    private static BodyPartHitTester tester;
+
+    @BeforeClass
+    public static void loadMesh() throws IOException {
+        mesh = TestMeshes.load();
+        tester = new BodyPartHitTester(mesh);
+    }
+
+    @Test
+    public void interiorPointOfEachPart() {
+        for (int part = 0; part < mesh.getPartCount(); part++) {
+            float[] point = TestMeshes.interiorPoint(mesh, part);
+            assertEquals(mesh.getPartName(part), bruteForce(point[0], point[1]), tester.findPart(point[0], point[1]));
+        }
+        float[] point = TestMeshes.interiorPoint(mesh, mesh.indexOfPart("上身"));
+        assertEquals(mesh.indexOfPart("上身"), tester.findPart(point[0], point[1]));
+    }
+
+    @Test
+    public void outsideBodyReturnsMinusOne() {
+        float[] rect = HeatMapGridLayout.bodyRect(mesh);
+        assertEquals(-1, tester.findPart(rect[0] - 1.0f, rect[2]));
+        assertEquals(-1, tester.findPart(rect[1] + 1.0f, rect[3] + 1.0f));
+    }
+
+    // 空间索引的结果与逐个三角形检查（按三角形顺序取第一个）完全相同
+    @Test
+    public void matchesBruteForce() {
+        float[] rect = HeatMapGridLayout.bodyRect(mesh);
+        Random random = new Random(1);
+        int hits = 0;
+        for (int i = 0; i < 20000; i++) {
+            float x = rect[0] + (rect[1] - rect[0]) * random.nextFloat();
+            float y = rect[2] + (rect[3] - rect[2]) * random.nextFloat();
+            int expected = bruteForce(x, y);
+            assertEquals("(" + x + ", " + y + ")", expected, tester.findPart(x, y));
+            if (expected >= 0) {
+                hits++;
+            }
+        }
+        assertTrue(hits > 0);
+    }
+
+    private static int bruteForce(float px, float py) {
+        FloatBuffer vertices = mesh.newVertexView();
+        for (int i = 0; i + 2 < mesh.getIndexCount(); i += 3) {
+            float[] x = new float[3];
+            float[] y = new float[3];
+            for (int k = 0; k < 3; k++) {
+                int v = mesh.getIndex(i + k);
+                x[k] = vertices.get(v * BodyMeshFormat.FLOATS_PER_VERTEX);
+                y[k] = vertices.get(v * BodyMeshFormat.FLOATS_PER_VERTEX + 1);
+            }
+            boolean negative = false;
+            boolean positive = false;
+            for (int k = 0; k < 3; k++) {
+                int n = (k + 1) % 3;
+                float d = (x[n] - x[k]) * (py - y[k]) - (y[n] - y[k]) * (px - x[k]);
+                negative |= d < 0;
+                positive |= d > 0;
+            }
+            if (!(negative && positive)) {
+                return partOf(mesh.getIndex(i));
+            }
+        }
+        return -1;
+    }
+
+    private static int partOf(int vertex) {
+        for (int part = 0; part < mesh.getPartCount(); part++) {
+            int start = mesh.getPartStart(part);
+            if (vertex >= start && vertex < start + mesh.getPartVertexCount(part)) {
+                return part;
+            }
+        }
+        return -1;
+    }
+}
@@ -0,0 +1,101 @@
+package com.aj.bodyheartmap.view;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.io.IOException;
+
+import static org.junit.Assert.*;
+
+public class HeatMapGridLayoutTest {
+
+    private static final float PADDING = 8.0f;
+    // 格子数, 列数（0为自动）, 宽, 高
+    private static final int[][] CONFIGS = {
+            {20, 0, 1080, 1920},
+            {20, 0, 1920, 1080},
+            {7, 3, 800, 600},
+            {1, 0, 500, 500},
+    };
+
+    private static BodyMesh mesh;
+    private static BodyPartHitTester tester;
+    private static float[] bodyRect;
+
+    @BeforeClass
+    public static void loadMesh() throws IOException {
+        mesh = TestMeshes.load();
+        tester = new BodyPartHitTester(mesh);
+        bodyRect = HeatMapGridLayout.bodyRect(mesh);
+    }
+
+    // cellTransform 与 toModel 互逆，探测点所在的格子和部位与绘制位置一致
+    @Test
+    public void probePointResolvesToCellAndPart() {
+        int part = mesh.indexOfPart("上身");
+        float[] probe = TestMeshes.interiorPoint(mesh, part);
+        assertEquals(part, tester.findPart(probe[0], probe[1]));
+
+        for (int[] config : CONFIGS) {
+            HeatMapGridLayout layout = new HeatMapGridLayout();
+            layout.update(config[0], config[1], config[2], config[3], PADDING, bodyRect);
+            int height = config[3];
+            float[] transform = new float[3];
+            float[] model = new float[2];
+            for (int cell = 0; cell < config[0]; cell++) {
+                layout.cellTransform(cell, transform, 0);
+                float x = probe[0] * transform[2] + transform[0];
+                // 变换结果y向上，视图坐标y向下
+                float y = height - (probe[1] * transform[2] + transform[1]);
+                assertEquals(cell, layout.cellAt(x, y));
+
+                layout.toModel(cell, x, y, model);
+                assertEquals(probe[0], model[0], 5e-7);
+                assertEquals(probe[1], model[1], 5e-7);
+                assertEquals(part, tester.findPart(model[0], model[1]));
+            }
+        }
+    }
+
+    // 人体按包围盒缩放后完整落在自己的格子内
+    @Test
+    public void bodyStaysInsideCell() {
+        for (int[] config : CONFIGS) {
+            HeatMapGridLayout layout = new HeatMapGridLayout();
+            layout.update(config[0], config[1], config[2], config[3], PADDING, bodyRect);
+            assertTrue(layout.getScale() > 0);
+            assertTrue(layout.getColumns() * layout.getRows() >= config[0]);
+            float[] transform = new float[3];
+            for (int cell = 0; cell < config[0]; cell++) {
+                layout.cellTransform(cell, transform, 0);
+                float left = bodyRect[0] * transform[2] + transform[0];
+                float right = bodyRect[1] * transform[2] + transform[0];
+                float top = config[3] - (bodyRect[3] * transform[2] + transform[1]);
+                float bottom = config[3] - (bodyRect[2] * transform[2] + transform[1]);
+                assertEquals(cell, layout.cellAt(left + 1, top + 1));
+                assertEquals(cell, layout.cellAt(right - 1, bottom - 1));
+            }
+        }
+    }
+
+    @Test
+    public void explicitColumns() {
+        HeatMapGridLayout layout = new HeatMapGridLayout();
+        layout.update(7, 3, 800, 600, PADDING, bodyRect);
+        assertEquals(3, layout.getColumns());
+        assertEquals(3, layout.getRows());
+        // 最后一行只有一个格子，其余位置不属于任何格子
+        assertEquals(6, layout.cellAt(10, 590));
+        assertEquals(-1, layout.cellAt(790, 590));
+    }
+
+    @Test
+    public void outsideViewReturnsMinusOne() {
+        HeatMapGridLayout layout = new HeatMapGridLayout();
+        layout.update(4, 0, 400, 400, PADDING, bodyRect);
+        assertEquals(-1, layout.cellAt(-1, 10));
+        assertEquals(-1, layout.cellAt(10, 400));
+        layout.update(0, 0, 400, 400, PADDING, bodyRect);
+        assertEquals(-1, layout.cellAt(10, 10));
+    }
+}
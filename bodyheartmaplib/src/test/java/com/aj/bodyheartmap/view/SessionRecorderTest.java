@@ -0,0 +1,176 @@
+package com.aj.bodyheartmap.view;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.Assert.*;
+
+public class SessionRecorderTest {
+
+    private static final int REGION_COUNT = 3;
+    // 每块只有4条记录，少量记录即可跨越多个块
+    private static final int RECORDS_PER_BLOCK = 4;
+    private static final long START = 1000;
+    private static final long STEP = 100;
+
+    private File path;
+    private SessionRecorder recorder;
+
+    @Before
+    public void setUp() throws IOException {
+        path = File.createTempFile("session", ".bhs");
+        recorder = new SessionRecorder(path, REGION_COUNT, RECORDS_PER_BLOCK, null);
+    }
+
+    @After
+    public void tearDown() {
+        recorder.close();
+        path.delete();
+    }
+
+    @Test
+    public void roundTripAcrossBlocks() throws Exception {
+        record(0, 10);
+        awaitWritten(10);
+        try (SessionReader reader = new SessionReader(path)) {
+            assertEquals(REGION_COUNT, reader.getRegionCount());
+            assertEquals(10, reader.getRecordCount());
+            SessionReader.Frame frame = reader.newFrame();
+            for (int i = 0; i < 10; i++) {
+                reader.read(i, frame);
+                assertEquals(START + i * STEP, frame.timestampNanos);
+                assertEquals(0.5f, frame.alpha, 0);
+                for (int r = 0; r < REGION_COUNT; r++) {
+                    assertEquals(temperature(i, r), frame.temperatures[r], 0);
+                }
+            }
+        }
+    }
+
+    @Test
+    public void seekFirstLastAndBetween() throws Exception {
+        record(0, 10);
+        awaitWritten(10);
+        try (SessionReader reader = new SessionReader(path)) {
+            assertEquals(START, reader.getFirstTimestamp());
+            assertEquals(START + 9 * STEP, reader.getLastTimestamp());
+            assertEquals(-1, reader.seek(START - 1));
+            assertEquals(0, reader.seek(START));
+            assertEquals(0, reader.seek(START + STEP / 2));
+            // 块边界两侧：第3条是第一块的最后一条，第4条是第二块的第一条
+            assertEquals(3, reader.seek(START + 4 * STEP - 1));
+            assertEquals(4, reader.seek(START + 4 * STEP));
+            assertEquals(8, reader.seek(START + 8 * STEP + STEP / 2));
+            assertEquals(9, reader.seek(START + 9 * STEP));
+            assertEquals(9, reader.seek(Long.MAX_VALUE));
+        }
+    }
+
+    @Test
+    public void refreshSeesGrowingFile() throws Exception {
+        record(0, 5);
+        awaitWritten(5);
+        try (SessionReader reader = new SessionReader(path)) {
+            assertEquals(5, reader.getRecordCount());
+            assertEquals(4, reader.seek(Long.MAX_VALUE));
+
+            record(5, 11);
+            awaitWritten(11);
+            assertEquals(5, reader.getRecordCount());
+            reader.refresh();
+            assertEquals(11, reader.getRecordCount());
+            assertEquals(10, reader.seek(Long.MAX_VALUE));
+            SessionReader.Frame frame = reader.newFrame();
+            reader.read(10, frame);
+            assertEquals(START + 10 * STEP, frame.timestampNanos);
+            assertEquals(temperature(10, 2), frame.temperatures[2], 0);
+        }
+    }
+
+    // 时间戳递减的帧被丢弃；温度数组较短时缺少的部位记为 NaN
+    @Test
+    public void dropsDecreasingTimestampsAndPadsMissingRegions() throws Exception {
+        assertTrue(recorder.record(START, new float[]{36.0f}, 1.0f));
+        assertTrue(recorder.record(START - 1, new float[]{37.0f, 37.0f, 37.0f}, 1.0f));
+        assertTrue(recorder.record(START + 1, new float[]{38.0f, 38.0f, 38.0f}, 1.0f));
+        awaitWritten(2);
+        assertEquals(1, recorder.getDroppedCount());
+        try (SessionReader reader = new SessionReader(path)) {
+            assertEquals(2, reader.getRecordCount());
+            SessionReader.Frame frame = reader.newFrame();
+            reader.read(0, frame);
+            assertEquals(36.0f, frame.temperatures[0], 0);
+            assertTrue(Float.isNaN(frame.temperatures[1]));
+            reader.read(1, frame);
+            assertEquals(START + 1, frame.timestampNanos);
+        }
+    }
+
+    // 接替的记录器等上一个写完再截断同一个文件，文件中只有新的记录
+    @Test
+    public void successorWaitsForPreviousOnSameFile() throws Exception {
+        record(0, 200);
+        SessionRecorder previous = recorder;
+        recorder = new SessionRecorder(path, REGION_COUNT, RECORDS_PER_BLOCK, null, previous);
+        assertFalse(previous.record(START + 1000 * STEP, new float[REGION_COUNT], 1.0f));
+        record(300, 303);
+        awaitWritten(3);
+        assertEquals(200, previous.getWrittenCount());
+        try (SessionReader reader = new SessionReader(path)) {
+            assertEquals(3, reader.getRecordCount());
+            assertEquals(START + 300 * STEP, reader.getFirstTimestamp());
+            assertEquals(START + 302 * STEP, reader.getLastTimestamp());
+        }
+    }
+
+    // 文件无法创建时在写线程中报告错误，之后的帧计为丢弃
+    @Test
+    public void reportsOpenFailure() throws Exception {
+        final AtomicReference<IOException> reported = new AtomicReference<>();
+        File missing = new File(path.getPath() + ".missing", "session.bhs");
+        SessionRecorder failing = new SessionRecorder(missing, REGION_COUNT, RECORDS_PER_BLOCK,
+                new SessionRecorder.ErrorListener() {
+                    @Override
+                    public void onError(SessionRecorder recorder, IOException error) {
+                        reported.set(error);
+                    }
+                });
+        long deadline = System.currentTimeMillis() + 5000;
+        while (reported.get() == null && System.currentTimeMillis() < deadline) {
+            Thread.sleep(5);
+        }
+        assertNotNull(failing.getError());
+        assertSame(failing.getError(), reported.get());
+        assertFalse(failing.record(START, new float[REGION_COUNT], 1.0f));
+        assertTrue(failing.getDroppedCount() >= 1);
+        assertEquals(0, failing.getWrittenCount());
+    }
+
+    private void record(int from, int to) {
+        float[] temperatures = new float[REGION_COUNT];
+        for (int i = from; i < to; i++) {
+            for (int r = 0; r < REGION_COUNT; r++) {
+                temperatures[r] = temperature(i, r);
+            }
+            assertTrue(recorder.record(START + i * STEP, temperatures, 0.5f));
+        }
+    }
+
+    private static float temperature(int index, int region) {
+        return 35.0f + index * 0.25f + region;
+    }
+
+    // 写入在后台线程进行，等待写线程写完（映射的块对同一进程中的读取立即可见）
+    private void awaitWritten(long count) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5000;
+        while (recorder.getWrittenCount() < count && System.currentTimeMillis() < deadline) {
+            Thread.sleep(5);
+        }
+        assertEquals(count, recorder.getWrittenCount());
+    }
+}
@@ -0,0 +1,66 @@
+package com.aj.bodyheartmap.view;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.concurrent.ForkJoinPool;
+
+import static org.junit.Assert.*;
+
+public class SoftwareHeatMapRasterizerTest {
+
+    private static final int WIDTH = 300;
+    private static final int HEIGHT = 400;
+
+    private BodyMesh mesh;
+    private SoftwareHeatMapRasterizer rasterizer;
+
+    @Before
+    public void setUp() throws IOException {
+        mesh = TestMeshes.load();
+        rasterizer = new SoftwareHeatMapRasterizer(mesh);
+        rasterizer.setPalette(ColorPalette.get(ColorPalette.GRAYSCALE));
+        for (int part = 0; part < mesh.getPartCount(); part++) {
+            rasterizer.setRegion(part, 35.0f, 1.0f);
+        }
+    }
+
+    @Test
+    public void backgroundOutsideBody() {
+        rasterizer.setBackground(0xFF102030);
+        int[] out = rasterizer.render(WIDTH, HEIGHT);
+        assertEquals(0xFF102030, out[0]);
+        assertEquals(0xFF102030, out[WIDTH * HEIGHT - 1]);
+    }
+
+    @Test
+    public void interiorPixelHasPartColor() {
+        int body = mesh.indexOfPart("上身");
+        assertTrue(body >= 0);
+        // 上身取显示范围上限，灰度调色板下为白色；全局透明度默认0.7，透明背景上 alpha = round(0.7 * 255)
+        rasterizer.setRegion(body, 42.0f, 1.0f);
+        int[] out = rasterizer.render(WIDTH, HEIGHT);
+
+        float[] point = TestMeshes.interiorPoint(mesh, body);
+        float[] volume = new float[4];
+        HeatMapProjection.viewVolume(WIDTH, HEIGHT, 1.0f,
+                HeatMapProjection.centeredOffsetX(mesh.getSpan()), 0.0f, volume);
+        int x = (int) ((point[0] - volume[0]) * WIDTH / (volume[1] - volume[0]));
+        int y = (int) ((volume[3] - point[1]) * HEIGHT / (volume[3] - volume[2]));
+        assertEquals(0xB3FFFFFF, out[y * WIDTH + x]);
+    }
+
+    @Test
+    public void tileSizeDoesNotChangeOutput() {
+        rasterizer.setRegion(mesh.indexOfPart("头部"), 40.0f, 0.5f);
+        rasterizer.setRegion(mesh.indexOfPart("上身"), 38.0f, 1.0f);
+        rasterizer.setTileSize(8);
+        int[] reference = rasterizer.render(WIDTH, HEIGHT, new int[WIDTH * HEIGHT], ForkJoinPool.commonPool());
+        for (int tileSize : new int[]{64, 256}) {
+            rasterizer.setTileSize(tileSize);
+            int[] out = rasterizer.render(WIDTH, HEIGHT, new int[WIDTH * HEIGHT], ForkJoinPool.commonPool());
+            assertArrayEquals("tileSize " + tileSize, reference, out);
+        }
+    }
+}
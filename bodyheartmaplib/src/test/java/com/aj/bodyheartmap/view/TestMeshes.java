@@ -0,0 +1,54 @@
+package com.aj.bodyheartmap.view;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+
+/**
+ * 测试用的网格：直接读取库中打包的 body_mesh.bhm（单元测试的工作目录为模块目录）
+ */
+final class TestMeshes {
+
+    static final String ASSET_PATH = "src/main/assets/body_mesh.bhm";
+
+    private TestMeshes() {
+    }
+
+    static BodyMesh load() throws IOException {
+        byte[] data = Files.readAllBytes(Paths.get(ASSET_PATH));
+        return BodyMeshFormat.read(BodyMeshCache.DEFAULT_TEMPLATE, ByteBuffer.wrap(data).order(ByteOrder.LITTLE_ENDIAN));
+    }
+
+    // 部位 part 中面积最大的三角形的重心（模型坐标），作为确定落在该部位内部的探测点
+    static float[] interiorPoint(BodyMesh mesh, int part) {
+        FloatBuffer vertices = mesh.newVertexView();
+        int start = mesh.getPartStart(part);
+        int end = start + mesh.getPartVertexCount(part);
+        float best = -1;
+        float[] point = new float[2];
+        for (int i = 0; i + 2 < mesh.getIndexCount(); i += 3) {
+            int a = mesh.getIndex(i);
+            if (a < start || a >= end) {
+                continue;
+            }
+            int b = mesh.getIndex(i + 1);
+            int c = mesh.getIndex(i + 2);
+            float ax = vertices.get(a * BodyMeshFormat.FLOATS_PER_VERTEX);
+            float ay = vertices.get(a * BodyMeshFormat.FLOATS_PER_VERTEX + 1);
+            float bx = vertices.get(b * BodyMeshFormat.FLOATS_PER_VERTEX);
+            float by = vertices.get(b * BodyMeshFormat.FLOATS_PER_VERTEX + 1);
+            float cx = vertices.get(c * BodyMeshFormat.FLOATS_PER_VERTEX);
+            float cy = vertices.get(c * BodyMeshFormat.FLOATS_PER_VERTEX + 1);
+            float area = Math.abs((bx - ax) * (cy - ay) - (by - ay) * (cx - ax)) / 2;
+            if (area > best) {
+                best = area;
+                point[0] = (ax + bx + cx) / 3;
+                point[1] = (ay + by + cy) / 3;
+            }
+        }
+        return point;
+    }
+}